@@ -24,6 +24,7 @@ import org.apache.commons.logging.LogFactory;
 import org.wso2.carbon.device.mgt.common.DeviceIdentifier;
 import org.wso2.carbon.mdm.api.common.MDMAPIException;
 import org.wso2.carbon.mdm.api.util.MDMAPIUtils;
+import org.wso2.carbon.mdm.api.util.PolicyRevisionCache;
 import org.wso2.carbon.mdm.api.util.ResponsePayload;
 import org.wso2.carbon.mdm.beans.PolicyWrapper;
 import org.wso2.carbon.mdm.beans.PriorityUpdatedPolicyWrapper;
@@ -97,6 +98,7 @@ public class Policy {
         try {
             PolicyAdministratorPoint pap = policyManagementService.getPAP();
             pap.addPolicy(policy);
+            PolicyRevisionCache.startNewRevision();
             Response.status(HttpStatus.SC_CREATED);
             responseMsg.setStatusCode(HttpStatus.SC_CREATED);
             responseMsg.setMessageFromServer("Policy has been added successfully.");
@@ -211,6 +213,7 @@ public class Policy {
             PolicyAdministratorPoint pap = policyManagementService.getPAP();
 //            pap.addPolicy(policy);
             pap.updatePolicy(policy);
+            PolicyRevisionCache.startNewRevision();
 //            Response.status(HttpStatus.SC_CREATED);
             Response.status(HttpStatus.SC_OK);
             responseMsg.setStatusCode(HttpStatus.SC_CREATED);
@@ -244,6 +247,7 @@ public class Policy {
         try {
             PolicyAdministratorPoint pap = policyManagementService.getPAP();
             policiesUpdated = pap.updatePolicyPriorities(policiesToUpdate);
+            PolicyRevisionCache.startNewRevision();
         } catch (PolicyManagementException e) {
             String error = "Exception in updating policy priorities.";
             log.error(error, e);
@@ -276,6 +280,7 @@ public class Policy {
 			        policyDeleted = false;
 		        }
 	        }
+            PolicyRevisionCache.startNewRevision();
         } catch (PolicyManagementException e) {
             String error = "Exception in deleting policies.";
             log.error(error, e);
@@ -320,6 +325,7 @@ public class Policy {
 	        for(int i : policyIds) {
 		        pap.activatePolicy(i);
 	        }
+            PolicyRevisionCache.startNewRevision();
         } catch (PolicyManagementException e) {
             String error = "Exception in activating policies.";
             log.error(error, e);
@@ -345,6 +351,7 @@ public class Policy {
 	        for(int i : policyIds) {
 		        pap.inactivatePolicy(i);
 	        }
+            PolicyRevisionCache.startNewRevision();
         } catch (PolicyManagementException e) {
             String error = "Exception in inactivating policies.";
             log.error(error, e);
@@ -366,6 +373,7 @@ public class Policy {
             PolicyManagerService policyManagementService = MDMAPIUtils.getPolicyManagementService();
             PolicyAdministratorPoint pap = policyManagementService.getPAP();
             pap.publishChanges();
+            PolicyRevisionCache.startNewRevision();
 
 
         } catch (PolicyManagementException e) {
@@ -24,13 +24,17 @@ import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.wso2.carbon.context.CarbonContext;
+import org.wso2.carbon.context.PrivilegedCarbonContext;
 import org.wso2.carbon.device.mgt.common.DeviceManagementException;
 import org.wso2.carbon.device.mgt.common.EmailMessageProperties;
 import org.wso2.carbon.device.mgt.common.PaginationRequest;
 import org.wso2.carbon.device.mgt.core.service.DeviceManagementProviderService;
 import org.wso2.carbon.mdm.api.common.MDMAPIException;
+import org.wso2.carbon.mdm.api.util.EnrolmentInvitationMailer;
 import org.wso2.carbon.mdm.api.util.MDMAPIUtils;
 import org.wso2.carbon.mdm.api.util.ResponsePayload;
+import org.wso2.carbon.mdm.api.util.UserStoreCache;
+import org.wso2.carbon.mdm.beans.InvitationJobStatus;
 import org.wso2.carbon.mdm.beans.UserCredentialWrapper;
 import org.wso2.carbon.mdm.beans.UserWrapper;
 import org.wso2.carbon.mdm.util.Constants;
@@ -66,6 +70,8 @@ public class User {
 
     private static Log log = LogFactory.getLog(User.class);
     private String ROLE_EVERYONE = "Internal/everyone";
+    private static final String[] LISTED_USER_CLAIMS = {Constants.USER_CLAIM_EMAIL_ADDRESS,
+            Constants.USER_CLAIM_FIRST_NAME, Constants.USER_CLAIM_LAST_NAME};
 
     /**
      * Method to add user to emm-user-store.
@@ -101,6 +107,7 @@ public class User {
                 // calling addUser method of carbon user api
                 userStoreManager.addUser(userWrapper.getUsername(), initialUserPassword,
                                          userWrapper.getRoles(), defaultUserClaims, null);
+                UserStoreCache.invalidate(userWrapper.getUsername());
                 // invite newly added user to enroll device
                 inviteNewlyAddedUserToEnrollDevice(userWrapper.getUsername(), initialUserPassword);
                 // Outputting debug message upon successful addition of user
@@ -139,11 +146,7 @@ public class User {
         ResponsePayload responsePayload = new ResponsePayload();
         try {
             if (userStoreManager.isExistingUser(username)) {
-                UserWrapper user = new UserWrapper();
-                user.setUsername(username);
-                user.setEmailAddress(getClaimValue(username, Constants.USER_CLAIM_EMAIL_ADDRESS));
-                user.setFirstname(getClaimValue(username, Constants.USER_CLAIM_FIRST_NAME));
-                user.setLastname(getClaimValue(username, Constants.USER_CLAIM_LAST_NAME));
+                UserWrapper user = getUserWithClaims(userStoreManager, username);
                 // Outputting debug message upon successful retrieval of user
                 if (log.isDebugEnabled()) {
                     log.debug("User by username: " + username + " was found.");
@@ -225,6 +228,7 @@ public class User {
                 userStoreManager.updateRoleListOfUser(userWrapper.getUsername(), rolesToDelete, rolesToAdd);
                 //TODO: find what happens when the profileName is null
                 userStoreManager.setUserClaimValues(userWrapper.getUsername(), defaultUserClaims, null);
+                UserStoreCache.invalidate(userWrapper.getUsername());
                 // Outputting debug message upon successful addition of user
                 if (log.isDebugEnabled()) {
                     log.debug("User by username: " + userWrapper.getUsername() + " was successfully updated.");
@@ -321,6 +325,7 @@ public class User {
             if (userStoreManager.isExistingUser(username)) {
                 // if user already exists, trying to remove user
                 userStoreManager.deleteUser(username);
+                UserStoreCache.invalidate(username);
                 // Outputting debug message upon successful removal of user
                 if (log.isDebugEnabled()) {
                     log.debug("User by username: " + username + " was successfully removed.");
@@ -419,24 +424,17 @@ public class User {
      */
     @GET
     @Produces({MediaType.APPLICATION_JSON})
-    public Response getAllUsers() throws MDMAPIException {
+    public Response getAllUsers(@QueryParam("start") int startIdx, @QueryParam("length") int length)
+            throws MDMAPIException {
         if (log.isDebugEnabled()) {
             log.debug("Getting the list of users with all user-related information");
         }
         UserStoreManager userStoreManager = MDMAPIUtils.getUserStoreManager();
-        ArrayList<UserWrapper> userList;
+        String[] users;
+        List<UserWrapper> userList;
         try {
-            String[] users = userStoreManager.listUsers("*", -1);
-            userList = new ArrayList<UserWrapper>(users.length);
-            UserWrapper user;
-            for (String username : users) {
-                user = new UserWrapper();
-                user.setUsername(username);
-                user.setEmailAddress(getClaimValue(username, Constants.USER_CLAIM_EMAIL_ADDRESS));
-                user.setFirstname(getClaimValue(username, Constants.USER_CLAIM_FIRST_NAME));
-                user.setLastname(getClaimValue(username, Constants.USER_CLAIM_LAST_NAME));
-                userList.add(user);
-            }
+            users = getSortedUsers(userStoreManager, "*");
+            userList = getUsersWithClaims(userStoreManager, users, startIdx, length);
         } catch (UserStoreException e) {
             String msg = "Error occurred while retrieving the list of users";
             log.error(msg, e);
@@ -444,13 +442,14 @@ public class User {
         }
         ResponsePayload responsePayload = new ResponsePayload();
         responsePayload.setStatusCode(HttpStatus.SC_OK);
-        int count = 0;
-        if (userList != null) {
-            count = userList.size();
-        }
         responsePayload.setMessageFromServer("All users were successfully retrieved. " +
-                                             "Obtained user count: " + count);
-        responsePayload.setResponseContent(userList);
+                                             "Obtained user count: " + userList.size());
+        if (length > 0) {
+            responsePayload.setResponseContent(
+                    MDMAPIUtils.getPagingResponse(users.length, users.length, 0, userList));
+        } else {
+            responsePayload.setResponseContent(userList);
+        }
         return Response.status(HttpStatus.SC_OK).entity(responsePayload).build();
     }
 
@@ -463,24 +462,17 @@ public class User {
     @GET
     @Path("{filter}")
     @Produces({MediaType.APPLICATION_JSON})
-    public Response getMatchingUsers(@PathParam("filter") String filter) throws MDMAPIException {
+    public Response getMatchingUsers(@PathParam("filter") String filter, @QueryParam("start") int startIdx,
+                                     @QueryParam("length") int length) throws MDMAPIException {
         if (log.isDebugEnabled()) {
             log.debug("Getting the list of users with all user-related information using the filter : " + filter);
         }
         UserStoreManager userStoreManager = MDMAPIUtils.getUserStoreManager();
-        ArrayList<UserWrapper> userList;
+        String[] users;
+        List<UserWrapper> userList;
         try {
-            String[] users = userStoreManager.listUsers(filter + "*", -1);
-            userList = new ArrayList<UserWrapper>(users.length);
-            UserWrapper user;
-            for (String username : users) {
-                user = new UserWrapper();
-                user.setUsername(username);
-                user.setEmailAddress(getClaimValue(username, Constants.USER_CLAIM_EMAIL_ADDRESS));
-                user.setFirstname(getClaimValue(username, Constants.USER_CLAIM_FIRST_NAME));
-                user.setLastname(getClaimValue(username, Constants.USER_CLAIM_LAST_NAME));
-                userList.add(user);
-            }
+            users = getSortedUsers(userStoreManager, filter + "*");
+            userList = getUsersWithClaims(userStoreManager, users, startIdx, length);
         } catch (UserStoreException e) {
             String msg = "Error occurred while retrieving the list of users using the filter : " + filter;
             log.error(msg, e);
@@ -488,13 +480,14 @@ public class User {
         }
         ResponsePayload responsePayload = new ResponsePayload();
         responsePayload.setStatusCode(HttpStatus.SC_OK);
-        int count = 0;
-        if (userList != null) {
-            count = userList.size();
-        }
         responsePayload.setMessageFromServer("All users were successfully retrieved. " +
-                                             "Obtained user count: " + count);
-        responsePayload.setResponseContent(userList);
+                                             "Obtained user count: " + userList.size());
+        if (length > 0) {
+            responsePayload.setResponseContent(
+                    MDMAPIUtils.getPagingResponse(users.length, users.length, 0, userList));
+        } else {
+            responsePayload.setResponseContent(userList);
+        }
         return Response.status(HttpStatus.SC_OK).entity(responsePayload).build();
     }
 
@@ -506,24 +499,17 @@ public class User {
      */
     @GET
     @Path("view-users")
-    public Response getAllUsersByUsername(@QueryParam("username") String userName) throws MDMAPIException {
+    public Response getAllUsersByUsername(@QueryParam("username") String userName, @QueryParam("start") int startIdx,
+                                          @QueryParam("length") int length) throws MDMAPIException {
         if (log.isDebugEnabled()) {
             log.debug("Getting the list of users by name");
         }
         UserStoreManager userStoreManager = MDMAPIUtils.getUserStoreManager();
-        ArrayList<UserWrapper> userList;
+        String[] users;
+        List<UserWrapper> userList;
         try {
-            String[] users = userStoreManager.listUsers("*" + userName + "*", -1);
-            userList = new ArrayList<UserWrapper>(users.length);
-            UserWrapper user;
-            for (String username : users) {
-                user = new UserWrapper();
-                user.setUsername(username);
-                user.setEmailAddress(getClaimValue(username, Constants.USER_CLAIM_EMAIL_ADDRESS));
-                user.setFirstname(getClaimValue(username, Constants.USER_CLAIM_FIRST_NAME));
-                user.setLastname(getClaimValue(username, Constants.USER_CLAIM_LAST_NAME));
-                userList.add(user);
-            }
+            users = getSortedUsers(userStoreManager, "*" + userName + "*");
+            userList = getUsersWithClaims(userStoreManager, users, startIdx, length);
         } catch (UserStoreException e) {
             String msg = "Error occurred while retrieving the list of users";
             log.error(msg, e);
@@ -531,13 +517,14 @@ public class User {
         }
         ResponsePayload responsePayload = new ResponsePayload();
         responsePayload.setStatusCode(HttpStatus.SC_OK);
-        int count = 0;
-        if (userList != null) {
-            count = userList.size();
-        }
         responsePayload.setMessageFromServer("All users by username were successfully retrieved. " +
-                                             "Obtained user count: " + count);
-        responsePayload.setResponseContent(userList);
+                                             "Obtained user count: " + userList.size());
+        if (length > 0) {
+            responsePayload.setResponseContent(
+                    MDMAPIUtils.getPagingResponse(users.length, users.length, 0, userList));
+        } else {
+            responsePayload.setResponseContent(userList);
+        }
         return Response.status(HttpStatus.SC_OK).entity(responsePayload).build();
     }
 
@@ -592,6 +579,79 @@ public class User {
         return userStoreManager.getUserClaimValue(username, claimUri, null);
     }
 
+    /**
+     * Lists the usernames matching a filter in sorted order, or takes them from the cache when they were listed
+     * shortly before, so that paging does not list and sort every user of the user store for each page.
+     *
+     * @param userStoreManager User store of the tenant
+     * @param filter           Filter of the usernames
+     * @return Sorted usernames, which must not be modified
+     * @throws UserStoreException
+     */
+    private String[] getSortedUsers(UserStoreManager userStoreManager, String filter) throws UserStoreException {
+        String[] users = UserStoreCache.getSortedUsers(filter);
+        if (users == null) {
+            users = userStoreManager.listUsers(filter, -1);
+            if (users == null) {
+                users = new String[0];
+            }
+            Arrays.sort(users);
+            UserStoreCache.putSortedUsers(filter, users);
+        }
+        return users;
+    }
+
+    /**
+     * Gets the listed claims of the given users. When a length is given, only the page starting at the given index
+     * is loaded.
+     *
+     * @param userStoreManager User store of the tenant
+     * @param users            Sorted usernames of the users
+     * @param startIdx         Index of the first user of the page
+     * @param length           Number of users in the page, or zero for all users
+     * @return A list of users with their claims
+     * @throws UserStoreException
+     */
+    private List<UserWrapper> getUsersWithClaims(UserStoreManager userStoreManager, String[] users, int startIdx,
+                                                 int length) throws UserStoreException {
+        int start = 0;
+        int end = users.length;
+        if (length > 0) {
+            start = Math.min(Math.max(startIdx, 0), users.length);
+            end = Math.min(start + length, users.length);
+        }
+        List<UserWrapper> userList = new ArrayList<UserWrapper>(end - start);
+        for (int i = start; i < end; i++) {
+            userList.add(getUserWithClaims(userStoreManager, users[i]));
+        }
+        return userList;
+    }
+
+    /**
+     * Gets the listed claims of a user in a single user store call, or from the cache when they were loaded
+     * shortly before.
+     *
+     * @param userStoreManager User store of the tenant
+     * @param username         Username of the user
+     * @return The user with its claims
+     * @throws UserStoreException
+     */
+    private UserWrapper getUserWithClaims(UserStoreManager userStoreManager, String username)
+            throws UserStoreException {
+        UserWrapper user = UserStoreCache.getUserClaims(username);
+        if (user != null) {
+            return user;
+        }
+        Map<String, String> claims = userStoreManager.getUserClaimValues(username, LISTED_USER_CLAIMS, null);
+        user = new UserWrapper();
+        user.setUsername(username);
+        user.setEmailAddress(claims.get(Constants.USER_CLAIM_EMAIL_ADDRESS));
+        user.setFirstname(claims.get(Constants.USER_CLAIM_FIRST_NAME));
+        user.setLastname(claims.get(Constants.USER_CLAIM_LAST_NAME));
+        UserStoreCache.putUserClaims(user);
+        return user;
+    }
+
     /**
      * Method used to send an invitation email to a new user to enroll a device.
      *
@@ -628,7 +688,8 @@ public class User {
     }
 
     /**
-     * Method used to send an invitation email to a existing user to enroll a device.
+     * Method used to send an invitation email to a existing user to enroll a device. The invitations are sent in
+     * the background and the returned job status can be used to follow their progress.
      *
      * @param usernames Username list of the users to be invited
      * @throws MDMAPIException
@@ -640,34 +701,55 @@ public class User {
         if (log.isDebugEnabled()) {
             log.debug("Sending enrollment invitation mail to existing user.");
         }
-        DeviceManagementProviderService deviceManagementProviderService = MDMAPIUtils.getDeviceManagementService();
-        try {
-            int i;
-            for (i = 0; i < usernames.size(); i++) {
-                EmailMessageProperties emailMessageProperties = new EmailMessageProperties();
-//		        emailMessageProperties.setEnrolmentUrl("https://download-agent");
-                emailMessageProperties
-                        .setFirstName(getClaimValue(usernames.get(i), Constants.USER_CLAIM_FIRST_NAME));
-                emailMessageProperties.setUserName(usernames.get(i));
-                String[] mailAddress = new String[1];
-                mailAddress[0] = getClaimValue(usernames.get(i), Constants.USER_CLAIM_EMAIL_ADDRESS);
-                if (StringUtils.isNotEmpty(mailAddress[0])) {
-                    emailMessageProperties.setMailTo(mailAddress);
-                    deviceManagementProviderService.sendEnrolmentInvitation(emailMessageProperties);
-                }
-            }
-        } catch (UserStoreException e) {
-            String errorMsg = "Exception in trying to invite user.";
-            log.error(errorMsg, e);
-            throw new MDMAPIException(errorMsg, e);
-        } catch (DeviceManagementException e) {
-            String errorMsg = "Exception in trying to invite user.";
-            log.error(errorMsg, e);
-            throw new MDMAPIException(errorMsg, e);
-        }
+        final DeviceManagementProviderService deviceManagementProviderService =
+                MDMAPIUtils.getDeviceManagementService();
+        final String tenantDomain = CarbonContext.getThreadLocalCarbonContext().getTenantDomain();
+        final int tenantId = CarbonContext.getThreadLocalCarbonContext().getTenantId();
+        InvitationJobStatus jobStatus = EnrolmentInvitationMailer.getInstance().submit(
+                tenantId, usernames, MDMAPIUtils.getUserStoreManager(), new EnrolmentInvitationMailer.InvitationSender() {
+                    @Override
+                    public void send(EmailMessageProperties emailMessageProperties)
+                            throws DeviceManagementException {
+                        PrivilegedCarbonContext.startTenantFlow();
+                        try {
+                            PrivilegedCarbonContext ctx = PrivilegedCarbonContext.getThreadLocalCarbonContext();
+                            ctx.setTenantDomain(tenantDomain);
+                            ctx.setTenantId(tenantId);
+                            deviceManagementProviderService.sendEnrolmentInvitation(emailMessageProperties);
+                        } finally {
+                            PrivilegedCarbonContext.endTenantFlow();
+                        }
+                    }
+                });
+        ResponsePayload responsePayload = new ResponsePayload();
+        responsePayload.setStatusCode(HttpStatus.SC_OK);
+        responsePayload.setMessageFromServer("Email invitations were queued to be sent to " + usernames.size() +
+                                             " users.");
+        responsePayload.setResponseContent(jobStatus);
+        return Response.status(HttpStatus.SC_OK).entity(responsePayload).build();
+    }
+
+    /**
+     * Get the progress of an enrollment invitation job.
+     *
+     * @param jobId Id of the invitation job
+     * @return Sent, failed, skipped and pending invitation counts of the job
+     */
+    @GET
+    @Path("email-invitation/{jobId}")
+    @Produces({MediaType.APPLICATION_JSON})
+    public Response getInvitationJobStatus(@PathParam("jobId") String jobId) {
         ResponsePayload responsePayload = new ResponsePayload();
+        InvitationJobStatus jobStatus = EnrolmentInvitationMailer.getInstance().getStatus(
+                CarbonContext.getThreadLocalCarbonContext().getTenantId(), jobId);
+        if (jobStatus == null) {
+            responsePayload.setStatusCode(HttpStatus.SC_NOT_FOUND);
+            responsePayload.setMessageFromServer("Invitation job " + jobId + " does not exist.");
+            return Response.status(HttpStatus.SC_NOT_FOUND).entity(responsePayload).build();
+        }
         responsePayload.setStatusCode(HttpStatus.SC_OK);
-        responsePayload.setMessageFromServer("Email invitation was successfully sent to user.");
+        responsePayload.setMessageFromServer("Invitation job status was retrieved successfully.");
+        responsePayload.setResponseContent(jobStatus);
         return Response.status(HttpStatus.SC_OK).entity(responsePayload).build();
     }
 
@@ -710,11 +792,7 @@ public class User {
     @Path("count")
     public int getUserCount() throws MDMAPIException {
         try {
-            String[] users = MDMAPIUtils.getUserStoreManager().listUsers("*", -1);
-            if (users == null) {
-                return 0;
-            }
-            return users.length;
+            return getSortedUsers(MDMAPIUtils.getUserStoreManager(), "*").length;
         } catch (UserStoreException e) {
             String msg =
                     "Error occurred while retrieving the list of users that exist within the current tenant";
@@ -0,0 +1,267 @@
+/*
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.mdm.api.util;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.device.mgt.common.DeviceManagementException;
+import org.wso2.carbon.device.mgt.common.EmailMessageProperties;
+import org.wso2.carbon.mdm.beans.InvitationJobStatus;
+import org.wso2.carbon.mdm.util.Constants;
+import org.wso2.carbon.user.api.UserStoreException;
+import org.wso2.carbon.user.api.UserStoreManager;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sends enrollment invitations in the background. The users of an invitation job are split into batches which are
+ * handled by a bounded pool of workers, the claims of each user are fetched in a single user store call and the
+ * mails handed to the mail transport are throttled to a fixed rate. The progress of a job can be queried by the
+ * tenant which started it until an hour after it finished.
+ */
+public class EnrolmentInvitationMailer {
+
+    private static Log log = LogFactory.getLog(EnrolmentInvitationMailer.class);
+
+    private static final int WORKER_COUNT = 4;
+    private static final int QUEUE_SIZE = 1000;
+    private static final int BATCH_SIZE = 50;
+    private static final double MAILS_PER_SECOND = 10;
+    private static final long JOB_RETENTION_TIME = 3600000;
+    private static final String[] INVITATION_CLAIMS = {Constants.USER_CLAIM_FIRST_NAME,
+            Constants.USER_CLAIM_EMAIL_ADDRESS};
+    private static volatile EnrolmentInvitationMailer instance;
+
+    /**
+     * Hands an invitation over to the mail transport.
+     */
+    public interface InvitationSender {
+
+        void send(EmailMessageProperties emailMessageProperties) throws DeviceManagementException;
+    }
+
+    private final ThreadPoolExecutor executor;
+    private final int batchSize;
+    private final long sendInterval;
+    private final Map<String, InvitationJob> jobs = new ConcurrentHashMap<>();
+    private long nextSendTime;
+
+    /**
+     * @param workerCount    number of workers sending invitations
+     * @param queueSize      maximum number of batches waiting for a worker
+     * @param batchSize      number of users handled by a worker at a time
+     * @param mailsPerSecond maximum number of invitations handed to the mail transport per second
+     */
+    public EnrolmentInvitationMailer(int workerCount, int queueSize, int batchSize, double mailsPerSecond) {
+        this.batchSize = batchSize;
+        this.sendInterval = (long) (TimeUnit.SECONDS.toNanos(1) / mailsPerSecond);
+        this.executor = new ThreadPoolExecutor(workerCount, workerCount, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(queueSize), new ThreadFactory() {
+            private final AtomicInteger threadCount = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "enrolment-invitation-mailer-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    public static EnrolmentInvitationMailer getInstance() {
+        if (instance == null) {
+            synchronized (EnrolmentInvitationMailer.class) {
+                if (instance == null) {
+                    instance = new EnrolmentInvitationMailer(WORKER_COUNT, QUEUE_SIZE, BATCH_SIZE, MAILS_PER_SECOND);
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Starts a job sending enrollment invitations to the given users.
+     *
+     * @param tenantId         tenant of the users
+     * @param usernames        users to be invited
+     * @param userStoreManager user store of the tenant of the users
+     * @param sender           mail transport of the tenant
+     * @return the initial status of the job
+     */
+    public InvitationJobStatus submit(int tenantId, List<String> usernames, UserStoreManager userStoreManager,
+                                      InvitationSender sender) {
+        removeFinishedJobs();
+        InvitationJob job = new InvitationJob(UUID.randomUUID().toString(), usernames.size());
+        jobs.put(getJobKey(tenantId, job.jobId), job);
+        for (int start = 0; start < usernames.size(); start += batchSize) {
+            List<String> batch = new ArrayList<>(usernames.subList(start, Math.min(start + batchSize,
+                                                                                    usernames.size())));
+            try {
+                executor.execute(new InvitationBatch(job, batch, userStoreManager, sender));
+            } catch (RejectedExecutionException e) {
+                log.error("Invitation queue is full, " + batch.size() + " invitations of job " + job.jobId +
+                        " were not sent.", e);
+                job.failed.addAndGet(batch.size());
+                job.finish();
+            }
+        }
+        if (usernames.isEmpty()) {
+            job.finish();
+        }
+        return job.getStatus();
+    }
+
+    /**
+     * @param tenantId tenant querying the job
+     * @param jobId    id of the job
+     * @return the status of the job or null if the job is unknown to the tenant
+     */
+    public InvitationJobStatus getStatus(int tenantId, String jobId) {
+        InvitationJob job = jobs.get(getJobKey(tenantId, jobId));
+        return job == null ? null : job.getStatus();
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private static String getJobKey(int tenantId, String jobId) {
+        return tenantId + "@" + jobId;
+    }
+
+    private void acquirePermit() throws InterruptedException {
+        long waitTime;
+        synchronized (this) {
+            long now = System.nanoTime();
+            if (nextSendTime - now < 0) {
+                nextSendTime = now;
+            }
+            waitTime = nextSendTime - now;
+            nextSendTime += sendInterval;
+        }
+        if (waitTime > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitTime);
+        }
+    }
+
+    private void removeFinishedJobs() {
+        long now = System.currentTimeMillis();
+        for (Iterator<InvitationJob> iterator = jobs.values().iterator(); iterator.hasNext(); ) {
+            InvitationJob job = iterator.next();
+            if (job.finishTime > 0 && now - job.finishTime > JOB_RETENTION_TIME) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private class InvitationBatch implements Runnable {
+
+        private final InvitationJob job;
+        private final List<String> usernames;
+        private final UserStoreManager userStoreManager;
+        private final InvitationSender sender;
+
+        private InvitationBatch(InvitationJob job, List<String> usernames, UserStoreManager userStoreManager,
+                                InvitationSender sender) {
+            this.job = job;
+            this.usernames = usernames;
+            this.userStoreManager = userStoreManager;
+            this.sender = sender;
+        }
+
+        @Override
+        public void run() {
+            for (int i = 0; i < usernames.size(); i++) {
+                String username = usernames.get(i);
+                try {
+                    Map<String, String> claims = userStoreManager.getUserClaimValues(username, INVITATION_CLAIMS,
+                                                                                      null);
+                    String mailAddress = claims.get(Constants.USER_CLAIM_EMAIL_ADDRESS);
+                    if (StringUtils.isEmpty(mailAddress)) {
+                        job.skipped.incrementAndGet();
+                        continue;
+                    }
+                    EmailMessageProperties emailMessageProperties = new EmailMessageProperties();
+                    emailMessageProperties.setFirstName(claims.get(Constants.USER_CLAIM_FIRST_NAME));
+                    emailMessageProperties.setUserName(username);
+                    emailMessageProperties.setMailTo(new String[]{mailAddress});
+                    acquirePermit();
+                    sender.send(emailMessageProperties);
+                    job.sent.incrementAndGet();
+                } catch (UserStoreException e) {
+                    log.error("Exception in trying to invite user " + username, e);
+                    job.failed.incrementAndGet();
+                } catch (DeviceManagementException e) {
+                    log.error("Exception in trying to invite user " + username, e);
+                    job.failed.incrementAndGet();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    job.failed.addAndGet(usernames.size() - i);
+                    break;
+                }
+            }
+            job.finish();
+        }
+    }
+
+    private static class InvitationJob {
+
+        private final String jobId;
+        private final int total;
+        private final AtomicInteger sent = new AtomicInteger();
+        private final AtomicInteger failed = new AtomicInteger();
+        private final AtomicInteger skipped = new AtomicInteger();
+        private volatile long finishTime;
+
+        private InvitationJob(String jobId, int total) {
+            this.jobId = jobId;
+            this.total = total;
+        }
+
+        private void finish() {
+            if (sent.get() + failed.get() + skipped.get() >= total) {
+                finishTime = System.currentTimeMillis();
+            }
+        }
+
+        private InvitationJobStatus getStatus() {
+            InvitationJobStatus status = new InvitationJobStatus();
+            status.setJobId(jobId);
+            status.setTotal(total);
+            status.setSent(sent.get());
+            status.setFailed(failed.get());
+            status.setSkipped(skipped.get());
+            status.setPending(total - status.getSent() - status.getFailed() - status.getSkipped());
+            return status;
+        }
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.mdm.api.util;
+
+import org.wso2.mdm.mdmmgt.util.MDMAppConstants;
+
+import javax.cache.Cache;
+import javax.cache.Caching;
+import java.util.UUID;
+
+/**
+ * Holds the policy revision of the tenant in a cache shared with the device agent APIs, which serve the effective
+ * policy of a device from their own caches for as long as the revision they computed it for is current. A new
+ * revision is started whenever the policies of the tenant change.
+ */
+public class PolicyRevisionCache {
+
+    private PolicyRevisionCache() {
+        throw new AssertionError();
+    }
+
+    /**
+     * Starts a new policy revision of the current tenant, which makes the effective policies cached for its devices
+     * stale.
+     */
+    public static void startNewRevision() {
+        Cache<String, String> revisionCache = Caching.getCacheManager(
+                MDMAppConstants.PolicyRevisionConstants.POLICY_REVISION_CACHE_MANAGER).getCache(
+                MDMAppConstants.PolicyRevisionConstants.POLICY_REVISION_CACHE);
+        revisionCache.put(MDMAppConstants.PolicyRevisionConstants.POLICY_REVISION, UUID.randomUUID().toString());
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.mdm.api.util;
+
+import org.wso2.carbon.mdm.beans.UserWrapper;
+
+import javax.cache.Cache;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Short-lived cache of the users listed by the User API. It keeps the sorted usernames matching each listing filter
+ * and the claims shown for each user, so that paging through the users neither lists nor sorts the users of the
+ * user store again for every page. The caches are Carbon caches scoped to the tenant of the current carbon context.
+ * Entries are dropped when a user is changed through the API and otherwise expire after a short time.
+ */
+public class UserStoreCache {
+
+    private static final String USER_CACHE_MANAGER = "MDM_USER_CACHE_MANAGER";
+    private static final String USER_CLAIMS_CACHE = "MDM_USER_CLAIMS_CACHE";
+    private static final String USER_LIST_CACHE = "MDM_USER_LIST_CACHE";
+    private static final long CACHE_DURATION = 1l;
+
+    private UserStoreCache() {
+        throw new AssertionError();
+    }
+
+    /**
+     * @return a copy of the cached claims of the user or null if they are not cached
+     */
+    public static UserWrapper getUserClaims(String username) {
+        UserWrapper user = UserStoreCache.<UserWrapper>getCache(USER_CLAIMS_CACHE).get(username);
+        return user == null ? null : copyClaims(user);
+    }
+
+    public static void putUserClaims(UserWrapper user) {
+        UserStoreCache.<UserWrapper>getCache(USER_CLAIMS_CACHE).put(user.getUsername(), copyClaims(user));
+    }
+
+    /**
+     * @param filter filter the usernames were listed with
+     * @return the cached usernames matching the filter in sorted order, or null if they are not cached. The array
+     * is shared and must not be modified.
+     */
+    public static String[] getSortedUsers(String filter) {
+        return UserStoreCache.<String[]>getCache(USER_LIST_CACHE).get(filter);
+    }
+
+    public static void putSortedUsers(String filter, String[] sortedUsers) {
+        UserStoreCache.<String[]>getCache(USER_LIST_CACHE).put(filter, sortedUsers);
+    }
+
+    /**
+     * Drops the cached details of a user which was added, updated or removed, along with the cached listings.
+     */
+    public static void invalidate(String username) {
+        UserStoreCache.<UserWrapper>getCache(USER_CLAIMS_CACHE).remove(username);
+        UserStoreCache.<String[]>getCache(USER_LIST_CACHE).removeAll();
+    }
+
+    private static UserWrapper copyClaims(UserWrapper user) {
+        UserWrapper copy = new UserWrapper();
+        copy.setUsername(user.getUsername());
+        copy.setEmailAddress(user.getEmailAddress());
+        copy.setFirstname(user.getFirstname());
+        copy.setLastname(user.getLastname());
+        return copy;
+    }
+
+    private static <V> Cache<String, V> getCache(String cacheName) {
+        return TenantCacheProvider.getInstance().getCache(USER_CACHE_MANAGER, cacheName, TimeUnit.MINUTES,
+                CACHE_DURATION);
+    }
+}
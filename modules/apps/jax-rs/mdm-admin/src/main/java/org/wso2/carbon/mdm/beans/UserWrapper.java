@@ -18,7 +18,11 @@
 
 package org.wso2.carbon.mdm.beans;
 
-public class UserWrapper {
+import java.io.Serializable;
+
+public class UserWrapper implements Serializable {
+
+    private static final long serialVersionUID = 1L;
 
     private String username;
     /*
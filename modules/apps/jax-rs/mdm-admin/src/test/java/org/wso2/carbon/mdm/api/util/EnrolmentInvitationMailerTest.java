@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.mdm.api.util;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.wso2.carbon.device.mgt.common.DeviceManagementException;
+import org.wso2.carbon.device.mgt.common.EmailMessageProperties;
+import org.wso2.carbon.mdm.beans.InvitationJobStatus;
+import org.wso2.carbon.mdm.util.Constants;
+import org.wso2.carbon.user.api.UserStoreManager;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class EnrolmentInvitationMailerTest {
+
+    private static final int TENANT_ID = 1;
+
+    private EnrolmentInvitationMailer mailer;
+
+    @After
+    public void shutdownMailer() {
+        if (mailer != null) {
+            mailer.shutdown();
+        }
+    }
+
+    @Test
+    public void sendInvitationsToMailSink() throws Exception {
+        mailer = new EnrolmentInvitationMailer(4, 100, 10, 100000);
+        MailSink mailSink = new MailSink(null);
+        UserStore userStore = new UserStore();
+        List<String> usernames = createUsernames(95);
+        usernames.add("no-mail");
+
+        InvitationJobStatus status = mailer.submit(TENANT_ID, usernames, userStore.createManager(), mailSink);
+        status = waitForJob(status.getJobId());
+
+        Assert.assertEquals(96, status.getTotal());
+        Assert.assertEquals(95, status.getSent());
+        Assert.assertEquals(1, status.getSkipped());
+        Assert.assertEquals(0, status.getFailed());
+        Assert.assertEquals(95, mailSink.mails.size());
+        Assert.assertEquals(96, userStore.claimLookups.get());
+        EmailMessageProperties mail = mailSink.mails.peek();
+        Assert.assertEquals(mail.getUserName() + "@example.com", mail.getMailTo()[0]);
+    }
+
+    @Test
+    public void countFailedInvitations() throws Exception {
+        mailer = new EnrolmentInvitationMailer(2, 100, 5, 100000);
+        MailSink mailSink = new MailSink("user-3");
+        InvitationJobStatus status = mailer.submit(TENANT_ID, createUsernames(20), new UserStore().createManager(),
+                                                   mailSink);
+        status = waitForJob(status.getJobId());
+
+        Assert.assertEquals(19, status.getSent());
+        Assert.assertEquals(1, status.getFailed());
+        Assert.assertEquals(0, status.getPending());
+    }
+
+    @Test
+    public void throttleMailTransport() throws Exception {
+        mailer = new EnrolmentInvitationMailer(4, 100, 2, 100);
+        long start = System.currentTimeMillis();
+        InvitationJobStatus status = mailer.submit(TENANT_ID, createUsernames(21), new UserStore().createManager(),
+                                                   new MailSink(null));
+        waitForJob(status.getJobId());
+
+        // 21 mails at 100 mails per second can not be handed over in less than 200 milliseconds
+        Assert.assertTrue(System.currentTimeMillis() - start >= 190);
+    }
+
+    @Test
+    public void unknownJobHasNoStatus() {
+        mailer = new EnrolmentInvitationMailer(1, 1, 1, 1);
+        Assert.assertNull(mailer.getStatus(TENANT_ID, "unknown"));
+    }
+
+    @Test
+    public void jobOfOtherTenantHasNoStatus() throws Exception {
+        mailer = new EnrolmentInvitationMailer(1, 10, 10, 100000);
+        InvitationJobStatus status = mailer.submit(TENANT_ID, createUsernames(5), new UserStore().createManager(),
+                                                   new MailSink(null));
+        waitForJob(status.getJobId());
+
+        Assert.assertNull(mailer.getStatus(TENANT_ID + 1, status.getJobId()));
+    }
+
+    private InvitationJobStatus waitForJob(String jobId) throws InterruptedException {
+        InvitationJobStatus status = mailer.getStatus(TENANT_ID, jobId);
+        for (int i = 0; i < 500 && status.getPending() > 0; i++) {
+            Thread.sleep(10);
+            status = mailer.getStatus(TENANT_ID, jobId);
+        }
+        Assert.assertEquals(0, status.getPending());
+        return status;
+    }
+
+    private List<String> createUsernames(int count) {
+        List<String> usernames = new ArrayList<String>();
+        for (int i = 0; i < count; i++) {
+            usernames.add("user-" + i);
+        }
+        return usernames;
+    }
+
+    /**
+     * In memory mail transport which fails for one user.
+     */
+    private static class MailSink implements EnrolmentInvitationMailer.InvitationSender {
+
+        private final ConcurrentLinkedQueue<EmailMessageProperties> mails =
+                new ConcurrentLinkedQueue<EmailMessageProperties>();
+        private final String failingUser;
+
+        private MailSink(String failingUser) {
+            this.failingUser = failingUser;
+        }
+
+        @Override
+        public void send(EmailMessageProperties emailMessageProperties) throws DeviceManagementException {
+            if (emailMessageProperties.getUserName().equals(failingUser)) {
+                throw new DeviceManagementException("Mail transport is not available");
+            }
+            mails.add(emailMessageProperties);
+        }
+    }
+
+    /**
+     * User store in which every user except "no-mail" has a mail address.
+     */
+    private static class UserStore implements InvocationHandler {
+
+        private final AtomicInteger claimLookups = new AtomicInteger();
+
+        private UserStoreManager createManager() {
+            return (UserStoreManager) Proxy.newProxyInstance(getClass().getClassLoader(),
+                                                             new Class[]{UserStoreManager.class}, this);
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            if (!"getUserClaimValues".equals(method.getName())) {
+                throw new UnsupportedOperationException(method.getName());
+            }
+            claimLookups.incrementAndGet();
+            String username = (String) args[0];
+            Map<String, String> claims = new HashMap<String, String>();
+            claims.put(Constants.USER_CLAIM_FIRST_NAME, username);
+            if (!"no-mail".equals(username)) {
+                claims.put(Constants.USER_CLAIM_EMAIL_ADDRESS, username + "@example.com");
+            }
+            return claims;
+        }
+    }
+}
@@ -0,0 +1,261 @@
+/*
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied. See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.wso2.mdm.appmgt.service;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.device.mgt.common.Device;
+import org.wso2.carbon.device.mgt.common.DeviceManagementException;
+import org.wso2.carbon.device.mgt.common.PaginationRequest;
+import org.wso2.carbon.device.mgt.common.PaginationResult;
+import org.wso2.carbon.device.mgt.core.service.DeviceManagementProviderService;
+import org.wso2.carbon.user.api.UserStoreException;
+import org.wso2.carbon.user.api.UserStoreManager;
+import org.wso2.mdm.mdmmgt.common.MDMException;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Resolves the devices targeted by app store actions page by page instead of loading every device of the tenant.
+ * Devices are filtered by platform and platform version. The devices of each user are handed over only once, even
+ * when the user is reached through several roles, and since a device has a single owner no device is handed over
+ * twice. A resolver keeps the users it already resolved, hence a new resolver should be used for each action.
+ */
+public class DeviceResolver {
+
+    private static Log log = LogFactory.getLog(DeviceResolver.class);
+
+    public static final int DEFAULT_PAGE_SIZE = 500;
+    private static final String OS_VERSION = "OS_VERSION";
+
+    /**
+     * Receives the resolved devices.
+     */
+    public interface DeviceHandler {
+
+        void handle(Device device) throws MDMException;
+    }
+
+    private final DeviceManagementProviderService deviceManagementService;
+    private final int pageSize;
+    private final Set<String> resolvedUsers = new HashSet<>();
+    private int pageCount;
+
+    public DeviceResolver(DeviceManagementProviderService deviceManagementService, int pageSize) {
+        this.deviceManagementService = deviceManagementService;
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * Resolves the devices owned by a user.
+     *
+     * @param userName        owner of the devices
+     * @param platform        platform of the devices or null for all platforms
+     * @param platformVersion platform version of the devices or null for all versions
+     * @param handler         receiver of the devices
+     * @throws DeviceManagementException
+     * @throws MDMException
+     */
+    public void resolveDevicesOfUser(String userName, String platform, String platformVersion, DeviceHandler handler)
+            throws DeviceManagementException, MDMException {
+        if (resolvedUsers.add(userName)) {
+            resolvePages(userName, platform, platformVersion, handler);
+        }
+    }
+
+    /**
+     * Resolves the devices owned by the users of a role.
+     *
+     * @param userStoreManager user store of the tenant
+     * @param role             role of the device owners
+     * @param platform         platform of the devices or null for all platforms
+     * @param platformVersion  platform version of the devices or null for all versions
+     * @param handler          receiver of the devices
+     * @throws DeviceManagementException
+     * @throws MDMException
+     */
+    public void resolveDevicesOfRole(UserStoreManager userStoreManager, String role, String platform,
+            String platformVersion, DeviceHandler handler) throws DeviceManagementException, MDMException {
+        for (String userName : getUsersOfRole(userStoreManager, role)) {
+            resolveDevicesOfUser(userName, platform, platformVersion, handler);
+        }
+    }
+
+    /**
+     * Retrieves the users of a role.
+     *
+     * @param userStoreManager user store of the tenant
+     * @param role             role of the users
+     * @return users of the role
+     * @throws MDMException
+     */
+    public String[] getUsersOfRole(UserStoreManager userStoreManager, String role) throws MDMException {
+        try {
+            return userStoreManager.getUserListOfRole(role);
+        } catch (UserStoreException e) {
+            String msg = "Error occurred while retrieving the users of role " + role;
+            log.error(msg, e);
+            throw new MDMException(msg, e);
+        }
+    }
+
+    /**
+     * Resolves all devices of the tenant.
+     *
+     * @param platform        platform of the devices or null for all platforms
+     * @param platformVersion platform version of the devices or null for all versions
+     * @param handler         receiver of the devices
+     * @throws DeviceManagementException
+     * @throws MDMException
+     */
+    public void resolveAllDevices(String platform, String platformVersion, DeviceHandler handler)
+            throws DeviceManagementException, MDMException {
+        resolvePages(null, platform, platformVersion, handler);
+    }
+
+    /**
+     * @return number of device pages fetched from the device management service
+     */
+    public int getPageCount() {
+        return pageCount;
+    }
+
+    private void resolvePages(String owner, String platform, String platformVersion, DeviceHandler handler)
+            throws DeviceManagementException, MDMException {
+        DevicePager pager = createPager(owner, platform, platformVersion);
+        List<Device> devices;
+        while ((devices = pager.nextPage()) != null) {
+            for (Device device : devices) {
+                handler.handle(device);
+            }
+        }
+    }
+
+    /**
+     * Counts the devices of an owner with a single request, without fetching the devices. Devices are only counted
+     * by owner and platform, hence the count does not apply to a platform version.
+     *
+     * @param owner    owner of the devices or null for all devices of the tenant
+     * @param platform platform of the devices or null for all platforms
+     * @return number of devices of the owner
+     * @throws DeviceManagementException
+     */
+    int countDevices(String owner, String platform) throws DeviceManagementException {
+        PaginationRequest request = new PaginationRequest(0, 1);
+        request.setDeviceType(emptyToNull(platform));
+        PaginationResult result;
+        if (owner != null) {
+            request.setOwner(owner);
+            result = deviceManagementService.getDevicesOfUser(request);
+        } else {
+            result = deviceManagementService.getAllDevices(request);
+        }
+        return result.getRecordsTotal();
+    }
+
+    /**
+     * Creates a pager over the devices of an owner.
+     *
+     * @param owner           owner of the devices or null for all devices of the tenant
+     * @param platform        platform of the devices or null for all platforms
+     * @param platformVersion platform version of the devices or null for all versions
+     * @return pager which fetches the pages on demand
+     */
+    DevicePager createPager(String owner, String platform, String platformVersion) {
+        return new DevicePager(owner, emptyToNull(platform), emptyToNull(platformVersion));
+    }
+
+    /**
+     * Fetches the devices of an owner one page at a time, so that only the current page is kept in memory.
+     */
+    final class DevicePager {
+
+        private final String owner;
+        private final String platform;
+        private final String platformVersion;
+        private int start;
+        private boolean lastPage;
+
+        private DevicePager(String owner, String platform, String platformVersion) {
+            this.owner = owner;
+            this.platform = platform;
+            this.platformVersion = platformVersion;
+        }
+
+        /**
+         * @return matching devices of the next page, or null once every page is fetched
+         * @throws DeviceManagementException
+         */
+        List<Device> nextPage() throws DeviceManagementException {
+            if (lastPage) {
+                return null;
+            }
+            PaginationRequest request = new PaginationRequest(start, pageSize);
+            request.setDeviceType(platform);
+            PaginationResult result;
+            if (owner != null) {
+                request.setOwner(owner);
+                result = deviceManagementService.getDevicesOfUser(request);
+            } else {
+                result = deviceManagementService.getAllDevices(request);
+            }
+            pageCount++;
+            List<?> page = result.getData();
+            if (page == null || page.size() < pageSize) {
+                lastPage = true;
+            }
+            if (page == null) {
+                return null;
+            }
+            start += page.size();
+            List<Device> devices = new ArrayList<>(page.size());
+            for (Object item : page) {
+                Device device = (Device) item;
+                if (matches(device, platform, platformVersion)) {
+                    devices.add(device);
+                }
+            }
+            return devices;
+        }
+    }
+
+    private static boolean matches(Device device, String platform, String platformVersion) {
+        if (platform != null && !platform.equals(device.getType())) {
+            return false;
+        }
+        if (platformVersion == null) {
+            return true;
+        }
+        if (device.getProperties() != null) {
+            for (Device.Property property : device.getProperties()) {
+                if (OS_VERSION.equals(property.getName())) {
+                    return platformVersion.equals(property.getValue());
+                }
+            }
+        }
+        return false;
+    }
+
+    private static String emptyToNull(String value) {
+        return value == null || value.isEmpty() ? null : value;
+    }
+}
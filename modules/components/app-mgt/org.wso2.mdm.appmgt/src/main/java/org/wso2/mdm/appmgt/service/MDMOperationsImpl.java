@@ -10,7 +10,7 @@ import org.wso2.carbon.device.mgt.common.DeviceIdentifier;
 import org.wso2.carbon.device.mgt.common.DeviceManagementException;
 import org.wso2.carbon.device.mgt.common.Platform;
 import org.wso2.carbon.device.mgt.common.app.mgt.ApplicationManagementException;
-import org.wso2.carbon.device.mgt.common.app.mgt.ApplicationManager;
+import org.wso2.carbon.user.api.UserStoreManager;
 import org.wso2.mdm.mdmmgt.beans.MobileApp;
 import org.wso2.mdm.mdmmgt.beans.MobileAppTypes;
 import org.wso2.mdm.mdmmgt.common.MDMException;
@@ -19,9 +19,15 @@ import org.wso2.mdm.mdmmgt.util.MDMIOSOperationUtil;
 import org.wso2.mdm.mdmmgt.util.MDMServiceAPIUtils;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 
 public class MDMOperationsImpl implements MDMOperations {
 
@@ -31,67 +37,6 @@ public class MDMOperationsImpl implements MDMOperations {
     public void performAction(User currentUser, String action, App app, int tenantId, String type, String[] params,
             HashMap<String, String> configProperties) {
 
-        ApplicationManager appManagerConnector;
-        org.wso2.carbon.device.mgt.common.operation.mgt.Operation operation = null;
-
-        List<String> userNameList;
-        List<String> roleNameList;
-        List<DeviceIdentifier> deviceIdentifiers = new ArrayList<>();
-        List<org.wso2.carbon.device.mgt.common.Device> deviceList = null;
-
-        if ("user".equals(type)) {
-            String userName = null;
-            for (String param : params) {
-                userName = param;
-
-                try {
-                    deviceList = MDMServiceAPIUtils.getDeviceManagementService(tenantId).getDevicesOfUser(userName);
-                } catch (DeviceManagementException devEx) {
-                    String errorMsg =
-                            "Error occurred fetch device for user " + userName + devEx.getErrorMessage() + " " +
-                                    "at app installation";
-                    log.error(errorMsg, devEx);
-                }
-
-                for (org.wso2.carbon.device.mgt.common.Device device : deviceList) {
-                    DeviceIdentifier deviceIdentifier = new DeviceIdentifier();
-                    deviceIdentifier.setId(device.getDeviceIdentifier());
-                    deviceIdentifier.setType(device.getType());
-
-                    deviceIdentifiers.add(deviceIdentifier);
-                }
-            }
-        } else if ("role".equals(type)) {
-            String userRole;
-            for (String param : params) {
-                userRole = param;
-                try {
-                    deviceList = MDMServiceAPIUtils.getDeviceManagementService(tenantId).getAllDevices();
-                } catch (DeviceManagementException devMgtEx) {
-                    String errorMsg = "Error occurred fetch device for user role " + userRole + devMgtEx
-                            .getErrorMessage() + " " +
-                            "at app installation";
-                    log.error(errorMsg, devMgtEx);
-                }
-                for (org.wso2.carbon.device.mgt.common.Device device : deviceList) {
-                    DeviceIdentifier deviceIdentifier = new DeviceIdentifier();
-                    deviceIdentifier.setId(device.getDeviceIdentifier());
-                    deviceIdentifier.setType(device.getType());
-                    deviceIdentifiers.add(deviceIdentifier);
-                }
-            }
-        } else {
-            deviceIdentifiers = new ArrayList<>();
-            DeviceIdentifier deviceIdentifier = null;
-            for (String param : params) {
-                deviceIdentifier = new DeviceIdentifier();
-                String[] paramDevices = param.split("---");
-                deviceIdentifier.setId(paramDevices[0]);
-                deviceIdentifier.setType(paramDevices[1]);
-                deviceIdentifiers.add(deviceIdentifier);
-            }
-
-        }
         MobileApp mobileApp = new MobileApp();
         mobileApp.setId(app.getId());
         mobileApp.setType(MobileAppTypes.valueOf(app.getType().toUpperCase()));
@@ -124,60 +69,181 @@ public class MDMOperationsImpl implements MDMOperations {
         }
         mobileApp.setProperties(properties);
 
+        AppActionDispatcher dispatcher = new AppActionDispatcher(action, app, mobileApp, tenantId);
+        DeviceResolver deviceResolver = new DeviceResolver(MDMServiceAPIUtils.getDeviceManagementService(tenantId),
+                DeviceResolver.DEFAULT_PAGE_SIZE);
         try {
-            if (deviceIdentifiers != null) {
-                for (DeviceIdentifier deviceIdentifier : deviceIdentifiers) {
-                    if (deviceIdentifier.getType().equals(Platform.android.toString())) {
-                        if ("install".equals(action)) {
-                            operation = MDMAndroidOperationUtil.createInstallAppOperation(mobileApp);
-                        } else {
-                            operation = MDMAndroidOperationUtil.createAppUninstallOperation(mobileApp);
-                        }
-                    } else if (deviceIdentifier.getType().equals(Platform.ios.toString())) {
-                        if ("install".equals(action)) {
-                            operation = MDMIOSOperationUtil.createInstallAppOperation(mobileApp);
-                        } else {
-                            operation = MDMIOSOperationUtil.createAppUninstallOperation(mobileApp);
-                        }
+            if ("user".equals(type)) {
+                for (String userName : params) {
+                    try {
+                        deviceResolver.resolveDevicesOfUser(userName, null, null, dispatcher);
+                    } catch (DeviceManagementException devEx) {
+                        String errorMsg =
+                                "Error occurred fetch device for user " + userName + devEx.getErrorMessage() + " " +
+                                        "at app installation";
+                        log.error(errorMsg, devEx);
+                    }
+                }
+            } else if ("role".equals(type)) {
+                UserStoreManager userStoreManager = MDMServiceAPIUtils.getUserStoreManager(tenantId);
+                for (String userRole : params) {
+                    try {
+                        deviceResolver.resolveDevicesOfRole(userStoreManager, userRole, null, null, dispatcher);
+                    } catch (DeviceManagementException devMgtEx) {
+                        String errorMsg = "Error occurred fetch device for user role " + userRole + devMgtEx
+                                .getErrorMessage() + " " +
+                                "at app installation";
+                        log.error(errorMsg, devMgtEx);
+                    }
+                }
+            } else {
+                Set<String> addedDevices = new HashSet<>(params.length * 2);
+                for (String param : params) {
+                    if (!addedDevices.add(param)) {
+                        continue;
                     }
-                    MDMServiceAPIUtils.getAppManagementService(tenantId).installApplicationForDevices(operation,
-                            deviceIdentifiers);
+                    DeviceIdentifier deviceIdentifier = new DeviceIdentifier();
+                    String[] paramDevices = param.split("---");
+                    deviceIdentifier.setId(paramDevices[0]);
+                    deviceIdentifier.setType(paramDevices[1]);
+                    dispatcher.add(deviceIdentifier);
                 }
             }
+            dispatcher.flush();
         } catch (MDMException mdmExce) {
             log.error("Error in creating operation object using app", mdmExce);
-        } catch (ApplicationManagementException appMgtExce) {
-            log.error("Error in app installation", appMgtExce);
         }
     }
 
+    /**
+     * Builds the install or uninstall operation of the app for a platform.
+     *
+     * @return the operation or null if the platform does not support app operations
+     */
+    static org.wso2.carbon.device.mgt.common.operation.mgt.Operation createAppOperation(String action,
+            String platform, MobileApp mobileApp) throws MDMException {
+        if (Platform.android.toString().equals(platform)) {
+            if ("install".equals(action)) {
+                return MDMAndroidOperationUtil.createInstallAppOperation(mobileApp);
+            }
+            return MDMAndroidOperationUtil.createAppUninstallOperation(mobileApp);
+        } else if (Platform.ios.toString().equals(platform)) {
+            if ("install".equals(action)) {
+                return MDMIOSOperationUtil.createInstallAppOperation(mobileApp);
+            }
+            return MDMIOSOperationUtil.createAppUninstallOperation(mobileApp);
+        }
+        return null;
+    }
+
     @Override
 
     public List<Device> getDevices(User currentUser, int tenantId, String type, String[] params, String platform,
             String platformVersion, boolean isSampleDevicesEnabled,
             HashMap<String, String> configProperties) {
 
-        List<Device> devices = null;
-        Device device = null;
+        DeviceResolver deviceResolver = new DeviceResolver(MDMServiceAPIUtils.getDeviceManagementService(tenantId),
+                DeviceResolver.DEFAULT_PAGE_SIZE);
+        // A null owner stands for all devices of the tenant.
+        Set<String> owners = new LinkedHashSet<>();
         try {
-            List<org.wso2.carbon.device.mgt.common.Device> deviceList =
-                    MDMServiceAPIUtils.getDeviceManagementService(tenantId).getAllDevices();
-            devices = new ArrayList<>(deviceList.size());
-            for (org.wso2.carbon.device.mgt.common.Device commondevice : deviceList) {
-                device = new Device();
-                device.setId(commondevice.getDeviceIdentifier() + "---" + commondevice.getType());
-                device.setName(commondevice.getName());
-                device.setModel(commondevice.getName());
-                device.setType("mobileDevice");
-                device.setImage("/store/extensions/assets/mobileapp/resources/models/none.png");
-                device.setPlatform(commondevice.getType());
-                devices.add(device);
+            if ("user".equals(type) && params != null) {
+                Collections.addAll(owners, params);
+            } else if ("role".equals(type) && params != null) {
+                UserStoreManager userStoreManager = MDMServiceAPIUtils.getUserStoreManager(tenantId);
+                for (String userRole : params) {
+                    Collections.addAll(owners, deviceResolver.getUsersOfRole(userStoreManager, userRole));
+                }
+            } else {
+                owners.add(null);
+            }
+        } catch (MDMException e) {
+            log.error("Error occurred while fetching the devices of the app store", e);
+        }
+        return new StoreDeviceList(deviceResolver, new ArrayList<>(owners), platform, platformVersion);
+    }
 
+    /**
+     * Collects the targets of an app action per platform and enqueues the operation for each batch of targets of
+     * a platform in a single call, so that memory stays bounded by the batch size. The operation of a platform is
+     * built once and reused for all of its batches.
+     */
+    private static final class AppActionDispatcher implements DeviceResolver.DeviceHandler {
+
+        private final String action;
+        private final App app;
+        private final MobileApp mobileApp;
+        private final int tenantId;
+        private final Map<String, List<DeviceIdentifier>> pendingTargets = new LinkedHashMap<>();
+        private final Map<String, Integer> skippedTargets = new LinkedHashMap<>();
+        private final Map<String, org.wso2.carbon.device.mgt.common.operation.mgt.Operation> operations =
+                new HashMap<>();
+
+        private AppActionDispatcher(String action, App app, MobileApp mobileApp, int tenantId) {
+            this.action = action;
+            this.app = app;
+            this.mobileApp = mobileApp;
+            this.tenantId = tenantId;
+        }
+
+        @Override
+        public void handle(org.wso2.carbon.device.mgt.common.Device device) throws MDMException {
+            DeviceIdentifier deviceIdentifier = new DeviceIdentifier();
+            deviceIdentifier.setId(device.getDeviceIdentifier());
+            deviceIdentifier.setType(device.getType());
+            add(deviceIdentifier);
+        }
+
+        private void add(DeviceIdentifier deviceIdentifier) throws MDMException {
+            String platform = deviceIdentifier.getType();
+            if (!"webapp".equals(app.getPlatform()) && !platform.equals(app.getPlatform())) {
+                Integer skipped = skippedTargets.get(platform);
+                skippedTargets.put(platform, skipped == null ? 1 : skipped + 1);
+                return;
+            }
+            List<DeviceIdentifier> targets = pendingTargets.get(platform);
+            if (targets == null) {
+                targets = new ArrayList<>();
+                pendingTargets.put(platform, targets);
             }
+            targets.add(deviceIdentifier);
+            if (targets.size() >= DeviceResolver.DEFAULT_PAGE_SIZE) {
+                pendingTargets.remove(platform);
+                dispatch(platform, targets);
+            }
+        }
+
+        private void flush() throws MDMException {
+            for (Map.Entry<String, List<DeviceIdentifier>> targets : pendingTargets.entrySet()) {
+                dispatch(targets.getKey(), targets.getValue());
+            }
+            pendingTargets.clear();
+            for (Map.Entry<String, Integer> skipped : skippedTargets.entrySet()) {
+                log.warn("Skipping " + skipped.getValue() + " " + skipped.getKey() + " devices since " +
+                        app.getName() + " is a " + app.getPlatform() + " app.");
+            }
+            skippedTargets.clear();
+        }
 
-        } catch (DeviceManagementException e) {
-            e.printStackTrace();
+        private void dispatch(String platform, List<DeviceIdentifier> targets) throws MDMException {
+            org.wso2.carbon.device.mgt.common.operation.mgt.Operation operation = operations.get(platform);
+            if (operation == null) {
+                if (operations.containsKey(platform)) {
+                    return;
+                }
+                operation = createAppOperation(action, platform, mobileApp);
+                operations.put(platform, operation);
+                if (operation == null) {
+                    log.warn("App " + action + " is not supported for " + platform + " devices.");
+                    return;
+                }
+            }
+            try {
+                MDMServiceAPIUtils.getAppManagementService(tenantId).installApplicationForDevices(operation,
+                        targets);
+            } catch (ApplicationManagementException appMgtExce) {
+                log.error("Error in app installation", appMgtExce);
+            }
         }
-        return devices;
     }
 }
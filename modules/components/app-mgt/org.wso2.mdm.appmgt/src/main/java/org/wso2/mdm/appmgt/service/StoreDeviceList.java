@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied. See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.wso2.mdm.appmgt.service;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.appmgt.mobile.mdm.Device;
+import org.wso2.carbon.device.mgt.common.DeviceManagementException;
+
+import java.util.AbstractList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Devices listed in the app store. The list does not hold the devices, they are paged in from the device management
+ * service while the list is iterated, hence memory stays bounded by the page size however many devices the tenant
+ * has. The size is taken from the device counts of the device management service, or counted with a pass over the
+ * pages when devices are filtered by platform version, and is kept once the devices have been iterated. Reading the
+ * devices in order by index costs a single pass. A failure to fetch a page is thrown as an IllegalStateException
+ * rather than ending the list early.
+ */
+class StoreDeviceList extends AbstractList<Device> {
+
+    private static Log log = LogFactory.getLog(StoreDeviceList.class);
+
+    private final DeviceResolver deviceResolver;
+    private final List<String> owners;
+    private final String platform;
+    private final String platformVersion;
+    private int size = -1;
+    private Iterator<Device> cursor;
+    private int cursorIndex;
+
+    /**
+     * @param deviceResolver  resolver the devices are paged in through
+     * @param owners          owners of the devices, a null owner stands for all devices of the tenant
+     * @param platform        platform of the devices or null for all platforms
+     * @param platformVersion platform version of the devices or null for all versions
+     */
+    StoreDeviceList(DeviceResolver deviceResolver, List<String> owners, String platform, String platformVersion) {
+        this.deviceResolver = deviceResolver;
+        this.owners = owners;
+        this.platform = platform;
+        this.platformVersion = platformVersion;
+    }
+
+    @Override
+    public Iterator<Device> iterator() {
+        return new DeviceIterator();
+    }
+
+    @Override
+    public int size() {
+        if (size < 0) {
+            if (platformVersion == null || platformVersion.isEmpty()) {
+                int count = 0;
+                for (String owner : owners) {
+                    try {
+                        count += deviceResolver.countDevices(owner, platform);
+                    } catch (DeviceManagementException e) {
+                        String msg = "Error occurred while counting the devices of the app store";
+                        log.error(msg, e);
+                        throw new IllegalStateException(msg, e);
+                    }
+                }
+                size = count;
+            } else {
+                for (Iterator<Device> devices = iterator(); devices.hasNext(); devices.next()) {
+                    // The iterator keeps the size once it reaches the end.
+                }
+            }
+        }
+        return size;
+    }
+
+    @Override
+    public Device get(int index) {
+        if (index < 0) {
+            throw new IndexOutOfBoundsException("Index: " + index);
+        }
+        if (cursor == null || index < cursorIndex) {
+            cursor = iterator();
+            cursorIndex = 0;
+        }
+        while (cursor.hasNext()) {
+            Device device = cursor.next();
+            if (cursorIndex++ == index) {
+                return device;
+            }
+        }
+        throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + cursorIndex);
+    }
+
+    private static Device toStoreDevice(org.wso2.carbon.device.mgt.common.Device commonDevice) {
+        Device device = new Device();
+        device.setId(commonDevice.getDeviceIdentifier() + "---" + commonDevice.getType());
+        device.setName(commonDevice.getName());
+        device.setModel(commonDevice.getName());
+        device.setType("mobileDevice");
+        device.setImage("/store/extensions/assets/mobileapp/resources/models/none.png");
+        device.setPlatform(commonDevice.getType());
+        return device;
+    }
+
+    private class DeviceIterator implements Iterator<Device> {
+
+        private final Iterator<String> remainingOwners = owners.iterator();
+        private DeviceResolver.DevicePager pager;
+        private Iterator<org.wso2.carbon.device.mgt.common.Device> page =
+                Collections.<org.wso2.carbon.device.mgt.common.Device>emptyList().iterator();
+        private int count;
+
+        @Override
+        public boolean hasNext() {
+            while (!page.hasNext()) {
+                if (pager == null) {
+                    if (!remainingOwners.hasNext()) {
+                        size = count;
+                        return false;
+                    }
+                    pager = deviceResolver.createPager(remainingOwners.next(), platform, platformVersion);
+                }
+                List<org.wso2.carbon.device.mgt.common.Device> devices;
+                try {
+                    devices = pager.nextPage();
+                } catch (DeviceManagementException e) {
+                    String msg = "Error occurred while fetching the devices of the app store";
+                    log.error(msg, e);
+                    throw new IllegalStateException(msg, e);
+                }
+                if (devices == null) {
+                    pager = null;
+                } else {
+                    page = devices.iterator();
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public Device next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            count++;
+            return toStoreDevice(page.next());
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied. See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.wso2.mdm.appmgt.service;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import org.wso2.carbon.device.mgt.common.Device;
+import org.wso2.carbon.device.mgt.common.PaginationRequest;
+import org.wso2.carbon.device.mgt.common.PaginationResult;
+import org.wso2.carbon.device.mgt.core.service.DeviceManagementProviderService;
+import org.wso2.carbon.user.api.UserStoreManager;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class DeviceResolverTest {
+
+    @Test
+    public void resolveAllDevicesPageByPage() throws Exception {
+        DeviceStore deviceStore = new DeviceStore();
+        for (int i = 0; i < 25; i++) {
+            deviceStore.devices.add(createDevice("device-" + i, i % 2 == 0 ? "android" : "ios", "admin", "5.0"));
+        }
+        DeviceResolver deviceResolver = new DeviceResolver(deviceStore.createService(), 10);
+        List<Device> resolved = new ArrayList<>();
+        deviceResolver.resolveAllDevices(null, null, collect(resolved));
+
+        Assert.assertEquals(resolved.size(), 25);
+        Assert.assertEquals(deviceResolver.getPageCount(), 3);
+        Assert.assertEquals(deviceStore.largestPage, 10);
+    }
+
+    @Test
+    public void filterByPlatformAndVersion() throws Exception {
+        DeviceStore deviceStore = new DeviceStore();
+        deviceStore.devices.add(createDevice("a1", "android", "admin", "5.0"));
+        deviceStore.devices.add(createDevice("a2", "android", "admin", "4.4"));
+        deviceStore.devices.add(createDevice("i1", "ios", "admin", "5.0"));
+        DeviceResolver deviceResolver = new DeviceResolver(deviceStore.createService(), 10);
+        List<Device> resolved = new ArrayList<>();
+        deviceResolver.resolveAllDevices("android", "5.0", collect(resolved));
+
+        Assert.assertEquals(resolved.size(), 1);
+        Assert.assertEquals(resolved.get(0).getDeviceIdentifier(), "a1");
+    }
+
+    @Test
+    public void resolveDevicesOfRoleOnce() throws Exception {
+        DeviceStore deviceStore = new DeviceStore();
+        deviceStore.devices.add(createDevice("a1", "android", "alice", "5.0"));
+        deviceStore.devices.add(createDevice("a2", "android", "bob", "5.0"));
+        deviceStore.devices.add(createDevice("a3", "android", "carol", "5.0"));
+        UserStoreManager userStoreManager = (UserStoreManager) Proxy.newProxyInstance(
+                getClass().getClassLoader(), new Class[]{UserStoreManager.class}, new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        if ("admins".equals(args[0])) {
+                            return new String[]{"alice", "bob"};
+                        }
+                        return new String[]{"bob"};
+                    }
+                });
+        DeviceResolver deviceResolver = new DeviceResolver(deviceStore.createService(), 10);
+        List<Device> resolved = new ArrayList<>();
+        deviceResolver.resolveDevicesOfRole(userStoreManager, "admins", null, null, collect(resolved));
+        deviceResolver.resolveDevicesOfRole(userStoreManager, "users", null, null, collect(resolved));
+        deviceResolver.resolveDevicesOfUser("alice", null, null, collect(resolved));
+
+        Assert.assertEquals(resolved.size(), 2);
+        Assert.assertEquals(deviceResolver.getPageCount(), 2);
+        Assert.assertEquals(deviceStore.allDevicesCalls, 0);
+    }
+
+    private DeviceResolver.DeviceHandler collect(final List<Device> resolved) {
+        return new DeviceResolver.DeviceHandler() {
+            @Override
+            public void handle(Device device) {
+                resolved.add(device);
+            }
+        };
+    }
+
+    private Device createDevice(String id, String type, String owner, String osVersion) {
+        Device device = new Device();
+        device.setDeviceIdentifier(id);
+        device.setType(type);
+        device.setName(owner);
+        Device.Property property = new Device.Property();
+        property.setName("OS_VERSION");
+        property.setValue(osVersion);
+        device.setProperties(Collections.singletonList(property));
+        return device;
+    }
+
+    /**
+     * In memory device management service, the owner of a device is kept in its name.
+     */
+    private static class DeviceStore implements InvocationHandler {
+
+        private final List<Device> devices = new ArrayList<>();
+        private int largestPage;
+        private int allDevicesCalls;
+
+        private DeviceManagementProviderService createService() {
+            return (DeviceManagementProviderService) Proxy.newProxyInstance(getClass().getClassLoader(),
+                    new Class[]{DeviceManagementProviderService.class}, this);
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            if (args == null || !(args[0] instanceof PaginationRequest)) {
+                allDevicesCalls++;
+                throw new UnsupportedOperationException(method.getName());
+            }
+            PaginationRequest request = (PaginationRequest) args[0];
+            List<Device> matching = new ArrayList<>();
+            for (Device device : devices) {
+                if ((request.getOwner() == null || request.getOwner().equals(device.getName())) &&
+                        (request.getDeviceType() == null || request.getDeviceType().equals(device.getType()))) {
+                    matching.add(device);
+                }
+            }
+            int end = Math.min(matching.size(), request.getStartIndex() + request.getRowCount());
+            List<Device> page = new ArrayList<>(matching.subList(Math.min(request.getStartIndex(), end), end));
+            largestPage = Math.max(largestPage, page.size());
+            PaginationResult result = new PaginationResult();
+            result.setData(page);
+            result.setRecordsTotal(matching.size());
+            return result;
+        }
+    }
+}
@@ -0,0 +1,305 @@
+/*
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied. See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.wso2.mdm.appmgt.service;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import org.wso2.carbon.appmgt.mobile.mdm.App;
+import org.wso2.carbon.device.mgt.common.Device;
+import org.wso2.carbon.device.mgt.common.DeviceIdentifier;
+import org.wso2.carbon.device.mgt.common.DeviceManagementException;
+import org.wso2.carbon.device.mgt.common.PaginationRequest;
+import org.wso2.carbon.device.mgt.common.PaginationResult;
+import org.wso2.carbon.device.mgt.common.operation.mgt.Operation;
+import org.wso2.carbon.device.mgt.core.app.mgt.ApplicationManagementProviderService;
+import org.wso2.carbon.device.mgt.core.service.DeviceManagementProviderService;
+import org.wso2.carbon.utils.multitenancy.MultitenantConstants;
+import org.wso2.mdm.mdmmgt.beans.MobileApp;
+import org.wso2.mdm.mdmmgt.beans.MobileAppTypes;
+import org.wso2.mdm.mdmmgt.common.MDMException;
+import org.wso2.mdm.mdmmgt.util.MDMAppConstants;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+public class MDMOperationsImplTest {
+
+    private final OSGiServiceRegistry serviceRegistry = new OSGiServiceRegistry();
+    private AppManagementService appManagementService;
+    private DeviceManagementService deviceManagementService;
+
+    @BeforeMethod
+    public void registerServices() {
+        appManagementService = new AppManagementService();
+        deviceManagementService = new DeviceManagementService();
+        serviceRegistry.addService(ApplicationManagementProviderService.class, OSGiServiceRegistry.createProxy(
+                ApplicationManagementProviderService.class, appManagementService));
+        serviceRegistry.addService(DeviceManagementProviderService.class, OSGiServiceRegistry.createProxy(
+                DeviceManagementProviderService.class, deviceManagementService));
+        serviceRegistry.register();
+    }
+
+    @AfterMethod
+    public void unregisterServices() {
+        serviceRegistry.unregister();
+    }
+
+    @Test
+    public void createOperationForEachPlatform() throws MDMException {
+        MobileApp mobileApp = createEnterpriseApp();
+        Operation androidOperation = MDMOperationsImpl.createAppOperation("install", "android", mobileApp);
+        Operation iosOperation = MDMOperationsImpl.createAppOperation("install", "ios", mobileApp);
+
+        Assert.assertNotNull(androidOperation);
+        Assert.assertNotNull(iosOperation);
+        Assert.assertFalse(androidOperation.getCode().equals(iosOperation.getCode()));
+        Assert.assertNull(MDMOperationsImpl.createAppOperation("install", "windows", mobileApp));
+    }
+
+    @Test
+    public void dispatchOneOperationPerBatchOfEachPlatform() {
+        List<String> params = new ArrayList<>();
+        for (int i = 0; i < 50000; i++) {
+            params.add("device-" + i + "---" + (i % 3 == 0 ? "ios" : "android"));
+        }
+        for (int i = 0; i < 1000; i++) {
+            params.add("device-" + i + "---" + (i % 3 == 0 ? "ios" : "android"));
+        }
+        for (int i = 0; i < 10; i++) {
+            params.add("device-" + i + "---windows");
+        }
+        new MDMOperationsImpl().performAction(null, "install", createApp("webapp", "webapp"),
+                MultitenantConstants.SUPER_TENANT_ID, "device", params.toArray(new String[params.size()]), null);
+
+        Map<String, Integer> targetsByCode = new HashMap<>();
+        Set<String> targets = new HashSet<>();
+        Set<Operation> operations = Collections.newSetFromMap(new IdentityHashMap<Operation, Boolean>());
+        for (Dispatch dispatch : appManagementService.dispatches) {
+            operations.add(dispatch.operation);
+            Assert.assertTrue(dispatch.targets.size() <= DeviceResolver.DEFAULT_PAGE_SIZE);
+            String platform = dispatch.targets.get(0).getType();
+            for (DeviceIdentifier target : dispatch.targets) {
+                Assert.assertEquals(target.getType(), platform, "Targets of another platform in a batch");
+                Assert.assertTrue(targets.add(target.getType() + "---" + target.getId()), "Duplicate target");
+            }
+            String key = platform + ":" + dispatch.operation.getCode();
+            Integer count = targetsByCode.get(key);
+            targetsByCode.put(key, (count == null ? 0 : count) + dispatch.targets.size());
+        }
+        // 33333 android targets in 67 batches and 16667 ios targets in 34 batches, windows has no app operation.
+        Assert.assertEquals(appManagementService.dispatches.size(), 67 + 34);
+        Assert.assertEquals(operations.size(), 2, "Operation built more than once for a platform");
+        Assert.assertEquals(targetsByCode.size(), 2);
+        Assert.assertEquals(targetsByCode.get("android:" + MDMAppConstants.AndroidConstants.OPCODE_INSTALL_APPLICATION),
+                Integer.valueOf(33333));
+        Assert.assertEquals(targetsByCode.get("ios:" + MDMAppConstants.IOSConstants.OPCODE_INSTALL_WEB_APPLICATION),
+                Integer.valueOf(16667));
+    }
+
+    @Test
+    public void skipDevicesOfUserOnOtherPlatforms() {
+        deviceManagementService.devices.add(createDevice("a1", "android", "alice"));
+        deviceManagementService.devices.add(createDevice("i1", "ios", "alice"));
+        deviceManagementService.devices.add(createDevice("a2", "android", "alice"));
+        deviceManagementService.devices.add(createDevice("a3", "android", "bob"));
+        new MDMOperationsImpl().performAction(null, "install", createApp("android", "enterprise"),
+                MultitenantConstants.SUPER_TENANT_ID, "user", new String[]{"alice", "alice"}, null);
+
+        Assert.assertEquals(appManagementService.dispatches.size(), 1);
+        Dispatch dispatch = appManagementService.dispatches.get(0);
+        Assert.assertEquals(dispatch.operation.getCode(), MDMAppConstants.AndroidConstants.OPCODE_INSTALL_APPLICATION);
+        Assert.assertEquals(dispatch.targets.size(), 2);
+        Assert.assertEquals(dispatch.targets.get(0).getId(), "a1");
+        Assert.assertEquals(dispatch.targets.get(1).getId(), "a2");
+    }
+
+    @Test
+    public void listStoreDevicesPageByPage() {
+        for (int i = 0; i < 1200; i++) {
+            deviceManagementService.devices.add(createDevice("device-" + i, "android", "user-" + i % 10));
+        }
+        List<org.wso2.carbon.appmgt.mobile.mdm.Device> storeDevices = new MDMOperationsImpl().getDevices(null,
+                MultitenantConstants.SUPER_TENANT_ID, "all", null, "android", null, false, null);
+        Assert.assertEquals(deviceManagementService.pageRequests, 0, "Devices fetched before the list is read");
+
+        Assert.assertEquals(storeDevices.size(), 1200);
+        for (int i = 0; i < storeDevices.size(); i++) {
+            Assert.assertEquals(storeDevices.get(i).getId(), "device-" + i + "---android");
+        }
+        // One request to count the devices and three pages to read them.
+        Assert.assertEquals(deviceManagementService.pageRequests, 4);
+    }
+
+    @Test
+    public void keepSizeOfIteratedStoreDevices() {
+        for (int i = 0; i < 1200; i++) {
+            deviceManagementService.devices.add(createDevice("device-" + i, "android", "user-" + i % 10));
+        }
+        List<org.wso2.carbon.appmgt.mobile.mdm.Device> storeDevices = new MDMOperationsImpl().getDevices(null,
+                MultitenantConstants.SUPER_TENANT_ID, "all", null, "android", null, false, null);
+
+        int count = 0;
+        for (org.wso2.carbon.appmgt.mobile.mdm.Device ignored : storeDevices) {
+            count++;
+        }
+        Assert.assertEquals(count, 1200);
+        Assert.assertEquals(storeDevices.size(), 1200);
+        Assert.assertEquals(deviceManagementService.pageRequests, 3);
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void failWhenStoreDevicesCannotBeFetched() {
+        for (int i = 0; i < 1200; i++) {
+            deviceManagementService.devices.add(createDevice("device-" + i, "android", "user-" + i % 10));
+        }
+        deviceManagementService.failingPage = 2;
+        List<org.wso2.carbon.appmgt.mobile.mdm.Device> storeDevices = new MDMOperationsImpl().getDevices(null,
+                MultitenantConstants.SUPER_TENANT_ID, "all", null, "android", null, false, null);
+
+        int count = 0;
+        for (org.wso2.carbon.appmgt.mobile.mdm.Device ignored : storeDevices) {
+            count++;
+        }
+        Assert.fail("Only " + count + " devices listed without an error");
+    }
+
+    @Test
+    public void listStoreDevicesOfUsers() {
+        deviceManagementService.devices.add(createDevice("a1", "android", "alice"));
+        deviceManagementService.devices.add(createDevice("i1", "ios", "alice"));
+        deviceManagementService.devices.add(createDevice("a2", "android", "bob"));
+        deviceManagementService.devices.add(createDevice("a3", "android", "carol"));
+        List<org.wso2.carbon.appmgt.mobile.mdm.Device> storeDevices = new MDMOperationsImpl().getDevices(null,
+                MultitenantConstants.SUPER_TENANT_ID, "user", new String[]{"alice", "bob", "alice"}, "android", null,
+                false, null);
+
+        List<String> ids = new ArrayList<>();
+        for (org.wso2.carbon.appmgt.mobile.mdm.Device storeDevice : storeDevices) {
+            ids.add(storeDevice.getId());
+        }
+        Assert.assertEquals(ids, Arrays.asList("a1---android", "a2---android"));
+    }
+
+    private App createApp(String platform, String type) {
+        App app = new App();
+        app.setId("com.example.app");
+        app.setIdentifier("com.example.app");
+        app.setName("Example");
+        app.setPlatform(platform);
+        app.setType(type);
+        app.setLocation("https://localhost:9443/example.apk");
+        return app;
+    }
+
+    private Device createDevice(String id, String type, String owner) {
+        Device device = new Device();
+        device.setDeviceIdentifier(id);
+        device.setType(type);
+        device.setName(owner);
+        return device;
+    }
+
+    private MobileApp createEnterpriseApp() {
+        MobileApp mobileApp = new MobileApp();
+        mobileApp.setId("com.example.app");
+        mobileApp.setIdentifier("com.example.app");
+        mobileApp.setName("Example");
+        mobileApp.setType(MobileAppTypes.ENTERPRISE);
+        mobileApp.setLocation("https://localhost:9443/example.apk");
+        Properties properties = new Properties();
+        properties.put("isRemoveApp", true);
+        properties.put("isPreventBackup", true);
+        mobileApp.setProperties(properties);
+        return mobileApp;
+    }
+
+    private static class Dispatch {
+
+        private final Operation operation;
+        private final List<DeviceIdentifier> targets;
+
+        private Dispatch(Operation operation, List<DeviceIdentifier> targets) {
+            this.operation = operation;
+            this.targets = targets;
+        }
+    }
+
+    /**
+     * Records the operations enqueued through installApplicationForDevices.
+     */
+    private static class AppManagementService implements InvocationHandler {
+
+        private final List<Dispatch> dispatches = new ArrayList<>();
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            if (!"installApplicationForDevices".equals(method.getName())) {
+                throw new UnsupportedOperationException(method.getName());
+            }
+            dispatches.add(new Dispatch((Operation) args[0],
+                    new ArrayList<>((List<DeviceIdentifier>) args[1])));
+            return null;
+        }
+    }
+
+    /**
+     * In memory device management service, the owner of a device is kept in its name.
+     */
+    private static class DeviceManagementService implements InvocationHandler {
+
+        private final List<Device> devices = new ArrayList<>();
+        private int pageRequests;
+        private int failingPage = -1;
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws DeviceManagementException {
+            if (args == null || !(args[0] instanceof PaginationRequest)) {
+                throw new UnsupportedOperationException(method.getName());
+            }
+            if (pageRequests++ == failingPage) {
+                throw new DeviceManagementException("Device database is unavailable");
+            }
+            PaginationRequest request = (PaginationRequest) args[0];
+            List<Device> matching = new ArrayList<>();
+            for (Device device : devices) {
+                if (request.getOwner() == null || request.getOwner().equals(device.getName())) {
+                    matching.add(device);
+                }
+            }
+            int end = Math.min(matching.size(), request.getStartIndex() + request.getRowCount());
+            PaginationResult result = new PaginationResult();
+            result.setData(new ArrayList<>(matching.subList(Math.min(request.getStartIndex(), end), end)));
+            result.setRecordsTotal(matching.size());
+            return result;
+        }
+    }
+}
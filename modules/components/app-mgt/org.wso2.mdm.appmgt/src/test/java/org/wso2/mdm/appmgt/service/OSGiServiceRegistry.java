@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied. See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.wso2.mdm.appmgt.service;
+
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.Constants;
+import org.osgi.framework.Filter;
+import org.osgi.framework.FrameworkUtil;
+import org.osgi.framework.ServiceReference;
+import org.wso2.carbon.context.internal.OSGiDataHolder;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Hashtable;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Publishes services to the Carbon context through a bundle context which only knows those services, so that the
+ * code under test looks them up with PrivilegedCarbonContext.getOSGiService as it does in the server.
+ */
+public class OSGiServiceRegistry {
+
+    private final Map<ServiceReference, Object> services = new LinkedHashMap<>();
+    private BundleContext previousBundleContext;
+
+    public <T> void addService(Class<T> serviceClass, T service) {
+        Hashtable<String, Object> properties = new Hashtable<>();
+        properties.put(Constants.OBJECTCLASS, new String[]{serviceClass.getName()});
+        properties.put(Constants.SERVICE_ID, (long) services.size() + 1);
+        services.put(createProxy(ServiceReference.class, new ServiceReferenceHandler(properties)), service);
+    }
+
+    public void register() {
+        previousBundleContext = OSGiDataHolder.getInstance().getBundleContext();
+        OSGiDataHolder.getInstance().setBundleContext(createProxy(BundleContext.class, new BundleContextHandler()));
+    }
+
+    public void unregister() {
+        OSGiDataHolder.getInstance().setBundleContext(previousBundleContext);
+        services.clear();
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T> T createProxy(Class<T> type, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(OSGiServiceRegistry.class.getClassLoader(), new Class<?>[]{type}, handler);
+    }
+
+    private static Object defaultValue(Class<?> returnType) {
+        if (returnType == boolean.class) {
+            return Boolean.FALSE;
+        }
+        if (returnType == int.class) {
+            return 0;
+        }
+        if (returnType == long.class) {
+            return 0L;
+        }
+        return null;
+    }
+
+    private class BundleContextHandler implements InvocationHandler {
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return getClass().getSimpleName();
+                case "createFilter":
+                    return FrameworkUtil.createFilter((String) args[0]);
+                case "getServiceReferences":
+                case "getAllServiceReferences":
+                    return getServiceReferences((String) args[0], (String) args[1]);
+                case "getServiceReference":
+                    ServiceReference[] references = getServiceReferences(
+                            args[0] instanceof Class ? ((Class<?>) args[0]).getName() : (String) args[0], null);
+                    return references == null ? null : references[0];
+                case "getService":
+                    return services.get(args[0]);
+                default:
+                    return defaultValue(method.getReturnType());
+            }
+        }
+
+        private ServiceReference[] getServiceReferences(String className, String filterString) throws Exception {
+            Filter filter = filterString == null ? null : FrameworkUtil.createFilter(filterString);
+            List<ServiceReference> references = new ArrayList<>();
+            for (ServiceReference reference : services.keySet()) {
+                String[] objectClasses = (String[]) reference.getProperty(Constants.OBJECTCLASS);
+                if ((className == null || className.equals(objectClasses[0])) &&
+                        (filter == null || filter.match(reference))) {
+                    references.add(reference);
+                }
+            }
+            return references.isEmpty() ? null : references.toArray(new ServiceReference[references.size()]);
+        }
+    }
+
+    private static class ServiceReferenceHandler implements InvocationHandler {
+
+        private final Hashtable<String, Object> properties;
+
+        private ServiceReferenceHandler(Hashtable<String, Object> properties) {
+            this.properties = properties;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return properties.toString();
+                case "getProperty":
+                    return properties.get(args[0]);
+                case "getPropertyKeys":
+                    return properties.keySet().toArray(new String[properties.size()]);
+                case "compareTo":
+                    ServiceReference other = (ServiceReference) args[0];
+                    return ((Long) other.getProperty(Constants.SERVICE_ID)).compareTo(
+                            (Long) properties.get(Constants.SERVICE_ID));
+                case "isAssignableTo":
+                    return Boolean.TRUE;
+                default:
+                    return defaultValue(method.getReturnType());
+            }
+        }
+    }
+}
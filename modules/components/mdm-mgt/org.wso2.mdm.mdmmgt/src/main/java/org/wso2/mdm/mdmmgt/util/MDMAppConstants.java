@@ -53,6 +53,20 @@ public class MDMAppConstants {
 		public static final String GENERAL_CONFIG_RESOURCE_PATH = "general";
 	}
 
+	/**
+	 * Names of the cache holding the policy revision of a tenant, which the admin API renews and the device agent
+	 * APIs bind their cached effective features to.
+	 */
+	public class PolicyRevisionConstants {
+
+		private PolicyRevisionConstants() {
+			throw new AssertionError();
+		}
+		public static final String POLICY_REVISION_CACHE_MANAGER = "MDM_POLICY_REVISION_CACHE_MANAGER";
+		public static final String POLICY_REVISION_CACHE = "MDM_POLICY_REVISION_CACHE";
+		public static final String POLICY_REVISION = "POLICY_REVISION";
+	}
+
     public class APPManagerConstants {
 
         private static final String APP_MANAGER_MDM_SERVICE_NAME = "org.wso2.carbon.appmgt.mobile.interfaces.MDMOperations";
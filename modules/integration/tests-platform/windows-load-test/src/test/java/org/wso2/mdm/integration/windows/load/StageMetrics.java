@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied. See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.wso2.mdm.integration.windows.load;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Latencies and allocated bytes of the requests of one stage of the enrollment-and-poll pipeline.
+ */
+public class StageMetrics {
+
+    private static final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+
+    private final String stage;
+    private long[] latencies = new long[1024];
+    private long allocatedBytes;
+    private int count;
+    private int failures;
+
+    public StageMetrics(String stage) {
+        this.stage = stage;
+    }
+
+    /**
+     * @return bytes allocated so far by the current thread, or -1 if the JVM does not report allocations
+     */
+    public static long currentThreadAllocatedBytes() {
+        if (threadBean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threadBean).getThreadAllocatedBytes(
+                    Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    public synchronized void record(long latencyNanos, long allocated) {
+        if (count == latencies.length) {
+            latencies = Arrays.copyOf(latencies, count * 2);
+        }
+        latencies[count++] = latencyNanos;
+        if (allocated > 0) {
+            allocatedBytes += allocated;
+        }
+    }
+
+    public synchronized void recordFailure() {
+        failures++;
+    }
+
+    public synchronized int getCount() {
+        return count;
+    }
+
+    public synchronized int getFailures() {
+        return failures;
+    }
+
+    /**
+     * @param percentile percentile between 0 and 100
+     * @return latency in nanoseconds at the percentile
+     */
+    public synchronized long getPercentile(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        long[] sorted = Arrays.copyOf(latencies, count);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100 * count) - 1;
+        return sorted[Math.max(0, Math.min(index, count - 1))];
+    }
+
+    public synchronized long getAllocatedBytesPerRequest() {
+        return count == 0 ? 0 : allocatedBytes / count;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ENGLISH, "%-24s requests: %7d  failures: %5d  p50: %9.3f ms  p99: %9.3f ms  " +
+                        "allocated: %9d bytes/request", stage, getCount(), getFailures(), getPercentile(50) / 1e6,
+                getPercentile(99) / 1e6, getAllocatedBytesPerRequest());
+    }
+}
@@ -0,0 +1,339 @@
+/*
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied. See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.wso2.mdm.integration.windows.load;
+
+import org.apache.commons.codec.binary.Base64;
+import org.bouncycastle.pkcs.jcajce.JcaPKCS10CertificationRequest;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.Constants;
+import org.osgi.framework.Filter;
+import org.osgi.framework.FrameworkUtil;
+import org.osgi.framework.ServiceReference;
+import org.wso2.carbon.certificate.mgt.core.service.CertificateManagementService;
+import org.wso2.carbon.context.internal.OSGiDataHolder;
+import org.wso2.carbon.device.mgt.common.Device;
+import org.wso2.carbon.device.mgt.common.DeviceIdentifier;
+import org.wso2.carbon.device.mgt.common.configuration.mgt.ConfigurationEntry;
+import org.wso2.carbon.device.mgt.common.configuration.mgt.TenantConfiguration;
+import org.wso2.carbon.device.mgt.common.notification.mgt.NotificationManagementService;
+import org.wso2.carbon.device.mgt.common.operation.mgt.Operation;
+import org.wso2.carbon.device.mgt.core.service.DeviceManagementProviderService;
+import org.wso2.carbon.mdm.mobileservices.windows.common.PluginConstants;
+import org.wso2.carbon.mdm.mobileservices.windows.services.wstep.util.CertificateSigningService;
+import org.wso2.carbon.policy.mgt.core.PolicyManagerService;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * In-memory device management, policy management, notification management and certificate management services
+ * used in place of the OSGi services. The services are published through a bundle context which is handed to the
+ * Carbon context, so the endpoints look them up the same way they do in the server. Every device gets a lock and a
+ * ring operation queued for each poll, and acknowledged operations are marked completed. CSRs are signed with the
+ * CA of the harness. Methods which are not needed by the Windows endpoints return default values.
+ */
+public class StubServices {
+
+    private final Map<String, Device> devices = new ConcurrentHashMap<>();
+    private final Map<String, List<Operation>> operations = new ConcurrentHashMap<>();
+    private final AtomicInteger operationIds = new AtomicInteger(1000);
+    private final AtomicInteger remoteCalls = new AtomicInteger();
+    private final TenantConfiguration tenantConfiguration = createTenantConfiguration();
+    private final Map<ServiceReference, Object> services = new ConcurrentHashMap<>();
+    private final Map<ServiceReference, Hashtable<String, Object>> serviceProperties =
+            new ConcurrentHashMap<>();
+    private final PrivateKey caPrivateKey;
+    private final X509Certificate caCertificate;
+    private BundleContext previousBundleContext;
+
+    /**
+     * @param caPrivateKey  private key the CSRs of the devices are signed with
+     * @param caCertificate certificate of the CA
+     */
+    public StubServices(PrivateKey caPrivateKey, X509Certificate caCertificate) {
+        this.caPrivateKey = caPrivateKey;
+        this.caCertificate = caCertificate;
+    }
+
+    public void register() {
+        addService(DeviceManagementProviderService.class, new DeviceManagementHandler());
+        addService(PolicyManagerService.class, new DefaultHandler());
+        addService(NotificationManagementService.class, new DefaultHandler());
+        addService(CertificateManagementService.class, new CertificateManagementHandler());
+        previousBundleContext = OSGiDataHolder.getInstance().getBundleContext();
+        OSGiDataHolder.getInstance().setBundleContext(createProxy(BundleContext.class, new BundleContextHandler()));
+    }
+
+    public void unregister() {
+        OSGiDataHolder.getInstance().setBundleContext(previousBundleContext);
+        services.clear();
+        serviceProperties.clear();
+    }
+
+    /**
+     * Queues the operations which the device receives on its next poll, in addition to the earlier ones.
+     *
+     * @param deviceId device id
+     * @return queued operations
+     */
+    public List<Operation> queueOperations(String deviceId) {
+        List<Operation> queued = new ArrayList<>();
+        queued.add(createOperation(PluginConstants.OperationCodes.DEVICE_LOCK));
+        queued.add(createOperation(PluginConstants.OperationCodes.DEVICE_RING));
+        List<Operation> deviceOperations = operations.get(deviceId);
+        if (deviceOperations == null) {
+            deviceOperations = Collections.synchronizedList(new ArrayList<Operation>());
+            operations.put(deviceId, deviceOperations);
+        }
+        deviceOperations.addAll(queued);
+        return queued;
+    }
+
+    /**
+     * @return number of calls made to the stubbed services, i.e. the remote calls a request would cost
+     */
+    public int getRemoteCalls() {
+        return remoteCalls.get();
+    }
+
+    private Operation createOperation(String code) {
+        Operation operation = new Operation();
+        operation.setId(operationIds.incrementAndGet());
+        operation.setCode(code);
+        operation.setType(Operation.Type.COMMAND);
+        operation.setStatus(Operation.Status.PENDING);
+        return operation;
+    }
+
+    private List<Operation> getOperations(DeviceIdentifier deviceIdentifier, Operation.Status status) {
+        List<Operation> deviceOperations = operations.get(deviceIdentifier.getId());
+        List<Operation> matchingOperations = new ArrayList<>();
+        if (deviceOperations != null) {
+            synchronized (deviceOperations) {
+                for (Operation operation : deviceOperations) {
+                    if (status == null || status == operation.getStatus()) {
+                        matchingOperations.add(operation);
+                    }
+                }
+            }
+        }
+        return matchingOperations;
+    }
+
+    private static TenantConfiguration createTenantConfiguration() {
+        ConfigurationEntry frequency = new ConfigurationEntry();
+        frequency.setName(PluginConstants.TenantConfigProperties.NOTIFIER_FREQUENCY);
+        frequency.setValue("60");
+        List<ConfigurationEntry> entries = new ArrayList<>();
+        entries.add(frequency);
+        TenantConfiguration configuration = new TenantConfiguration();
+        configuration.setConfiguration(entries);
+        return configuration;
+    }
+
+    private <T> void addService(Class<T> serviceClass, InvocationHandler handler) {
+        Hashtable<String, Object> properties = new Hashtable<>();
+        properties.put(Constants.OBJECTCLASS, new String[]{serviceClass.getName()});
+        properties.put(Constants.SERVICE_ID, (long) services.size() + 1);
+        ServiceReference reference = createProxy(ServiceReference.class, new ServiceReferenceHandler(properties));
+        services.put(reference, createProxy(serviceClass, handler));
+        serviceProperties.put(reference, properties);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T createProxy(Class<T> serviceClass, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(StubServices.class.getClassLoader(), new Class<?>[]{serviceClass},
+                handler);
+    }
+
+    private class DefaultHandler implements InvocationHandler {
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (method.getDeclaringClass() == Object.class) {
+                switch (method.getName()) {
+                    case "equals":
+                        return proxy == args[0];
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    default:
+                        return getClass().getSimpleName();
+                }
+            }
+            remoteCalls.incrementAndGet();
+            return handle(method.getName(), args, method.getReturnType());
+        }
+
+        protected Object handle(String methodName, Object[] args, Class<?> returnType) throws Exception {
+            return defaultValue(returnType);
+        }
+    }
+
+    private class DeviceManagementHandler extends DefaultHandler {
+
+        @Override
+        protected Object handle(String methodName, Object[] args, Class<?> returnType) throws Exception {
+            switch (methodName) {
+                case "getConfiguration":
+                    return tenantConfiguration;
+                case "enrollDevice":
+                case "modifyEnrollment":
+                    Device device = (Device) args[0];
+                    devices.put(device.getDeviceIdentifier(), device);
+                    return Boolean.TRUE;
+                case "getDevice":
+                    return devices.get(((DeviceIdentifier) args[0]).getId());
+                case "getPendingOperations":
+                    return getOperations((DeviceIdentifier) args[0], Operation.Status.PENDING);
+                case "getOperationsByDeviceAndStatus":
+                    return getOperations((DeviceIdentifier) args[0], (Operation.Status) args[1]);
+                case "updateOperation":
+                    // The operation was taken from the in-memory list, so its status is already updated.
+                    return null;
+                default:
+                    return super.handle(methodName, args, returnType);
+            }
+        }
+    }
+
+    private class CertificateManagementHandler extends DefaultHandler {
+
+        @Override
+        protected Object handle(String methodName, Object[] args, Class<?> returnType) throws Exception {
+            switch (methodName) {
+                case "getCACertificate":
+                    return caCertificate;
+                case "getSignedCertificateFromCSR":
+                    JcaPKCS10CertificationRequest request = new JcaPKCS10CertificationRequest(
+                            Base64.decodeBase64((String) args[0]));
+                    List<Object> certificateParameters = new ArrayList<>();
+                    certificateParameters.add(request.getSubject().toString());
+                    certificateParameters.add(1);
+                    certificateParameters.add(365);
+                    return CertificateSigningService.signCSR(request, caPrivateKey, caCertificate,
+                            certificateParameters);
+                default:
+                    return super.handle(methodName, args, returnType);
+            }
+        }
+    }
+
+    /**
+     * Bundle context which only knows the stub services. It is enough for the service trackers the Carbon context
+     * opens to look up an OSGi service.
+     */
+    private class BundleContextHandler implements InvocationHandler {
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return getClass().getSimpleName();
+                case "createFilter":
+                    return FrameworkUtil.createFilter((String) args[0]);
+                case "getServiceReferences":
+                case "getAllServiceReferences":
+                    return getServiceReferences((String) args[0], (String) args[1]);
+                case "getServiceReference":
+                    ServiceReference[] references = getServiceReferences(
+                            args[0] instanceof Class ? ((Class<?>) args[0]).getName() : (String) args[0], null);
+                    return references == null ? null : references[0];
+                case "getService":
+                    return services.get(args[0]);
+                default:
+                    return defaultValue(method.getReturnType());
+            }
+        }
+
+        private ServiceReference[] getServiceReferences(String className, String filterString) throws Exception {
+            Filter filter = filterString == null ? null : FrameworkUtil.createFilter(filterString);
+            List<ServiceReference> references = new ArrayList<>();
+            for (Map.Entry<ServiceReference, Hashtable<String, Object>> service : serviceProperties.entrySet()) {
+                String[] objectClasses = (String[]) service.getValue().get(Constants.OBJECTCLASS);
+                if ((className == null || className.equals(objectClasses[0])) &&
+                        (filter == null || filter.match(service.getValue()))) {
+                    references.add(service.getKey());
+                }
+            }
+            return references.isEmpty() ? null : references.toArray(new ServiceReference[references.size()]);
+        }
+    }
+
+    private static class ServiceReferenceHandler implements InvocationHandler {
+
+        private final Hashtable<String, Object> properties;
+
+        private ServiceReferenceHandler(Hashtable<String, Object> properties) {
+            this.properties = properties;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return properties.toString();
+                case "getProperty":
+                    return properties.get(args[0]);
+                case "getPropertyKeys":
+                    return properties.keySet().toArray(new String[properties.size()]);
+                case "getProperties":
+                    return properties;
+                case "compareTo":
+                    ServiceReference other = (ServiceReference) args[0];
+                    return ((Long) other.getProperty(Constants.SERVICE_ID)).compareTo(
+                            (Long) properties.get(Constants.SERVICE_ID));
+                case "isAssignableTo":
+                    return Boolean.TRUE;
+                default:
+                    return defaultValue(method.getReturnType());
+            }
+        }
+    }
+
+    private static Object defaultValue(Class<?> returnType) {
+        if (returnType == boolean.class) {
+            return Boolean.TRUE;
+        }
+        if (returnType == int.class) {
+            return 0;
+        }
+        if (returnType == long.class) {
+            return 0L;
+        }
+        return null;
+    }
+}
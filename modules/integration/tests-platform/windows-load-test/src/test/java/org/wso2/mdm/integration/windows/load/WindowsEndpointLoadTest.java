@@ -0,0 +1,437 @@
+/*
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied. See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.wso2.mdm.integration.windows.load;
+
+import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.cxf.headers.Header;
+import org.apache.cxf.jaxws.context.WrappedMessageContext;
+import org.apache.cxf.message.Message;
+import org.apache.cxf.message.MessageImpl;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.bouncycastle.pkcs.jcajce.JcaPKCS10CertificationRequestBuilder;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+import org.w3c.dom.Document;
+import org.wso2.carbon.base.MultitenantConstants;
+import org.wso2.carbon.context.PrivilegedCarbonContext;
+import org.wso2.carbon.device.mgt.common.operation.mgt.Operation;
+import org.wso2.carbon.mdm.mobileservices.windows.common.PluginConstants;
+import org.wso2.carbon.mdm.mobileservices.windows.common.util.DeviceUtil;
+import org.wso2.carbon.mdm.mobileservices.windows.operations.util.OperationCode;
+import org.wso2.carbon.mdm.mobileservices.windows.operations.util.SyncmlCredentials;
+import org.wso2.carbon.mdm.mobileservices.windows.services.discovery.beans.DiscoveryRequest;
+import org.wso2.carbon.mdm.mobileservices.windows.services.discovery.beans.DiscoveryResponse;
+import org.wso2.carbon.mdm.mobileservices.windows.services.discovery.impl.DiscoveryServiceImpl;
+import org.wso2.carbon.mdm.mobileservices.windows.services.syncml.impl.SyncmlServiceImpl;
+import org.wso2.carbon.mdm.mobileservices.windows.services.wstep.beans.RequestSecurityTokenResponse;
+import org.wso2.carbon.mdm.mobileservices.windows.services.wstep.impl.CertificateEnrollmentServiceImpl;
+import org.wso2.carbon.mdm.mobileservices.windows.services.xcep.beans.CACollection;
+import org.wso2.carbon.mdm.mobileservices.windows.services.xcep.beans.OIDCollection;
+import org.wso2.carbon.mdm.mobileservices.windows.services.xcep.impl.CertificateEnrollmentPolicyServiceImpl;
+
+import javax.security.auth.x500.X500Principal;
+import javax.servlet.ServletContext;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import javax.xml.namespace.QName;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.ws.Holder;
+import javax.xml.ws.WebServiceContext;
+import javax.xml.ws.handler.MessageContext;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Security;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Replays recorded discovery, XCEP, WSTEP and SyncML sessions of simulated Windows devices against the in-process
+ * endpoint implementations, and reports the p50/p99 latency and the allocated bytes per request of each stage.
+ * <p/>
+ * The number of devices, polls per device and client threads are read from the windows.load.devices,
+ * windows.load.polls and windows.load.threads system properties. The device management, policy management,
+ * notification management and certificate management services are replaced by in-memory stubs published through
+ * the Carbon context, so the numbers exclude the database and measure the endpoints themselves.
+ * <p/>
+ * The WSTEP stage calls the certificate enrollment service with the SOAP headers and servlet context the CXF
+ * runtime would hand over. The CSRs are signed with a CA generated by the harness in place of the Carbon key store.
+ */
+public class WindowsEndpointLoadTest {
+
+    private static final Log log = LogFactory.getLog(WindowsEndpointLoadTest.class);
+    private static final String DOMAIN = "wso2.com";
+    private static final int DEVICE_KEY_PAIRS = 16;
+    private static final int WARM_UP_DEVICES = 200;
+    private static final String ENROLLMENT_SERVICE_ADDRESS = "https://EnterpriseEnrollment." + DOMAIN +
+            "/ENROLLMENTSERVER/DeviceEnrollmentWebservice.svc";
+    private static final String SOAP_HEADERS = "<Headers xmlns:a=\"http://www.w3.org/2005/08/addressing\" " +
+            "xmlns:o=\"" + PluginConstants.WS_SECURITY_TARGET_NAMESPACE + "\"><a:To>" + ENROLLMENT_SERVICE_ADDRESS +
+            "</a:To><o:Security><o:UsernameToken/><o:BinarySecurityToken>${Token}</o:BinarySecurityToken>" +
+            "</o:Security></Headers>";
+    private static final Pattern APPAUTH_CREDENTIALS = Pattern.compile(
+            "name=\"AAUTHNAME\" value=\"([^\"]*)\"/>\\s*<parm name=\"AAUTHSECRET\" value=\"([^\"]*)\"");
+
+    private enum Stage {
+        DISCOVERY,
+        XCEP,
+        WSTEP,
+        SYNCML_ENROLLMENT,
+        SYNCML_DEVICE_DETAILS,
+        SYNCML_POLL
+    }
+
+    private interface Request {
+        boolean send() throws Exception;
+    }
+
+    private final int devices = Integer.getInteger("windows.load.devices", 1000);
+    private final int polls = Integer.getInteger("windows.load.polls", 5);
+    private final int threads = Integer.getInteger("windows.load.threads", 8);
+
+    private final DiscoveryServiceImpl discoveryService = new DiscoveryServiceImpl();
+    private final CertificateEnrollmentPolicyServiceImpl enrollmentPolicyService =
+            new CertificateEnrollmentPolicyServiceImpl();
+    private final SyncmlServiceImpl syncmlService = new SyncmlServiceImpl();
+    private final List<KeyPair> deviceKeyPairs = new ArrayList<>();
+
+    private StubServices stubServices;
+    private ServletContext servletContext;
+    private String enrollmentInfoSession;
+    private String enrollmentDetailsSession;
+    private String pollSession;
+    private String operationStatus;
+
+    @BeforeClass
+    public void setUp() throws Exception {
+        if (System.getProperty("carbon.home") == null) {
+            System.setProperty("carbon.home", new File("target").getAbsolutePath());
+        }
+        Security.addProvider(new BouncyCastleProvider());
+        KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("RSA");
+        keyPairGenerator.initialize(2048);
+        KeyPair caKeyPair = keyPairGenerator.generateKeyPair();
+        X500Principal caName = new X500Principal("CN=Windows Load Test CA");
+        X509Certificate caCertificate = new JcaX509CertificateConverter()
+                .setProvider(PluginConstants.CertificateEnrolment.PROVIDER)
+                .getCertificate(new JcaX509v3CertificateBuilder(caName, BigInteger.ONE,
+                        new Date(System.currentTimeMillis() - 86400000L),
+                        new Date(System.currentTimeMillis() + 86400000L), caName, caKeyPair.getPublic())
+                        .build(new JcaContentSignerBuilder(PluginConstants.CertificateEnrolment.ALGORITHM)
+                                .build(caKeyPair.getPrivate())));
+        for (int i = 0; i < DEVICE_KEY_PAIRS; i++) {
+            deviceKeyPairs.add(keyPairGenerator.generateKeyPair());
+        }
+
+        // The wap-provisioning file is packed in the classes jar of the Windows web app.
+        final File wapProvisioningFile = File.createTempFile("wap-provisioning", ".xml");
+        wapProvisioningFile.deleteOnExit();
+        FileUtils.writeStringToFile(wapProvisioningFile, readResource("wap-provisioning.xml"), "UTF-8");
+        servletContext = createProxy(ServletContext.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if ("getAttribute".equals(method.getName()) &&
+                        PluginConstants.CONTEXT_WAP_PROVISIONING_FILE.equals(args[0])) {
+                    return wapProvisioningFile;
+                }
+                return null;
+            }
+        });
+
+        enrollmentInfoSession = readResource("sessions/syncml-enroll-device-info.xml");
+        enrollmentDetailsSession = readResource("sessions/syncml-enroll-device-details.xml");
+        pollSession = readResource("sessions/syncml-poll.xml");
+        operationStatus = readResource("sessions/syncml-operation-status.xml").trim();
+
+        stubServices = new StubServices(caKeyPair.getPrivate(), caCertificate);
+        stubServices.register();
+    }
+
+    @AfterClass
+    public void tearDown() {
+        stubServices.unregister();
+    }
+
+    @Test
+    public void replayEnrollmentAndPollSessions() throws Exception {
+        replay(Math.min(WARM_UP_DEVICES, devices));
+
+        long startTime = System.nanoTime();
+        Map<Stage, StageMetrics> metrics = replay(devices);
+        double elapsedSeconds = (System.nanoTime() - startTime) / 1e9;
+
+        log.info("Replayed " + devices + " devices with " + polls + " polls each on " + threads + " threads in " +
+                String.format("%.1f", elapsedSeconds) + " s, " + String.format("%.1f", devices / elapsedSeconds) +
+                " devices/s.");
+        for (StageMetrics stageMetrics : metrics.values()) {
+            log.info(stageMetrics);
+        }
+        for (Map.Entry<Stage, StageMetrics> stageMetrics : metrics.entrySet()) {
+            Assert.assertEquals(stageMetrics.getValue().getFailures(), 0, "Failed " + stageMetrics.getKey() +
+                    " requests");
+        }
+    }
+
+    private Map<Stage, StageMetrics> replay(int deviceCount) throws Exception {
+        final Map<Stage, StageMetrics> metrics = new EnumMap<>(Stage.class);
+        for (Stage stage : Stage.values()) {
+            metrics.put(stage, new StageMetrics(stage.name()));
+        }
+        ExecutorService clients = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> sessions = new ArrayList<>();
+            for (int i = 0; i < deviceCount; i++) {
+                final int deviceIndex = i;
+                sessions.add(clients.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        replayDevice(deviceIndex, metrics);
+                    }
+                }));
+            }
+            for (Future<?> session : sessions) {
+                session.get();
+            }
+        } finally {
+            clients.shutdown();
+        }
+        return metrics;
+    }
+
+    private void replayDevice(int deviceIndex, Map<Stage, StageMetrics> metrics) {
+        final String deviceId = "urn:uuid:" + UUID.randomUUID().toString().toUpperCase();
+        final String user = "user" + deviceIndex;
+        final KeyPair deviceKeyPair = deviceKeyPairs.get(deviceIndex % deviceKeyPairs.size());
+        final String[] syncmlToken = new String[1];
+        try {
+            final String csr = Base64.encodeBase64String(new JcaPKCS10CertificationRequestBuilder(
+                    new X500Principal("CN=" + deviceId), deviceKeyPair.getPublic()).build(
+                    new JcaContentSignerBuilder(PluginConstants.CertificateEnrolment.ALGORITHM)
+                            .build(deviceKeyPair.getPrivate())).getEncoded());
+            // Token issued by the federated login page before the WSTEP request.
+            final String binarySecurityToken = DeviceUtil.generateRandomToken();
+            DeviceUtil.persistChallengeToken(binarySecurityToken, null, user);
+            final WebServiceContext enrollmentContext = createEnrollmentContext(binarySecurityToken);
+
+            if (!send(metrics.get(Stage.DISCOVERY), new Request() {
+                @Override
+                public boolean send() throws Exception {
+                    DiscoveryRequest discoveryRequest = new DiscoveryRequest();
+                    discoveryRequest.setEmailId(user + "@" + DOMAIN);
+                    Holder<DiscoveryResponse> response = new Holder<>();
+                    discoveryService.discover(discoveryRequest, response);
+                    return response.value != null;
+                }
+            }) || !send(metrics.get(Stage.XCEP), new Request() {
+                @Override
+                public boolean send() throws Exception {
+                    Holder<org.wso2.carbon.mdm.mobileservices.windows.services.xcep.beans.Response> response =
+                            new Holder<>();
+                    enrollmentPolicyService.getPolicies(null, null, response, new Holder<CACollection>(),
+                            new Holder<OIDCollection>());
+                    return response.value != null;
+                }
+            }) || !send(metrics.get(Stage.WSTEP), new Request() {
+                @Override
+                public boolean send() throws Exception {
+                    syncmlToken[0] = requestSecurityToken(csr, enrollmentContext);
+                    return syncmlToken[0] != null;
+                }
+            }) || !send(metrics.get(Stage.SYNCML_ENROLLMENT), new Request() {
+                @Override
+                public boolean send() throws Exception {
+                    return sendSyncml(enrollmentInfoSession.replace("${DeviceId}", deviceId)
+                            .replace("${User}", user).replace("${Token}", syncmlToken[0]));
+                }
+            }) || !send(metrics.get(Stage.SYNCML_DEVICE_DETAILS), new Request() {
+                @Override
+                public boolean send() throws Exception {
+                    return sendSyncml(enrollmentDetailsSession.replace("${DeviceId}", deviceId)
+                            .replace("${User}", user));
+                }
+            })) {
+                return;
+            }
+
+            List<Operation> deliveredOperations = Collections.emptyList();
+            for (int poll = 0; poll < polls; poll++) {
+                final String message = createPoll(deviceId, user, syncmlToken[0], poll, deliveredOperations);
+                deliveredOperations = stubServices.queueOperations(deviceId);
+                if (!send(metrics.get(Stage.SYNCML_POLL), new Request() {
+                    @Override
+                    public boolean send() throws Exception {
+                        return sendSyncml(message);
+                    }
+                })) {
+                    return;
+                }
+            }
+        } catch (Exception e) {
+            throw new IllegalStateException("Error occurred while preparing the session of device " + deviceId, e);
+        }
+    }
+
+    private boolean send(StageMetrics stageMetrics, Request request) {
+        long allocatedBefore = StageMetrics.currentThreadAllocatedBytes();
+        long startTime = System.nanoTime();
+        boolean succeeded;
+        try {
+            succeeded = request.send();
+        } catch (Exception e) {
+            if (stageMetrics.getFailures() < 10) {
+                log.warn("Request failed.", e);
+            }
+            succeeded = false;
+        }
+        long latency = System.nanoTime() - startTime;
+        if (succeeded) {
+            stageMetrics.record(latency, StageMetrics.currentThreadAllocatedBytes() - allocatedBefore);
+        } else {
+            stageMetrics.recordFailure();
+        }
+        return succeeded;
+    }
+
+    /**
+     * Sends the CSR of the device to the certificate enrollment service.
+     *
+     * @return SyncML credentials issued to the device in the wap-provisioning document
+     */
+    private String requestSecurityToken(String csr, WebServiceContext enrollmentContext) throws Exception {
+        // The service keeps the state of a request in its fields, so each request gets its own instance.
+        CertificateEnrollmentServiceImpl enrollmentService = new CertificateEnrollmentServiceImpl();
+        Field context = CertificateEnrollmentServiceImpl.class.getDeclaredField("context");
+        context.setAccessible(true);
+        context.set(enrollmentService, enrollmentContext);
+
+        Holder<RequestSecurityTokenResponse> response = new Holder<>();
+        // The tenant flow is started by the Carbon valve in the server and ended by the service.
+        PrivilegedCarbonContext.startTenantFlow();
+        PrivilegedCarbonContext ctx = PrivilegedCarbonContext.getThreadLocalCarbonContext();
+        ctx.setTenantDomain(MultitenantConstants.SUPER_TENANT_DOMAIN_NAME);
+        ctx.setTenantId(MultitenantConstants.SUPER_TENANT_ID);
+        enrollmentService.requestSecurityToken(PluginConstants.CertificateEnrolment.TOKEN_TYPE, null, csr, null,
+                response);
+
+        String wapProvisioning = new String(Base64.decodeBase64(response.value.getRequestedSecurityToken()
+                .getBinarySecurityToken().getToken()), StandardCharsets.UTF_8);
+        Matcher credentials = APPAUTH_CREDENTIALS.matcher(wapProvisioning);
+        if (!credentials.find()) {
+            return null;
+        }
+        return new SyncmlCredentials().generateRST(credentials.group(1), credentials.group(2));
+    }
+
+    /**
+     * Creates the context the CXF runtime hands over to the certificate enrollment service, with the addressing and
+     * security headers of the WSTEP request.
+     */
+    private WebServiceContext createEnrollmentContext(String binarySecurityToken) throws Exception {
+        DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory.newInstance();
+        documentBuilderFactory.setNamespaceAware(true);
+        Document headers = documentBuilderFactory.newDocumentBuilder().parse(new ByteArrayInputStream(
+                SOAP_HEADERS.replace("${Token}", binarySecurityToken).getBytes(StandardCharsets.UTF_8)));
+        List<Header> headerList = new ArrayList<>();
+        for (org.w3c.dom.Node header = headers.getDocumentElement().getFirstChild(); header != null;
+             header = header.getNextSibling()) {
+            headerList.add(new Header(new QName(header.getNamespaceURI(), header.getLocalName()), header));
+        }
+        Message message = new MessageImpl();
+        message.put(Header.HEADER_LIST, headerList);
+        final WrappedMessageContext messageContext = new WrappedMessageContext(message);
+        messageContext.put(MessageContext.SERVLET_CONTEXT, servletContext);
+        return createProxy(WebServiceContext.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                return "getMessageContext".equals(method.getName()) ? messageContext : null;
+            }
+        });
+    }
+
+    private String createPoll(String deviceId, String user, String token, int poll,
+                              List<Operation> deliveredOperations) {
+        StringBuilder statuses = new StringBuilder();
+        int cmdId = 2;
+        for (Operation operation : deliveredOperations) {
+            statuses.append(operationStatus.replace("${CmdId}", String.valueOf(cmdId++))
+                    .replace("${OperationId}", String.valueOf(operation.getId()))
+                    .replace("${TargetRef}", OperationCode.Command.valueOf(operation.getCode()).getCode()));
+        }
+        return pollSession.replace("${SessionId}", String.valueOf(PluginConstants.SyncML.SYNCML_SECOND_SESSION_ID +
+                poll)).replace("${DeviceId}", deviceId).replace("${User}", user).replace("${Token}", token)
+                .replace("${OperationStatus}", statuses.toString()).replace("${AlertCmdId}", String.valueOf(cmdId));
+    }
+
+    private boolean sendSyncml(String message) throws Exception {
+        Response response = syncmlService.getResponse(new ByteArrayInputStream(
+                message.getBytes(StandardCharsets.UTF_8)));
+        if (response.getStatus() != Response.Status.OK.getStatusCode()) {
+            return false;
+        }
+        ByteArrayOutputStream reply = new ByteArrayOutputStream();
+        ((StreamingOutput) response.getEntity()).write(reply);
+        return reply.size() > 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T createProxy(Class<T> type, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(WindowsEndpointLoadTest.class.getClassLoader(), new Class<?>[]{type},
+                handler);
+    }
+
+    private String readResource(String name) throws IOException {
+        InputStream resource = getClass().getClassLoader().getResourceAsStream(name);
+        Assert.assertNotNull(resource, "Resource " + name + " is not found");
+        try {
+            return IOUtils.toString(resource, "UTF-8");
+        } finally {
+            resource.close();
+        }
+    }
+}
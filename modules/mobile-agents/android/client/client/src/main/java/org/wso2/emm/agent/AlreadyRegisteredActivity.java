@@ -459,6 +459,8 @@ public class AlreadyRegisteredActivity extends SherlockActivity implements APIRe
 		String notifier = Preference.getString(context, resources.getString(R.string.shared_pref_notifier));
 		if(Constants.NOTIFIER_LOCAL.equals(notifier)) {
 			LocalNotification.stopPolling(context);
+		} else if(Constants.NOTIFIER_GCM.equals(notifier)) {
+			LocalNotification.stopPolling(context);
 		} else if(notifier == null) {
 			LocalNotification.stopPolling(context);
 		}
@@ -471,6 +473,8 @@ public class AlreadyRegisteredActivity extends SherlockActivity implements APIRe
 		String notifier = Preference.getString(context, resources.getString(R.string.shared_pref_notifier));
 		if(Constants.NOTIFIER_LOCAL.equals(notifier)) {
 			LocalNotification.startPolling(context);
+		} else if(Constants.NOTIFIER_GCM.equals(notifier)) {
+			LocalNotification.startHeartbeat(context);
 		} else if(notifier == null) {
 			LocalNotification.startPolling(context);
 		}
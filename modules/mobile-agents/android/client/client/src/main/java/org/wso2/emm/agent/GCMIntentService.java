@@ -22,6 +22,7 @@ import android.os.Bundle;
 import android.util.Log;
 import com.google.android.gms.gcm.GcmListenerService;
 
+import org.wso2.emm.agent.services.LocalNotification;
 import org.wso2.emm.agent.services.MessageProcessor;
 
 /**
@@ -37,6 +38,7 @@ public class GCMIntentService extends GcmListenerService {
 	 */
 	@Override
 	public void onMessageReceived(String from, Bundle data) {
+		LocalNotification.onPushReceived(this.getApplicationContext());
 		MessageProcessor messageProcessor = new MessageProcessor(this.getApplicationContext());
 		try {
 			messageProcessor.getMessages();
@@ -38,6 +38,7 @@ public class AlarmReceiver extends BroadcastReceiver {
 			Log.d(TAG, "Recurring alarm; requesting alarm service.");
 		}
 
+		LocalNotification.schedulePollInProgress(context);
 		MessageProcessor messageProcessor = new MessageProcessor(context);
 		try {
 			messageProcessor.getMessages();
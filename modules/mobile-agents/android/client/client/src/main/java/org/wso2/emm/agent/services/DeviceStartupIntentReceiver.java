@@ -23,21 +23,16 @@ import org.wso2.emm.agent.R;
 import org.wso2.emm.agent.utils.Constants;
 import org.wso2.emm.agent.utils.Preference;
 
-import android.app.AlarmManager;
-import android.app.PendingIntent;
 import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.res.Resources;
-import android.os.SystemClock;
 
 /**
  * Broadcast receiver for device boot action used to start agent local
  * notification service at device startup.
  */
 public class DeviceStartupIntentReceiver extends BroadcastReceiver {
-	private static final int DEFAULT_TIME_MILLISECONDS = 1000;
-	private static final int DEFAULT_REQUEST_CODE = 0;
 	public static final int DEFAULT_INDEX = 0;
 	public static final int DEFAULT_INTERVAL = 30000;
 	private Resources resources;
@@ -56,28 +51,15 @@ public class DeviceStartupIntentReceiver extends BroadcastReceiver {
 		String mode =
 				Preference
 						.getString(context, resources.getString(R.string.shared_pref_notifier));
-		int interval = Preference.getInt(context, context.getResources().getString(R.string.shared_pref_frequency));
-		if(interval == DEFAULT_INDEX){
-			interval = DEFAULT_INTERVAL;
-		}
-
 		if(mode == null) {
 			mode = Constants.NOTIFIER_LOCAL;
 		}
 
-		if (Constants.NOTIFIER_LOCAL.equals(mode.trim().toUpperCase(Locale.ENGLISH))) {
-			long startTime = SystemClock.elapsedRealtime() + DEFAULT_TIME_MILLISECONDS;
-
-			Intent alarmIntent = new Intent(context, AlarmReceiver.class);
-			PendingIntent recurringAlarmIntent =
-					PendingIntent.getBroadcast(context,
-					                           DEFAULT_REQUEST_CODE,
-					                           alarmIntent,
-					                           PendingIntent.FLAG_CANCEL_CURRENT);
-			AlarmManager alarmManager =
-					(AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
-			alarmManager.setRepeating(AlarmManager.ELAPSED_REALTIME_WAKEUP, startTime,
-			                          interval, recurringAlarmIntent);
+		mode = mode.trim().toUpperCase(Locale.ENGLISH);
+		if (Constants.NOTIFIER_LOCAL.equals(mode)) {
+			LocalNotification.resumePolling(context);
+		} else if (Constants.NOTIFIER_GCM.equals(mode)) {
+			LocalNotification.resumeHeartbeat(context);
 		}
 	}
 
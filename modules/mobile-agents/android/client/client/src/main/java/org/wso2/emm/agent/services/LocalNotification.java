@@ -28,6 +28,10 @@ import org.wso2.emm.agent.utils.Preference;
 /**
  * Local notification is a communication mechanism that essentially,
  * polls to server based on a predefined to retrieve pending data.
+ * Each poll schedules the next one, at a delay decided by the poll scheduler
+ * from the outcome of the poll, so that idle devices poll less often.
+ * Devices notified through GCM poll at the heartbeat interval, in case push
+ * notifications stop reaching them.
  */
 public class LocalNotification {
 	public static final int DEFAULT_INTERVAL = 30000;
@@ -35,25 +39,56 @@ public class LocalNotification {
 	public static final int DEFAULT_BUFFER = 1000;
 	public static final int REQUEST_CODE = 0;
 	public static final String LOCAL_NOTIFIER_INVOKED_PREF_KEY = "localNoticicationInvoked";
+	private static final long MAX_INTERVAL = 15 * 60 * 1000;
+	private static final long HEARTBEAT_INTERVAL = 60 * 60 * 1000;
+	private static final long PUSH_HEALTH_PERIOD = 24 * 60 * 60 * 1000;
+	private static final String POLL_INTERVAL_PREF_KEY = "pollInterval";
+	private static final String LAST_PUSH_TIME_PREF_KEY = "lastPushTime";
 
 	public static void startPolling(Context context) {
-		int interval = Preference.getInt(context, context.getResources().getString(R.string.shared_pref_frequency));
-		if(interval == DEFAULT_INDEX){
-			interval = DEFAULT_INTERVAL;
+		if (!Preference.getBoolean(context, LOCAL_NOTIFIER_INVOKED_PREF_KEY)) {
+			resumePolling(context);
 		}
-		long currentTime = SystemClock.elapsedRealtime();
-		currentTime += DEFAULT_BUFFER;
+	}
+
+	/**
+	 * Starts polling regardless of whether it was started before, e.g. after the device
+	 * restarted and the scheduled poll was lost.
+	 * @param context - Application context.
+	 */
+	public static void resumePolling(Context context) {
+		Preference.putBoolean(context, LOCAL_NOTIFIER_INVOKED_PREF_KEY, true);
+		Preference.putLong(context, POLL_INTERVAL_PREF_KEY, getBaseInterval(context));
+		scheduleNextPoll(context, DEFAULT_BUFFER);
+	}
+
+	/**
+	 * Starts the heartbeat polling of a device notified through GCM. Registering with GCM
+	 * counts as a received push notification, so the first poll runs after the heartbeat
+	 * interval.
+	 * @param context - Application context.
+	 */
+	public static void startHeartbeat(Context context) {
 		if (!Preference.getBoolean(context, LOCAL_NOTIFIER_INVOKED_PREF_KEY)) {
-			Preference.putBoolean(context, LOCAL_NOTIFIER_INVOKED_PREF_KEY, true);
-			Intent alarm = new Intent(context, AlarmReceiver.class);
-			PendingIntent recurringAlarm =
-					PendingIntent.getBroadcast(context,
-							REQUEST_CODE,
-							alarm,
-							PendingIntent.FLAG_CANCEL_CURRENT);
-			AlarmManager alarms = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
-			alarms.setRepeating(AlarmManager.ELAPSED_REALTIME_WAKEUP, currentTime, interval,
-					recurringAlarm);
+			onPushReceived(context);
+			resumeHeartbeat(context);
+		}
+	}
+
+	/**
+	 * Starts the heartbeat polling of a device notified through GCM regardless of whether it
+	 * was started before. The first poll runs soon if no push notification was received
+	 * within the push health period.
+	 * @param context - Application context.
+	 */
+	public static void resumeHeartbeat(Context context) {
+		Preference.putBoolean(context, LOCAL_NOTIFIER_INVOKED_PREF_KEY, true);
+		Preference.putLong(context, POLL_INTERVAL_PREF_KEY, getBaseInterval(context));
+		PollScheduler pollScheduler = getPollScheduler(context);
+		if (pollScheduler.isPushHealthy(System.currentTimeMillis())) {
+			scheduleNextPoll(context, HEARTBEAT_INTERVAL);
+		} else {
+			scheduleNextPoll(context, DEFAULT_BUFFER);
 		}
 	}
 
@@ -66,4 +101,83 @@ public class LocalNotification {
 			alarmManager.cancel(sender);
 		}
 	}
+
+	/**
+	 * Schedules a poll at the current interval, which is replaced once the outcome of the
+	 * poll in progress is known. This keeps polling going when a poll gets no response.
+	 * @param context - Application context.
+	 */
+	public static void schedulePollInProgress(Context context) {
+		if (Preference.getBoolean(context, LOCAL_NOTIFIER_INVOKED_PREF_KEY)) {
+			PollScheduler pollScheduler = getPollScheduler(context);
+			scheduleNextPoll(context, pollScheduler.getInterval());
+		}
+	}
+
+	/**
+	 * Schedules the next poll after a poll reached the server.
+	 * @param context        - Application context.
+	 * @param operationCount - Number of pending operations received.
+	 * @param retryAfter     - Retry-After header sent by the server, or null.
+	 */
+	public static void onPollCompleted(Context context, int operationCount, String retryAfter) {
+		PollScheduler pollScheduler = getPollScheduler(context);
+		long delay = pollScheduler.onPollCompleted(operationCount, retryAfter, System.currentTimeMillis());
+		savePollScheduler(context, pollScheduler, delay);
+	}
+
+	/**
+	 * Schedules the next poll after a poll failed.
+	 * @param context    - Application context.
+	 * @param retryAfter - Retry-After header sent by the server, or null.
+	 */
+	public static void onPollFailed(Context context, String retryAfter) {
+		PollScheduler pollScheduler = getPollScheduler(context);
+		long delay = pollScheduler.onPollFailed(retryAfter, System.currentTimeMillis());
+		savePollScheduler(context, pollScheduler, delay);
+	}
+
+	/**
+	 * Records that a push notification was received, which makes polling fall back to
+	 * the heartbeat interval.
+	 * @param context - Application context.
+	 */
+	public static void onPushReceived(Context context) {
+		Preference.putLong(context, LAST_PUSH_TIME_PREF_KEY, System.currentTimeMillis());
+	}
+
+	private static PollScheduler getPollScheduler(Context context) {
+		PollScheduler pollScheduler = new PollScheduler(getBaseInterval(context), MAX_INTERVAL,
+		                                                HEARTBEAT_INTERVAL, PUSH_HEALTH_PERIOD);
+		pollScheduler.restore(Preference.getLong(context, POLL_INTERVAL_PREF_KEY),
+		                      Preference.getLong(context, LAST_PUSH_TIME_PREF_KEY));
+		return pollScheduler;
+	}
+
+	private static void savePollScheduler(Context context, PollScheduler pollScheduler, long delay) {
+		Preference.putLong(context, POLL_INTERVAL_PREF_KEY, pollScheduler.getInterval());
+		if (Preference.getBoolean(context, LOCAL_NOTIFIER_INVOKED_PREF_KEY)) {
+			scheduleNextPoll(context, delay);
+		}
+	}
+
+	private static int getBaseInterval(Context context) {
+		int interval = Preference.getInt(context, context.getResources().getString(R.string.shared_pref_frequency));
+		if(interval == DEFAULT_INDEX){
+			interval = DEFAULT_INTERVAL;
+		}
+		return interval;
+	}
+
+	private static void scheduleNextPoll(Context context, long delay) {
+		long triggerTime = SystemClock.elapsedRealtime() + delay;
+		Intent alarm = new Intent(context, AlarmReceiver.class);
+		PendingIntent pollAlarm =
+				PendingIntent.getBroadcast(context,
+						REQUEST_CODE,
+						alarm,
+						PendingIntent.FLAG_CANCEL_CURRENT);
+		AlarmManager alarms = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+		alarms.set(AlarmManager.ELAPSED_REALTIME_WAKEUP, triggerTime, pollAlarm);
+	}
 }
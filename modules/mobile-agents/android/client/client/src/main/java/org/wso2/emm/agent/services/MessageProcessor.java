@@ -18,7 +18,7 @@
 package org.wso2.emm.agent.services;
 
 import java.io.IOException;
-import java.util.ArrayList;
+import java.io.Reader;
 import java.util.List;
 import java.util.Map;
 
@@ -28,6 +28,7 @@ import org.wso2.emm.agent.R;
 import org.wso2.emm.agent.api.DeviceInfo;
 import org.wso2.emm.agent.beans.ServerConfig;
 import org.wso2.emm.agent.proxy.interfaces.APIResultCallBack;
+import org.wso2.emm.agent.proxy.interfaces.ResponseBodyParser;
 import org.wso2.emm.agent.proxy.utils.Constants.HTTP_METHODS;
 import org.wso2.emm.agent.utils.Constants;
 import org.wso2.emm.agent.utils.Preference;
@@ -36,26 +37,29 @@ import org.wso2.emm.agent.utils.CommonUtils;
 import android.content.Context;
 import android.util.Log;
 
-import com.fasterxml.jackson.core.JsonGenerationException;
-import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.DeserializationFeature;
-import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.JavaType;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 
 /**
  * This class handles all the functionalities related to coordinating the retrieval
- * and processing of messages from the server.
+ * and processing of messages from the server. Pending operations are parsed straight
+ * from the response stream rather than from a string copy of the response. Results of
+ * operations are kept in an outbox until the server confirms that it received them.
  */
-public class MessageProcessor implements APIResultCallBack {
+public class MessageProcessor implements APIResultCallBack, ResponseBodyParser {
 
 	private String TAG = MessageProcessor.class.getSimpleName();
 	private Context context;
 	private String deviceId;
 	private static final String DEVICE_ID_PREFERENCE_KEY = "deviceId";
-	private static List<org.wso2.emm.agent.beans.Operation> replyPayload;
+	private OperationResultOutbox resultOutbox;
+	private List<OperationResultOutbox.Entry> sentResults;
 	private org.wso2.emm.agent.services.Operation operation;
 	private ObjectMapper mapper;
+	private JavaType operationListType;
+	private volatile List<org.wso2.emm.agent.beans.Operation> receivedOperations;
 	private boolean isWipeTriggered = false;
 	private DevicePolicyManager devicePolicyManager;
 	private static final int ACTIVATION_REQUEST = 47;
@@ -71,9 +75,12 @@ public class MessageProcessor implements APIResultCallBack {
 
 		deviceId = Preference.getString(context, DEVICE_ID_PREFERENCE_KEY);
 		operation = new org.wso2.emm.agent.services.Operation(context.getApplicationContext());
+		resultOutbox = new OperationResultOutbox(context.getApplicationContext().getFilesDir());
 		mapper = new ObjectMapper();
 		mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
 		mapper.configure(SerializationFeature.FAIL_ON_EMPTY_BEANS, false);
+		operationListType = mapper.getTypeFactory().constructCollectionType(List.class,
+				org.wso2.emm.agent.beans.Operation.class);
 		this.devicePolicyManager =
 				(DevicePolicyManager) context.getSystemService(Context.DEVICE_POLICY_SERVICE);
 
@@ -85,38 +92,32 @@ public class MessageProcessor implements APIResultCallBack {
 	}
 
 	/**
-	 * This method executes the set of pending operations which is recieved from the
-	 * backend server.
+	 * This method executes the given set of pending operations.
 	 *
-	 * @param response Response received from the server that needs to be processed
-	 *                 and applied to the device.
+	 * @param operations Operations received from the server that need to be applied to the device.
 	 */
-	public void performOperation(String response) {
-
-		List<org.wso2.emm.agent.beans.Operation> operations = new ArrayList<>();
-
-		try {
-			if (response != null) {
-				operations = mapper.readValue(
-						response,
-						mapper.getTypeFactory().constructCollectionType(List.class,
-								org.wso2.emm.agent.beans.Operation.class));
-			}
-
-		} catch (JsonProcessingException e) {
-			Log.e(TAG,  "Issue in json parsing", e);
-		} catch (IOException e) {
-			Log.e(TAG, "Issue in stream parsing", e);
-		}
-
+	private void performOperations(List<org.wso2.emm.agent.beans.Operation> operations) {
 		for (org.wso2.emm.agent.beans.Operation op : operations) {
 			try {
 				operation.doTask(op);
 			} catch (AndroidAgentException e) {
 				Log.e(TAG, "Failed to perform operation", e);
 			}
+			storeResults();
+		}
+	}
+
+	/**
+	 * Moves the results of the operations performed so far to the outbox, from which they
+	 * are sent to the server along with the next poll.
+	 */
+	private void storeResults() {
+		try {
+			resultOutbox.add(operation.getResultPayload());
+			operation.clearResultPayload();
+		} catch (AndroidAgentException e) {
+			Log.e(TAG, "Failed to store operation results", e);
 		}
-		replyPayload = operation.getResultPayload();
 	}
 
 
@@ -131,42 +132,42 @@ public class MessageProcessor implements APIResultCallBack {
 		String url = utils.getAPIServerURL(context) + Constants.NOTIFICATION_ENDPOINT + deviceId;
 		Log.i(TAG, "getMessage: calling-endpoint: " + url);
 
-		String requestParams;
-		try {
-			ObjectMapper mapper = new ObjectMapper();
-			requestParams =  mapper.writeValueAsString(replyPayload);
-			if (replyPayload != null) {
-				for (org.wso2.emm.agent.beans.Operation operation : replyPayload) {
-					if (operation.getCode().equals(Constants.Operation.WIPE_DATA) && !operation.getStatus().
-							equals(ERROR_STATE)) {
-						isWipeTriggered = true;
-					}
-				}
+		List<OperationResultOutbox.Entry> results = resultOutbox.getBatch(OperationResultOutbox.MAX_BATCH_SIZE);
+		String requestParams = OperationResultOutbox.toPayload(results);
+		for (OperationResultOutbox.Entry result : results) {
+			if (Constants.Operation.WIPE_DATA.equals(result.getCode()) && !ERROR_STATE.equals(result.getStatus())) {
+				isWipeTriggered = true;
 			}
-		} catch (JsonMappingException e) {
-			throw new AndroidAgentException("Issue in json mapping", e);
-		} catch (JsonGenerationException e) {
-			throw new AndroidAgentException("Issue in json generation", e);
-		} catch (IOException e) {
-			throw new AndroidAgentException("Issue in parsing stream", e);
 		}
 		if (Constants.DEBUG_MODE_ENABLED) {
 			Log.d(TAG, "replay-payload: " + requestParams);
 		}
 
 		if(ipSaved != null && !ipSaved.isEmpty()) {
+			sentResults = results;
 			CommonUtils.callSecuredAPI(context, url,
 			                           HTTP_METHODS.PUT, requestParams, MessageProcessor.this,
-			                           Constants.NOTIFICATION_REQUEST_CODE
+			                           Constants.NOTIFICATION_REQUEST_CODE, MessageProcessor.this
 			);
 		}
 	}
 
+	/**
+	 * Parses the pending operations as the response of the message retrieval end point
+	 * is read from the server.
+	 *
+	 * @param reader Reader of the response body.
+	 */
+	@Override
+	public void parseResponseBody(Reader reader) throws IOException {
+		receivedOperations = mapper.readValue(reader, operationListType);
+	}
+
 	@SuppressWarnings("unused")
 	@Override
 	public void onReceiveAPIResult(Map<String, String> result, int requestCode) {
 		String responseStatus;
-		String response;
+		List<org.wso2.emm.agent.beans.Operation> operations;
 		if (requestCode == Constants.NOTIFICATION_REQUEST_CODE) {
 			if(isWipeTriggered) {
 				devicePolicyManager.wipeData(ACTIVATION_REQUEST);
@@ -174,17 +175,68 @@ public class MessageProcessor implements APIResultCallBack {
 
 			if (result != null) {
 				responseStatus = result.get(Constants.STATUS_KEY);
+				operations = receivedOperations;
+				receivedOperations = null;
+				boolean hasMoreResults = false;
+				if (isSuccessful(responseStatus)) {
+					hasMoreResults = confirmSentResults();
+				}
 				if (Constants.Status.SUCCESSFUL.equals(responseStatus)) {
-					response = result.get(Constants.RESPONSE);
-					if (response != null && !response.isEmpty()) {
+					int operationCount = operations == null ? 0 : operations.size();
+					LocalNotification.onPollCompleted(context, operationCount,
+					                                  result.get(Constants.RETRY_AFTER_KEY));
+					if (operationCount > 0) {
 						if (Constants.DEBUG_MODE_ENABLED) {
-							Log.d(TAG, "onReceiveAPIResult." + response);
+							Log.d(TAG, "onReceiveAPIResult: pending operations: " + operationCount);
 						}
-						performOperation(response);
+						performOperations(operations);
 					}
+				} else {
+					LocalNotification.onPollFailed(context, result.get(Constants.RETRY_AFTER_KEY));
 				}
+				// The next batch is only sent once the results of the operations received
+				// with this poll are stored, so that the server does not hand them out again.
+				if (hasMoreResults) {
+					try {
+						getMessages();
+					} catch (AndroidAgentException e) {
+						Log.e(TAG, "Failed to send operation results", e);
+					}
+				}
+			} else {
+				LocalNotification.onPollFailed(context, null);
 			}
 		}
 	}
 
+	/**
+	 * Removes the results sent with the last poll from the outbox once the server confirmed
+	 * the poll.
+	 *
+	 * @return true if a full batch was sent and more results are waiting in the outbox.
+	 */
+	private boolean confirmSentResults() {
+		List<OperationResultOutbox.Entry> results = sentResults;
+		sentResults = null;
+		if (results == null || results.isEmpty()) {
+			return false;
+		}
+		try {
+			resultOutbox.remove(results);
+			return results.size() >= OperationResultOutbox.MAX_BATCH_SIZE && resultOutbox.size() > 0;
+		} catch (AndroidAgentException e) {
+			Log.e(TAG, "Failed to update operation results", e);
+			return false;
+		}
+	}
+
+	private static boolean isSuccessful(String responseStatus) {
+		try {
+			int status = Integer.parseInt(responseStatus);
+			return status >= 200 && status < 300;
+		} catch (NumberFormatException e) {
+			return false;
+		}
+	}
+
 }
@@ -1073,6 +1073,13 @@ public class Operation implements APIResultCallBack {
 		return resultBuilder.getResultPayload();
 	}
 
+	/**
+	 * This method clears the completed operations list once it has been handed over.
+	 */
+	public void clearResultPayload() {
+		resultBuilder.clear();
+	}
+
 	/**
 	 * This method is being invoked when get info operation get executed.
 	 *
@@ -0,0 +1,321 @@
+/*
+ * Copyright (c) 2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ * 
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.emm.agent.services;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.wso2.emm.agent.AndroidAgentException;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class keeps the results of operations in a file until the server confirms that it
+ * received them, so that results survive a restart of the agent and the operations are not
+ * executed again. Only the latest result of each operation is kept, and results are sent to
+ * the server in bounded batches along with the polls of the agent.
+ * The file is a log holding one result per line. New results are appended to it, and the
+ * log is rewritten without the replaced and confirmed results when results are removed.
+ */
+public class OperationResultOutbox {
+
+	public static final int MAX_BATCH_SIZE = 50;
+	private static final int MAX_SIZE = 1000;
+	private static final String OUTBOX_FILE_NAME = "operation-results.log";
+	private static final String TEMP_FILE_SUFFIX = ".tmp";
+	private static final String CHARSET = "UTF-8";
+	private static final char LINE_SEPARATOR = '\n';
+	private static final Object lock = new Object();
+	private static final ObjectMapper mapper = new ObjectMapper();
+
+	static {
+		mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+		mapper.configure(SerializationFeature.FAIL_ON_EMPTY_BEANS, false);
+	}
+
+	private final File file;
+
+	/**
+	 * @param directory - Directory of the outbox file, which is shared by all outboxes of the directory.
+	 */
+	public OperationResultOutbox(File directory) {
+		this.file = new File(directory, OUTBOX_FILE_NAME);
+	}
+
+	/**
+	 * Add the results of operations, replacing results of the same operations which are yet to be sent.
+	 *
+	 * @param operations - Operations holding their results.
+	 */
+	public void add(List<org.wso2.emm.agent.beans.Operation> operations) throws AndroidAgentException {
+		StringBuilder lines = new StringBuilder();
+		for (org.wso2.emm.agent.beans.Operation operation : operations) {
+			if (operation.getId() <= 0) {
+				continue;
+			}
+			Entry entry = new Entry();
+			entry.setId(operation.getId());
+			entry.setCode(operation.getCode());
+			entry.setStatus(operation.getStatus());
+			try {
+				entry.setResult(mapper.writeValueAsString(operation));
+				lines.append(mapper.writeValueAsString(entry)).append(LINE_SEPARATOR);
+			} catch (IOException e) {
+				throw new AndroidAgentException("Issue in json generation", e);
+			}
+		}
+		if (lines.length() == 0) {
+			return;
+		}
+		synchronized (lock) {
+			append(lines.toString());
+		}
+	}
+
+	/**
+	 * Get the oldest results which are yet to be sent.
+	 *
+	 * @param maxSize - Maximum number of results to be returned.
+	 * @return - Results in the order they were added.
+	 */
+	public List<Entry> getBatch(int maxSize) throws AndroidAgentException {
+		synchronized (lock) {
+			Map<Integer, Entry> entries = read();
+			List<Entry> batch = new ArrayList<Entry>();
+			for (Entry entry : entries.values()) {
+				if (batch.size() >= maxSize) {
+					break;
+				}
+				batch.add(entry);
+			}
+			return batch;
+		}
+	}
+
+	/**
+	 * Remove results which the server confirmed it received. Results of the same operations
+	 * which were added after the batch was taken are kept.
+	 *
+	 * @param batch - Results which were sent to the server.
+	 */
+	public void remove(List<Entry> batch) throws AndroidAgentException {
+		if (batch.isEmpty()) {
+			return;
+		}
+		synchronized (lock) {
+			Map<Integer, Entry> entries = read();
+			for (Entry sentEntry : batch) {
+				Entry entry = entries.get(sentEntry.getId());
+				if (entry != null && entry.getResult().equals(sentEntry.getResult())) {
+					entries.remove(sentEntry.getId());
+				}
+			}
+			write(entries);
+		}
+	}
+
+	public int size() throws AndroidAgentException {
+		synchronized (lock) {
+			return read().size();
+		}
+	}
+
+	/**
+	 * Build the request payload of a batch, which is the JSON array of its operations.
+	 *
+	 * @param batch - Results to be sent.
+	 * @return - Request payload.
+	 */
+	public static String toPayload(List<Entry> batch) {
+		StringBuilder payload = new StringBuilder("[");
+		for (int i = 0; i < batch.size(); i++) {
+			if (i > 0) {
+				payload.append(',');
+			}
+			payload.append(batch.get(i).getResult());
+		}
+		return payload.append(']').toString();
+	}
+
+	/**
+	 * Read the results from the outbox file, where a later line of an operation replaces the
+	 * earlier ones. Lines which cannot be parsed, such as a line cut short when the agent
+	 * stopped while appending it, are skipped. A log holding more lines than the outbox may
+	 * hold results is compacted, keeping the latest results.
+	 */
+	private Map<Integer, Entry> read() throws AndroidAgentException {
+		Map<Integer, Entry> entries = new LinkedHashMap<Integer, Entry>();
+		if (!file.exists()) {
+			return entries;
+		}
+		int lineCount = 0;
+		BufferedReader reader = null;
+		try {
+			reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), CHARSET));
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.isEmpty()) {
+					continue;
+				}
+				lineCount++;
+				Entry entry;
+				try {
+					entry = mapper.readValue(line, Entry.class);
+				} catch (IOException e) {
+					continue;
+				}
+				if (entry.getId() > 0 && entry.getResult() != null) {
+					entries.remove(entry.getId());
+					entries.put(entry.getId(), entry);
+				}
+			}
+		} catch (IOException e) {
+			throw new AndroidAgentException("Issue in reading operation result outbox", e);
+		} finally {
+			close(reader);
+		}
+		if (lineCount > MAX_SIZE) {
+			while (entries.size() > MAX_SIZE) {
+				entries.remove(entries.keySet().iterator().next());
+			}
+			write(entries);
+		}
+		return entries;
+	}
+
+	/**
+	 * Append lines to the outbox file. A separator is added first if the file does not end
+	 * with one, so that a line cut short earlier does not swallow the first appended line.
+	 */
+	private void append(String lines) throws AndroidAgentException {
+		RandomAccessFile outboxFile = null;
+		try {
+			outboxFile = new RandomAccessFile(file, "rw");
+			long length = outboxFile.length();
+			if (length > 0) {
+				outboxFile.seek(length - 1);
+				if (outboxFile.read() != LINE_SEPARATOR) {
+					outboxFile.write(LINE_SEPARATOR);
+				}
+			}
+			outboxFile.write(lines.getBytes(CHARSET));
+		} catch (IOException e) {
+			throw new AndroidAgentException("Issue in writing operation result outbox", e);
+		} finally {
+			close(outboxFile);
+		}
+	}
+
+	/**
+	 * Rewrite the outbox file with the given results only.
+	 */
+	private void write(Map<Integer, Entry> entries) throws AndroidAgentException {
+		if (entries.isEmpty()) {
+			if (file.exists() && !file.delete()) {
+				throw new AndroidAgentException("Operation result outbox could not be truncated");
+			}
+			return;
+		}
+		File tempFile = new File(file.getPath() + TEMP_FILE_SUFFIX);
+		Writer writer = null;
+		try {
+			writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tempFile), CHARSET));
+			for (Entry entry : entries.values()) {
+				writer.write(mapper.writeValueAsString(entry));
+				writer.write(LINE_SEPARATOR);
+			}
+			writer.close();
+		} catch (IOException e) {
+			throw new AndroidAgentException("Issue in writing operation result outbox", e);
+		} finally {
+			close(writer);
+		}
+		if (!tempFile.renameTo(file)) {
+			throw new AndroidAgentException("Operation result outbox could not be replaced");
+		}
+	}
+
+	private static void close(Closeable closeable) {
+		if (closeable != null) {
+			try {
+				closeable.close();
+			} catch (IOException ignored) {
+				// Nothing is left to be done with the file.
+			}
+		}
+	}
+
+	/**
+	 * Result of an operation waiting in the outbox.
+	 */
+	public static class Entry {
+		private int id;
+		private String code;
+		private String status;
+		private String result;
+
+		public int getId() {
+			return id;
+		}
+
+		public void setId(int id) {
+			this.id = id;
+		}
+
+		public String getCode() {
+			return code;
+		}
+
+		public void setCode(String code) {
+			this.code = code;
+		}
+
+		public String getStatus() {
+			return status;
+		}
+
+		public void setStatus(String status) {
+			this.status = status;
+		}
+
+		/**
+		 * @return - Operation holding the result, as it is sent to the server.
+		 */
+		public String getResult() {
+			return result;
+		}
+
+		public void setResult(String result) {
+			this.result = result;
+		}
+	}
+}
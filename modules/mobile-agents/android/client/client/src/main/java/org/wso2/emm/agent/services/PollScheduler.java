@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ * 
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.emm.agent.services;
+
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * This class decides when the agent polls the server for pending operations next. The polling
+ * interval is doubled after each poll which brings no pending operations, up to a maximum, and
+ * drops back to the configured interval once operations are received, so that their results
+ * reach the server soon. A Retry-After hint sent by the server takes precedence, and while push
+ * notifications are being received the agent only polls at a long heartbeat interval.
+ */
+public class PollScheduler {
+
+	private static final String HTTP_DATE_FORMAT = "EEE, dd MMM yyyy HH:mm:ss zzz";
+	private static final String GMT = "GMT";
+	private static final long NO_HINT = -1;
+
+	private final long baseInterval;
+	private final long maxInterval;
+	private final long heartbeatInterval;
+	private final long pushHealthPeriod;
+	private long interval;
+	private long lastPushTime;
+
+	/**
+	 * @param baseInterval      - Configured polling interval, used while operations are received.
+	 * @param maxInterval       - Longest interval the polling backs off to.
+	 * @param heartbeatInterval - Polling interval while push notifications are being received.
+	 * @param pushHealthPeriod  - Period after the last push notification during which push
+	 *                          notifications are considered to be working.
+	 */
+	public PollScheduler(long baseInterval, long maxInterval, long heartbeatInterval,
+	                     long pushHealthPeriod) {
+		this.baseInterval = baseInterval;
+		this.maxInterval = Math.max(maxInterval, baseInterval);
+		this.heartbeatInterval = Math.max(heartbeatInterval, this.maxInterval);
+		this.pushHealthPeriod = pushHealthPeriod;
+		this.interval = baseInterval;
+	}
+
+	/**
+	 * Restore the state saved after the previous poll.
+	 *
+	 * @param interval     - Polling interval reached so far.
+	 * @param lastPushTime - Time at which the last push notification was received.
+	 */
+	public void restore(long interval, long lastPushTime) {
+		if (interval < baseInterval || interval > maxInterval) {
+			this.interval = baseInterval;
+		} else {
+			this.interval = interval;
+		}
+		this.lastPushTime = lastPushTime;
+	}
+
+	public long getInterval() {
+		return interval;
+	}
+
+	public long getLastPushTime() {
+		return lastPushTime;
+	}
+
+	public void onPushReceived(long now) {
+		lastPushTime = now;
+	}
+
+	/**
+	 * Decide the delay until the next poll after a poll which reached the server.
+	 *
+	 * @param operationCount - Number of pending operations received.
+	 * @param retryAfter     - Value of the Retry-After header of the response, or null.
+	 * @param now            - Current time in milliseconds.
+	 * @return - Delay until the next poll in milliseconds.
+	 */
+	public long onPollCompleted(int operationCount, String retryAfter, long now) {
+		if (operationCount > 0) {
+			interval = baseInterval;
+		} else {
+			backOff();
+		}
+		long hint = parseRetryAfter(retryAfter, now);
+		if (hint != NO_HINT) {
+			return clampHint(hint);
+		}
+		if (operationCount == 0 && isPushHealthy(now)) {
+			return heartbeatInterval;
+		}
+		return interval;
+	}
+
+	/**
+	 * Decide the delay until the next poll after a poll which failed.
+	 *
+	 * @param retryAfter - Value of the Retry-After header of the response, or null.
+	 * @param now        - Current time in milliseconds.
+	 * @return - Delay until the next poll in milliseconds.
+	 */
+	public long onPollFailed(String retryAfter, long now) {
+		backOff();
+		long hint = parseRetryAfter(retryAfter, now);
+		if (hint != NO_HINT) {
+			return clampHint(hint);
+		}
+		if (isPushHealthy(now)) {
+			return heartbeatInterval;
+		}
+		return interval;
+	}
+
+	public boolean isPushHealthy(long now) {
+		return lastPushTime > 0 && now - lastPushTime < pushHealthPeriod;
+	}
+
+	/**
+	 * Parse a Retry-After header, which holds either a number of seconds or an HTTP date.
+	 *
+	 * @param retryAfter - Value of the header, or null.
+	 * @param now        - Current time in milliseconds.
+	 * @return - Delay in milliseconds, or -1 if the header is missing or invalid.
+	 */
+	static long parseRetryAfter(String retryAfter, long now) {
+		if (retryAfter == null || retryAfter.trim().isEmpty()) {
+			return NO_HINT;
+		}
+		String value = retryAfter.trim();
+		try {
+			long seconds = Long.parseLong(value);
+			return seconds < 0 ? NO_HINT : seconds * 1000;
+		} catch (NumberFormatException ignored) {
+			// Not a number of seconds, so it is expected to be an HTTP date.
+		}
+		DateFormat dateFormat = new SimpleDateFormat(HTTP_DATE_FORMAT, Locale.US);
+		dateFormat.setTimeZone(TimeZone.getTimeZone(GMT));
+		try {
+			Date date = dateFormat.parse(value);
+			return Math.max(date.getTime() - now, 0);
+		} catch (ParseException e) {
+			return NO_HINT;
+		}
+	}
+
+	private void backOff() {
+		interval = Math.min(interval * 2, maxInterval);
+	}
+
+	private long clampHint(long hint) {
+		return Math.min(Math.max(hint, baseInterval), heartbeatInterval);
+	}
+}
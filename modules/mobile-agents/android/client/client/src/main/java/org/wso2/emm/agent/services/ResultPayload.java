@@ -50,4 +50,11 @@ public class ResultPayload {
 	public List<Operation> getResultPayload(){
 		return this.operationResponses;
 	}
+
+	/**
+	 * Clear the results which have been handed over.
+	 */
+	public void clear(){
+		this.operationResponses.clear();
+	}
 }
@@ -25,6 +25,7 @@ import org.wso2.emm.agent.beans.ServerConfig;
 import org.wso2.emm.agent.beans.UnregisterProfile;
 import org.wso2.emm.agent.proxy.APIController;
 import org.wso2.emm.agent.proxy.interfaces.APIResultCallBack;
+import org.wso2.emm.agent.proxy.interfaces.ResponseBodyParser;
 import org.wso2.emm.agent.proxy.utils.Constants.HTTP_METHODS;
 import org.wso2.emm.agent.proxy.beans.EndPointInfo;
 import org.wso2.emm.agent.services.AgentDeviceAdminReceiver;
@@ -68,8 +69,24 @@ public class CommonUtils {
 	public static void callSecuredAPI(Context context, String endpoint, HTTP_METHODS methodType,
 									  String requestParams,
 									  APIResultCallBack apiResultCallBack, int requestCode) {
+		callSecuredAPI(context, endpoint, methodType, requestParams, apiResultCallBack, requestCode, null);
+	}
+
+	/**
+	 * Calls the secured API and streams the response body into the given parser.
+	 * @param context            -The Activity which calls an API.
+	 * @param endpoint           -The API endpoint.
+	 * @param methodType         -The method type.
+	 * @param apiResultCallBack  -The API result call back object.
+	 * @param requestCode        -The request code.
+	 * @param responseBodyParser -The parser of the response body, or null to receive it as a string.
+	 */
+	public static void callSecuredAPI(Context context, String endpoint, HTTP_METHODS methodType,
+									  String requestParams, APIResultCallBack apiResultCallBack,
+									  int requestCode, ResponseBodyParser responseBodyParser) {
 
 		EndPointInfo apiUtilities = new EndPointInfo();
+		apiUtilities.setResponseBodyParser(responseBodyParser);
 		ServerConfig utils = new ServerConfig();
 		apiUtilities.setEndPoint(endpoint);
 		apiUtilities.setHttpMethod(methodType);
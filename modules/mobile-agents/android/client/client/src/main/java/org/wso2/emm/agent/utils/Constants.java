@@ -63,6 +63,7 @@ public class Constants {
 	public static final String PASSWORD = "password";
 	public static final String STATUS = "status";
 	public static final String RESPONSE = "response";
+	public static final String RETRY_AFTER_KEY = "retryAfter";
 	public static final String PAYLOAD = "payLoad";
 	public static final String CODE = "code";
 	public static final String TYPE = "type";
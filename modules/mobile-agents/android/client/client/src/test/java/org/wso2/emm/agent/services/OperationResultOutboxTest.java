@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) 2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ * 
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.emm.agent.services;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.wso2.emm.agent.beans.Operation;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class OperationResultOutboxTest {
+
+	private File directory;
+	private OperationResultOutbox outbox;
+
+	@Before
+	public void setUp() throws Exception {
+		directory = File.createTempFile("outbox", "");
+		assertTrue(directory.delete());
+		assertTrue(directory.mkdir());
+		outbox = new OperationResultOutbox(directory);
+	}
+
+	@After
+	public void tearDown() {
+		File[] files = directory.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+		directory.delete();
+	}
+
+	@Test
+	public void testResultsArePersisted() throws Exception {
+		outbox.add(Arrays.asList(createOperation(1, "COMPLETED"), createOperation(2, "ERROR")));
+
+		List<OperationResultOutbox.Entry> batch = new OperationResultOutbox(directory).getBatch(10);
+		assertEquals(2, batch.size());
+		assertEquals(1, batch.get(0).getId());
+		assertEquals("COMPLETED", batch.get(0).getStatus());
+		assertEquals(2, batch.get(1).getId());
+		assertEquals("ERROR", batch.get(1).getStatus());
+	}
+
+	@Test
+	public void testLatestResultOfOperationIsKept() throws Exception {
+		outbox.add(Arrays.asList(createOperation(1, "IN_PROGRESS"), createOperation(2, "COMPLETED")));
+		outbox.add(Collections.singletonList(createOperation(1, "COMPLETED")));
+
+		List<OperationResultOutbox.Entry> batch = outbox.getBatch(10);
+		assertEquals(2, batch.size());
+		assertEquals(2, batch.get(0).getId());
+		assertEquals(1, batch.get(1).getId());
+		assertEquals("COMPLETED", batch.get(1).getStatus());
+	}
+
+	@Test
+	public void testOperationsWithoutIdAreIgnored() throws Exception {
+		outbox.add(Collections.singletonList(createOperation(0, "COMPLETED")));
+		assertEquals(0, outbox.size());
+	}
+
+	@Test
+	public void testBatchesAreBounded() throws Exception {
+		List<Operation> operations = new ArrayList<Operation>();
+		for (int i = 1; i <= 5; i++) {
+			operations.add(createOperation(i, "COMPLETED"));
+		}
+		outbox.add(operations);
+
+		List<OperationResultOutbox.Entry> batch = outbox.getBatch(2);
+		assertEquals(2, batch.size());
+		outbox.remove(batch);
+		assertEquals(3, outbox.size());
+		assertEquals(3, outbox.getBatch(2).get(0).getId());
+	}
+
+	@Test
+	public void testRemoveKeepsNewerResults() throws Exception {
+		outbox.add(Arrays.asList(createOperation(1, "IN_PROGRESS"), createOperation(2, "COMPLETED")));
+		List<OperationResultOutbox.Entry> batch = outbox.getBatch(10);
+		outbox.add(Collections.singletonList(createOperation(1, "COMPLETED")));
+
+		outbox.remove(batch);
+		List<OperationResultOutbox.Entry> remaining = outbox.getBatch(10);
+		assertEquals(1, remaining.size());
+		assertEquals(1, remaining.get(0).getId());
+		assertEquals("COMPLETED", remaining.get(0).getStatus());
+	}
+
+	@Test
+	public void testOutboxIsTruncated() throws Exception {
+		outbox.add(Collections.singletonList(createOperation(1, "COMPLETED")));
+		outbox.remove(outbox.getBatch(10));
+		assertEquals(0, outbox.size());
+		assertEquals(0, directory.listFiles().length);
+	}
+
+	@Test
+	public void testPayload() throws Exception {
+		outbox.add(Arrays.asList(createOperation(1, "COMPLETED"), createOperation(2, "ERROR")));
+		String payload = OperationResultOutbox.toPayload(outbox.getBatch(10));
+		assertTrue(payload.startsWith("[{"));
+		assertTrue(payload.endsWith("}]"));
+		assertTrue(payload.contains("\"id\":1"));
+		assertTrue(payload.contains("\"status\":\"ERROR\""));
+		assertEquals("[]", OperationResultOutbox.toPayload(new ArrayList<OperationResultOutbox.Entry>()));
+	}
+
+	@Test
+	public void testUnreadableLinesAreSkipped() throws Exception {
+		outbox.add(Collections.singletonList(createOperation(1, "COMPLETED")));
+		FileWriter writer = new FileWriter(new File(directory, "operation-results.log"), true);
+		writer.write("{\"id\":2,\"res");
+		writer.close();
+
+		assertEquals(1, outbox.size());
+		outbox.add(Collections.singletonList(createOperation(3, "COMPLETED")));
+		List<OperationResultOutbox.Entry> batch = outbox.getBatch(10);
+		assertEquals(2, batch.size());
+		assertEquals(1, batch.get(0).getId());
+		assertEquals(3, batch.get(1).getId());
+	}
+
+	@Test
+	public void testLogIsCompactedOnRemove() throws Exception {
+		for (int i = 0; i < 10; i++) {
+			outbox.add(Arrays.asList(createOperation(1, "IN_PROGRESS"), createOperation(2, "IN_PROGRESS")));
+		}
+		outbox.add(Collections.singletonList(createOperation(1, "COMPLETED")));
+		outbox.remove(Collections.singletonList(outbox.getBatch(1).get(0)));
+
+		assertEquals(1, countLines(new File(directory, "operation-results.log")));
+		List<OperationResultOutbox.Entry> batch = outbox.getBatch(10);
+		assertEquals(1, batch.size());
+		assertEquals(1, batch.get(0).getId());
+		assertEquals("COMPLETED", batch.get(0).getStatus());
+	}
+
+	private static int countLines(File file) throws Exception {
+		BufferedReader reader = new BufferedReader(new FileReader(file));
+		try {
+			int count = 0;
+			while (reader.readLine() != null) {
+				count++;
+			}
+			return count;
+		} finally {
+			reader.close();
+		}
+	}
+
+	private static Operation createOperation(int id, String status) {
+		Operation operation = new Operation();
+		operation.setId(id);
+		operation.setCode("DEVICE_LOCK");
+		operation.setStatus(status);
+		return operation;
+	}
+}
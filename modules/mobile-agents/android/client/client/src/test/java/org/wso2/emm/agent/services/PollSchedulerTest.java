@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ * 
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.emm.agent.services;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PollSchedulerTest {
+
+	private static final long BASE_INTERVAL = 30000;
+	private static final long MAX_INTERVAL = 240000;
+	private static final long HEARTBEAT_INTERVAL = 3600000;
+	private static final long PUSH_HEALTH_PERIOD = 86400000;
+	private static final long NOW = 1000000000000L;
+
+	private PollScheduler pollScheduler;
+
+	@Before
+	public void setUp() {
+		pollScheduler = new PollScheduler(BASE_INTERVAL, MAX_INTERVAL, HEARTBEAT_INTERVAL, PUSH_HEALTH_PERIOD);
+	}
+
+	@Test
+	public void testEmptyPollsBackOffUpToMaximum() {
+		assertEquals(60000, pollScheduler.onPollCompleted(0, null, NOW));
+		assertEquals(120000, pollScheduler.onPollCompleted(0, null, NOW));
+		assertEquals(240000, pollScheduler.onPollCompleted(0, null, NOW));
+		assertEquals(MAX_INTERVAL, pollScheduler.onPollCompleted(0, null, NOW));
+	}
+
+	@Test
+	public void testActivityResetsInterval() {
+		pollScheduler.onPollCompleted(0, null, NOW);
+		pollScheduler.onPollCompleted(0, null, NOW);
+		assertEquals(BASE_INTERVAL, pollScheduler.onPollCompleted(3, null, NOW));
+		assertEquals(BASE_INTERVAL, pollScheduler.getInterval());
+	}
+
+	@Test
+	public void testFailedPollsBackOff() {
+		assertEquals(60000, pollScheduler.onPollFailed(null, NOW));
+		assertEquals(120000, pollScheduler.onPollFailed(null, NOW));
+	}
+
+	@Test
+	public void testRetryAfterSecondsIsHonoured() {
+		assertEquals(600000, pollScheduler.onPollCompleted(0, "600", NOW));
+		assertEquals(300000, pollScheduler.onPollFailed("300", NOW));
+		assertEquals(120000, pollScheduler.getInterval());
+	}
+
+	@Test
+	public void testRetryAfterDateIsHonoured() {
+		SimpleDateFormat dateFormat = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+		dateFormat.setTimeZone(TimeZone.getTimeZone("GMT"));
+		String retryAfter = dateFormat.format(new Date(NOW + 120000));
+		assertEquals(120000, pollScheduler.onPollFailed(retryAfter, NOW));
+	}
+
+	@Test
+	public void testRetryAfterIsClamped() {
+		assertEquals(BASE_INTERVAL, pollScheduler.onPollCompleted(0, "1", NOW));
+		assertEquals(HEARTBEAT_INTERVAL, pollScheduler.onPollCompleted(0, "86400", NOW));
+	}
+
+	@Test
+	public void testInvalidRetryAfterIsIgnored() {
+		assertEquals(60000, pollScheduler.onPollCompleted(0, "soon", NOW));
+		assertEquals(120000, pollScheduler.onPollCompleted(0, "-5", NOW));
+	}
+
+	@Test
+	public void testHeartbeatWhilePushIsHealthy() {
+		pollScheduler.onPushReceived(NOW - 60000);
+		assertTrue(pollScheduler.isPushHealthy(NOW));
+		assertEquals(HEARTBEAT_INTERVAL, pollScheduler.onPollCompleted(0, null, NOW));
+		assertEquals(HEARTBEAT_INTERVAL, pollScheduler.onPollFailed(null, NOW));
+		assertEquals(BASE_INTERVAL, pollScheduler.onPollCompleted(1, null, NOW));
+	}
+
+	@Test
+	public void testPushIsUnhealthyAfterSilence() {
+		pollScheduler.onPushReceived(NOW - PUSH_HEALTH_PERIOD);
+		assertFalse(pollScheduler.isPushHealthy(NOW));
+		assertEquals(60000, pollScheduler.onPollCompleted(0, null, NOW));
+	}
+
+	@Test
+	public void testRestore() {
+		pollScheduler.restore(120000, NOW - 1000);
+		assertEquals(120000, pollScheduler.getInterval());
+		assertEquals(NOW - 1000, pollScheduler.getLastPushTime());
+
+		pollScheduler.restore(0, 0);
+		assertEquals(BASE_INTERVAL, pollScheduler.getInterval());
+		assertFalse(pollScheduler.isPushHealthy(NOW));
+	}
+}
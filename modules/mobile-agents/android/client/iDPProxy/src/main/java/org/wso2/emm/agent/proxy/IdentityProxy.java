@@ -20,6 +20,8 @@ package org.wso2.emm.agent.proxy;
 import android.content.Context;
 import android.content.SharedPreferences;
 import android.content.SharedPreferences.Editor;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 import org.wso2.emm.agent.proxy.beans.CredentialInfo;
 import org.wso2.emm.agent.proxy.beans.Token;
@@ -27,10 +29,13 @@ import org.wso2.emm.agent.proxy.interfaces.APIAccessCallBack;
 import org.wso2.emm.agent.proxy.interfaces.CallBack;
 import org.wso2.emm.agent.proxy.interfaces.TokenCallBack;
 import org.wso2.emm.agent.proxy.utils.Constants;
-import org.wso2.emm.agent.proxy.utils.ServerUtilities;
+
+import java.util.concurrent.Executor;
 
 /**
  * This class handles identity proxy library initialization and token validation.
+ * The access token is kept by a token manager, which renews it ahead of its expiry
+ * and refreshes it once for all API calls which are waiting for it.
  */
 public class IdentityProxy implements CallBack {
 
@@ -38,16 +43,22 @@ public class IdentityProxy implements CallBack {
     public static String clientID;
     public static String clientSecret;
     private static String TAG = "IdentityProxy";
-    private static Token token = null;
+    private static final long TOKEN_RENEWAL_MARGIN = 5 * 60 * 1000;
     private static IdentityProxy identityProxy = new IdentityProxy();
     private Context context;
     private static String accessTokenURL;
     private APIAccessCallBack apiAccessCallBack;
-    private TokenCallBack tokenCallBack;
     private int requestCode = 0;
+    private final TokenManager tokenManager;
 
     private IdentityProxy() {
-
+        final Handler mainHandler = new Handler(Looper.getMainLooper());
+        tokenManager = new TokenManager(new RefreshTokenHandler(), TOKEN_RENEWAL_MARGIN, new Executor() {
+            @Override
+            public void execute(Runnable runnable) {
+                mainHandler.post(runnable);
+            }
+        });
     }
 
     public static synchronized IdentityProxy getInstance() {
@@ -77,14 +88,15 @@ public class IdentityProxy implements CallBack {
             Log.d(TAG, token.getRefreshToken());
         }
 
-        IdentityProxy.token = token;
+        tokenManager.setToken(token);
         apiAccessCallBack.onAPIAccessReceive(status);
     }
 
     @Override
     public void receiveNewAccessToken(String status, String message, Token token) {
-        IdentityProxy.token = token;
-        tokenCallBack.onReceiveTokenResult(token, status);
+        if (token != null) {
+            tokenManager.setToken(token);
+        }
     }
 
     /**
@@ -114,59 +126,36 @@ public class IdentityProxy implements CallBack {
     public void requestToken(Context context, TokenCallBack tokenCallBack, String clientID,
                              String clientSecret) {
         this.context = context;
-        this.tokenCallBack = tokenCallBack;
         IdentityProxy.clientID = clientID;
         IdentityProxy.clientSecret = clientSecret;
-        if (token == null) {
-            validateStoredToken();
-        } else {
-            boolean isExpired = ServerUtilities.isValid(token.getDate());
-            if (!isExpired) {
-                synchronized(this){
-                    IdentityProxy.getInstance().receiveNewAccessToken(Constants.REQUEST_SUCCESSFUL,
-                            "success", token);
-                }
-            } else {
-                validateStoredToken();
-            }
+        if (tokenManager.getToken() == null) {
+            loadStoredToken();
         }
+        tokenManager.requestToken(tokenCallBack);
     }
 
-    private void validateStoredToken() {
+    private void loadStoredToken() {
         SharedPreferences mainPref = context.getSharedPreferences(Constants.APPLICATION_PACKAGE,
                 Context.MODE_PRIVATE);
-        String refreshToken = mainPref.getString(Constants.REFRESH_TOKEN, null).toString();
-        String accessToken = mainPref.getString(Constants.ACCESS_TOKEN, null).toString();
-        String date = mainPref.getString(Constants.DATE_LABEL, null).toString();
-        String endPoint = mainPref.getString(Constants.TOKEN_ENDPOINT, null).toString();
+        String refreshToken = mainPref.getString(Constants.REFRESH_TOKEN, null);
+        String accessToken = mainPref.getString(Constants.ACCESS_TOKEN, null);
+        String date = mainPref.getString(Constants.DATE_LABEL, null);
+        String endPoint = mainPref.getString(Constants.TOKEN_ENDPOINT, null);
         setAccessTokenURL(endPoint);
 
-        if (!refreshToken.isEmpty()) {
-            token = new Token();
-            token.setDate(date);
+        if (refreshToken != null && !refreshToken.isEmpty()) {
+            Token token = new Token();
+            if (date != null) {
+                token.setDate(date);
+            }
             token.setRefreshToken(refreshToken);
             token.setAccessToken(accessToken);
-            boolean isExpired = ServerUtilities.isValid(token.getDate());
-            if (!isExpired) {
-                synchronized(this){
-                    IdentityProxy.getInstance().receiveNewAccessToken(Constants.REQUEST_SUCCESSFUL,
-                            Constants.SUCCESS_RESPONSE,
-                            token);
-                }
-            } else {
-                refreshToken();
-            }
-        } else {
-            synchronized(this){
-                IdentityProxy.getInstance().receiveNewAccessToken(Constants.ACCESS_FAILURE,
-                        Constants.FAILURE_RESPONSE, token);
-            }
+            tokenManager.setToken(token);
         }
     }
 
     public void refreshToken() {
-        RefreshTokenHandler refreshTokenHandler = new RefreshTokenHandler(token);
-        refreshTokenHandler.obtainNewAccessToken();
+        tokenManager.refreshToken();
     }
 
     public Context getContext() {
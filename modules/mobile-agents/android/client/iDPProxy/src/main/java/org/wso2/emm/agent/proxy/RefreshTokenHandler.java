@@ -17,11 +17,9 @@
  */
 package org.wso2.emm.agent.proxy;
 
-import android.annotation.SuppressLint;
 import android.content.Context;
 import android.content.SharedPreferences;
 import android.content.SharedPreferences.Editor;
-import android.os.AsyncTask;
 import android.util.Log;
 import org.apache.commons.codec.binary.Base64;
 import org.json.JSONException;
@@ -41,120 +39,89 @@ import java.util.Map;
 
 /**
  * This class handles the entire functionality of OAuth token expiration and 
- * refresh process.
+ * refresh process. Tokens are refreshed on the refresh thread of the token manager,
+ * which makes sure that only one refresh is in flight at a time.
  */
 
-public class RefreshTokenHandler {
+public class RefreshTokenHandler implements TokenManager.TokenEndPoint {
 	private static final String TAG = "RefreshTokenHandler";
 	private static final String SCOPE_LABEL = "scope";
 	private static final String PRODUCTION_LABEL = "PRODUCTION";
 	private static final DateFormat dateFormat =
 			new SimpleDateFormat("MM/dd/yyyy HH:mm:ss", Locale.getDefault());
 	private static final String COLON = ":";
-	private Token token;
 
-	public RefreshTokenHandler(Token token) {
-		this.token = token;
-	}
-
-	public void obtainNewAccessToken() {
-		new NetworkCallTask().execute();
-	}
-
-	private class NetworkCallTask extends AsyncTask<String, Void, String> {
-
-		private String responseCode = null;
-
-		@Override
-		protected String doInBackground(String... params) {
-			String response = null;
-
-			Map<String, String> requestParams = new HashMap<String, String>();
-			requestParams.put(Constants.GRANT_TYPE, Constants.REFRESH_TOKEN);
-			requestParams.put(Constants.REFRESH_TOKEN, token.getRefreshToken());
-			requestParams.put(SCOPE_LABEL, PRODUCTION_LABEL);
-			EndPointInfo endPointInfo = new EndPointInfo();
-			endPointInfo.setEndPoint(IdentityProxy.getInstance().getAccessTokenURL());
-			endPointInfo.setHttpMethod(HTTP_METHODS.POST);
-			endPointInfo.setRequestParamsMap(requestParams);
-
-			byte[] credentials = Base64.encodeBase64((IdentityProxy.clientID + COLON +
-			                                          IdentityProxy.clientSecret).getBytes());
-			String encodedCredentials = new String(credentials);
-
-			Map<String, String> headers = new HashMap<String, String>();
-
-			String authorizationString = Constants.AUTHORIZATION_MODE + encodedCredentials;
-			headers.put(Constants.AUTHORIZATION_HEADER, authorizationString);
-			headers.put(Constants.CONTENT_TYPE_HEADER, Constants.DEFAULT_CONTENT_TYPE);
-
-			Map<String, String> responseParams = null;
-			try {
-				responseParams = ServerUtilities.postDataAPI(endPointInfo, headers);
-			} catch (IDPTokenManagerException e) {
-				Log.e(TAG, "Failed to contact server." + e);
-			}
-
-			if (responseParams != null) {
-				response = responseParams.get(Constants.SERVER_RESPONSE_BODY);
-				responseCode = responseParams.get(Constants.SERVER_RESPONSE_STATUS);
+	@Override
+	public Token refreshToken(Token token) throws IDPTokenManagerException {
+		Map<String, String> requestParams = new HashMap<String, String>();
+		requestParams.put(Constants.GRANT_TYPE, Constants.REFRESH_TOKEN);
+		requestParams.put(Constants.REFRESH_TOKEN, token.getRefreshToken());
+		requestParams.put(SCOPE_LABEL, PRODUCTION_LABEL);
+		EndPointInfo endPointInfo = new EndPointInfo();
+		endPointInfo.setEndPoint(IdentityProxy.getInstance().getAccessTokenURL());
+		endPointInfo.setHttpMethod(HTTP_METHODS.POST);
+		endPointInfo.setRequestParamsMap(requestParams);
+
+		byte[] credentials = Base64.encodeBase64((IdentityProxy.clientID + COLON +
+		                                          IdentityProxy.clientSecret).getBytes());
+		String encodedCredentials = new String(credentials);
+
+		Map<String, String> headers = new HashMap<String, String>();
+
+		String authorizationString = Constants.AUTHORIZATION_MODE + encodedCredentials;
+		headers.put(Constants.AUTHORIZATION_HEADER, authorizationString);
+		headers.put(Constants.CONTENT_TYPE_HEADER, Constants.DEFAULT_CONTENT_TYPE);
+
+		Map<String, String> responseParams = ServerUtilities.postDataAPI(endPointInfo, headers);
+		String result = responseParams.get(Constants.SERVER_RESPONSE_BODY);
+		String responseCode = responseParams.get(Constants.SERVER_RESPONSE_STATUS);
+
+		try {
+			if (Constants.REQUEST_SUCCESSFUL.equals(responseCode)) {
+				JSONObject response = new JSONObject(result);
+				String refreshToken = response.getString(Constants.REFRESH_TOKEN);
+				String accessToken = response.getString(Constants.ACCESS_TOKEN);
+				int timeToExpireSecond = Integer.parseInt(response.getString(Constants.EXPIRE_LABEL));
+
+				Token newToken = new Token();
+				newToken.setRefreshToken(refreshToken);
+				newToken.setAccessToken(accessToken);
+				newToken.setIdToken(token.getIdToken());
+
+				Date expireDate = new Date(System.currentTimeMillis() + (timeToExpireSecond * 1000L));
+				newToken.setDate(expireDate);
+
+				SharedPreferences mainPref =
+						IdentityProxy.getInstance()
+						             .getContext()
+						             .getSharedPreferences(Constants.APPLICATION_PACKAGE,
+						                                   Context.MODE_PRIVATE);
+				Editor editor = mainPref.edit();
+				editor.putString(Constants.REFRESH_TOKEN, refreshToken);
+				editor.putString(Constants.ACCESS_TOKEN, accessToken);
+				editor.putString(Constants.DATE_LABEL, dateFormat.format(expireDate));
+				editor.commit();
+
+				return newToken;
 			} else {
-				responseCode = Constants.INTERNAL_SERVER_ERROR;
-			}
-			return response;
-		}
-
-		@SuppressLint("SimpleDateFormat")
-		@Override
-		protected void onPostExecute(String result) {
-
-			String refreshToken = null;
-			String accessToken = null;
-			int timeToExpireSecond = 3000;
-			IdentityProxy identityProxy = IdentityProxy.getInstance();
-			try {
-				if (Constants.REQUEST_SUCCESSFUL.equals(responseCode)) {
-					JSONObject response = new JSONObject(result);
-					refreshToken = response.getString(Constants.REFRESH_TOKEN);
-					accessToken = response.getString(Constants.ACCESS_TOKEN);
-					timeToExpireSecond =
-							Integer.parseInt(response.getString(Constants.EXPIRE_LABEL));
-
-					token.setRefreshToken(refreshToken);
-					token.setAccessToken(accessToken);
-
-					SharedPreferences mainPref =
-							IdentityProxy.getInstance()
-							             .getContext()
-							             .getSharedPreferences(Constants.APPLICATION_PACKAGE,
-							                                   Context.MODE_PRIVATE);
-					Editor editor = mainPref.edit();
-					editor.putString(Constants.REFRESH_TOKEN, refreshToken);
-					editor.putString(Constants.ACCESS_TOKEN, accessToken);
-
-					Date date = new Date();
-					long expiresIN = date.getTime() + (timeToExpireSecond * 1000);
-					Date expireDate = new Date(expiresIN);
-					String strDate = dateFormat.format(expireDate);
-					token.setDate(strDate);
-					editor.putString(Constants.DATE_LABEL, strDate);
-					editor.commit();
-
-					identityProxy
-							.receiveNewAccessToken(responseCode, Constants.SUCCESS_RESPONSE, token);
-
-				} else if (responseCode != null) {
-					if (result != null) {
-						JSONObject responseBody = new JSONObject(result);
-						String errorDescription =
-								responseBody.getString(Constants.ERROR_DESCRIPTION_LABEL);
-						identityProxy.receiveNewAccessToken(responseCode, errorDescription, token);
-					}
+				String errorDescription = null;
+				if (result != null) {
+					JSONObject responseBody = new JSONObject(result);
+					errorDescription = responseBody.optString(Constants.ERROR_DESCRIPTION_LABEL);
 				}
-			} catch (JSONException e) {
-				identityProxy.receiveNewAccessToken(responseCode, null, token);
-				Log.e(TAG, "Invalid JSON." + e);
+				String errorMsg = "Failed to refresh the access token, status: " + responseCode + ", error: " +
+				                  errorDescription;
+				Log.e(TAG, errorMsg);
+				throw new IDPTokenManagerException(errorMsg);
 			}
+		} catch (JSONException e) {
+			String errorMsg = "Invalid JSON.";
+			Log.e(TAG, errorMsg + e);
+			throw new IDPTokenManagerException(errorMsg, e);
+		} catch (NumberFormatException e) {
+			String errorMsg = "Invalid token expiration time.";
+			Log.e(TAG, errorMsg + e);
+			throw new IDPTokenManagerException(errorMsg, e);
 		}
 	}
 }
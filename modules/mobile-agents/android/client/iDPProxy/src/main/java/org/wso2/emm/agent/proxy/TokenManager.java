@@ -0,0 +1,222 @@
+/*
+ * Copyright (c) 2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ * 
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.emm.agent.proxy;
+
+import org.wso2.emm.agent.proxy.beans.Token;
+import org.wso2.emm.agent.proxy.interfaces.TokenCallBack;
+import org.wso2.emm.agent.proxy.utils.Constants;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class keeps the access token of the application and refreshes it through the
+ * token end point. Only one refresh is in flight at a time; callers which need a token
+ * while it is expired are queued and called back once the refresh completes. The token
+ * is renewed ahead of its expiry, so that callers rarely have to wait for a refresh.
+ */
+public class TokenManager {
+
+	private final TokenEndPoint tokenEndPoint;
+	private final long renewalMargin;
+	private final Executor callBackExecutor;
+	private final ScheduledThreadPoolExecutor refreshExecutor;
+	private final List<TokenCallBack> pendingCallBacks = new ArrayList<TokenCallBack>();
+	private Token token;
+	private long renewalTime;
+	private boolean isRefreshing;
+	private ScheduledFuture<?> scheduledRenewal;
+
+	/**
+	 * Token end point which the token is refreshed through.
+	 */
+	public interface TokenEndPoint {
+
+		/**
+		 * Obtain a new access token using the refresh token of the given token. This is
+		 * called on the refresh thread of the token manager.
+		 *
+		 * @param token - Token to be refreshed.
+		 * @return - New token along with its expiration date.
+		 */
+		Token refreshToken(Token token) throws IDPTokenManagerException;
+	}
+
+	/**
+	 * @param tokenEndPoint    - Token end point to refresh the token through.
+	 * @param renewalMargin    - Time in milliseconds before the expiry of the token at which it
+	 *                         is renewed. At most half of the lifetime of the token is used.
+	 * @param callBackExecutor - Executor which runs the callbacks of callers queued for a refresh.
+	 */
+	public TokenManager(TokenEndPoint tokenEndPoint, long renewalMargin, Executor callBackExecutor) {
+		this.tokenEndPoint = tokenEndPoint;
+		this.renewalMargin = renewalMargin;
+		this.callBackExecutor = callBackExecutor;
+		this.refreshExecutor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "token-refresher");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	public synchronized Token getToken() {
+		return token;
+	}
+
+	/**
+	 * Set the token obtained from the server or the app local storage, and schedule its renewal.
+	 *
+	 * @param token - Current token.
+	 */
+	public synchronized void setToken(Token token) {
+		this.token = token;
+		scheduleRenewal();
+	}
+
+	/**
+	 * Pass the current token to the callback. When the token has expired, the callback is queued
+	 * until the token is refreshed and run on the callback executor. When the token is close to
+	 * its expiry, it is passed to the callback right away and renewed in the background.
+	 *
+	 * @param tokenCallBack - Callback to receive the token.
+	 */
+	public void requestToken(TokenCallBack tokenCallBack) {
+		Token currentToken;
+		String status;
+		synchronized (this) {
+			currentToken = token;
+			long now = System.currentTimeMillis();
+			if (currentToken == null) {
+				status = Constants.ACCESS_FAILURE;
+			} else if (isExpired(currentToken, now)) {
+				pendingCallBacks.add(tokenCallBack);
+				startRefresh();
+				return;
+			} else {
+				status = Constants.REQUEST_SUCCESSFUL;
+				if (now >= renewalTime) {
+					startRefresh();
+				}
+			}
+		}
+		tokenCallBack.onReceiveTokenResult(currentToken, status);
+	}
+
+	/**
+	 * Refresh the token unless a refresh is already in flight.
+	 */
+	public synchronized void refreshToken() {
+		if (token != null) {
+			startRefresh();
+		}
+	}
+
+	/**
+	 * Stop the refresh thread of the token manager.
+	 */
+	public void shutdown() {
+		refreshExecutor.shutdownNow();
+	}
+
+	private void startRefresh() {
+		if (isRefreshing) {
+			return;
+		}
+		isRefreshing = true;
+		final Token expiringToken = token;
+		refreshExecutor.execute(new Runnable() {
+			@Override
+			public void run() {
+				refresh(expiringToken);
+			}
+		});
+	}
+
+	private void refresh(Token expiringToken) {
+		Token newToken = null;
+		try {
+			newToken = tokenEndPoint.refreshToken(expiringToken);
+		} catch (IDPTokenManagerException ignored) {
+			// Queued callers receive the current token along with the failure status.
+		} catch (RuntimeException ignored) {
+			// Same as above, so that queued callers are not left waiting.
+		}
+
+		final Token currentToken;
+		final String status;
+		final List<TokenCallBack> callBacks;
+		synchronized (this) {
+			isRefreshing = false;
+			if (newToken != null) {
+				token = newToken;
+				scheduleRenewal();
+				status = Constants.REQUEST_SUCCESSFUL;
+			} else {
+				status = Constants.ACCESS_FAILURE;
+			}
+			currentToken = token;
+			callBacks = new ArrayList<TokenCallBack>(pendingCallBacks);
+			pendingCallBacks.clear();
+		}
+
+		for (final TokenCallBack callBack : callBacks) {
+			callBackExecutor.execute(new Runnable() {
+				@Override
+				public void run() {
+					callBack.onReceiveTokenResult(currentToken, status);
+				}
+			});
+		}
+	}
+
+	private void scheduleRenewal() {
+		if (scheduledRenewal != null) {
+			scheduledRenewal.cancel(false);
+			scheduledRenewal = null;
+		}
+		if (token == null || token.getDate() == null) {
+			renewalTime = 0;
+			return;
+		}
+		long now = System.currentTimeMillis();
+		long expiryTime = token.getDate().getTime();
+		renewalTime = expiryTime - Math.min(renewalMargin, Math.max(expiryTime - now, 0) / 2);
+		if (renewalTime > now) {
+			scheduledRenewal = refreshExecutor.schedule(new Runnable() {
+				@Override
+				public void run() {
+					refreshToken();
+				}
+			}, renewalTime - now, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	private static boolean isExpired(Token token, long now) {
+		Date expiryDate = token.getDate();
+		return expiryDate == null || now >= expiryDate.getTime();
+	}
+}
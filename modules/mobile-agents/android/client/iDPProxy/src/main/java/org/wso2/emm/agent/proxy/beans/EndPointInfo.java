@@ -17,6 +17,7 @@
  */
 package org.wso2.emm.agent.proxy.beans;
 
+import org.wso2.emm.agent.proxy.interfaces.ResponseBodyParser;
 import org.wso2.emm.agent.proxy.utils.Constants.HTTP_METHODS;
 
 import java.util.Map;
@@ -29,6 +30,7 @@ public class EndPointInfo {
 	private String endPoint;
 	private String requestParams;
 	private Map<String, String> requestParamsMap;
+	private ResponseBodyParser responseBodyParser;
 
 	public Map<String, String> getRequestParamsMap() {
 		return requestParamsMap;
@@ -62,4 +64,12 @@ public class EndPointInfo {
 		this.endPoint = endPoint;
 	}
 
+	public ResponseBodyParser getResponseBodyParser() {
+		return responseBodyParser;
+	}
+
+	public void setResponseBodyParser(ResponseBodyParser responseBodyParser) {
+		this.responseBodyParser = responseBodyParser;
+	}
+
 }
@@ -42,6 +42,10 @@ public final class Token {
 		receivedDate = ServerUtilities.convertDate(date);
 	}
 
+	public void setDate(Date date) {
+		receivedDate = date;
+	}
+
 	public String getAccessToken() {
 		return accessToken;
 	}
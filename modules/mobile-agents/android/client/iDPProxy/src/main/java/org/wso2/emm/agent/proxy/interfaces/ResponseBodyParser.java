@@ -0,0 +1,35 @@
+/*
+ * Copyright (c) 2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ * 
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.emm.agent.proxy.interfaces;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * This interface handles parsing of an API response body straight from the
+ * connection, instead of buffering the whole body into a string. Applications
+ * can implement this when API responses are large.
+ */
+public interface ResponseBodyParser {
+	/**
+	 * Parse the response body as it is read from the server.
+	 *
+	 * @param reader - Reader of the decoded response body.
+	 */
+	void parseResponseBody(Reader reader) throws IOException;
+}
@@ -40,6 +40,7 @@ public class Constants {
 	public static final String DATE_LABEL = "date";
 	public final static String SERVER_RESPONSE_BODY = "response";
 	public final static String SERVER_RESPONSE_STATUS = "status";
+	public final static String SERVER_RESPONSE_RETRY_AFTER = "retryAfter";
 	public static final String SUCCESS_RESPONSE = "success";
 	public static final String FAILURE_RESPONSE = "fail";
 	public final static String REFRESH_TOKEN = "refresh_token";
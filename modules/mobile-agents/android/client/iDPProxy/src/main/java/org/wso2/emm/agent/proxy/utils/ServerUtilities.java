@@ -21,6 +21,7 @@ import android.content.Context;
 import android.content.SharedPreferences;
 import android.content.res.Resources;
 import android.util.Log;
+import org.apache.http.Header;
 import org.apache.http.HeaderElement;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
@@ -33,6 +34,8 @@ import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpPut;
 import org.apache.http.client.methods.HttpRequestBase;
 import org.apache.http.conn.ClientConnectionManager;
+import org.apache.http.conn.params.ConnManagerParams;
+import org.apache.http.conn.params.ConnPerRouteBean;
 import org.apache.http.conn.scheme.PlainSocketFactory;
 import org.apache.http.conn.scheme.Scheme;
 import org.apache.http.conn.scheme.SchemeRegistry;
@@ -48,6 +51,7 @@ import org.wso2.emm.agent.proxy.IDPTokenManagerException;
 import org.wso2.emm.agent.proxy.IdentityProxy;
 import org.wso2.emm.agent.proxy.R;
 import org.wso2.emm.agent.proxy.beans.EndPointInfo;
+import org.wso2.emm.agent.proxy.interfaces.ResponseBodyParser;
 import org.wso2.emm.agent.proxy.utils.Constants.HTTP_METHODS;
 
 import java.io.*;
@@ -58,6 +62,7 @@ import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.zip.GZIPInputStream;
 
 /**
  * This class represents all the utilities used for network communication between SDK 
@@ -68,6 +73,14 @@ public class ServerUtilities {
 	private final static String TAG = "ServerUtilities";
 	private static final DateFormat dateFormat = new SimpleDateFormat("MM/dd/yyyy HH:mm:ss",
 	                                                                  Locale.getDefault());
+	private static final int MAX_TOTAL_CONNECTIONS = 10;
+	private static final int MAX_CONNECTIONS_PER_ROUTE = 5;
+	private static final long MAX_RESPONSE_BODY_SIZE = 4 * 1024 * 1024;
+	private static final int BUFFER_SIZE = 8192;
+	private static final String ACCEPT_ENCODING_HEADER = "Accept-Encoding";
+	private static final String GZIP_ENCODING = "gzip";
+	private static final String RETRY_AFTER_HEADER = "Retry-After";
+	private static volatile HttpClient httpClient;
 
 	/**
 	 * Validate the token expiration date.
@@ -118,6 +131,7 @@ public class ServerUtilities {
 	}
 
 	public static HttpRequestBase buildHeaders(HttpRequestBase httpRequestBase, Map<String, String> headers) {
+		httpRequestBase.setHeader(ACCEPT_ENCODING_HEADER, GZIP_ENCODING);
 		for (Entry<String, String> header : headers.entrySet()) {
 			httpRequestBase.setHeader(header.getKey(), header.getValue());
 		}
@@ -131,6 +145,7 @@ public class ServerUtilities {
 		String url = endPointInfo.getEndPoint();
 
         String params = null;
+        ResponseBodyParser responseBodyParser = endPointInfo.getResponseBodyParser();
 
         if(endPointInfo != null && endPointInfo.getRequestParams() != null){
             params = endPointInfo.getRequestParams();
@@ -140,16 +155,16 @@ public class ServerUtilities {
 		
 		switch (httpMethod) {
 			case GET:
-				responseParams = sendGetRequest(url, headers);
+				responseParams = sendGetRequest(url, headers, responseBodyParser);
 				break;
 			case POST:
-				responseParams = sendPostRequest(url, params, headers);
+				responseParams = sendPostRequest(url, params, headers, responseBodyParser);
 				break;
             case DELETE:
-                responseParams = sendDeleteRequest(url, headers);
+                responseParams = sendDeleteRequest(url, headers, responseBodyParser);
                 break;
             case PUT:
-                responseParams = sendPutRequest(url, params, headers);
+                responseParams = sendPutRequest(url, params, headers, responseBodyParser);
 				break;
 		}
 
@@ -157,7 +172,8 @@ public class ServerUtilities {
 
 	}
 
-	public static Map<String, String> sendGetRequest(String url, Map<String, String> headers)
+	public static Map<String, String> sendGetRequest(String url, Map<String, String> headers,
+	                                                 ResponseBodyParser responseBodyParser)
 			throws IDPTokenManagerException {
 		HttpGet httpGet = new HttpGet(url);
 		HttpGet httpGetWithHeaders = (HttpGet) buildHeaders(httpGet, headers);
@@ -166,9 +182,10 @@ public class ServerUtilities {
 
 		try {
 			HttpResponse response = httpClient.execute(httpGetWithHeaders);
-			responseParams.put(Constants.SERVER_RESPONSE_BODY, getResponseBody(response));
+			responseParams.put(Constants.SERVER_RESPONSE_BODY, getResponseBody(response, responseBodyParser));
 			responseParams.put(Constants.SERVER_RESPONSE_STATUS,
 					String.valueOf(response.getStatusLine().getStatusCode()));
+			putRetryAfter(responseParams, response);
 		} catch (ClientProtocolException e) {
 			String errorMsg = "Error occurred while sending 'Get' request due to an invalid client protocol being used";
 			responseParams.put(Constants.SERVER_RESPONSE_BODY, "Internal Server Error");
@@ -192,7 +209,8 @@ public class ServerUtilities {
 		return responseParams;
 	}
 
-    public static Map<String, String> sendDeleteRequest(String url, Map<String, String> headers)
+    public static Map<String, String> sendDeleteRequest(String url, Map<String, String> headers,
+                                                        ResponseBodyParser responseBodyParser)
             throws IDPTokenManagerException {
 
         Map<String, String> responseParams = new HashMap<String, String>();
@@ -204,9 +222,10 @@ public class ServerUtilities {
             HttpClient httpClient = getCertifiedHttpClient();
 
             HttpResponse response = httpClient.execute(httpDeleteWithHeaders);
-            responseParams.put(Constants.SERVER_RESPONSE_BODY, getResponseBody(response));
+            responseParams.put(Constants.SERVER_RESPONSE_BODY, getResponseBody(response, responseBodyParser));
             responseParams.put(Constants.SERVER_RESPONSE_STATUS,
                     String.valueOf(response.getStatusLine().getStatusCode()));
+            putRetryAfter(responseParams, response);
 
         } catch (ClientProtocolException e) {
 			String errorMsg = "Error occurred while sending 'Delete' request due to an invalid client protocol being used";
@@ -232,7 +251,8 @@ public class ServerUtilities {
         return responseParams;
     }
 
-    public static Map<String, String> sendPostRequest(String url, String params, Map<String, String> headers)
+    public static Map<String, String> sendPostRequest(String url, String params, Map<String, String> headers,
+                                                      ResponseBodyParser responseBodyParser)
             throws IDPTokenManagerException {
         HttpPost httpPost = new HttpPost(url);
         HttpClient httpClient = getCertifiedHttpClient();
@@ -251,8 +271,9 @@ public class ServerUtilities {
             HttpResponse response = httpClient.execute(httpPost);
             String status = String.valueOf(response.getStatusLine().getStatusCode());
 
-            responseParams.put(Constants.SERVER_RESPONSE_BODY, getResponseBody(response));
+            responseParams.put(Constants.SERVER_RESPONSE_BODY, getResponseBody(response, responseBodyParser));
             responseParams.put(Constants.SERVER_RESPONSE_STATUS, status);
+            putRetryAfter(responseParams, response);
 
         } catch (ClientProtocolException e) {
 			String errorMsg = "Error occurred while sending 'Post' request due to an invalid client protocol being used";
@@ -277,7 +298,8 @@ public class ServerUtilities {
         return responseParams;
     }
 
-    public static Map<String, String> sendPutRequest(String url, String params, Map<String, String> headers)
+    public static Map<String, String> sendPutRequest(String url, String params, Map<String, String> headers,
+                                                     ResponseBodyParser responseBodyParser)
 		    throws IDPTokenManagerException {
 
         HttpPut httpPut = new HttpPut(url);
@@ -296,7 +318,8 @@ public class ServerUtilities {
             HttpResponse response = httpClient.execute(httpPut);
             String status = String.valueOf(response.getStatusLine().getStatusCode());
             responseParams.put(Constants.SERVER_RESPONSE_STATUS, status);
-            responseParams.put(Constants.SERVER_RESPONSE_BODY, getResponseBody(response));
+            responseParams.put(Constants.SERVER_RESPONSE_BODY, getResponseBody(response, responseBodyParser));
+            putRetryAfter(responseParams, response);
 
         } catch (ClientProtocolException e) {
 			String errorMsg = "Error occurred while sending 'Put' request due to an invalid client protocol being used";
@@ -366,30 +389,47 @@ public class ServerUtilities {
 		return responseParams;
 	}
 
+	/**
+	 * Returns the HTTP client shared by all requests of the application. The client is created on first use along
+	 * with its trust store and its pool of keep-alive connections, so that later requests reuse open connections
+	 * and TLS sessions instead of loading the trust store and handshaking with the server again.
+	 *
+	 * @return - Shared HTTP client.
+	 */
 	public static HttpClient getCertifiedHttpClient() throws IDPTokenManagerException {
-		HttpClient client = null;
+		if (httpClient == null) {
+			synchronized (ServerUtilities.class) {
+				if (httpClient == null) {
+					httpClient = createHttpClient();
+				}
+			}
+		}
+		return httpClient;
+	}
+
+	private static HttpClient createHttpClient() throws IDPTokenManagerException {
 		InputStream inStream = null;
 		try {
+			SchemeRegistry schemeRegistry = new SchemeRegistry();
+			schemeRegistry.register(new Scheme("http", PlainSocketFactory.getSocketFactory(), Constants.HTTP));
 			if (Constants.SERVER_PROTOCOL.equalsIgnoreCase("https://")) {
 				KeyStore localTrustStore = KeyStore.getInstance("BKS");
 				inStream = IdentityProxy.getInstance().getContext().getResources().
 						openRawResource(R.raw.emm_truststore);
 				localTrustStore.load(inStream, Constants.TRUSTSTORE_PASSWORD.toCharArray());
 
-				SchemeRegistry schemeRegistry = new SchemeRegistry();
-				schemeRegistry.register(new Scheme("http", PlainSocketFactory.getSocketFactory(), Constants.HTTP));
 				SSLSocketFactory sslSocketFactory = new SSLSocketFactory(localTrustStore);
 				sslSocketFactory.setHostnameVerifier(SSLSocketFactory.ALLOW_ALL_HOSTNAME_VERIFIER);
 				schemeRegistry.register(new Scheme("https", sslSocketFactory, Constants.HTTPS));
-				HttpParams params = new BasicHttpParams();
-				ClientConnectionManager connectionManager = new ThreadSafeClientConnManager(params, schemeRegistry);
-
-				client = new DefaultHttpClient(connectionManager, params);
-
 			} else {
-				client = new DefaultHttpClient();
+				schemeRegistry.register(new Scheme("https", SSLSocketFactory.getSocketFactory(), Constants.HTTPS));
 			}
+			HttpParams params = new BasicHttpParams();
+			ConnManagerParams.setMaxTotalConnections(params, MAX_TOTAL_CONNECTIONS);
+			ConnManagerParams.setMaxConnectionsPerRoute(params, new ConnPerRouteBean(MAX_CONNECTIONS_PER_ROUTE));
+			ClientConnectionManager connectionManager = new ThreadSafeClientConnManager(params, schemeRegistry);
 
+			return new DefaultHttpClient(connectionManager, params);
 		} catch (KeyStoreException e) {
 			String errorMsg = "Error occurred while accessing keystore.";
 			Log.e(TAG, errorMsg);
@@ -417,17 +457,33 @@ public class ServerUtilities {
 		} finally {
 			StreamHandlerUtil.closeInputStream(inStream, TAG);
 		}
-		return client;
 	}
 
 	public static String getResponseBody(HttpResponse response) throws IDPTokenManagerException {
+		return getResponseBody(response, null);
+	}
+
+	/**
+	 * Read the response body. When a parser is given the body is streamed into it as it is read
+	 * from the connection and no string is built.
+	 *
+	 * @param response           - HTTP response.
+	 * @param responseBodyParser - Parser of the response body, or null to read it into a string.
+	 * @return - Response body, or null if it was handed to the parser.
+	 */
+	public static String getResponseBody(HttpResponse response, ResponseBodyParser responseBodyParser)
+			throws IDPTokenManagerException {
 
 		String responseBody = null;
 		HttpEntity entity = null;
 
 		try {
 			entity = response.getEntity();
-			responseBody = getResponseBodyContent(entity);
+			if (responseBodyParser != null) {
+				parseResponseBodyContent(entity, responseBodyParser);
+			} else {
+				responseBody = getResponseBodyContent(entity);
+			}
 		} catch (ParseException e) {
 			String errorMsg = "Error occurred while parsing response body.";
 			Log.e(TAG, errorMsg);
@@ -448,12 +504,55 @@ public class ServerUtilities {
 
 	public static String getResponseBodyContent(final HttpEntity entity) throws IOException, ParseException {
 
-		InputStream instream = entity.getContent();
+		long contentLength = entity.getContentLength();
+		Reader reader = getResponseBodyReader(entity);
+		StringBuilder buffer = new StringBuilder(contentLength > 0 && !isGzipEncoded(entity) ?
+		                                         (int) contentLength : BUFFER_SIZE);
+
+		try {
+			char[] bufferSize = new char[BUFFER_SIZE];
+			int length;
+
+			while ((length = reader.read(bufferSize)) != -1) {
+				buffer.append(bufferSize, 0, length);
+			}
+		} finally {
+			reader.close();
+		}
+		return buffer.toString();
+	}
+
+	/**
+	 * Stream the response body into the given parser.
+	 *
+	 * @param entity             - HTTP entity of the response.
+	 * @param responseBodyParser - Parser of the response body.
+	 */
+	public static void parseResponseBodyContent(final HttpEntity entity, ResponseBodyParser responseBodyParser)
+			throws IOException, ParseException {
+
+		Reader reader = getResponseBodyReader(entity);
+
+		try {
+			responseBodyParser.parseResponseBody(reader);
+		} finally {
+			reader.close();
+		}
+	}
 
-		if (entity.getContentLength() > Integer.MAX_VALUE) {
-			String errorMsg = "HTTP entity too large to be buffered in memory.";
+	/**
+	 * Open a buffered reader of the response body, which decodes gzip encoded bodies and fails
+	 * once more than the maximum response body size has been read.
+	 *
+	 * @param entity - HTTP entity of the response.
+	 * @return - Reader of the decoded response body.
+	 */
+	private static Reader getResponseBodyReader(final HttpEntity entity) throws IOException, ParseException {
+
+		if (entity.getContentLength() > MAX_RESPONSE_BODY_SIZE) {
+			String errorMsg = "HTTP entity too large to be read into memory.";
 			Log.e(TAG, errorMsg);
-			throw new IllegalArgumentException(errorMsg);
+			throw new IOException(errorMsg);
 		}
 
 		String charset = getContentCharSet(entity);
@@ -462,20 +561,37 @@ public class ServerUtilities {
 			charset = HTTP.DEFAULT_CONTENT_CHARSET;
 		}
 
-		Reader reader = new InputStreamReader(instream, charset);
-		StringBuilder buffer = new StringBuilder();
+		InputStream instream = entity.getContent();
 
 		try {
-			char[] bufferSize = new char[1024];
-			int length;
-
-			while ((length = reader.read(bufferSize)) != -1) {
-				buffer.append(bufferSize, 0, length);
+			if (isGzipEncoded(entity)) {
+				instream = new GZIPInputStream(instream, BUFFER_SIZE);
 			}
-		} finally {
-			reader.close();
+			return new BufferedReader(new InputStreamReader(new BoundedInputStream(instream), charset),
+			                          BUFFER_SIZE);
+		} catch (IOException e) {
+			StreamHandlerUtil.closeInputStream(instream, TAG);
+			throw e;
+		}
+	}
+
+	private static boolean isGzipEncoded(final HttpEntity entity) {
+		return entity.getContentEncoding() != null &&
+		       GZIP_ENCODING.equalsIgnoreCase(entity.getContentEncoding().getValue());
+	}
+
+	/**
+	 * Pass the Retry-After header of the response on to the caller, which uses it as a hint
+	 * of when to contact the server next.
+	 *
+	 * @param responseParams - Response parameters passed to the caller.
+	 * @param response       - HTTP response.
+	 */
+	private static void putRetryAfter(Map<String, String> responseParams, HttpResponse response) {
+		Header retryAfter = response.getFirstHeader(RETRY_AFTER_HEADER);
+		if (retryAfter != null) {
+			responseParams.put(Constants.SERVER_RESPONSE_RETRY_AFTER, retryAfter.getValue());
 		}
-		return buffer.toString();
 	}
 
 	public static String getContentCharSet(final HttpEntity entity) throws ParseException {
@@ -496,4 +612,55 @@ public class ServerUtilities {
 		return charSet;
 	}
 
+	/**
+	 * Input stream which fails once more than the maximum response body size has been read
+	 * from it, so that a large or badly compressed response cannot exhaust the memory.
+	 */
+	private static class BoundedInputStream extends FilterInputStream {
+		private long count;
+
+		public BoundedInputStream(InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public int read() throws IOException {
+			int value = super.read();
+			if (value != -1) {
+				count(1);
+			}
+			return value;
+		}
+
+		@Override
+		public int read(byte[] buffer, int offset, int length) throws IOException {
+			int bytesRead = super.read(buffer, offset, length);
+			if (bytesRead > 0) {
+				count(bytesRead);
+			}
+			return bytesRead;
+		}
+
+		@Override
+		public long skip(long length) throws IOException {
+			long bytesSkipped = super.skip(length);
+			count(bytesSkipped);
+			return bytesSkipped;
+		}
+
+		@Override
+		public boolean markSupported() {
+			return false;
+		}
+
+		private void count(long length) throws IOException {
+			count += length;
+			if (count > MAX_RESPONSE_BODY_SIZE) {
+				String errorMsg = "HTTP entity too large to be read into memory.";
+				Log.e(TAG, errorMsg);
+				throw new IOException(errorMsg);
+			}
+		}
+	}
+
 }
@@ -0,0 +1,206 @@
+/*
+ * Copyright (c) 2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ * 
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.emm.agent.proxy;
+
+import org.junit.After;
+import org.junit.Test;
+import org.wso2.emm.agent.proxy.beans.Token;
+import org.wso2.emm.agent.proxy.interfaces.TokenCallBack;
+import org.wso2.emm.agent.proxy.utils.Constants;
+
+import java.util.Date;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TokenManagerTest {
+
+	private static final long TIMEOUT = 5000;
+	private static final Executor DIRECT_EXECUTOR = new Executor() {
+		@Override
+		public void execute(Runnable runnable) {
+			runnable.run();
+		}
+	};
+
+	private TokenManager tokenManager;
+
+	@After
+	public void tearDown() {
+		if (tokenManager != null) {
+			tokenManager.shutdown();
+		}
+	}
+
+	@Test
+	public void testConcurrentRequestsShareOneRefresh() throws Exception {
+		FakeTokenEndPoint tokenEndPoint = new FakeTokenEndPoint(60000);
+		tokenEndPoint.block();
+		tokenManager = new TokenManager(tokenEndPoint, 1000, DIRECT_EXECUTOR);
+		tokenManager.setToken(createToken("expired", -1000));
+
+		int callerCount = 10;
+		RecordingCallBack[] callBacks = new RecordingCallBack[callerCount];
+		for (int i = 0; i < callerCount; i++) {
+			callBacks[i] = new RecordingCallBack();
+			tokenManager.requestToken(callBacks[i]);
+		}
+		for (RecordingCallBack callBack : callBacks) {
+			assertEquals("Callers must wait for the refresh", 1, callBack.latch.getCount());
+		}
+
+		tokenEndPoint.release();
+		for (RecordingCallBack callBack : callBacks) {
+			assertTrue(callBack.latch.await(TIMEOUT, TimeUnit.MILLISECONDS));
+			assertEquals(Constants.REQUEST_SUCCESSFUL, callBack.status);
+			assertEquals("token-1", callBack.token.getAccessToken());
+		}
+		assertEquals(1, tokenEndPoint.refreshCount.get());
+	}
+
+	@Test
+	public void testTokenIsRenewedBeforeExpiry() throws Exception {
+		FakeTokenEndPoint tokenEndPoint = new FakeTokenEndPoint(60000);
+		tokenManager = new TokenManager(tokenEndPoint, 100, DIRECT_EXECUTOR);
+		tokenManager.setToken(createToken("current", 300));
+
+		awaitAccessToken("token-1");
+		assertEquals(1, tokenEndPoint.refreshCount.get());
+	}
+
+	@Test
+	public void testCurrentTokenIsPassedOnWhileRenewing() throws Exception {
+		FakeTokenEndPoint tokenEndPoint = new FakeTokenEndPoint(60000);
+		tokenEndPoint.block();
+		tokenManager = new TokenManager(tokenEndPoint, 1000, DIRECT_EXECUTOR);
+		Token token = createToken("current", 2000);
+		tokenManager.setToken(token);
+		assertTrue(tokenEndPoint.started.await(TIMEOUT, TimeUnit.MILLISECONDS));
+
+		RecordingCallBack callBack = new RecordingCallBack();
+		tokenManager.requestToken(callBack);
+		assertEquals(0, callBack.latch.getCount());
+		assertEquals(Constants.REQUEST_SUCCESSFUL, callBack.status);
+		assertSame(token, callBack.token);
+
+		tokenEndPoint.release();
+		awaitAccessToken("token-1");
+		assertEquals(1, tokenEndPoint.refreshCount.get());
+	}
+
+	@Test
+	public void testFailedRefreshIsReportedToWaitingCallers() throws Exception {
+		FakeTokenEndPoint tokenEndPoint = new FakeTokenEndPoint(60000);
+		tokenEndPoint.fail = true;
+		tokenManager = new TokenManager(tokenEndPoint, 1000, DIRECT_EXECUTOR);
+		Token token = createToken("expired", -1000);
+		tokenManager.setToken(token);
+
+		RecordingCallBack callBack = new RecordingCallBack();
+		tokenManager.requestToken(callBack);
+		assertTrue(callBack.latch.await(TIMEOUT, TimeUnit.MILLISECONDS));
+		assertEquals(Constants.ACCESS_FAILURE, callBack.status);
+		assertSame(token, callBack.token);
+	}
+
+	@Test
+	public void testRequestWithoutToken() {
+		FakeTokenEndPoint tokenEndPoint = new FakeTokenEndPoint(60000);
+		tokenManager = new TokenManager(tokenEndPoint, 1000, DIRECT_EXECUTOR);
+
+		RecordingCallBack callBack = new RecordingCallBack();
+		tokenManager.requestToken(callBack);
+		assertEquals(0, callBack.latch.getCount());
+		assertEquals(Constants.ACCESS_FAILURE, callBack.status);
+		assertNull(callBack.token);
+		assertEquals(0, tokenEndPoint.refreshCount.get());
+	}
+
+	private void awaitAccessToken(String accessToken) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + TIMEOUT;
+		while (!accessToken.equals(tokenManager.getToken().getAccessToken()) &&
+		       System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertEquals(accessToken, tokenManager.getToken().getAccessToken());
+	}
+
+	private static Token createToken(String accessToken, long timeToExpire) {
+		Token token = new Token();
+		token.setAccessToken(accessToken);
+		token.setRefreshToken("refresh-" + accessToken);
+		token.setDate(new Date(System.currentTimeMillis() + timeToExpire));
+		return token;
+	}
+
+	private static class FakeTokenEndPoint implements TokenManager.TokenEndPoint {
+		private final long lifetime;
+		private final AtomicInteger refreshCount = new AtomicInteger();
+		private final CountDownLatch started = new CountDownLatch(1);
+		private volatile CountDownLatch gate;
+		private volatile boolean fail;
+
+		private FakeTokenEndPoint(long lifetime) {
+			this.lifetime = lifetime;
+		}
+
+		private void block() {
+			gate = new CountDownLatch(1);
+		}
+
+		private void release() {
+			gate.countDown();
+		}
+
+		@Override
+		public Token refreshToken(Token token) throws IDPTokenManagerException {
+			started.countDown();
+			try {
+				if (gate != null) {
+					gate.await(TIMEOUT, TimeUnit.MILLISECONDS);
+				}
+			} catch (InterruptedException e) {
+				throw new IDPTokenManagerException(e);
+			}
+			int count = refreshCount.incrementAndGet();
+			if (fail) {
+				throw new IDPTokenManagerException("Token end point is not available.");
+			}
+			return createToken("token-" + count, lifetime);
+		}
+	}
+
+	private static class RecordingCallBack implements TokenCallBack {
+		private final CountDownLatch latch = new CountDownLatch(1);
+		private volatile Token token;
+		private volatile String status;
+
+		@Override
+		public void onReceiveTokenResult(Token token, String status) {
+			this.token = token;
+			this.status = status;
+			latch.countDown();
+		}
+	}
+}
@@ -20,9 +20,9 @@ package org.wso2.carbon.mdm.services.android;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.device.mgt.common.Device;
 import org.wso2.carbon.device.mgt.common.DeviceIdentifier;
 import org.wso2.carbon.device.mgt.common.DeviceManagementException;
-import org.wso2.carbon.device.mgt.common.app.mgt.ApplicationManagementException;
 import org.wso2.carbon.device.mgt.common.notification.mgt.*;
 import org.wso2.carbon.device.mgt.common.operation.mgt.Operation;
 import org.wso2.carbon.device.mgt.common.operation.mgt.OperationManagementException;
@@ -71,7 +71,8 @@ public class OperationMgtService {
 
         DeviceIdentifier deviceIdentifier = AndroidAPIUtils.convertToDeviceIdentifierObject(id);
         try {
-            if (!AndroidDeviceUtils.isValidDeviceIdentifier(deviceIdentifier)) {
+            Device device = AndroidAPIUtils.getDeviceManagementService().getDevice(deviceIdentifier);
+            if (!AndroidDeviceUtils.isValidDevice(device)) {
                 String errorMessage = "Device not found for identifier '" + id + "'";
                 message = Message.responseMessage(errorMessage).
                         responseCode(Response.Status.BAD_REQUEST.toString()).build();
@@ -82,16 +83,14 @@ public class OperationMgtService {
                 log.debug("Invoking Android pending operations:" + id);
             }
             if (resultOperations != null && !resultOperations.isEmpty()) {
-                updateOperations(id, resultOperations);
+                updateOperations(device, resultOperations);
             }
         } catch (OperationManagementException e) {
             log.error("Issue in retrieving operation management service instance", e);
         } catch (PolicyComplianceException e) {
-            log.error("Issue in updating Monitoring operation");
+            log.error("Issue in updating Monitoring operation", e);
         } catch (DeviceManagementException e) {
             log.error("Issue in retrieving device management service instance", e);
-        } catch (ApplicationManagementException e) {
-            log.error("Issue in retrieving application management service instance", e);
         } catch (NotificationManagementException e) {
 	        log.error("Issue in retrieving Notification management service instance", e);
         }
@@ -903,9 +902,9 @@ public class OperationMgtService {
         }
     }
 
-    private void updateOperations(String deviceId, List<? extends Operation> operations)
-            throws OperationManagementException, PolicyComplianceException,
-            ApplicationManagementException, NotificationManagementException, DeviceManagementException {
+    private void updateOperations(Device device, List<? extends Operation> operations)
+            throws OperationManagementException, PolicyComplianceException, NotificationManagementException {
+        String deviceId = device.getDeviceIdentifier();
         for (org.wso2.carbon.device.mgt.common.operation.mgt.Operation operation : operations) {
             AndroidAPIUtils.updateOperation(deviceId, operation);
 	        if(operation.getStatus().equals(OPERATION_ERROR_STATUS)){
@@ -914,7 +913,7 @@ public class OperationMgtService {
 		        DeviceIdentifier id = new DeviceIdentifier();
 		        id.setId(deviceId);
 		        id.setType(DEVICE_TYPE_ANDROID);
-		        String deviceName = AndroidAPIUtils.getDeviceManagementService().getDevice(id).getName();
+		        String deviceName = device.getName();
 		        notification.setOperationId(operation.getId());
 		        notification.setStatus(org.wso2.carbon.device.mgt.common.notification.mgt.Notification.
 				        Status.NEW.toString());
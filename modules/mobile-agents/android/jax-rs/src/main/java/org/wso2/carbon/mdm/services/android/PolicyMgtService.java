@@ -23,8 +23,10 @@ package org.wso2.carbon.mdm.services.android;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.wso2.carbon.device.mgt.common.DeviceIdentifier;
+import org.wso2.carbon.mdm.services.android.bean.EffectivePolicyEntry;
 import org.wso2.carbon.mdm.services.android.exception.AndroidAgentException;
 import org.wso2.carbon.mdm.services.android.util.AndroidAPIUtils;
+import org.wso2.carbon.mdm.services.android.util.EffectivePolicyCache;
 import org.wso2.carbon.mdm.services.android.util.Message;
 import org.wso2.carbon.policy.mgt.common.FeatureManagementException;
 import org.wso2.carbon.policy.mgt.common.Policy;
@@ -34,6 +36,8 @@ import org.wso2.carbon.policy.mgt.core.PolicyManagerService;
 
 import javax.jws.WebService;
 import javax.ws.rs.*;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.GenericEntity;
 import javax.ws.rs.core.Response;
 import java.util.List;
 
@@ -46,47 +50,66 @@ public class PolicyMgtService {
 
     @GET
     @Path("{deviceId}")
-    public Message getEffectivePolicy(@HeaderParam("Accept") String acceptHeader,
-                                      @PathParam("deviceId") String id) throws AndroidAgentException {
+    public Response getEffectivePolicy(@HeaderParam("Accept") String acceptHeader,
+                                       @HeaderParam("If-None-Match") String ifNoneMatch,
+                                       @PathParam("deviceId") String id) throws AndroidAgentException {
 
         DeviceIdentifier deviceIdentifier = AndroidAPIUtils.convertToDeviceIdentifierObject(id);
-        Message responseMessage = new Message();
+        Message responseMessage;
         Policy policy;
         try {
+            // The effective policy is computed on every request, as computing it is what adds the policy operation
+            // of a non-compliant device again. Only the response body is saved when the agent has the policy.
             PolicyManagerService policyManagerService = AndroidAPIUtils.getPolicyManagerService();
             policy = policyManagerService.getEffectivePolicy(deviceIdentifier);
             if (policy == null) {
                 responseMessage = Message.responseMessage("No effective policy found").
                         responseCode(Response.Status.NO_CONTENT.toString()).build();
-            } else {
-                responseMessage = Message.responseMessage("Effective policy added to operation").
-                        responseCode(Response.Status.OK.toString()).build();
+                return Response.ok(responseMessage).build();
             }
         } catch (PolicyManagementException e) {
             String msg = "Error occurred while getting the policy.";
             log.error(msg, e);
             throw new AndroidAgentException(msg, e);
         }
-        return responseMessage;
+        EntityTag eTag = new EntityTag(EffectivePolicyCache.getPolicyETag(policy));
+        if (EffectivePolicyCache.isNotModified(ifNoneMatch, eTag.getValue())) {
+            return Response.notModified(eTag).build();
+        }
+        responseMessage = Message.responseMessage("Effective policy added to operation").
+                responseCode(Response.Status.OK.toString()).build();
+        return Response.ok(responseMessage).tag(eTag).build();
     }
 
     @GET
     @Path("/features/{deviceId}")
-    public List<ProfileFeature> getEffectiveFeatures(@HeaderParam("Accept") String acceptHeader,
-                                                     @PathParam("deviceId") String id) throws AndroidAgentException {
-        List<ProfileFeature> profileFeatures;
+    public Response getEffectiveFeatures(@HeaderParam("Accept") String acceptHeader,
+                                         @HeaderParam("If-None-Match") String ifNoneMatch,
+                                         @PathParam("deviceId") String id) throws AndroidAgentException {
         DeviceIdentifier deviceIdentifier = AndroidAPIUtils.convertToDeviceIdentifierObject(id);
-        try {
-            PolicyManagerService policyManagerService = AndroidAPIUtils.getPolicyManagerService();
-            profileFeatures = policyManagerService.getEffectiveFeatures(deviceIdentifier);
-            if (profileFeatures == null) {
-                Response.status(Response.Status.NOT_FOUND);
+        EffectivePolicyEntry effectiveFeatures = EffectivePolicyCache.getEffectiveFeatures(deviceIdentifier);
+        if (effectiveFeatures == null) {
+            List<ProfileFeature> profileFeatures;
+            try {
+                String revision = EffectivePolicyCache.getPolicyRevision();
+                PolicyManagerService policyManagerService = AndroidAPIUtils.getPolicyManagerService();
+                profileFeatures = policyManagerService.getEffectiveFeatures(deviceIdentifier);
+                if (profileFeatures == null) {
+                    return Response.noContent().build();
+                }
+                effectiveFeatures = EffectivePolicyCache.putEffectiveFeatures(deviceIdentifier, revision,
+                        profileFeatures);
+            } catch (FeatureManagementException e) {
+                String msg = "Error occurred while getting the features.";
+                log.error(msg, e);
+                throw new AndroidAgentException(msg, e);
             }
-        } catch (FeatureManagementException e) {
-            String msg = "Error occurred while getting the features.";
-            log.error(msg, e);
-            throw new AndroidAgentException(msg, e);
         }
-        return profileFeatures;
+        EntityTag eTag = new EntityTag(effectiveFeatures.getETag());
+        if (EffectivePolicyCache.isNotModified(ifNoneMatch, effectiveFeatures.getETag())) {
+            return Response.notModified(eTag).build();
+        }
+        return Response.ok(new GenericEntity<List<ProfileFeature>>(effectiveFeatures.getProfileFeatures()) {
+        }).tag(eTag).build();
     }
 }
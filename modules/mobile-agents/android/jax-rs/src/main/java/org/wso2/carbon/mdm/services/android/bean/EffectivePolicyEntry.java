@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * you may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.mdm.services.android.bean;
+
+import org.wso2.carbon.policy.mgt.common.ProfileFeature;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * Cached effective features of a device along with the policy revision it was computed for and its entity tag.
+ */
+public class EffectivePolicyEntry implements Serializable {
+
+	private String revision;
+	private String eTag;
+	private List<ProfileFeature> profileFeatures;
+
+	public EffectivePolicyEntry(String revision, String eTag, List<ProfileFeature> profileFeatures) {
+		this.revision = revision;
+		this.eTag = eTag;
+		this.profileFeatures = profileFeatures;
+	}
+
+	public String getRevision() {
+		return revision;
+	}
+
+	public String getETag() {
+		return eTag;
+	}
+
+	public List<ProfileFeature> getProfileFeatures() {
+		return profileFeatures;
+	}
+}
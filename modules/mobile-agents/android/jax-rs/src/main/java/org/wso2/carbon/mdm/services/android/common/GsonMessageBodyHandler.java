@@ -20,6 +20,12 @@ package org.wso2.carbon.mdm.services.android.common;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import org.wso2.carbon.device.mgt.common.Device;
+import org.wso2.carbon.device.mgt.common.app.mgt.Application;
+import org.wso2.carbon.device.mgt.common.operation.mgt.Operation;
+import org.wso2.carbon.device.mgt.core.operation.mgt.CommandOperation;
+import org.wso2.carbon.device.mgt.core.operation.mgt.ProfileOperation;
+import org.wso2.carbon.policy.mgt.common.ProfileFeature;
 
 import javax.ws.rs.Consumes;
 import javax.ws.rs.Produces;
@@ -41,18 +47,26 @@ import static javax.ws.rs.core.MediaType.APPLICATION_JSON;
 @Consumes(APPLICATION_JSON)
 public class GsonMessageBodyHandler implements MessageBodyWriter<Object>, MessageBodyReader<Object> {
 
-    private Gson gson;
     private static final String UTF_8 = "UTF-8";
+    private static final int BUFFER_SIZE = 8192;
+    /**
+     * Gson is thread safe and caches the type adapters it creates, hence a single instance serves all requests.
+     */
+    private static final Gson gson = createGson();
 
     public boolean isReadable(Class<?> aClass, Type type, Annotation[] annotations, MediaType mediaType) {
         return true;
     }
 
-    private Gson getGson() {
-        if (gson == null) {
-            final GsonBuilder gsonBuilder = new GsonBuilder();
-            gson = gsonBuilder.create();
-        }
+    private static Gson createGson() {
+        Gson gson = new GsonBuilder().create();
+        // Creating the adapters of the beans exchanged on every device poll up front
+        gson.getAdapter(Operation.class);
+        gson.getAdapter(CommandOperation.class);
+        gson.getAdapter(ProfileOperation.class);
+        gson.getAdapter(Device.class);
+        gson.getAdapter(Application.class);
+        gson.getAdapter(ProfileFeature.class);
         return gson;
     }
 
@@ -60,10 +74,10 @@ public class GsonMessageBodyHandler implements MessageBodyWriter<Object>, Messag
             MultivaluedMap<String, String> stringStringMultivaluedMap, InputStream entityStream)
             throws IOException, WebApplicationException {
 
-        InputStreamReader reader = new InputStreamReader(entityStream, "UTF-8");
+        Reader reader = new BufferedReader(new InputStreamReader(entityStream, UTF_8), BUFFER_SIZE);
 
         try {
-            return getGson().fromJson(reader, type);
+            return gson.fromJson(reader, type);
         } finally {
             reader.close();
         }
@@ -81,15 +95,9 @@ public class GsonMessageBodyHandler implements MessageBodyWriter<Object>, Messag
             MultivaluedMap<String, Object> stringObjectMultivaluedMap, OutputStream entityStream)
             throws IOException, WebApplicationException {
 
-        OutputStreamWriter writer = new OutputStreamWriter(entityStream, UTF_8);
+        Writer writer = new BufferedWriter(new OutputStreamWriter(entityStream, UTF_8), BUFFER_SIZE);
         try {
-            Type jsonType;
-            if (type.equals(type)) {
-                jsonType = type;
-            } else {
-                jsonType = type;
-            }
-            getGson().toJson(object, jsonType, writer);
+            gson.toJson(object, type, writer);
         } finally {
             writer.close();
         }
@@ -18,13 +18,10 @@
 
 package org.wso2.carbon.mdm.services.android.util;
 
-import com.google.gson.JsonArray;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.wso2.carbon.context.PrivilegedCarbonContext;
-import org.wso2.carbon.device.mgt.common.Device;
 import org.wso2.carbon.device.mgt.common.DeviceIdentifier;
 import org.wso2.carbon.device.mgt.common.DeviceManagementConstants;
 import org.wso2.carbon.device.mgt.common.DeviceManagementException;
@@ -41,6 +38,8 @@ import org.wso2.carbon.policy.mgt.core.PolicyManagerService;
 
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import java.io.IOException;
+import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -114,12 +113,7 @@ public class AndroidAPIUtils {
         if (status > 0) {
             GCMService gcmService = getGCMService();
             if (gcmService.isGCMEnabled()) {
-                List<DeviceIdentifier> deviceIDList = deviceIDHolder.getValidDeviceIDList();
-                List<Device> devices = new ArrayList<Device>(deviceIDList.size());
-                for (DeviceIdentifier deviceIdentifier : deviceIDList) {
-                    devices.add(getDeviceManagementService().getDevice(deviceIdentifier));
-                }
-                getGCMService().sendNotification(operation.getCode(), devices);
+                GCMPushDispatcher.getInstance().dispatch(operation.getCode(), deviceIDHolder.getValidDeviceList());
             }
         }
         if (!deviceIDHolder.getErrorDeviceIdList().isEmpty()) {
@@ -170,8 +164,13 @@ public class AndroidAPIUtils {
         return notificationManagementService;
     }
 
+    /**
+     * Stores the result of an operation executed by a device. Compliance statuses are checked before the result is
+     * stored, application lists reported by the device are stored in the background by the
+     * {@link OperationResultProcessor}.
+     */
     public static void updateOperation(String deviceId, Operation operation)
-            throws OperationManagementException, PolicyComplianceException, ApplicationManagementException {
+            throws OperationManagementException, PolicyComplianceException {
         DeviceIdentifier deviceIdentifier = new DeviceIdentifier();
         deviceIdentifier.setId(deviceId);
         deviceIdentifier.setType(DeviceManagementConstants.MobileDeviceTypes.MOBILE_DEVICE_TYPE_ANDROID);
@@ -185,7 +184,7 @@ public class AndroidAPIUtils {
             if (log.isDebugEnabled()) {
                 log.info("Received applications list from device '" + deviceId + "'");
             }
-            updateApplicationList(operation, deviceIdentifier);
+            OperationResultProcessor.getInstance().processApplicationList(deviceIdentifier, operation);
         }
 
         getDeviceManagementService().updateOperation(deviceIdentifier, operation);
@@ -199,22 +198,55 @@ public class AndroidAPIUtils {
         return operations;
     }
 
-    private static void updateApplicationList(Operation operation, DeviceIdentifier deviceIdentifier)
+    static void updateApplicationList(Operation operation, DeviceIdentifier deviceIdentifier)
             throws ApplicationManagementException {
-        // Parsing json string to get applications list.
-        JsonElement jsonElement = new JsonParser().parse(operation.getOperationResponse());
-        JsonArray jsonArray = jsonElement.getAsJsonArray();
-        Application app;
-        List<Application> applications = new ArrayList<Application>(jsonArray.size());
-        for (JsonElement element : jsonArray) {
-            app = new Application();
-            app.setName(element.getAsJsonObject().
-                    get(AndroidConstants.ApplicationProperties.NAME).getAsString());
-            app.setApplicationIdentifier(element.getAsJsonObject().
-                    get(AndroidConstants.ApplicationProperties.IDENTIFIER).getAsString());
-            app.setPlatform(DeviceManagementConstants.MobileDeviceTypes.MOBILE_DEVICE_TYPE_ANDROID);
-            applications.add(app);
+        List<Application> applications;
+        try {
+            applications = parseApplicationList(operation.getOperationResponse());
+        } catch (IOException e) {
+            String msg = "Error occurred while parsing the applications list of device '" +
+                    deviceIdentifier.getId() + "'";
+            log.error(msg, e);
+            throw new ApplicationManagementException(msg, e);
         }
+        if (ApplicationInventoryCache.isUnchanged(deviceIdentifier, applications)) {
+            if (log.isDebugEnabled()) {
+                log.debug("Applications list of device '" + deviceIdentifier.getId() + "' has not changed");
+            }
+            return;
+        }
+        ApplicationInventoryCache.invalidate(deviceIdentifier);
         getApplicationManagerService().updateApplicationListInstalledInDevice(deviceIdentifier, applications);
+        ApplicationInventoryCache.put(deviceIdentifier, applications);
+    }
+
+    private static List<Application> parseApplicationList(String applicationList) throws IOException {
+        // Reading the json array of applications without building the whole json tree.
+        List<Application> applications = new ArrayList<Application>();
+        JsonReader reader = new JsonReader(new StringReader(applicationList));
+        try {
+            reader.beginArray();
+            while (reader.hasNext()) {
+                Application app = new Application();
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String name = reader.nextName();
+                    if (AndroidConstants.ApplicationProperties.NAME.equals(name)) {
+                        app.setName(reader.nextString());
+                    } else if (AndroidConstants.ApplicationProperties.IDENTIFIER.equals(name)) {
+                        app.setApplicationIdentifier(reader.nextString());
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+                app.setPlatform(DeviceManagementConstants.MobileDeviceTypes.MOBILE_DEVICE_TYPE_ANDROID);
+                applications.add(app);
+            }
+            reader.endArray();
+        } finally {
+            reader.close();
+        }
+        return applications;
     }
 }
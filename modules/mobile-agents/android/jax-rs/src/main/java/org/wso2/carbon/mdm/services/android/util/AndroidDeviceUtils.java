@@ -20,11 +20,16 @@ package org.wso2.carbon.mdm.services.android.util;
 
 import org.apache.commons.lang.StringUtils;
 import org.wso2.carbon.device.mgt.common.*;
+import org.wso2.carbon.device.mgt.core.service.DeviceManagementProviderService;
 import org.wso2.carbon.mdm.services.android.exception.BadRequestException;
 
 import javax.ws.rs.core.MediaType;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * Util class for holding Android device related util methods.
@@ -32,6 +37,17 @@ import java.util.List;
 public class AndroidDeviceUtils {
 
     private static final String COMMA_SEPARATION_PATTERN = ", ";
+    /**
+     * Identifier lists longer than this are resolved by paging through the Android devices of the tenant
+     * instead of looking up each device on its own.
+     */
+    private static final int BULK_LOOKUP_THRESHOLD = 50;
+    private static final int BULK_LOOKUP_PAGE_SIZE = 1000;
+    /**
+     * Number of devices scanned per identifier before the identifiers still missing are looked up one by one, so
+     * that a short list is never resolved by paging through a large tenant.
+     */
+    private static final int BULK_LOOKUP_DEVICES_PER_ID = 20;
 
     public DeviceIDHolder validateDeviceIdentifiers(List<String> deviceIDs,
                                                     Message message, MediaType responseMediaType) {
@@ -43,6 +59,14 @@ public class AndroidDeviceUtils {
 
         List<String> errorDeviceIdList = new ArrayList<String>();
         List<DeviceIdentifier> validDeviceIDList = new ArrayList<DeviceIdentifier>();
+        List<Device> validDeviceList = new ArrayList<Device>();
+
+        Map<String, Device> devices;
+        try {
+            devices = getDevices(AndroidAPIUtils.getDeviceManagementService(), deviceIDs);
+        } catch (DeviceManagementException e) {
+            devices = null;
+        }
 
         int deviceIDCounter = 0;
         for (String deviceID : deviceIDs) {
@@ -55,26 +79,29 @@ public class AndroidDeviceUtils {
                 continue;
             }
 
-            try {
+            if (devices == null) {
+                errorDeviceIdList.add(String.format(AndroidConstants.DeviceConstants.DEVICE_ID_SERVICE_NOT_FOUND,
+                        deviceIDCounter));
+                continue;
+            }
+
+            Device device = devices.get(deviceID);
+            if (isValidDevice(device)) {
                 DeviceIdentifier deviceIdentifier = new DeviceIdentifier();
                 deviceIdentifier.setId(deviceID);
                 deviceIdentifier.setType(DeviceManagementConstants.MobileDeviceTypes.
                         MOBILE_DEVICE_TYPE_ANDROID);
-
-                if (isValidDeviceIdentifier(deviceIdentifier)) {
-                    validDeviceIDList.add(deviceIdentifier);
-                } else {
-                    errorDeviceIdList.add(String.format(AndroidConstants.DeviceConstants.DEVICE_ID_NOT_FOUND,
-                            deviceIDCounter));
-                }
-            } catch (DeviceManagementException e) {
-                errorDeviceIdList.add(String.format(AndroidConstants.DeviceConstants.DEVICE_ID_SERVICE_NOT_FOUND,
+                validDeviceIDList.add(deviceIdentifier);
+                validDeviceList.add(device);
+            } else {
+                errorDeviceIdList.add(String.format(AndroidConstants.DeviceConstants.DEVICE_ID_NOT_FOUND,
                         deviceIDCounter));
             }
         }
 
         DeviceIDHolder deviceIDHolder = new DeviceIDHolder();
         deviceIDHolder.setValidDeviceIDList(validDeviceIDList);
+        deviceIDHolder.setValidDeviceList(validDeviceList);
         deviceIDHolder.setErrorDeviceIdList(errorDeviceIdList);
 
         return deviceIDHolder;
@@ -87,6 +114,69 @@ public class AndroidDeviceUtils {
     public static boolean isValidDeviceIdentifier(DeviceIdentifier deviceIdentifier) throws DeviceManagementException {
         Device device = AndroidAPIUtils.getDeviceManagementService().
                 getDevice(deviceIdentifier);
+        return isValidDevice(device);
+    }
+
+    /**
+     * Looks up the Android devices of the given identifiers. Short lists are looked up device by device, longer
+     * ones are resolved with a few paged queries over the Android devices of the tenant, which stop as soon as
+     * every identifier has been found. The scan covers at most a fixed number of devices per identifier, and the
+     * identifiers it did not reach are looked up device by device.
+     *
+     * @return the devices found, keyed by their identifier
+     */
+    Map<String, Device> getDevices(DeviceManagementProviderService deviceManagementService, List<String> deviceIDs)
+            throws DeviceManagementException {
+        Set<String> pendingIDs = new HashSet<String>(deviceIDs);
+        pendingIDs.remove(null);
+        pendingIDs.remove("");
+        Map<String, Device> devices = new HashMap<String, Device>(pendingIDs.size() * 2);
+
+        if (pendingIDs.size() > BULK_LOOKUP_THRESHOLD && scanDevices(deviceManagementService, pendingIDs, devices)) {
+            // Every Android device of the tenant was scanned, the identifiers still pending do not exist.
+            return devices;
+        }
+        for (String deviceID : pendingIDs) {
+            Device device = deviceManagementService.getDevice(
+                    AndroidAPIUtils.convertToDeviceIdentifierObject(deviceID));
+            if (device != null) {
+                devices.put(deviceID, device);
+            }
+        }
+        return devices;
+    }
+
+    /**
+     * Pages through the Android devices of the tenant, moving the devices of the pending identifiers into the
+     * given map, until every identifier is found or the scan limit of the identifiers is reached.
+     *
+     * @return true if every Android device of the tenant was scanned
+     */
+    private boolean scanDevices(DeviceManagementProviderService deviceManagementService, Set<String> pendingIDs,
+                             Map<String, Device> devices) throws DeviceManagementException {
+        int scanLimit = pendingIDs.size() * BULK_LOOKUP_DEVICES_PER_ID;
+        int startIndex = 0;
+        List<?> page;
+        do {
+            PaginationRequest request = new PaginationRequest(startIndex, BULK_LOOKUP_PAGE_SIZE);
+            request.setDeviceType(DeviceManagementConstants.MobileDeviceTypes.MOBILE_DEVICE_TYPE_ANDROID);
+            PaginationResult result = deviceManagementService.getAllDevices(request);
+            page = result == null ? null : result.getData();
+            if (page == null) {
+                return true;
+            }
+            for (Object data : page) {
+                Device device = (Device) data;
+                if (pendingIDs.remove(device.getDeviceIdentifier())) {
+                    devices.put(device.getDeviceIdentifier(), device);
+                }
+            }
+            startIndex += BULK_LOOKUP_PAGE_SIZE;
+        } while (!pendingIDs.isEmpty() && page.size() >= BULK_LOOKUP_PAGE_SIZE && startIndex < scanLimit);
+        return page.size() < BULK_LOOKUP_PAGE_SIZE;
+    }
+
+    public static boolean isValidDevice(Device device) {
         if (device == null || device.getDeviceIdentifier() == null ||
                 device.getDeviceIdentifier().isEmpty() || device.getEnrolmentInfo() == null) {
             return false;
@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * you may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.mdm.services.android.util;
+
+import org.wso2.carbon.device.mgt.common.DeviceIdentifier;
+import org.wso2.carbon.device.mgt.common.app.mgt.Application;
+
+import javax.cache.Cache;
+import java.io.UnsupportedEncodingException;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps a fingerprint of the last applications list stored for each Android device, so that application lists
+ * which did not change since the last report are not stored again. The fingerprints are kept in a tenant cache
+ * which is shared by the nodes of the cluster, hence a list stored through one node is known to all of them. A
+ * fingerprint expires after a day, after which the next report of the device is stored even if it did not change.
+ */
+public class ApplicationInventoryCache {
+
+    private static final String APPLICATION_INVENTORY_CACHE_MANAGER = "ANDROID_APPLICATION_INVENTORY_CACHE_MANAGER";
+    private static final String APPLICATION_INVENTORY_CACHE = "ANDROID_APPLICATION_INVENTORY_CACHE";
+    private static final long CACHE_DURATION = 24l;
+    private static final String CHARSET = "UTF-8";
+
+    private ApplicationInventoryCache() {
+        throw new AssertionError();
+    }
+
+    /**
+     * @return true if the given applications are the ones last stored for the device
+     */
+    public static boolean isUnchanged(DeviceIdentifier deviceIdentifier, List<Application> applications) {
+        String fingerprint = getCache().get(deviceIdentifier.getId());
+        return fingerprint != null && fingerprint.equals(getFingerprint(applications));
+    }
+
+    /**
+     * Records the applications which were stored for the device.
+     */
+    public static void put(DeviceIdentifier deviceIdentifier, List<Application> applications) {
+        String fingerprint = getFingerprint(applications);
+        if (fingerprint == null) {
+            return;
+        }
+        getCache().put(deviceIdentifier.getId(), fingerprint);
+    }
+
+    public static void invalidate(DeviceIdentifier deviceIdentifier) {
+        getCache().remove(deviceIdentifier.getId());
+    }
+
+    /**
+     * @return a hash of the sorted identifiers and names of the applications or null if it could not be computed
+     */
+    private static String getFingerprint(List<Application> applications) {
+        List<String> entries = new ArrayList<String>(applications.size());
+        for (Application application : applications) {
+            entries.add(application.getApplicationIdentifier() + "\n" + application.getName());
+        }
+        Collections.sort(entries);
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (String entry : entries) {
+                digest.update(entry.getBytes(CHARSET));
+                digest.update((byte) 0);
+            }
+            return new BigInteger(1, digest.digest()).toString(16);
+        } catch (NoSuchAlgorithmException e) {
+            return null;
+        } catch (UnsupportedEncodingException e) {
+            return null;
+        }
+    }
+
+    private static Cache<String, String> getCache() {
+        return TenantCacheProvider.getInstance().getCache(APPLICATION_INVENTORY_CACHE_MANAGER,
+                APPLICATION_INVENTORY_CACHE, TimeUnit.HOURS, CACHE_DURATION);
+    }
+}
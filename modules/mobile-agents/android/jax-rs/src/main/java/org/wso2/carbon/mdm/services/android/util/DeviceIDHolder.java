@@ -18,6 +18,7 @@
 
 package org.wso2.carbon.mdm.services.android.util;
 
+import org.wso2.carbon.device.mgt.common.Device;
 import org.wso2.carbon.device.mgt.common.DeviceIdentifier;
 
 import java.util.List;
@@ -29,6 +30,7 @@ public class DeviceIDHolder {
 
 	private List<String> errorDeviceIdList;
 	private List<DeviceIdentifier> validDeviceIDList;
+	private List<Device> validDeviceList;
 
 	public List<String> getErrorDeviceIdList() {
 		return errorDeviceIdList;
@@ -45,4 +47,12 @@ public class DeviceIDHolder {
 	public void setValidDeviceIDList(List<DeviceIdentifier> validDeviceIDList) {
 		this.validDeviceIDList = validDeviceIDList;
 	}
+
+	public List<Device> getValidDeviceList() {
+		return validDeviceList;
+	}
+
+	public void setValidDeviceList(List<Device> validDeviceList) {
+		this.validDeviceList = validDeviceList;
+	}
 }
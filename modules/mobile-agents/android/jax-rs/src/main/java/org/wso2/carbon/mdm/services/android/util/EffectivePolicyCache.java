@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * you may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.mdm.services.android.util;
+
+import com.google.gson.Gson;
+import org.wso2.carbon.device.mgt.common.DeviceIdentifier;
+import org.wso2.carbon.mdm.services.android.bean.EffectivePolicyEntry;
+import org.wso2.carbon.policy.mgt.common.Policy;
+import org.wso2.carbon.policy.mgt.common.ProfileFeature;
+import org.wso2.mdm.mdmmgt.util.MDMAppConstants;
+
+import javax.cache.Cache;
+import javax.cache.Caching;
+import java.io.UnsupportedEncodingException;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per device cache of the effective features served to Android agents, along with the entity tags the agents send
+ * back to find out whether their features changed. Entries are bound to the policy revision of the tenant, which the
+ * admin API renews whenever policies are published or their priorities change, and expire after a fixed duration to
+ * pick up changes of the device itself, such as its owner or roles. The cache is created for each tenant on first
+ * use.
+ */
+public class EffectivePolicyCache {
+
+    private static final String POLICY_CACHE_MANAGER = "ANDROID_POLICY_CACHE_MANAGER";
+    private static final String EFFECTIVE_FEATURES_CACHE = "ANDROID_EFFECTIVE_FEATURES_CACHE";
+    private static final long CACHE_DURATION = 15l;
+    private static final String CHARSET = "UTF-8";
+    private static final Gson gson = new Gson();
+
+    private EffectivePolicyCache() {
+        throw new AssertionError();
+    }
+
+    /**
+     * @return the effective features last served to the device or null if they may have changed since
+     */
+    public static EffectivePolicyEntry getEffectiveFeatures(DeviceIdentifier deviceIdentifier) {
+        Cache<String, EffectivePolicyEntry> cache = getCache();
+        EffectivePolicyEntry entry = cache.get(deviceIdentifier.getId());
+        if (entry == null) {
+            return null;
+        }
+        if (!entry.getRevision().equals(getPolicyRevision())) {
+            cache.remove(deviceIdentifier.getId());
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     * Records the effective features served to the device.
+     *
+     * @param revision policy revision read before the features were computed
+     * @return the cached entry holding the entity tag of the features
+     */
+    public static EffectivePolicyEntry putEffectiveFeatures(DeviceIdentifier deviceIdentifier, String revision,
+                                                            List<ProfileFeature> profileFeatures) {
+        EffectivePolicyEntry entry = new EffectivePolicyEntry(revision, createETag(gson.toJson(profileFeatures)),
+                profileFeatures);
+        getCache().put(deviceIdentifier.getId(), entry);
+        return entry;
+    }
+
+    /**
+     * @return the entity tag of the given effective policy of a device
+     */
+    public static String getPolicyETag(Policy policy) {
+        List<ProfileFeature> profileFeatures = null;
+        if (policy.getProfile() != null) {
+            profileFeatures = policy.getProfile().getProfileFeaturesList();
+        }
+        return createETag(policy.getId() + "\n" + gson.toJson(profileFeatures));
+    }
+
+    /**
+     * @return the current policy revision of the tenant
+     */
+    public static String getPolicyRevision() {
+        Cache<String, String> revisionCache = Caching.getCacheManager(
+                MDMAppConstants.PolicyRevisionConstants.POLICY_REVISION_CACHE_MANAGER).getCache(
+                MDMAppConstants.PolicyRevisionConstants.POLICY_REVISION_CACHE);
+        String revision = revisionCache.get(MDMAppConstants.PolicyRevisionConstants.POLICY_REVISION);
+        if (revision == null) {
+            // The revision is unknown, e.g. after it expired, so a new one is started to make sure that entries
+            // cached for any earlier revision are not served.
+            revision = UUID.randomUUID().toString();
+            if (!revisionCache.putIfAbsent(MDMAppConstants.PolicyRevisionConstants.POLICY_REVISION, revision)) {
+                String currentRevision = revisionCache.get(MDMAppConstants.PolicyRevisionConstants.POLICY_REVISION);
+                if (currentRevision != null) {
+                    revision = currentRevision;
+                }
+            }
+        }
+        return revision;
+    }
+
+    /**
+     * @param ifNoneMatch value of the If-None-Match header sent by the agent
+     * @param eTag        entity tag of the current policy or features of the device
+     * @return true if the agent already has the current policy or features
+     */
+    public static boolean isNotModified(String ifNoneMatch, String eTag) {
+        if (ifNoneMatch == null || eTag == null) {
+            return false;
+        }
+        for (String tag : ifNoneMatch.split(",")) {
+            tag = tag.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.length() > 1 && tag.startsWith("\"") && tag.endsWith("\"")) {
+                tag = tag.substring(1, tag.length() - 1);
+            }
+            if ("*".equals(tag) || eTag.equals(tag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String createETag(String content) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return new BigInteger(1, digest.digest(content.getBytes(CHARSET))).toString(16);
+        } catch (NoSuchAlgorithmException e) {
+            return Integer.toHexString(content.hashCode());
+        } catch (UnsupportedEncodingException e) {
+            return Integer.toHexString(content.hashCode());
+        }
+    }
+
+    private static Cache<String, EffectivePolicyEntry> getCache() {
+        return TenantCacheProvider.getInstance().getCache(POLICY_CACHE_MANAGER, EFFECTIVE_FEATURES_CACHE,
+                TimeUnit.MINUTES, CACHE_DURATION);
+    }
+}
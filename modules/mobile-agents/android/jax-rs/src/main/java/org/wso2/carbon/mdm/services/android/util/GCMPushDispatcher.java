@@ -0,0 +1,365 @@
+/*
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * you may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.mdm.services.android.util;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.context.PrivilegedCarbonContext;
+import org.wso2.carbon.device.mgt.common.Device;
+import org.wso2.carbon.device.mgt.common.DeviceManagementException;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sends GCM wake-up notifications for Android operations off the request thread. Devices notified with the same
+ * message within a short window are collected into a single pending batch, so that repeated wake-ups of a device
+ * are sent once, and the batch is then handed to the push sender in chunks of the GCM multicast size. Chunks which
+ * could not be sent are retried with an exponential backoff. The number of devices waiting for a notification is
+ * bounded; notifications beyond it are dropped, as the devices still receive their operations on the next poll.
+ */
+public class GCMPushDispatcher {
+
+    private static Log log = LogFactory.getLog(GCMPushDispatcher.class);
+
+    private static final int WORKER_COUNT = 4;
+    private static final int MULTICAST_SIZE = 1000;
+    private static final long COALESCING_WINDOW = 2000;
+    private static final int MAX_PENDING_DEVICES = 100000;
+    private static final int MAX_ATTEMPTS = 5;
+    private static final long INITIAL_BACKOFF = 1000;
+    private static volatile GCMPushDispatcher instance;
+
+    /**
+     * Hands a notification over to the push endpoint. It is called within the tenant flow of the devices.
+     */
+    public interface PushSender {
+
+        void send(String message, List<Device> devices) throws Exception;
+    }
+
+    private final PushSender sender;
+    private final ScheduledThreadPoolExecutor executor;
+    private final int multicastSize;
+    private final long coalescingWindow;
+    private final int maxPendingDevices;
+    private final int maxAttempts;
+    private final long initialBackoff;
+    private final Map<String, PendingNotification> pendingNotifications = new HashMap<String, PendingNotification>();
+    private int pendingDeviceCount;
+
+    private final AtomicLong queuedCount = new AtomicLong();
+    private final AtomicLong coalescedCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong sentCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private final AtomicLong retryCount = new AtomicLong();
+    private final AtomicLong sentBatchCount = new AtomicLong();
+    private final AtomicLong totalLatency = new AtomicLong();
+    private final AtomicLong maxLatency = new AtomicLong();
+    private final AtomicInteger inFlightDeviceCount = new AtomicInteger();
+
+    /**
+     * @param sender            push endpoint the notifications are sent to
+     * @param workerCount       number of threads sending notifications
+     * @param multicastSize     maximum number of devices of a single push request
+     * @param coalescingWindow  milliseconds wake-ups are collected before they are sent
+     * @param maxPendingDevices maximum number of devices waiting to be notified
+     * @param maxAttempts       number of times a push request is tried before it is given up
+     * @param initialBackoff    milliseconds before the first retry, doubled for every further retry
+     */
+    public GCMPushDispatcher(PushSender sender, int workerCount, int multicastSize, long coalescingWindow,
+                             int maxPendingDevices, int maxAttempts, long initialBackoff) {
+        this.sender = sender;
+        this.multicastSize = multicastSize;
+        this.coalescingWindow = coalescingWindow;
+        this.maxPendingDevices = maxPendingDevices;
+        this.maxAttempts = maxAttempts;
+        this.initialBackoff = initialBackoff;
+        this.executor = new ScheduledThreadPoolExecutor(workerCount, new ThreadFactory() {
+            private final AtomicInteger threadCount = new AtomicInteger();
+
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "gcm-push-dispatcher-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    public static GCMPushDispatcher getInstance() {
+        if (instance == null) {
+            synchronized (GCMPushDispatcher.class) {
+                if (instance == null) {
+                    instance = new GCMPushDispatcher(new PushSender() {
+                        public void send(String message, List<Device> devices) throws DeviceManagementException {
+                            if (!AndroidAPIUtils.getGCMService().sendNotification(message, devices)) {
+                                throw new DeviceManagementException("GCM service could not send notification '" +
+                                        message + "' to " + devices.size() + " devices.");
+                            }
+                        }
+                    }, WORKER_COUNT, MULTICAST_SIZE, COALESCING_WINDOW, MAX_PENDING_DEVICES, MAX_ATTEMPTS,
+                            INITIAL_BACKOFF);
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Queues a notification for the given devices of the current tenant.
+     *
+     * @param message message of the notification, the code of the operation added to the devices
+     * @param devices devices to be woken up
+     * @return the number of devices which were dropped as the dispatcher is at its capacity
+     */
+    public int dispatch(String message, List<Device> devices) {
+        PrivilegedCarbonContext ctx = PrivilegedCarbonContext.getThreadLocalCarbonContext();
+        String tenantDomain = ctx.getTenantDomain();
+        int tenantId = ctx.getTenantId();
+        String key = tenantId + "|" + message;
+        int dropped = 0;
+        boolean schedule = false;
+        synchronized (this) {
+            PendingNotification notification = pendingNotifications.get(key);
+            if (notification == null) {
+                notification = new PendingNotification(tenantDomain, tenantId, message);
+                pendingNotifications.put(key, notification);
+                schedule = true;
+            }
+            for (Device device : devices) {
+                if (notification.devices.containsKey(device.getDeviceIdentifier())) {
+                    coalescedCount.incrementAndGet();
+                } else if (pendingDeviceCount >= maxPendingDevices) {
+                    dropped++;
+                } else {
+                    notification.devices.put(device.getDeviceIdentifier(), device);
+                    pendingDeviceCount++;
+                    queuedCount.incrementAndGet();
+                }
+            }
+        }
+        if (dropped > 0) {
+            droppedCount.addAndGet(dropped);
+            log.warn("GCM push queue is full, " + dropped + " devices of tenant " + tenantDomain +
+                    " were not notified of '" + message + "'.");
+        }
+        if (schedule) {
+            try {
+                executor.schedule(new Flush(key), coalescingWindow, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                log.error("GCM push dispatcher has been shut down, notification '" + message +
+                        "' was not sent.", e);
+                synchronized (this) {
+                    PendingNotification notification = pendingNotifications.remove(key);
+                    if (notification != null) {
+                        pendingDeviceCount -= notification.devices.size();
+                        failedCount.addAndGet(notification.devices.size());
+                    }
+                }
+            }
+        }
+        return dropped;
+    }
+
+    /**
+     * @return the number of devices waiting to be notified, including the ones being sent or retried
+     */
+    public int getQueueDepth() {
+        synchronized (this) {
+            return pendingDeviceCount + inFlightDeviceCount.get();
+        }
+    }
+
+    public long getQueuedCount() {
+        return queuedCount.get();
+    }
+
+    public long getCoalescedCount() {
+        return coalescedCount.get();
+    }
+
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    public long getSentCount() {
+        return sentCount.get();
+    }
+
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    public long getRetryCount() {
+        return retryCount.get();
+    }
+
+    /**
+     * @return average milliseconds between queueing a notification and handing it to the push endpoint
+     */
+    public long getAverageLatency() {
+        long batches = sentBatchCount.get();
+        return batches == 0 ? 0 : totalLatency.get() / batches;
+    }
+
+    public long getMaxLatency() {
+        return maxLatency.get();
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private void send(PushRequest request) {
+        try {
+            PrivilegedCarbonContext.startTenantFlow();
+            PrivilegedCarbonContext ctx = PrivilegedCarbonContext.getThreadLocalCarbonContext();
+            ctx.setTenantDomain(request.tenantDomain);
+            ctx.setTenantId(request.tenantId);
+            sender.send(request.message, request.devices);
+        } catch (Exception e) {
+            retry(request, e);
+            return;
+        } finally {
+            PrivilegedCarbonContext.endTenantFlow();
+        }
+        inFlightDeviceCount.addAndGet(-request.devices.size());
+        sentCount.addAndGet(request.devices.size());
+        sentBatchCount.incrementAndGet();
+        long latency = System.currentTimeMillis() - request.queuedTime;
+        totalLatency.addAndGet(latency);
+        long max = maxLatency.get();
+        while (latency > max && !maxLatency.compareAndSet(max, latency)) {
+            max = maxLatency.get();
+        }
+    }
+
+    private void retry(PushRequest request, Exception cause) {
+        request.attempt++;
+        if (request.attempt < maxAttempts) {
+            long backoff = initialBackoff << (request.attempt - 1);
+            if (log.isDebugEnabled()) {
+                log.debug("Sending GCM notification '" + request.message + "' to " + request.devices.size() +
+                        " devices failed, retrying in " + backoff + " ms.", cause);
+            }
+            try {
+                executor.schedule(new Send(request), backoff, TimeUnit.MILLISECONDS);
+                retryCount.incrementAndGet();
+                return;
+            } catch (RejectedExecutionException e) {
+                log.error("GCM push dispatcher has been shut down, notification '" + request.message +
+                        "' will not be retried.", e);
+            }
+        }
+        log.error("Error occurred while sending GCM notification '" + request.message + "' to " +
+                request.devices.size() + " devices of tenant " + request.tenantDomain + ".", cause);
+        inFlightDeviceCount.addAndGet(-request.devices.size());
+        failedCount.addAndGet(request.devices.size());
+    }
+
+    private class Flush implements Runnable {
+
+        private final String key;
+
+        private Flush(String key) {
+            this.key = key;
+        }
+
+        public void run() {
+            PendingNotification notification;
+            synchronized (GCMPushDispatcher.this) {
+                notification = pendingNotifications.remove(key);
+                if (notification == null) {
+                    return;
+                }
+                pendingDeviceCount -= notification.devices.size();
+                inFlightDeviceCount.addAndGet(notification.devices.size());
+            }
+            List<Device> devices = new ArrayList<Device>(notification.devices.values());
+            for (int start = 0; start < devices.size(); start += multicastSize) {
+                List<Device> batch = new ArrayList<Device>(
+                        devices.subList(start, Math.min(start + multicastSize, devices.size())));
+                try {
+                    executor.execute(new Send(new PushRequest(notification, batch)));
+                } catch (RejectedExecutionException e) {
+                    log.error("GCM push dispatcher has been shut down, notification '" + notification.message +
+                            "' was not sent.", e);
+                    inFlightDeviceCount.addAndGet(-batch.size());
+                    failedCount.addAndGet(batch.size());
+                }
+            }
+        }
+    }
+
+    private class Send implements Runnable {
+
+        private final PushRequest request;
+
+        private Send(PushRequest request) {
+            this.request = request;
+        }
+
+        public void run() {
+            send(request);
+        }
+    }
+
+    private static class PendingNotification {
+
+        private final String tenantDomain;
+        private final int tenantId;
+        private final String message;
+        private final long queuedTime = System.currentTimeMillis();
+        private final Map<String, Device> devices = new LinkedHashMap<String, Device>();
+
+        private PendingNotification(String tenantDomain, int tenantId, String message) {
+            this.tenantDomain = tenantDomain;
+            this.tenantId = tenantId;
+            this.message = message;
+        }
+    }
+
+    private static class PushRequest {
+
+        private final String tenantDomain;
+        private final int tenantId;
+        private final String message;
+        private final long queuedTime;
+        private final List<Device> devices;
+        private int attempt;
+
+        private PushRequest(PendingNotification notification, List<Device> devices) {
+            this.tenantDomain = notification.tenantDomain;
+            this.tenantId = notification.tenantId;
+            this.message = notification.message;
+            this.queuedTime = notification.queuedTime;
+            this.devices = devices;
+        }
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * you may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.mdm.services.android.util;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.context.PrivilegedCarbonContext;
+import org.wso2.carbon.device.mgt.common.DeviceIdentifier;
+import org.wso2.carbon.device.mgt.common.app.mgt.ApplicationManagementException;
+import org.wso2.carbon.device.mgt.common.operation.mgt.Operation;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Stores the application lists reported by Android devices through APPLICATION_LIST operations off the polling
+ * request. The lists are stored by a bounded pool of workers in the tenant flow of the device; when the pool is
+ * saturated the list is stored on the polling request instead. Of the application lists of a device waiting to be
+ * stored only the latest one is kept, and the lists of a device are stored by one worker at a time, so an older
+ * list never overwrites a newer one.
+ * <p/>
+ * The lists are only held in memory, hence a list waiting to be stored is lost if the server stops. The list is
+ * reported again by the next APPLICATION_LIST operation of the device.
+ */
+public class OperationResultProcessor {
+
+    private static Log log = LogFactory.getLog(OperationResultProcessor.class);
+
+    private static final int WORKER_COUNT = 4;
+    private static final int QUEUE_SIZE = 10000;
+    private static volatile OperationResultProcessor instance;
+
+    private final ThreadPoolExecutor executor;
+    private final ConcurrentMap<String, Operation> pendingApplicationLists =
+            new ConcurrentHashMap<String, Operation>();
+
+    private OperationResultProcessor() {
+        executor = new ThreadPoolExecutor(WORKER_COUNT, WORKER_COUNT, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(QUEUE_SIZE), new ThreadFactory() {
+            private final AtomicInteger threadCount = new AtomicInteger();
+
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "android-operation-result-processor-" +
+                        threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    public static OperationResultProcessor getInstance() {
+        if (instance == null) {
+            synchronized (OperationResultProcessor.class) {
+                if (instance == null) {
+                    instance = new OperationResultProcessor();
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Queues the application list reported by an APPLICATION_LIST operation to be stored. An application list of
+     * the device which is still waiting to be stored is replaced by this one.
+     */
+    public void processApplicationList(DeviceIdentifier deviceIdentifier, Operation operation) {
+        String key = PrivilegedCarbonContext.getThreadLocalCarbonContext().getTenantId() + "|" +
+                deviceIdentifier.getId();
+        if (pendingApplicationLists.put(key, operation) != null) {
+            // The task of the device is still queued or running and picks up the replaced list.
+            if (log.isDebugEnabled()) {
+                log.debug("Replaced the pending applications list of device '" + deviceIdentifier.getId() + "'");
+            }
+            return;
+        }
+        ApplicationListTask task = new ApplicationListTask(deviceIdentifier, key);
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            if (log.isDebugEnabled()) {
+                log.debug("Operation result queue is full, storing the applications list of device '" +
+                        deviceIdentifier.getId() + "' in the request thread");
+            }
+            task.storeApplicationLists();
+        }
+    }
+
+    private class ApplicationListTask implements Runnable {
+
+        private final DeviceIdentifier deviceIdentifier;
+        private final String key;
+        private final String tenantDomain;
+        private final int tenantId;
+
+        private ApplicationListTask(DeviceIdentifier deviceIdentifier, String key) {
+            PrivilegedCarbonContext ctx = PrivilegedCarbonContext.getThreadLocalCarbonContext();
+            this.deviceIdentifier = deviceIdentifier;
+            this.key = key;
+            this.tenantDomain = ctx.getTenantDomain();
+            this.tenantId = ctx.getTenantId();
+        }
+
+        public void run() {
+            try {
+                PrivilegedCarbonContext.startTenantFlow();
+                PrivilegedCarbonContext ctx = PrivilegedCarbonContext.getThreadLocalCarbonContext();
+                ctx.setTenantDomain(tenantDomain);
+                ctx.setTenantId(tenantId);
+                storeApplicationLists();
+            } finally {
+                PrivilegedCarbonContext.endTenantFlow();
+            }
+        }
+
+        /**
+         * Stores the latest application list of the device until no newer one was reported meanwhile. The list
+         * stays in the pending map while it is stored, so that lists reported meanwhile do not start another task.
+         */
+        private void storeApplicationLists() {
+            Operation operation = pendingApplicationLists.get(key);
+            while (operation != null) {
+                try {
+                    AndroidAPIUtils.updateApplicationList(operation, deviceIdentifier);
+                } catch (ApplicationManagementException e) {
+                    log.error("Issue in updating the applications list of device '" + deviceIdentifier.getId() +
+                            "'", e);
+                } catch (RuntimeException e) {
+                    log.error("Issue in updating the applications list of device '" + deviceIdentifier.getId() +
+                            "'", e);
+                }
+                if (pendingApplicationLists.remove(key, operation)) {
+                    operation = null;
+                } else {
+                    operation = pendingApplicationLists.get(key);
+                }
+            }
+        }
+    }
+}
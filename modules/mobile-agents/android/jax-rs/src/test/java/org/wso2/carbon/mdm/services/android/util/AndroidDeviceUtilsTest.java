@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * you may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.mdm.services.android.util;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import org.wso2.carbon.device.mgt.common.Device;
+import org.wso2.carbon.device.mgt.common.DeviceIdentifier;
+import org.wso2.carbon.device.mgt.common.PaginationRequest;
+import org.wso2.carbon.device.mgt.common.PaginationResult;
+import org.wso2.carbon.device.mgt.core.service.DeviceManagementProviderService;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+public class AndroidDeviceUtilsTest {
+
+    @Test
+    public void lookUpShortListsDeviceByDevice() throws Exception {
+        DeviceManagementService deviceManagementService = new DeviceManagementService(5000);
+        Map<String, Device> devices = new AndroidDeviceUtils().getDevices(deviceManagementService.createProxy(),
+                createDeviceIDs(0, 10));
+
+        Assert.assertEquals(devices.size(), 10);
+        Assert.assertEquals(deviceManagementService.pageRequests, 0);
+        Assert.assertEquals(deviceManagementService.deviceRequests, 10);
+    }
+
+    @Test
+    public void stopScanningWhenEveryDeviceIsFound() throws Exception {
+        DeviceManagementService deviceManagementService = new DeviceManagementService(5000);
+        Map<String, Device> devices = new AndroidDeviceUtils().getDevices(deviceManagementService.createProxy(),
+                createDeviceIDs(100, 160));
+
+        Assert.assertEquals(devices.size(), 60);
+        Assert.assertEquals(deviceManagementService.pageRequests, 1);
+        Assert.assertEquals(deviceManagementService.deviceRequests, 0);
+    }
+
+    @Test
+    public void skipLookupsAfterTheLastPage() throws Exception {
+        DeviceManagementService deviceManagementService = new DeviceManagementService(1500);
+        List<String> deviceIDs = createDeviceIDs(1450, 1510);
+        deviceIDs.add(null);
+        deviceIDs.add("");
+        Map<String, Device> devices = new AndroidDeviceUtils().getDevices(deviceManagementService.createProxy(),
+                deviceIDs);
+
+        // The second page is not full, so the 10 identifiers beyond the last device do not exist.
+        Assert.assertEquals(devices.size(), 50);
+        Assert.assertEquals(deviceManagementService.pageRequests, 2);
+        Assert.assertEquals(deviceManagementService.deviceRequests, 0);
+    }
+
+    @Test
+    public void lookUpDevicesBeyondTheScanLimitDeviceByDevice() throws Exception {
+        DeviceManagementService deviceManagementService = new DeviceManagementService(10000);
+        List<String> deviceIDs = createDeviceIDs(0, 2);
+        deviceIDs.addAll(createDeviceIDs(9000, 9058));
+        deviceIDs.add("unknown");
+        Map<String, Device> devices = new AndroidDeviceUtils().getDevices(deviceManagementService.createProxy(),
+                deviceIDs);
+
+        // 61 identifiers allow a scan of 1220 devices, which takes two pages.
+        Assert.assertEquals(devices.size(), 60);
+        Assert.assertEquals(deviceManagementService.pageRequests, 2);
+        Assert.assertEquals(deviceManagementService.deviceRequests, 59);
+        Assert.assertNull(devices.get("unknown"));
+        Assert.assertEquals(devices.get("device-9057").getDeviceIdentifier(), "device-9057");
+    }
+
+    private List<String> createDeviceIDs(int from, int to) {
+        List<String> deviceIDs = new ArrayList<String>();
+        for (int i = from; i < to; i++) {
+            deviceIDs.add("device-" + i);
+        }
+        return deviceIDs;
+    }
+
+    /**
+     * In memory device management service holding the given number of Android devices, which counts the pages and
+     * the single devices requested from it.
+     */
+    private static class DeviceManagementService implements InvocationHandler {
+
+        private final int deviceCount;
+        private int pageRequests;
+        private int deviceRequests;
+
+        private DeviceManagementService(int deviceCount) {
+            this.deviceCount = deviceCount;
+        }
+
+        private DeviceManagementProviderService createProxy() {
+            return (DeviceManagementProviderService) Proxy.newProxyInstance(getClass().getClassLoader(),
+                    new Class<?>[]{DeviceManagementProviderService.class}, this);
+        }
+
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            if ("getAllDevices".equals(method.getName()) && args[0] instanceof PaginationRequest) {
+                pageRequests++;
+                PaginationRequest request = (PaginationRequest) args[0];
+                int end = Math.min(deviceCount, request.getStartIndex() + request.getRowCount());
+                List<Device> page = new ArrayList<Device>();
+                for (int i = request.getStartIndex(); i < end; i++) {
+                    page.add(createDevice("device-" + i));
+                }
+                PaginationResult result = new PaginationResult();
+                result.setData(page);
+                result.setRecordsTotal(deviceCount);
+                return result;
+            }
+            if ("getDevice".equals(method.getName()) && args[0] instanceof DeviceIdentifier) {
+                deviceRequests++;
+                String id = ((DeviceIdentifier) args[0]).getId();
+                if (id.startsWith("device-") && Integer.parseInt(id.substring(7)) < deviceCount) {
+                    return createDevice(id);
+                }
+                return null;
+            }
+            throw new UnsupportedOperationException(method.getName());
+        }
+
+        private Device createDevice(String id) {
+            Device device = new Device();
+            device.setDeviceIdentifier(id);
+            device.setType("android");
+            return device;
+        }
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * you may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.mdm.services.android.util;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+import org.wso2.carbon.device.mgt.common.Device;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class GCMPushDispatcherTest {
+
+    private GCMPushDispatcher dispatcher;
+
+    @AfterMethod
+    public void shutdownDispatcher() {
+        if (dispatcher != null) {
+            dispatcher.shutdown();
+        }
+    }
+
+    @Test
+    public void coalesceRepeatedWakeUps() throws Exception {
+        PushSink pushSink = new PushSink(0);
+        dispatcher = new GCMPushDispatcher(pushSink, 2, 1000, 100, 1000, 3, 10);
+        Assert.assertEquals(dispatcher.dispatch("DEVICE_LOCK", createDevices(0, 3)), 0);
+        Assert.assertEquals(dispatcher.dispatch("DEVICE_LOCK", createDevices(1, 4)), 0);
+        Assert.assertEquals(dispatcher.dispatch("DEVICE_RING", createDevices(0, 1)), 0);
+        waitForDispatcher(5);
+
+        Assert.assertEquals(pushSink.requests.size(), 2);
+        Assert.assertEquals(dispatcher.getQueuedCount(), 5);
+        Assert.assertEquals(dispatcher.getCoalescedCount(), 2);
+        Assert.assertEquals(dispatcher.getSentCount(), 5);
+        for (PushRequest request : pushSink.requests) {
+            Assert.assertEquals(request.devices.size(), "DEVICE_LOCK".equals(request.message) ? 4 : 1);
+        }
+    }
+
+    @Test
+    public void chunkMulticastRequests() throws Exception {
+        PushSink pushSink = new PushSink(0);
+        dispatcher = new GCMPushDispatcher(pushSink, 2, 1000, 50, 10000, 3, 10);
+        dispatcher.dispatch("DEVICE_LOCK", createDevices(0, 2500));
+        waitForDispatcher(2500);
+
+        Assert.assertEquals(pushSink.requests.size(), 3);
+        int largestRequest = 0;
+        for (PushRequest request : pushSink.requests) {
+            largestRequest = Math.max(largestRequest, request.devices.size());
+        }
+        Assert.assertEquals(largestRequest, 1000);
+        Assert.assertEquals(dispatcher.getSentCount(), 2500);
+    }
+
+    @Test
+    public void retryFailedRequests() throws Exception {
+        PushSink pushSink = new PushSink(2);
+        dispatcher = new GCMPushDispatcher(pushSink, 1, 1000, 10, 1000, 3, 10);
+        dispatcher.dispatch("DEVICE_LOCK", createDevices(0, 10));
+        waitForDispatcher(10);
+
+        Assert.assertEquals(pushSink.attempts.get(), 3);
+        Assert.assertEquals(dispatcher.getRetryCount(), 2);
+        Assert.assertEquals(dispatcher.getSentCount(), 10);
+        Assert.assertEquals(dispatcher.getFailedCount(), 0);
+    }
+
+    @Test
+    public void giveUpAfterMaxAttempts() throws Exception {
+        PushSink pushSink = new PushSink(Integer.MAX_VALUE);
+        dispatcher = new GCMPushDispatcher(pushSink, 1, 1000, 10, 1000, 3, 10);
+        dispatcher.dispatch("DEVICE_LOCK", createDevices(0, 10));
+        waitForDispatcher(10);
+
+        Assert.assertEquals(pushSink.attempts.get(), 3);
+        Assert.assertEquals(dispatcher.getSentCount(), 0);
+        Assert.assertEquals(dispatcher.getFailedCount(), 10);
+    }
+
+    @Test
+    public void dropDevicesBeyondCapacity() throws Exception {
+        PushSink pushSink = new PushSink(0);
+        dispatcher = new GCMPushDispatcher(pushSink, 1, 1000, 100, 10, 3, 10);
+        Assert.assertEquals(dispatcher.dispatch("DEVICE_LOCK", createDevices(0, 15)), 5);
+        waitForDispatcher(10);
+
+        Assert.assertEquals(dispatcher.getDroppedCount(), 5);
+        Assert.assertEquals(dispatcher.getSentCount(), 10);
+        Assert.assertEquals(pushSink.requests.peek().devices.size(), 10);
+    }
+
+    /**
+     * Waits until the given number of devices were sent or given up, and nothing is left in the queue.
+     */
+    private void waitForDispatcher(int deviceCount) throws InterruptedException {
+        for (int i = 0; i < 500; i++) {
+            if (dispatcher.getQueueDepth() == 0 &&
+                    dispatcher.getSentCount() + dispatcher.getFailedCount() >= deviceCount) {
+                return;
+            }
+            Thread.sleep(10);
+        }
+        Assert.fail("Dispatcher did not finish, " + dispatcher.getQueueDepth() + " devices are still queued.");
+    }
+
+    private List<Device> createDevices(int from, int to) {
+        List<Device> devices = new ArrayList<Device>();
+        for (int i = from; i < to; i++) {
+            Device device = new Device();
+            device.setDeviceIdentifier("device-" + i);
+            devices.add(device);
+        }
+        return devices;
+    }
+
+    private static class PushRequest {
+
+        private final String message;
+        private final List<Device> devices;
+
+        private PushRequest(String message, List<Device> devices) {
+            this.message = message;
+            this.devices = devices;
+        }
+    }
+
+    /**
+     * In memory push endpoint which fails the given number of requests before it accepts any.
+     */
+    private static class PushSink implements GCMPushDispatcher.PushSender {
+
+        private final ConcurrentLinkedQueue<PushRequest> requests = new ConcurrentLinkedQueue<PushRequest>();
+        private final AtomicInteger attempts = new AtomicInteger();
+        private final int failures;
+
+        private PushSink(int failures) {
+            this.failures = failures;
+        }
+
+        public void send(String message, List<Device> devices) throws Exception {
+            if (attempts.incrementAndGet() <= failures) {
+                throw new IllegalStateException("GCM is not available");
+            }
+            requests.add(new PushRequest(message, new ArrayList<Device>(devices)));
+        }
+    }
+}
@@ -18,12 +18,14 @@
 
 package org.wso2.carbon.mdm.mobileservices.windows.common.authenticator;
 
+import org.wso2.carbon.mdm.mobileservices.windows.common.authenticator.impl.CachingOAuthValidator;
 import org.wso2.carbon.mdm.mobileservices.windows.common.authenticator.impl.LocalOAuthValidator;
 import org.wso2.carbon.mdm.mobileservices.windows.common.authenticator.impl.RemoteOAuthValidator;
 import org.wso2.carbon.mdm.mobileservices.windows.common.util.WindowsAPIUtils;
 import org.wso2.carbon.webapp.authenticator.framework.config.AuthenticatorConfig;
 
 import java.util.Properties;
+import java.util.concurrent.TimeUnit;
 
 /**
  * The class validate the configurations and provide the most suitable implementation according to the configuration.
@@ -31,10 +33,45 @@ import java.util.Properties;
  */
 public class OAuthValidatorFactory {
 
+    private static final long DEFAULT_VALIDATION_CACHE_TIME_TO_LIVE = 300;
+    private static final int DEFAULT_VALIDATION_CACHE_SIZE = 10000;
     private static Properties authenticatorProperties;
+    private static volatile OAuth2TokenValidator validator;
 
+    /**
+     * Returns the validator shared by all requests, creating it on first use. Successful validations are cached by
+     * the returned validator.
+     *
+     * @return OAuth token validator
+     * @throws IllegalArgumentException if the authenticator configuration is invalid
+     */
     public static OAuth2TokenValidator getValidator() throws IllegalArgumentException {
-        Properties authenticatorProperties = getAuthenticatorProperties();
+        OAuth2TokenValidator current = validator;
+        if (current == null) {
+            synchronized (OAuthValidatorFactory.class) {
+                current = validator;
+                if (current == null) {
+                    Properties authenticatorProperties = getAuthenticatorProperties();
+                    long timeToLive = DEFAULT_VALIDATION_CACHE_TIME_TO_LIVE;
+                    String timeToLiveParam = authenticatorProperties.getProperty("ValidationCacheTimeToLive");
+                    if (timeToLiveParam != null && !timeToLiveParam.isEmpty()) {
+                        timeToLive = Long.parseLong(timeToLiveParam);
+                    }
+                    int cacheSize = DEFAULT_VALIDATION_CACHE_SIZE;
+                    String cacheSizeParam = authenticatorProperties.getProperty("ValidationCacheSize");
+                    if (cacheSizeParam != null && !cacheSizeParam.isEmpty()) {
+                        cacheSize = Integer.parseInt(cacheSizeParam);
+                    }
+                    current = new CachingOAuthValidator(createValidator(authenticatorProperties),
+                            TimeUnit.SECONDS.toMillis(timeToLive), cacheSize);
+                    validator = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    private static OAuth2TokenValidator createValidator(Properties authenticatorProperties) {
         boolean isRemote = Boolean.parseBoolean(authenticatorProperties.getProperty("IsRemote"));
         if (isRemote) {
             String url = authenticatorProperties.getProperty("TokenValidationEndpointUrl");
@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied. See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.wso2.carbon.mdm.mobileservices.windows.common.authenticator.impl;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.mdm.mobileservices.windows.common.authenticator.OAuth2TokenValidator;
+import org.wso2.carbon.mdm.mobileservices.windows.common.exceptions.OAuthTokenValidationException;
+import org.wso2.carbon.mdm.mobileservices.windows.common.util.OAuthValidationResponse;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the results of successful token validations of another validator, so that a device polling with the same
+ * token is not validated against the identity server on every request. Results are keyed by the hash of the token
+ * and the requested resource, and are kept until the token expires or the configured time to live passes,
+ * whichever comes first. Failed validations are never cached. Once the configured number of results is reached,
+ * the least recently used result is evicted.
+ */
+public class CachingOAuthValidator implements OAuth2TokenValidator {
+
+    private static final Log log = LogFactory.getLog(CachingOAuthValidator.class);
+
+    private final OAuth2TokenValidator validator;
+    private final long timeToLive;
+    private final Map<String, CachedResponse> responses;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * @param validator  validator which validates the tokens which are not cached
+     * @param timeToLive maximum time in milliseconds a validation result is kept
+     * @param maxSize    maximum number of validation results kept
+     */
+    public CachingOAuthValidator(OAuth2TokenValidator validator, long timeToLive, final int maxSize) {
+        this.validator = validator;
+        this.timeToLive = timeToLive;
+        this.responses = new LinkedHashMap<String, CachedResponse>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedResponse> eldest) {
+                if (size() <= maxSize) {
+                    return false;
+                }
+                if (log.isDebugEnabled() && System.currentTimeMillis() < eldest.getValue().expiryTime) {
+                    log.debug("OAuth validation cache is full, evicted a result before it expired. Hits: " +
+                            getHitCount() + ", misses: " + getMissCount());
+                }
+                return true;
+            }
+        };
+    }
+
+    @Override
+    public OAuthValidationResponse validateToken(String accessToken, String resource)
+            throws OAuthTokenValidationException {
+        String key = DigestUtils.sha256Hex(accessToken) + ":" + resource;
+        long now = System.currentTimeMillis();
+        synchronized (responses) {
+            CachedResponse cachedResponse = responses.get(key);
+            if (cachedResponse != null) {
+                if (now < cachedResponse.expiryTime) {
+                    hits.incrementAndGet();
+                    return cachedResponse.response;
+                }
+                responses.remove(key);
+            }
+        }
+        misses.incrementAndGet();
+
+        OAuthValidationResponse response = validator.validateToken(accessToken, resource);
+        if (response != null && response.isValid()) {
+            long expiryTime = now + timeToLive;
+            if (response.getExpiryTime() > 0) {
+                expiryTime = Math.min(expiryTime, now + response.getExpiryTime() * 1000);
+            }
+            synchronized (responses) {
+                responses.put(key, new CachedResponse(response, expiryTime));
+            }
+        }
+        return response;
+    }
+
+    public int size() {
+        synchronized (responses) {
+            return responses.size();
+        }
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    private static final class CachedResponse {
+        private final OAuthValidationResponse response;
+        private final long expiryTime;
+
+        private CachedResponse(OAuthValidationResponse response, long expiryTime) {
+            this.response = response;
+            this.expiryTime = expiryTime;
+        }
+    }
+}
@@ -69,6 +69,8 @@ public class LocalOAuthValidator implements OAuth2TokenValidator {
             oAuthValidationResponse.setErrorMsg(tokenValidationResponse.getErrorMsg());
             return oAuthValidationResponse;
         }
-        return new OAuthValidationResponse(userName, tenantDomain, isValid);
+        OAuthValidationResponse oAuthValidationResponse = new OAuthValidationResponse(userName, tenantDomain, isValid);
+        oAuthValidationResponse.setExpiryTime(tokenValidationResponse.getExpiryTime());
+        return oAuthValidationResponse;
     }
 }
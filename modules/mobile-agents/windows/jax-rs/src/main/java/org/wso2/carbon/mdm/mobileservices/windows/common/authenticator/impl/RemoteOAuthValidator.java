@@ -34,6 +34,8 @@ import org.wso2.carbon.utils.multitenancy.MultitenantUtils;
 
 import java.rmi.RemoteException;
 import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Handles the OAuth2 token validation from remote IS servers using remote OAuthValidation service-stub.
@@ -41,12 +43,22 @@ import java.util.Properties;
 public class RemoteOAuthValidator implements OAuth2TokenValidator {
 
     private GenericObjectPool stubs;
+    private final AtomicLong borrowCount = new AtomicLong();
+    private final AtomicLong borrowWaitTime = new AtomicLong();
+    private static final long MAX_BORROW_WAIT = 30000;
     private static final Log log = LogFactory.getLog(RemoteOAuthValidator.class);
 
     public RemoteOAuthValidator(String hostURL, String adminUserName, String adminPassword, Properties properties) {
         this.stubs =
                 new GenericObjectPool(new OAuthTokenValidationStubFactory(
                         hostURL, adminUserName, adminPassword, properties));
+        String maxTotalConnectionsParam = properties.getProperty("MaxTotalConnections");
+        if (maxTotalConnectionsParam != null && !maxTotalConnectionsParam.isEmpty()) {
+            // There is no point in having more stubs than connections to the token validation service.
+            this.stubs.setMaxActive(Integer.parseInt(maxTotalConnectionsParam));
+        }
+        this.stubs.setWhenExhaustedAction(GenericObjectPool.WHEN_EXHAUSTED_BLOCK);
+        this.stubs.setMaxWait(MAX_BORROW_WAIT);
     }
 
     public OAuthValidationResponse validateToken(String accessToken,
@@ -55,7 +67,9 @@ public class RemoteOAuthValidator implements OAuth2TokenValidator {
         OAuth2TokenValidationResponseDTO validationResponse;
         try {
             OAuth2TokenValidationRequestDTO validationRequest = createValidationRequest(accessToken, resource);
+            long borrowStartTime = System.nanoTime();
             stub = (OAuth2TokenValidationServiceStub) this.stubs.borrowObject();
+            recordBorrowWait(System.nanoTime() - borrowStartTime);
             validationResponse =
                     stub.findOAuthConsumerIfTokenIsValid(validationRequest).getAccessTokenValidationResponse();
         } catch (RemoteException e) {
@@ -91,7 +105,30 @@ public class RemoteOAuthValidator implements OAuth2TokenValidator {
             oAuthValidationResponse.setErrorMsg(validationResponse.getErrorMsg());
             return oAuthValidationResponse;
         }
-        return new OAuthValidationResponse(username, tenantDomain, isValid);
+        OAuthValidationResponse oAuthValidationResponse = new OAuthValidationResponse(username, tenantDomain, isValid);
+        oAuthValidationResponse.setExpiryTime(validationResponse.getExpiryTime());
+        return oAuthValidationResponse;
+    }
+
+    public long getBorrowCount() {
+        return borrowCount.get();
+    }
+
+    /**
+     * @return total time in nanoseconds spent waiting for a stub from the pool
+     */
+    public long getBorrowWaitTime() {
+        return borrowWaitTime.get();
+    }
+
+    private void recordBorrowWait(long nanos) {
+        long count = borrowCount.incrementAndGet();
+        long total = borrowWaitTime.addAndGet(nanos);
+        if (log.isDebugEnabled()) {
+            log.debug("Waited " + TimeUnit.NANOSECONDS.toMicros(nanos) + " us for an oauth token validation " +
+                    "service stub, average " + TimeUnit.NANOSECONDS.toMicros(total / count) + " us over " + count +
+                    " borrows. Active stubs: " + stubs.getNumActive() + ", idle stubs: " + stubs.getNumIdle());
+        }
     }
 
     private OAuth2TokenValidationRequestDTO createValidationRequest(String accessToken, String resource) {
@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.mdm.mobileservices.windows.common.beans;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.wso2.carbon.policy.mgt.common.ProfileFeature;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Cached policy applied to a device, along with the policy revision it was loaded for. The content of the profile
+ * features is kept as text, as cache entries may be replicated across the cluster, and is parsed on first use.
+ */
+public class AppliedPolicyEntry implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private String revision;
+    private List<ProfileFeature> profileFeatures;
+    private Map<String, String> featureContents;
+    private transient Map<String, JSONObject> parsedFeatureContents;
+
+    public AppliedPolicyEntry(String revision, List<ProfileFeature> profileFeatures,
+                              Map<String, String> featureContents) {
+        this.revision = revision;
+        this.profileFeatures = profileFeatures;
+        this.featureContents = featureContents;
+    }
+
+    public String getRevision() {
+        return revision;
+    }
+
+    /**
+     * @return profile features of the applied policy or null if the device does not have an applied policy
+     */
+    public List<ProfileFeature> getProfileFeatures() {
+        return profileFeatures;
+    }
+
+    public JSONObject getFeatureContent(String featureCode) throws JSONException {
+        Map<String, JSONObject> parsedContents = parsedFeatureContents;
+        if (parsedContents == null) {
+            parsedContents = new ConcurrentHashMap<>();
+            parsedFeatureContents = parsedContents;
+        }
+        JSONObject content = parsedContents.get(featureCode);
+        if (content == null) {
+            String featureContent = featureContents.get(featureCode);
+            if (featureContent == null) {
+                return null;
+            }
+            content = new JSONObject(featureContent);
+            parsedContents.put(featureCode, content);
+        }
+        return content;
+    }
+}
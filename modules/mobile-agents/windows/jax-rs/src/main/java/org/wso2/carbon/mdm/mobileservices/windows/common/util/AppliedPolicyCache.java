@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.mdm.mobileservices.windows.common.util;
+
+import org.wso2.carbon.device.mgt.common.DeviceIdentifier;
+import org.wso2.carbon.mdm.mobileservices.windows.common.beans.AppliedPolicyEntry;
+import org.wso2.carbon.policy.mgt.common.Policy;
+import org.wso2.carbon.policy.mgt.common.PolicyManagementException;
+import org.wso2.carbon.policy.mgt.common.ProfileFeature;
+import org.wso2.mdm.mdmmgt.util.MDMAppConstants;
+
+import javax.cache.Cache;
+import javax.cache.Caching;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per device cache of the applied policy used for compliance evaluation on device polls. Entries are dropped
+ * whenever the policy of the device may have changed, are bound to the policy revision of the tenant, which the
+ * admin API renews whenever policies are published or reassigned, and expire after a fixed duration to pick up
+ * changes which are not visible to this endpoint.
+ */
+public class AppliedPolicyCache {
+
+    private static final String POLICY_CACHE_MANAGER = "WINDOWS_POLICY_CACHE_MANAGER";
+    private static final String POLICY_CACHE = "WINDOWS_APPLIED_POLICY_CACHE";
+    private static final long CACHE_DURATION = 15l;
+
+    private AppliedPolicyCache() {
+        throw new AssertionError();
+    }
+
+    /**
+     * Returns the policy applied to the device, loading and parsing it only when it is not already cached.
+     *
+     * @param deviceIdentifier device identifier
+     * @return applied policy entry of the device
+     * @throws PolicyManagementException
+     */
+    public static AppliedPolicyEntry getAppliedPolicy(DeviceIdentifier deviceIdentifier)
+            throws PolicyManagementException {
+        Cache<String, AppliedPolicyEntry> policyCache = getPolicyCache();
+        String revision = getPolicyRevision();
+        AppliedPolicyEntry appliedPolicy = policyCache.get(deviceIdentifier.getId());
+        if (appliedPolicy == null || !revision.equals(appliedPolicy.getRevision())) {
+            Policy policy = WindowsAPIUtils.getPolicyManagerService().getAppliedPolicyToDevice(deviceIdentifier);
+            appliedPolicy = createEntry(revision, policy);
+            policyCache.put(deviceIdentifier.getId(), appliedPolicy);
+        }
+        return appliedPolicy;
+    }
+
+    /**
+     * Drops the cached policy of the device. Called whenever a policy is evaluated for, delivered to or removed
+     * from the device.
+     *
+     * @param deviceIdentifier device identifier
+     */
+    public static void invalidate(DeviceIdentifier deviceIdentifier) {
+        getPolicyCache().remove(deviceIdentifier.getId());
+    }
+
+    private static AppliedPolicyEntry createEntry(String revision, Policy policy) {
+        List<ProfileFeature> profileFeatures = null;
+        if (policy != null && policy.getProfile() != null) {
+            profileFeatures = policy.getProfile().getProfileFeaturesList();
+        }
+        Map<String, String> featureContents = new HashMap<>();
+        if (profileFeatures != null) {
+            for (ProfileFeature profileFeature : profileFeatures) {
+                featureContents.put(profileFeature.getFeatureCode(), profileFeature.getContent().toString());
+            }
+        }
+        return new AppliedPolicyEntry(revision, profileFeatures, featureContents);
+    }
+
+    /**
+     * @return the current policy revision of the tenant
+     */
+    private static String getPolicyRevision() {
+        Cache<String, String> revisionCache = Caching.getCacheManager(
+                MDMAppConstants.PolicyRevisionConstants.POLICY_REVISION_CACHE_MANAGER).getCache(
+                MDMAppConstants.PolicyRevisionConstants.POLICY_REVISION_CACHE);
+        String revision = revisionCache.get(MDMAppConstants.PolicyRevisionConstants.POLICY_REVISION);
+        if (revision == null) {
+            // The revision is unknown, e.g. after it expired, so a new one is started to make sure that entries
+            // cached for any earlier revision are not used.
+            revision = UUID.randomUUID().toString();
+            if (!revisionCache.putIfAbsent(MDMAppConstants.PolicyRevisionConstants.POLICY_REVISION, revision)) {
+                String currentRevision = revisionCache.get(MDMAppConstants.PolicyRevisionConstants.POLICY_REVISION);
+                if (currentRevision != null) {
+                    revision = currentRevision;
+                }
+            }
+        }
+        return revision;
+    }
+
+    private static Cache<String, AppliedPolicyEntry> getPolicyCache() {
+        return TenantCacheProvider.getInstance().getCache(POLICY_CACHE_MANAGER, POLICY_CACHE, TimeUnit.MINUTES,
+                CACHE_DURATION);
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.mdm.mobileservices.windows.common.util;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.mdm.mobileservices.windows.common.beans.CacheEntry;
+
+import javax.cache.Cache;
+import javax.cache.event.CacheEntryEvent;
+import javax.cache.event.CacheEntryExpiredListener;
+import javax.cache.event.CacheEntryListenerException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Store for the challenge tokens which are handed over between the discovery, XCEP, WSTEP and SyncML steps of
+ * the enrollment. Tokens are kept in a Carbon cache, so that the steps of one enrollment can be served by different
+ * nodes of a cluster. Tokens expire a fixed time after they were last written and the size of the cache is bounded
+ * by the capacity configured for Carbon caches. The store counts hits, misses and expired tokens, and logs the
+ * counts at debug level whenever a token expires.
+ */
+public class ChallengeTokenStore {
+
+    private static final Log log = LogFactory.getLog(ChallengeTokenStore.class);
+    private static final String TOKEN_CACHE_MANAGER = "TOKEN_CACHE_MANAGER";
+    private static final String TOKEN_CACHE = "TOKEN_CACHE";
+
+    private final TenantCacheProvider cacheProvider;
+    private final long timeToLive;
+    private final TokenExpiryListener expiryListener = new TokenExpiryListener();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong expirations = new AtomicLong();
+
+    /**
+     * @param timeToLive time in minutes a token is kept after it was last written
+     */
+    public ChallengeTokenStore(long timeToLive) {
+        this(TenantCacheProvider.getInstance(), timeToLive);
+    }
+
+    /**
+     * @param cacheProvider provider of the token cache of each tenant
+     * @param timeToLive    time in minutes a token is kept after it was last written
+     */
+    public ChallengeTokenStore(TenantCacheProvider cacheProvider, long timeToLive) {
+        this.cacheProvider = cacheProvider;
+        this.timeToLive = timeToLive;
+    }
+
+    /**
+     * Returns the entry stored against the token.
+     *
+     * @param token challenge token
+     * @return the entry or null if the token is unknown or expired
+     */
+    public CacheEntry get(String token) {
+        CacheEntry entry = getTokenCache().get(token);
+        if (entry == null) {
+            misses.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+        }
+        return entry;
+    }
+
+    /**
+     * Stores the entry against the token and restarts its time to live.
+     *
+     * @param token challenge token
+     * @param entry entry to be stored
+     */
+    public void put(String token, CacheEntry entry) {
+        getTokenCache().put(token, entry);
+    }
+
+    public void remove(String token) {
+        getTokenCache().remove(token);
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public long getExpirationCount() {
+        return expirations.get();
+    }
+
+    private Cache<String, CacheEntry> getTokenCache() {
+        return cacheProvider.getCache(TOKEN_CACHE_MANAGER, TOKEN_CACHE, TimeUnit.MINUTES, timeToLive, expiryListener);
+    }
+
+    private class TokenExpiryListener implements CacheEntryExpiredListener<String, CacheEntry> {
+
+        @Override
+        public void entryExpired(CacheEntryEvent<? extends String, ? extends CacheEntry> event)
+                throws CacheEntryListenerException {
+            long expired = expirations.incrementAndGet();
+            if (log.isDebugEnabled()) {
+                log.debug("Challenge token expired. Token store hits: " + hits.get() + ", misses: " + misses.get() +
+                        ", expirations: " + expired);
+            }
+        }
+    }
+}
@@ -18,7 +18,12 @@
 
 package org.wso2.carbon.mdm.mobileservices.windows.common.util;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.wso2.carbon.mdm.mobileservices.windows.common.PluginConstants;
+import org.wso2.carbon.mdm.mobileservices.windows.common.exceptions.WAPProvisioningException;
+import org.wso2.carbon.mdm.mobileservices.windows.services.wstep.util.CertificateSigningExecutor;
+import org.wso2.carbon.mdm.mobileservices.windows.services.wstep.util.WapProvisioningTemplate;
 
 import javax.servlet.ServletContext;
 import javax.servlet.ServletContextEvent;
@@ -30,8 +35,11 @@ import java.io.File;
  */
 public class ConfigInitializerContextListener implements ServletContextListener {
 
+    private static Log log = LogFactory.getLog(ConfigInitializerContextListener.class);
+
     /**
-     * This method loads wap-provisioning file and sets wap-provisioning file as attribute in servlet context.
+     * This method loads wap-provisioning file, sets wap-provisioning file as attribute in servlet context and
+     * compiles the wap-provisioning template.
      *
      * @param servletContextEvent - Uses when servlet communicating with servlet container.
      */
@@ -42,10 +50,16 @@ public class ConfigInitializerContextListener implements ServletContextListener
         File wapProvisioningFile = new File(getClass().getClassLoader().getResource(
                 PluginConstants.CertificateEnrolment.WAP_PROVISIONING_XML).getFile());
         servletContext.setAttribute(PluginConstants.CONTEXT_WAP_PROVISIONING_FILE, wapProvisioningFile);
+        try {
+            WapProvisioningTemplate.getTemplate(wapProvisioningFile);
+        } catch (WAPProvisioningException e) {
+            log.error("Wap-provisioning template could not be compiled, it will be compiled on first enrollment.", e);
+        }
     }
 
     @Override
     public void contextDestroyed(ServletContextEvent servletContextEvent) {
+        CertificateSigningExecutor.shutdown();
     }
 
 }
@@ -21,22 +21,15 @@ package org.wso2.carbon.mdm.mobileservices.windows.common.util;
 import org.wso2.carbon.device.mgt.common.DeviceManagementException;
 import org.wso2.carbon.mdm.mobileservices.windows.common.beans.CacheEntry;
 
-import javax.cache.Cache;
-import javax.cache.CacheConfiguration;
-import javax.cache.CacheManager;
-import javax.cache.Caching;
 import java.util.UUID;
-import java.util.concurrent.TimeUnit;
 
 /**
  * Class for generate random token for XCEP and WSTEP
  */
 public class DeviceUtil {
 
-    private static final String TOKEN_CACHE_MANAGER = "TOKEN_CACHE_MANAGER";
-    private static final String TOKEN_CACHE = "TOKEN_CACHE";
     private static final long CACHE_DURATION = 15l;
-    private static boolean isContextCacheInitialized = false;
+    private static final ChallengeTokenStore tokenStore = new ChallengeTokenStore(CACHE_DURATION);
 
     public static String generateRandomToken() {
         return String.valueOf(UUID.randomUUID());
@@ -55,27 +48,14 @@ public class DeviceUtil {
         if (deviceID != null) {
             cacheEntry.setDeviceID(deviceID);
         }
-        getTokenCache().put(token, cacheEntry);
+        tokenStore.put(token, cacheEntry);
     }
 
     public static void removeToken(String token) {
-        getTokenCache().remove(token);
+        tokenStore.remove(token);
     }
 
     public static Object getCacheEntry(String token) {
-        return getTokenCache().get(token);
-    }
-
-    private static Cache getTokenCache() {
-        CacheManager contextCacheManager = Caching.getCacheManager(TOKEN_CACHE_MANAGER).
-                getCache(TOKEN_CACHE).getCacheManager();
-        if (!isContextCacheInitialized) {
-            isContextCacheInitialized = true;
-            return contextCacheManager.createCacheBuilder(TOKEN_CACHE_MANAGER).setExpiry(
-                    CacheConfiguration.ExpiryType.MODIFIED,
-                    new CacheConfiguration.Duration(TimeUnit.MINUTES, CACHE_DURATION)).setStoreByValue(false).build();
-        } else {
-            return Caching.getCacheManager(TOKEN_CACHE_MANAGER).getCache(TOKEN_CACHE);
-        }
+        return tokenStore.get(token);
     }
 }
@@ -42,29 +42,25 @@ import static javax.ws.rs.core.MediaType.APPLICATION_JSON;
 @Produces(APPLICATION_JSON)
 @Consumes(APPLICATION_JSON)
 public class GsonMessageBodyHandler implements MessageBodyWriter<Object>, MessageBodyReader<Object> {
-    private Gson gson;
     private static final String UTF_8 = "UTF-8";
+    private static final int BUFFER_SIZE = 8192;
+    /**
+     * Gson is thread safe and caches the type adapters it creates, hence a single instance serves all requests.
+     */
+    private static final Gson gson = new GsonBuilder().create();
 
     public boolean isReadable(Class<?> aClass, Type type, Annotation[] annotations, MediaType mediaType) {
         return true;
     }
 
-    private Gson getGson() {
-        if (gson == null) {
-            final GsonBuilder gsonBuilder = new GsonBuilder();
-            gson = gsonBuilder.create();
-        }
-        return gson;
-    }
-
     public Object readFrom(Class<Object> objectClass, Type type, Annotation[] annotations, MediaType mediaType,
                            MultivaluedMap<String, String> stringStringMultivaluedMap, InputStream entityStream)
             throws IOException, WebApplicationException {
 
-        InputStreamReader reader = new InputStreamReader(entityStream, "UTF-8");
+        Reader reader = new BufferedReader(new InputStreamReader(entityStream, UTF_8), BUFFER_SIZE);
 
         try {
-            return getGson().fromJson(reader, type);
+            return gson.fromJson(reader, type);
         } finally {
             reader.close();
         }
@@ -82,15 +78,9 @@ public class GsonMessageBodyHandler implements MessageBodyWriter<Object>, Messag
                         MultivaluedMap<String, Object> stringObjectMultivaluedMap, OutputStream entityStream)
             throws IOException, WebApplicationException {
 
-        OutputStreamWriter writer = new OutputStreamWriter(entityStream, UTF_8);
+        Writer writer = new BufferedWriter(new OutputStreamWriter(entityStream, UTF_8), BUFFER_SIZE);
         try {
-            Type jsonType;
-            if (type.equals(type)) {
-                jsonType = type;
-            } else {
-                jsonType = type;
-            }
-            getGson().toJson(object, jsonType, writer);
+            gson.toJson(object, type, writer);
         } finally {
             writer.close();
         }
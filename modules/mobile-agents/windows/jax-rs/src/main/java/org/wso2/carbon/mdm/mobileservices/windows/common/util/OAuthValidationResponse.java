@@ -27,6 +27,7 @@ public class OAuthValidationResponse {
     private String tenantDomain;
     private boolean isValid;
     private String errorMsg;
+    private long expiryTime;
 
     public OAuthValidationResponse() {
     }
@@ -68,4 +69,15 @@ public class OAuthValidationResponse {
     public void setErrorMsg(String errorMsg) {
         this.errorMsg = errorMsg;
     }
+
+    /**
+     * @return remaining validity period of the token in seconds, as reported by the token validation service
+     */
+    public long getExpiryTime() {
+        return expiryTime;
+    }
+
+    public void setExpiryTime(long expiryTime) {
+        this.expiryTime = expiryTime;
+    }
 }
@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.mdm.mobileservices.windows.common.util;
+
+import org.wso2.carbon.context.PrivilegedCarbonContext;
+
+import javax.cache.Cache;
+import javax.cache.CacheConfiguration;
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+import javax.cache.event.CacheEntryListener;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Provides the caches of this endpoint. Carbon caches are scoped to the tenant of the current carbon context, so the
+ * cache manager of each tenant is held once it has been looked up and each cache is built once per tenant.
+ */
+public class TenantCacheProvider {
+
+    private static final TenantCacheProvider instance = new TenantCacheProvider();
+
+    private final ConcurrentMap<String, CacheManager> cacheManagers = new ConcurrentHashMap<>();
+    private final Set<String> initializedCaches = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    protected TenantCacheProvider() {
+    }
+
+    public static TenantCacheProvider getInstance() {
+        return instance;
+    }
+
+    /**
+     * Returns the cache of the current tenant, building it with the given expiry if the tenant has not used it yet.
+     *
+     * @param cacheManagerName name of the cache manager
+     * @param cacheName        name of the cache
+     * @param timeUnit         unit of the expiry duration
+     * @param duration         duration after which an entry expires once it is modified
+     * @return cache of the current tenant
+     */
+    public <K, V> Cache<K, V> getCache(String cacheManagerName, String cacheName, TimeUnit timeUnit, long duration) {
+        return getCache(cacheManagerName, cacheName, timeUnit, duration, null);
+    }
+
+    /**
+     * Returns the cache of the current tenant, building it with the given expiry if the tenant has not used it yet.
+     *
+     * @param cacheManagerName name of the cache manager
+     * @param cacheName        name of the cache
+     * @param timeUnit         unit of the expiry duration
+     * @param duration         duration after which an entry expires once it is modified
+     * @param listener         listener registered with the cache when it is built, or null
+     * @return cache of the current tenant
+     */
+    public <K, V> Cache<K, V> getCache(String cacheManagerName, String cacheName, TimeUnit timeUnit, long duration,
+                                       CacheEntryListener<? super K, ? super V> listener) {
+        String cacheManagerKey = getTenantId() + ":" + cacheManagerName;
+        CacheManager cacheManager = cacheManagers.get(cacheManagerKey);
+        if (cacheManager == null) {
+            cacheManager = getCacheManager(cacheManagerName);
+            CacheManager existingCacheManager = cacheManagers.putIfAbsent(cacheManagerKey, cacheManager);
+            if (existingCacheManager != null) {
+                cacheManager = existingCacheManager;
+            }
+        }
+        String cacheKey = cacheManagerKey + ":" + cacheName;
+        if (!initializedCaches.contains(cacheKey)) {
+            synchronized (this) {
+                if (!initializedCaches.contains(cacheKey)) {
+                    Cache<K, V> cache = cacheManager.<K, V>createCacheBuilder(cacheName).setExpiry(
+                            CacheConfiguration.ExpiryType.MODIFIED, new CacheConfiguration.Duration(timeUnit, duration))
+                            .setStoreByValue(false).build();
+                    if (listener != null) {
+                        cache.registerCacheEntryListener(listener);
+                    }
+                    initializedCaches.add(cacheKey);
+                    return cache;
+                }
+            }
+        }
+        return cacheManager.getCache(cacheName);
+    }
+
+    protected int getTenantId() {
+        return PrivilegedCarbonContext.getThreadLocalCarbonContext().getTenantId();
+    }
+
+    protected CacheManager getCacheManager(String cacheManagerName) {
+        return Caching.getCacheManager(cacheManagerName);
+    }
+}
@@ -69,12 +69,19 @@ public class WindowsAPIUtils {
     public static CertificateManagementService getCertificateManagementService() {
         CertificateManagementService cmService;
         PrivilegedCarbonContext.startTenantFlow();
-        PrivilegedCarbonContext ctx = PrivilegedCarbonContext.getThreadLocalCarbonContext();
-        ctx.setTenantDomain(MultitenantConstants.SUPER_TENANT_DOMAIN_NAME);
-        ctx.setTenantId(MultitenantConstants.SUPER_TENANT_ID);
-        cmService =
-                (CertificateManagementService) ctx.getOSGiService(DeviceManagementProviderService.class, null);
-        PrivilegedCarbonContext.endTenantFlow();
+        try {
+            PrivilegedCarbonContext ctx = PrivilegedCarbonContext.getThreadLocalCarbonContext();
+            ctx.setTenantDomain(MultitenantConstants.SUPER_TENANT_DOMAIN_NAME);
+            ctx.setTenantId(MultitenantConstants.SUPER_TENANT_ID);
+            cmService = (CertificateManagementService) ctx.getOSGiService(CertificateManagementService.class, null);
+        } finally {
+            PrivilegedCarbonContext.endTenantFlow();
+        }
+        if (cmService == null) {
+            String msg = "Certificate Management service has not initialized.";
+            log.error(msg);
+            throw new IllegalStateException(msg);
+        }
         return cmService;
     }
 
@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.mdm.mobileservices.windows.common.util;
+
+/**
+ * Escapes text and attribute values the same way the Transformer did when the syncml and wap-provisioning documents
+ * were serialized through the DOM.
+ */
+public class XmlEscapeUtils {
+
+    private XmlEscapeUtils() {
+        throw new AssertionError();
+    }
+
+    /**
+     * Appends the escaped value to the builder.
+     *
+     * @param builder   builder the escaped value is appended to
+     * @param value     value to be escaped
+     * @param attribute true if the value is an attribute value, in which case quotes and whitespace other than
+     *                  spaces are escaped as well
+     */
+    public static void escape(StringBuilder builder, String value, boolean attribute) {
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '&':
+                    builder.append("&amp;");
+                    break;
+                case '<':
+                    builder.append("&lt;");
+                    break;
+                case '>':
+                    builder.append("&gt;");
+                    break;
+                case '"':
+                    builder.append(attribute ? "&quot;" : "\"");
+                    break;
+                case '\r':
+                    builder.append("&#13;");
+                    break;
+                case '\n':
+                    builder.append(attribute ? "&#10;" : "\n");
+                    break;
+                case '\t':
+                    builder.append(attribute ? "&#9;" : "\t");
+                    break;
+                default:
+                    if (Character.isHighSurrogate(c) && i + 1 < length &&
+                            Character.isLowSurrogate(value.charAt(i + 1))) {
+                        builder.append("&#").append(Character.toCodePoint(c, value.charAt(++i))).append(';');
+                    } else if (c < 0x20 || (c >= 0x7F && c <= 0x9F)) {
+                        builder.append("&#").append((int) c).append(';');
+                    } else {
+                        builder.append(c);
+                    }
+            }
+        }
+    }
+}
@@ -35,6 +35,9 @@ public class Constants {
     public static final String UTF_8 = "UTF-8";
     public static final String MD5 = "MD5";
     public static final String YES = "yes";
+    public static final String XML_DECLARATION = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>";
+    public static final String INDENT_AMOUNT_PROPERTY = "{http://xml.apache.org/xslt}indent-amount";
+    public static final int INDENT_AMOUNT = 4;
     public static final String ERROR = "Error";
     public static final String INFORMATION = "information";
 
@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.mdm.mobileservices.windows.operations.util;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.device.mgt.common.DeviceIdentifier;
+import org.wso2.carbon.device.mgt.common.DeviceManagementException;
+import org.wso2.carbon.device.mgt.common.operation.mgt.Operation;
+import org.wso2.carbon.device.mgt.common.operation.mgt.OperationManagementException;
+import org.wso2.carbon.mdm.mobileservices.windows.common.util.WindowsAPIUtils;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Request scoped view of the pending operations of a single device. Pending operations are loaded once per
+ * SyncML message and indexed by operation id, which is the CmdRef the device reports back in its statuses.
+ * Status changes are applied in memory and only the operations whose status actually changed are written back
+ * when the snapshot is flushed.
+ */
+public class DeviceOperationSnapshot {
+
+    private static Log log = LogFactory.getLog(DeviceOperationSnapshot.class);
+
+    private final DeviceIdentifier deviceIdentifier;
+    private Map<Integer, Operation> operations;
+    private final Map<Integer, Operation> changedOperations = new LinkedHashMap<>();
+
+    public DeviceOperationSnapshot(DeviceIdentifier deviceIdentifier) {
+        this.deviceIdentifier = deviceIdentifier;
+    }
+
+    public DeviceOperationSnapshot(DeviceIdentifier deviceIdentifier, List<? extends Operation> pendingOperations) {
+        this.deviceIdentifier = deviceIdentifier;
+        this.operations = indexOperations(pendingOperations);
+    }
+
+    public DeviceIdentifier getDeviceIdentifier() {
+        return deviceIdentifier;
+    }
+
+    /**
+     * Returns the pending operation referred by a status of the device. Operations which were already
+     * acknowledged by an earlier status of the same message are not returned again.
+     *
+     * @param commandReference CmdRef of the status, which is the id of the operation
+     * @param code             expected operation code
+     * @return the pending operation or null if there is no pending operation with the given id and code
+     * @throws DeviceManagementException
+     * @throws OperationManagementException
+     */
+    public Operation getPendingOperation(int commandReference, String code) throws DeviceManagementException,
+            OperationManagementException {
+        Operation operation = getPendingOperation(commandReference);
+        if (operation != null && code.equals(operation.getCode())) {
+            return operation;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the pending operation referred by a status of the device regardless of its operation code.
+     *
+     * @param commandReference CmdRef of the status, which is the id of the operation
+     * @return the pending operation or null if there is no pending operation with the given id
+     * @throws DeviceManagementException
+     * @throws OperationManagementException
+     */
+    public Operation getPendingOperation(int commandReference) throws DeviceManagementException,
+            OperationManagementException {
+        Operation operation = getOperations().get(commandReference);
+        if (operation != null && Operation.Status.PENDING.equals(operation.getStatus())) {
+            return operation;
+        }
+        return null;
+    }
+
+    /**
+     * Changes the status of an operation in the snapshot. The change is persisted on the next {@link #flush()}.
+     *
+     * @param operation operation taken from this snapshot
+     * @param status    new status of the operation
+     */
+    public void updateStatus(Operation operation, Operation.Status status) {
+        if (status.equals(operation.getStatus())) {
+            return;
+        }
+        operation.setStatus(status);
+        changedOperations.put(operation.getId(), operation);
+    }
+
+    /**
+     * Writes every operation whose status changed since the last flush back to the operation store.
+     *
+     * @throws OperationManagementException
+     */
+    public void flush() throws OperationManagementException {
+        if (changedOperations.isEmpty()) {
+            return;
+        }
+        for (Operation operation : changedOperations.values()) {
+            WindowsAPIUtils.updateOperation(deviceIdentifier.getId(), operation);
+            if (log.isDebugEnabled()) {
+                log.debug("Updating operation '" + operation.toString() + "'");
+            }
+        }
+        changedOperations.clear();
+    }
+
+    private Map<Integer, Operation> getOperations() throws DeviceManagementException,
+            OperationManagementException {
+        if (operations == null) {
+            operations = indexOperations(WindowsAPIUtils.getDeviceManagementService()
+                    .getOperationsByDeviceAndStatus(deviceIdentifier, Operation.Status.PENDING));
+        }
+        return operations;
+    }
+
+    private static Map<Integer, Operation> indexOperations(List<? extends Operation> pendingOperations) {
+        Map<Integer, Operation> operationsById = new HashMap<>();
+        if (pendingOperations != null) {
+            for (Operation operation : pendingOperations) {
+                operationsById.put(operation.getId(), operation);
+            }
+        }
+        return operationsById;
+    }
+}
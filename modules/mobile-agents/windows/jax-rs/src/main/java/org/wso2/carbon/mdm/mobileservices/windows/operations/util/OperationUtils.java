@@ -31,7 +31,9 @@ import org.wso2.carbon.device.mgt.common.notification.mgt.NotificationManagement
 import org.wso2.carbon.device.mgt.common.operation.mgt.Operation;
 import org.wso2.carbon.device.mgt.common.operation.mgt.OperationManagementException;
 import org.wso2.carbon.mdm.mobileservices.windows.common.PluginConstants;
+import org.wso2.carbon.mdm.mobileservices.windows.common.beans.AppliedPolicyEntry;
 import org.wso2.carbon.mdm.mobileservices.windows.common.exceptions.WindowsDeviceEnrolmentException;
+import org.wso2.carbon.mdm.mobileservices.windows.common.util.AppliedPolicyCache;
 import org.wso2.carbon.mdm.mobileservices.windows.common.util.WindowsAPIUtils;
 import org.wso2.carbon.mdm.mobileservices.windows.operations.*;
 import org.wso2.carbon.mdm.mobileservices.windows.services.syncml.beans.Profile;
@@ -50,123 +52,81 @@ import static org.wso2.carbon.mdm.mobileservices.windows.common.util.WindowsAPIU
  */
 public class OperationUtils {
     private static Log log = LogFactory.getLog(OperationUtils.class);
-    List<? extends Operation> pendingDataOperations;
-
 
     /**
      * Update the operations using device status payload.
      *
-     * @param status           Client side status for the specific operations
-     * @param syncmlDocument   syncml payload for operation status which parse through  the syncml engine
-     * @param deviceIdentifier specific device identifier for each device
+     * @param status   Client side status for the specific operations
+     * @param snapshot pending operations of the device loaded for the current syncml payload
      * @throws OperationManagementException
      * @throws DeviceManagementException
      */
-    public void updateDeviceOperations(Status status, SyncmlDocument syncmlDocument,
-                                       DeviceIdentifier deviceIdentifier)
+    public void updateDeviceOperations(Status status, DeviceOperationSnapshot snapshot)
             throws OperationManagementException, DeviceManagementException, NotificationManagementException,
             WindowsOperationException {
 
-        pendingDataOperations = WindowsAPIUtils.getDeviceManagementService()
-                .getOperationsByDeviceAndStatus(deviceIdentifier, Operation.Status.PENDING);
         if (status.getData().equals(Constants.SyncMLResponseCodes.ACCEPTED) || status.getData().equals
                 (Constants.SyncMLResponseCodes.ACCEPTED_FOR_PROCESSING)) {
-            for (Operation operation : pendingDataOperations) {
-                if (operation.getId() == status.getCommandReference()) {
-                    operation.setStatus(Operation.Status.COMPLETED);
-                }
+            Operation operation = snapshot.getPendingOperation(status.getCommandReference());
+            if (operation != null) {
+                snapshot.updateStatus(operation, Operation.Status.COMPLETED);
             }
-            updateOperations(syncmlDocument.getHeader().getSource().getLocURI(), pendingDataOperations);
         } else if (status.getData().equals(Constants.SyncMLResponseCodes.PIN_NOTFOUND)) {
-            for (Operation operation : pendingDataOperations) {
-                if (operation.getId() == status.getCommandReference() && operation.
-                        getCode().equals(String.valueOf(OperationCode.Command.DEVICE_LOCK))) {
-                    operation.setStatus(Operation.Status.ERROR);
-                    updateOperations(syncmlDocument.getHeader().getSource().getLocURI(), pendingDataOperations);
-                    try {
-                        NotificationManagementService nmService = WindowsAPIUtils.getNotificationManagementService();
-                        Notification lockResetNotification = new Notification();
-                        lockResetNotification.setOperationId(status.getCommandReference());
-                        lockResetNotification.setStatus(String.valueOf(Notification.Status.NEW));
-                        lockResetNotification.setDeviceIdentifier(deviceIdentifier);
-                        lockResetNotification.setDescription(
-                                Constants.SyncMLResponseCodes.LOCKRESET_NOTIFICATION);
-                        nmService.addNotification(lockResetNotification);
-                    } catch (NotificationManagementException e) {
-                        throw new WindowsOperationException("Failure occurred in getting notification service", e);
-                    }
+            Operation operation = snapshot.getPendingOperation(status.getCommandReference(),
+                    PluginConstants.OperationCodes.DEVICE_LOCK);
+            if (operation != null) {
+                snapshot.updateStatus(operation, Operation.Status.ERROR);
+                try {
+                    NotificationManagementService nmService = WindowsAPIUtils.getNotificationManagementService();
+                    Notification lockResetNotification = new Notification();
+                    lockResetNotification.setOperationId(status.getCommandReference());
+                    lockResetNotification.setStatus(String.valueOf(Notification.Status.NEW));
+                    lockResetNotification.setDeviceIdentifier(snapshot.getDeviceIdentifier());
+                    lockResetNotification.setDescription(
+                            Constants.SyncMLResponseCodes.LOCKRESET_NOTIFICATION);
+                    nmService.addNotification(lockResetNotification);
+                } catch (NotificationManagementException e) {
+                    throw new WindowsOperationException("Failure occurred in getting notification service", e);
                 }
             }
         }
     }
 
-    /**
-     * Update operation statuses
-     *
-     * @param deviceId   specific device Id
-     * @param operations operation list to be update
-     * @throws OperationManagementException
-     */
-    public void updateOperations(String deviceId,
-                                 List<? extends org.wso2.carbon.device.mgt.common.operation.mgt.Operation> operations)
-            throws OperationManagementException {
-
-        for (Operation operation : operations) {
-            WindowsAPIUtils.updateOperation(deviceId, operation);
-            if (log.isDebugEnabled()) {
-                log.debug("Updating operation '" + operation.toString() + "'");
-            }
-        }
-    }
-
     /**
      * Update Status of the lock operation.
      *
-     * @param status           Status of the operation.
-     * @param syncmlDocument   parsed syncml payload.
-     * @param deviceIdentifier Device Id.
+     * @param status   Status of the operation.
+     * @param snapshot pending operations of the device loaded for the current syncml payload.
      * @throws OperationManagementException
      * @throws DeviceManagementException
      * @throws NotificationManagementException
      */
-    public void lockOperationUpdate(Status status, SyncmlDocument syncmlDocument, DeviceIdentifier deviceIdentifier)
+    public void lockOperationUpdate(Status status, DeviceOperationSnapshot snapshot)
             throws OperationManagementException, DeviceManagementException, NotificationManagementException {
 
-        pendingDataOperations = WindowsAPIUtils.getDeviceManagementService()
-                .getOperationsByDeviceAndStatus(deviceIdentifier, Operation.Status.PENDING);
+        Operation operation = snapshot.getPendingOperation(status.getCommandReference(),
+                PluginConstants.OperationCodes.DEVICE_LOCK);
+        if (operation == null) {
+            return;
+        }
         if (status.getData().equals(Constants.SyncMLResponseCodes.ACCEPTED)) {
-            for (Operation operation : pendingDataOperations) {
-                if (operation.getCode().equals(OperationCode.Command.DEVICE_LOCK.getCode())
-                        && operation.getId() == status.getCommandReference()) {
-                    operation.setStatus(Operation.Status.COMPLETED);
-                    new OperationUtils().updateOperations(syncmlDocument.getHeader().getSource().getLocURI(),
-                            pendingDataOperations);
-                }
-            }
+            snapshot.updateStatus(operation, Operation.Status.COMPLETED);
         }
         if (status.getData().equals(Constants.SyncMLResponseCodes.PIN_NOTFOUND)) {
-            for (Operation operation : pendingDataOperations) {
-
-                if (operation.getCode().equals(OperationCode.Command.DEVICE_LOCK.getCode()) &&
-                        operation.getId() == status.getCommandReference()) {
-                    operation.setStatus(Operation.Status.ERROR);
-                    new OperationUtils().updateOperations(syncmlDocument.getHeader().getSource().getLocURI(),
-                            pendingDataOperations);
-                    try {
-                        NotificationManagementService nmService = WindowsAPIUtils.getNotificationManagementService();
-                        Notification lockResetNotification = new Notification();
-                        lockResetNotification.setOperationId(status.getCommandReference());
-                        lockResetNotification.setStatus(String.valueOf(Notification.Status.NEW));
-                        lockResetNotification.setDeviceIdentifier(deviceIdentifier);
-                        lockResetNotification.setDescription(Constants.SyncMLResponseCodes.LOCKRESET_NOTIFICATION);
-
-                        nmService.addNotification(lockResetNotification);
-                    } catch (NotificationManagementException e) {
-                        String msg = "Failure occurred in getting notification service";
-                        log.error(msg, e);
-                        throw new NotificationManagementException(msg, e);
-                    }
-                }
+            snapshot.updateStatus(operation, Operation.Status.ERROR);
+            try {
+                NotificationManagementService nmService = WindowsAPIUtils.getNotificationManagementService();
+                Notification lockResetNotification = new Notification();
+                lockResetNotification.setOperationId(status.getCommandReference());
+                lockResetNotification.setStatus(String.valueOf(Notification.Status.NEW));
+                lockResetNotification.setDeviceIdentifier(snapshot.getDeviceIdentifier());
+                lockResetNotification.setDescription(Constants.SyncMLResponseCodes.LOCKRESET_NOTIFICATION);
+
+                nmService.addNotification(lockResetNotification);
+            } catch (NotificationManagementException e) {
+                String msg = "Failure occurred in getting notification service";
+                log.error(msg, e);
+                throw new NotificationManagementException(msg, e);
             }
         }
     }
@@ -174,26 +134,19 @@ public class OperationUtils {
     /***
      * Update status of the ring operation.
      *
-     * @param status           Ring status of the device.
-     * @param syncmlDocument   Parsed syncml payload from the syncml engine.
-     * @param deviceIdentifier specific device id to be update.
+     * @param status   Ring status of the device.
+     * @param snapshot pending operations of the device loaded for the current syncml payload.
      * @throws OperationManagementException
      * @throws DeviceManagementException
      */
-    public void ring(Status status, SyncmlDocument syncmlDocument,
-                     DeviceIdentifier deviceIdentifier)
+    public void ring(Status status, DeviceOperationSnapshot snapshot)
             throws OperationManagementException, DeviceManagementException {
 
         if (status.getData().equals(Constants.SyncMLResponseCodes.ACCEPTED)) {
-            pendingDataOperations = WindowsAPIUtils.getDeviceManagementService()
-                    .getOperationsByDeviceAndStatus(deviceIdentifier, Operation.Status.PENDING);
-            for (Operation operation : pendingDataOperations) {
-                if (operation.getCode().equals(OperationCode.Command.DEVICE_RING) &&
-                        (operation.getId() == status.getCommandReference())) {
-                    operation.setStatus(Operation.Status.COMPLETED);
-                    new OperationUtils().updateOperations(syncmlDocument.getHeader().getSource().getLocURI(),
-                            pendingDataOperations);
-                }
+            Operation operation = snapshot.getPendingOperation(status.getCommandReference(),
+                    PluginConstants.OperationCodes.DEVICE_RING);
+            if (operation != null) {
+                snapshot.updateStatus(operation, Operation.Status.COMPLETED);
             }
         }
     }
@@ -201,27 +154,19 @@ public class OperationUtils {
     /***
      * Update the status of the DataWipe operation.
      *
-     * @param status           Status of the datawipe.
-     * @param syncmlDocument   Parsed syncml payload from the syncml engine.
-     * @param deviceIdentifier specific device id to be wiped.
+     * @param status   Status of the datawipe.
+     * @param snapshot pending operations of the device loaded for the current syncml payload.
      * @throws OperationManagementException
      * @throws DeviceManagementException
      */
-    public void dataWipe(Status status, SyncmlDocument syncmlDocument,
-                         DeviceIdentifier deviceIdentifier)
+    public void dataWipe(Status status, DeviceOperationSnapshot snapshot)
             throws OperationManagementException, DeviceManagementException {
 
         if (status.getData().equals(Constants.SyncMLResponseCodes.ACCEPTED)) {
-            pendingDataOperations = WindowsAPIUtils.getDeviceManagementService()
-                    .getOperationsByDeviceAndStatus(deviceIdentifier, Operation.Status.PENDING);
-            for (Operation operation : pendingDataOperations) {
-
-                if (operation.getCode().equals(OperationCode.Command.WIPE_DATA) &&
-                        (operation.getId() == status.getCommandReference())) {
-                    operation.setStatus(Operation.Status.COMPLETED);
-                    updateOperations(syncmlDocument.getHeader().getSource().getLocURI(),
-                            pendingDataOperations);
-                }
+            Operation operation = snapshot.getPendingOperation(status.getCommandReference(),
+                    PluginConstants.OperationCodes.WIPE_DATA);
+            if (operation != null) {
+                snapshot.updateStatus(operation, Operation.Status.COMPLETED);
             }
         }
     }
@@ -249,6 +194,14 @@ public class OperationUtils {
         generateComplianceFeatureStatus(syncmlDocument);
 
         pendingOperations = WindowsAPIUtils.getDeviceManagementService().getPendingOperations(deviceIdentifier);
+        if (pendingOperations != null) {
+            for (Operation operation : pendingOperations) {
+                if (PluginConstants.OperationCodes.POLICY_BUNDLE.equals(operation.getCode())) {
+                    AppliedPolicyCache.invalidate(deviceIdentifier);
+                    break;
+                }
+            }
+        }
         return pendingOperations;
     }
 
@@ -269,6 +222,8 @@ public class OperationUtils {
 
     /**
      * Update the completed/Error status of the operation which have the URI of the operation code in the syncml payload.
+     * Pending operations of the device are loaded once for the whole payload and only the operations whose status
+     * changed are written back.
      *
      * @param syncmlDocument SyncmlDocument object generated from the the syncml engine.
      * @throws DeviceManagementException
@@ -280,61 +235,49 @@ public class OperationUtils {
         DeviceIdentifier deviceIdentifier = convertToDeviceIdentifierObject(
                 syncmlDocument.getHeader().getSource().getLocURI());
         List<Status> statuses = syncmlDocument.getBody().getStatus();
-        OperationUtils operationUtils = new OperationUtils();
-
-        for (Status status : statuses) {
+        DeviceOperationSnapshot snapshot = new DeviceOperationSnapshot(deviceIdentifier);
 
-            if (status.getCommand().equals(Constants.EXECUTE)) {
-                if (status.getTargetReference() == null) {
-                    operationUtils.updateDeviceOperations(status, syncmlDocument, deviceIdentifier);
-                } else {
-                    if (status.getTargetReference().equals(OperationCode.Command.DEVICE_LOCK)) {
-                        operationUtils.lockOperationUpdate(status, syncmlDocument, deviceIdentifier);
-                    }
-                    if (status.getTargetReference().equals(OperationCode.Command.DEVICE_RING)) {
-                        operationUtils.ring(status, syncmlDocument, deviceIdentifier);
-                    }
-                    if (status.getTargetReference().equals(OperationCode.Command.WIPE_DATA)) {
-                        operationUtils.dataWipe(status, syncmlDocument, deviceIdentifier);
-                    }
-                }
-            }
-            if (status.getCommand().equals(Constants.SEQUENCE)) {
-                if (status.getData().equals(Constants.SyncMLResponseCodes.ACCEPTED)) {
+        try {
+            for (Status status : statuses) {
 
-                    pendingDataOperations = WindowsAPIUtils.getDeviceManagementService()
-                            .getOperationsByDeviceAndStatus(deviceIdentifier, Operation.Status.PENDING);
-                    for (Operation operation : pendingDataOperations) {
-                        if (operation.getCode().equals(PluginConstants.OperationCodes.POLICY_BUNDLE) &&
-                                operation.getId() == status.getCommandReference()) {
-                            operation.setStatus(Operation.Status.COMPLETED);
+                if (status.getCommand().equals(Constants.EXECUTE)) {
+                    if (status.getTargetReference() == null) {
+                        updateDeviceOperations(status, snapshot);
+                    } else {
+                        if (status.getTargetReference().equals(OperationCode.Command.DEVICE_LOCK.getCode())) {
+                            lockOperationUpdate(status, snapshot);
                         }
-                        if (operation.getCode().equals(PluginConstants.OperationCodes.MONITOR) &&
-                                operation.getId() == status.getCommandReference()) {
-                            operation.setStatus(Operation.Status.COMPLETED);
+                        if (status.getTargetReference().equals(OperationCode.Command.DEVICE_RING.getCode())) {
+                            ring(status, snapshot);
                         }
-                    }
-                    operationUtils.updateOperations(syncmlDocument.getHeader().getSource().getLocURI(),
-                            pendingDataOperations);
-                } else {
-                    pendingDataOperations = WindowsAPIUtils.getDeviceManagementService()
-                            .getOperationsByDeviceAndStatus(deviceIdentifier, Operation.Status.PENDING);
-                    for (Operation operation : pendingDataOperations) {
-
-                        if (operation.getCode().equals(PluginConstants.OperationCodes.POLICY_BUNDLE) &&
-                                operation.getId() == status.getCommandReference()) {
-                            operation.setStatus(Operation.Status.ERROR);
+                        if (status.getTargetReference().equals(OperationCode.Command.WIPE_DATA.getCode())) {
+                            dataWipe(status, snapshot);
                         }
-                        if (operation.getCode().equals(PluginConstants.OperationCodes.MONITOR) &&
-                                operation.getId() == status.getCommandReference()) {
-                            operation.setStatus(Operation.Status.ERROR);
+                    }
+                }
+                if (status.getCommand().equals(Constants.SEQUENCE)) {
+                    Operation.Status operationStatus;
+                    if (status.getData().equals(Constants.SyncMLResponseCodes.ACCEPTED)) {
+                        operationStatus = Operation.Status.COMPLETED;
+                    } else {
+                        operationStatus = Operation.Status.ERROR;
+                    }
+                    Operation operation = snapshot.getPendingOperation(status.getCommandReference());
+                    if (operation != null && (operation.getCode().equals(PluginConstants.OperationCodes.
+                            POLICY_BUNDLE) || operation.getCode().equals(PluginConstants.OperationCodes.MONITOR))) {
+                        snapshot.updateStatus(operation, operationStatus);
+                        if (operation.getCode().equals(PluginConstants.OperationCodes.POLICY_BUNDLE)) {
+                            AppliedPolicyCache.invalidate(deviceIdentifier);
                         }
                     }
-                    operationUtils.updateOperations(syncmlDocument.getHeader().getSource().getLocURI(),
-                            pendingDataOperations);
                 }
             }
+        } catch (Exception e) {
+            String msg = "Error occurred while updating the operations of device '" + deviceIdentifier.getId() + "'";
+            log.error(msg, e);
+            throw e;
         }
+        snapshot.flush();
     }
 
     /**
@@ -439,13 +382,11 @@ public class OperationUtils {
         boolean isCompliance = false;
         if (profiles.size() != Constants.EMPTY) {
             try {
-                if (WindowsAPIUtils.getPolicyManagerService().getAppliedPolicyToDevice(deviceIdentifier).getProfile().
-                        getProfileFeaturesList() != null) {
-                    List<ProfileFeature> profileFeatures = WindowsAPIUtils.getPolicyManagerService().
-                            getAppliedPolicyToDevice(deviceIdentifier).getProfile().getProfileFeaturesList();
+                AppliedPolicyEntry appliedPolicy = AppliedPolicyCache.getAppliedPolicy(deviceIdentifier);
+                if (appliedPolicy.getProfileFeatures() != null) {
                     List<ComplianceFeature> complianceFeatures = new ArrayList<>();
-                    for (ProfileFeature activeFeature : profileFeatures) {
-                        JSONObject policyContent = new JSONObject(activeFeature.getContent().toString());
+                    for (ProfileFeature activeFeature : appliedPolicy.getProfileFeatures()) {
+                        JSONObject policyContent = appliedPolicy.getFeatureContent(activeFeature.getFeatureCode());
 
                         for (Profile deviceFeature : profiles) {
                             if (deviceFeature.getFeatureCode().equals(activeFeature.getFeatureCode()) &&
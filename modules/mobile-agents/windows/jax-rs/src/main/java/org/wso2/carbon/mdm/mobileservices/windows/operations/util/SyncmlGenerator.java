@@ -85,8 +85,12 @@ public class SyncmlGenerator {
         }
         transformer.setOutputProperty(OutputKeys.ENCODING, Constants.UTF_8);
         transformer.setOutputProperty(OutputKeys.INDENT, Constants.YES);
+        // The indentation and the declaration are pinned, as their defaults differ between JDK versions.
+        transformer.setOutputProperty(Constants.INDENT_AMOUNT_PROPERTY, String.valueOf(Constants.INDENT_AMOUNT));
+        transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, Constants.YES);
 
         StringWriter stringWriter = new StringWriter();
+        stringWriter.append(Constants.XML_DECLARATION).append('\n');
         StreamResult streamResult = new StreamResult(stringWriter);
         try {
             transformer.transform(domSource, streamResult);
@@ -34,9 +34,6 @@ import java.util.List;
  */
 public class SyncmlParser {
 
-    private static String commandId;
-    private static String messageReference;
-    private static String commandReference;
     private static final String SYNC_HEADER = "SyncHdr";
     private static final String SYNC_BODY = "SyncBody";
 
@@ -261,6 +258,9 @@ public class SyncmlParser {
 
         Results results = new Results();
         List<Item> item = new ArrayList<>();
+        String commandId = null;
+        String messageReference = null;
+        String commandReference = null;
 
         if (node.getNodeType() == Node.ELEMENT_NODE) {
 
@@ -0,0 +1,489 @@
+/*
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.mdm.mobileservices.windows.operations.util;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.mdm.mobileservices.windows.common.exceptions.SyncmlOperationException;
+import org.wso2.carbon.mdm.mobileservices.windows.common.util.XmlEscapeUtils;
+import org.wso2.carbon.mdm.mobileservices.windows.operations.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Generates the response syncml xml payload directly into an output stream. The output is byte-identical to the
+ * payload produced by {@link SyncmlGenerator}, but no DOM tree or Transformer is created per reply. Character and
+ * byte buffers are kept per thread and reused across replies.
+ */
+public class SyncmlStreamGenerator {
+
+    private static Log log = LogFactory.getLog(SyncmlStreamGenerator.class);
+    private static final ThreadLocal<SyncmlWriter> writers = new ThreadLocal<SyncmlWriter>() {
+        @Override
+        protected SyncmlWriter initialValue() {
+            return new SyncmlWriter();
+        }
+    };
+
+    /**
+     * Writes the given syncml document to the output stream.
+     *
+     * @param syncmlDocument - Syncml document to be sent to the device
+     * @param outputStream   - Stream to which the UTF-8 encoded payload is written
+     * @throws SyncmlOperationException if the payload could not be written to the stream
+     */
+    public void generatePayload(SyncmlDocument syncmlDocument, OutputStream outputStream)
+            throws SyncmlOperationException {
+        SyncmlWriter writer = writers.get();
+        try {
+            writer.startDocument();
+            writer.startElement(Constants.SYNCML_ROOT_ELEMENT_NAME, Constants.XMLNS, Constants.XMLNS_SYNCML);
+            if (syncmlDocument.getHeader() != null) {
+                writeHeader(writer, syncmlDocument.getHeader());
+            }
+            if (syncmlDocument.getBody() != null) {
+                writeBody(writer, syncmlDocument.getBody());
+            }
+            writer.endElement(Constants.SYNCML_ROOT_ELEMENT_NAME);
+            writer.writeTo(outputStream);
+        } catch (IOException e) {
+            String message = "Error while writing the syncml payload to the output stream";
+            log.error(message, e);
+            throw new SyncmlOperationException(message, e);
+        } finally {
+            writer.release();
+        }
+    }
+
+    private static void writeHeader(SyncmlWriter writer, SyncmlHeader header) {
+        writer.startElement(Constants.SYNC_HDR);
+        writer.textElement(Constants.VER_DTD, Constants.VER_DTD_VALUE);
+        writer.textElement(Constants.VER_PROTOCOL, Constants.VER_PROTOCOL_VALUE);
+        if (header.getHexadecimalSessionId() != null) {
+            writer.textElement(Constants.SESSION_ID, header.getHexadecimalSessionId());
+        }
+        if (header.getMsgID() != -1) {
+            writer.textElement(Constants.MESSAGE_ID, String.valueOf(header.getMsgID()));
+        }
+        if (header.getTarget() != null) {
+            writeTarget(writer, header.getTarget());
+        }
+        if (header.getSource() != null) {
+            writeSource(writer, header.getSource());
+        }
+        if (header.getCredential() != null) {
+            writeCredential(writer, header.getCredential());
+        }
+        writer.endElement(Constants.SYNC_HDR);
+    }
+
+    private static void writeBody(SyncmlWriter writer, SyncmlBody body) {
+        writer.startElement(Constants.SYNC_BODY);
+        if (body.getStatus() != null) {
+            for (Status status : body.getStatus()) {
+                if (status != null) {
+                    writeStatus(writer, status);
+                }
+            }
+        }
+        if (body.getAlert() != null) {
+            writeAlert(writer, body.getAlert());
+        }
+        if (body.getResults() != null) {
+            writeResults(writer, body.getResults());
+        }
+        if (body.getGet() != null) {
+            writeGet(writer, body.getGet());
+        }
+        if (body.getReplace() != null) {
+            writeReplace(writer, body.getReplace());
+        }
+        if (body.getExec() != null) {
+            for (ExecuteTag exec : body.getExec()) {
+                if (exec != null) {
+                    writeExec(writer, exec);
+                }
+            }
+        }
+        if (body.getSequence() != null) {
+            writeSequence(writer, body.getSequence());
+        }
+        if (body.getAtomicTag() != null) {
+            writeAtomic(writer, body.getAtomicTag());
+        }
+        writer.startElement(Constants.FINAL);
+        writer.endElement(Constants.FINAL);
+        writer.endElement(Constants.SYNC_BODY);
+    }
+
+    private static void writeStatus(SyncmlWriter writer, Status status) {
+        writer.startElement(Constants.STATUS);
+        if (status.getCommandId() != -1) {
+            writer.textElement(Constants.COMMAND_ID, String.valueOf(status.getCommandId()));
+        }
+        if (status.getMessageReference() != -1) {
+            writer.textElement(Constants.MESSAGE_REFERENCE, String.valueOf(status.getMessageReference()));
+        }
+        if (status.getCommandReference() != -1) {
+            writer.textElement(Constants.COMMAND_REFERENCE, String.valueOf(status.getCommandReference()));
+        }
+        if (status.getCommand() != null) {
+            writer.textElement(Constants.COMMAND, status.getCommand());
+        }
+        if (status.getTargetReference() != null) {
+            writer.textElement(Constants.TARGET_REFERENCE, status.getTargetReference());
+        }
+        if (status.getChallenge() != null) {
+            writer.startElement(Constants.CHALLENGE);
+            if (status.getChallenge().getMeta() != null) {
+                writeMeta(writer, status.getChallenge().getMeta());
+            }
+            writer.endElement(Constants.CHALLENGE);
+        }
+        if (status.getData() != null) {
+            writer.textElement(Constants.DATA, status.getData());
+        }
+        writer.endElement(Constants.STATUS);
+    }
+
+    private static void writeAlert(SyncmlWriter writer, Alert alert) {
+        writer.startElement(Constants.ALERT);
+        if (alert.getCommandId() != -1) {
+            writer.textElement(Constants.COMMAND_ID, String.valueOf(alert.getCommandId()));
+        }
+        if (alert.getData() != null) {
+            writer.textElement(Constants.DATA, alert.getData());
+        }
+        writer.endElement(Constants.ALERT);
+    }
+
+    private static void writeResults(SyncmlWriter writer, Results results) {
+        writer.startElement(Constants.RESULTS);
+        if (results.getCommandId() != -1) {
+            writer.textElement(Constants.COMMAND_ID, String.valueOf(results.getCommandId()));
+        }
+        if (results.getMessageReference() != -1) {
+            writer.textElement(Constants.MESSAGE_REFERENCE, String.valueOf(results.getMessageReference()));
+        }
+        if (results.getCommandReference() != -1) {
+            writer.textElement(Constants.COMMAND_REFERENCE, String.valueOf(results.getCommandReference()));
+        }
+        writeItems(writer, results.getItem());
+        writer.endElement(Constants.RESULTS);
+    }
+
+    private static void writeGet(SyncmlWriter writer, Get get) {
+        if (get.getItems() != null) {
+            writeItemCommand(writer, Constants.GET, get.getCommandId(), get.getItems());
+        }
+    }
+
+    private static void writeReplace(SyncmlWriter writer, Replace replace) {
+        if (replace.getItems() != null) {
+            writeItemCommand(writer, Constants.REPLACE, replace.getCommandId(), replace.getItems());
+        }
+    }
+
+    private static void writeExec(SyncmlWriter writer, ExecuteTag exec) {
+        if (exec.getItems() != null) {
+            writeItemCommand(writer, Constants.EXECUTE, exec.getCommandId(), exec.getItems());
+        }
+    }
+
+    private static void writeAdd(SyncmlWriter writer, AddTag add) {
+        if (add.getItems() != null) {
+            writeItemCommand(writer, Constants.ADD, add.getCommandId(), add.getItems());
+        }
+    }
+
+    private static void writeDelete(SyncmlWriter writer, DeleteTag delete) {
+        if (delete.getItems() != null) {
+            writeItemCommand(writer, Constants.DELETE, delete.getCommandId(), delete.getItems());
+        }
+    }
+
+    private static void writeSequence(SyncmlWriter writer, SequenceTag sequence) {
+        writer.startElement(Constants.SEQUENCE);
+        if (sequence.getCommandId() != -1) {
+            writer.textElement(Constants.COMMAND_ID, String.valueOf(sequence.getCommandId()));
+        }
+        if (sequence.getExec() != null) {
+            writeExec(writer, sequence.getExec());
+        }
+        if (sequence.getGet() != null) {
+            writeGet(writer, sequence.getGet());
+        }
+        if (sequence.getReplaces() != null) {
+            for (Replace replace : sequence.getReplaces()) {
+                if (replace != null) {
+                    writeReplace(writer, replace);
+                }
+            }
+        }
+        if (sequence.getDeleteTag() != null) {
+            writeDelete(writer, sequence.getDeleteTag());
+        }
+        if (sequence.getAtomicTag() != null) {
+            writeAtomic(writer, sequence.getAtomicTag());
+        }
+        writer.endElement(Constants.SEQUENCE);
+    }
+
+    private static void writeAtomic(SyncmlWriter writer, AtomicTag atomic) {
+        // The DOM generator only attaches the Atomic element (and therefore its replaces) when adds are present.
+        if (atomic.getAdds() == null) {
+            return;
+        }
+        writer.startElement(Constants.ATOMIC);
+        if (atomic.getCommandId() != -1) {
+            writer.textElement(Constants.COMMAND_ID, String.valueOf(atomic.getCommandId()));
+        }
+        for (AddTag add : atomic.getAdds()) {
+            if (add != null) {
+                writeAdd(writer, add);
+            }
+        }
+        if (atomic.getReplaces() != null) {
+            for (Replace replace : atomic.getReplaces()) {
+                if (replace != null) {
+                    writeReplace(writer, replace);
+                }
+            }
+        }
+        writer.endElement(Constants.ATOMIC);
+    }
+
+    private static void writeItemCommand(SyncmlWriter writer, String command, int commandId, List<Item> items) {
+        writer.startElement(command);
+        if (commandId != -1) {
+            writer.textElement(Constants.COMMAND_ID, String.valueOf(commandId));
+        }
+        writeItems(writer, items);
+        writer.endElement(command);
+    }
+
+    private static void writeItems(SyncmlWriter writer, List<Item> items) {
+        if (items == null) {
+            return;
+        }
+        for (Item item : items) {
+            if (item != null) {
+                writeItem(writer, item);
+            }
+        }
+    }
+
+    private static void writeItem(SyncmlWriter writer, Item item) {
+        writer.startElement(Constants.ITEM);
+        if (item.getTarget() != null) {
+            writeTarget(writer, item.getTarget());
+        }
+        if (item.getSource() != null) {
+            writeSource(writer, item.getSource());
+        }
+        if (item.getData() != null) {
+            writer.textElement(Constants.DATA, item.getData());
+        }
+        if (item.getMeta() != null) {
+            writeMeta(writer, item.getMeta());
+        }
+        writer.endElement(Constants.ITEM);
+    }
+
+    private static void writeTarget(SyncmlWriter writer, Target target) {
+        writeLocation(writer, Constants.TARGET, target.getLocURI(), target.getLocName());
+    }
+
+    private static void writeSource(SyncmlWriter writer, Source source) {
+        writeLocation(writer, Constants.SOURCE, source.getLocURI(), source.getLocName());
+    }
+
+    private static void writeLocation(SyncmlWriter writer, String elementName, String locUri, String locName) {
+        writer.startElement(elementName);
+        if (locUri != null) {
+            writer.textElement(Constants.LOC_URI, locUri);
+        }
+        if (locName != null) {
+            writer.textElement(Constants.LOC_NAME, locName);
+        }
+        writer.endElement(elementName);
+    }
+
+    private static void writeCredential(SyncmlWriter writer, Credential credential) {
+        writer.startElement(Constants.CREDENTIAL);
+        if (credential.getMeta() != null) {
+            writeMeta(writer, credential.getMeta());
+        }
+        if (credential.getData() != null) {
+            writer.textElement(Constants.DATA, credential.getData());
+        }
+        writer.endElement(Constants.CREDENTIAL);
+    }
+
+    private static void writeMeta(SyncmlWriter writer, MetaTag meta) {
+        writer.startElement(Constants.META);
+        if (meta.getFormat() != null) {
+            writer.textElement(Constants.FORMAT, Constants.XMLNS, Constants.META_NAMESPACE, meta.getFormat());
+        }
+        if (meta.getType() != null) {
+            writer.textElement(Constants.TYPE, Constants.XMLNS, Constants.META_NAMESPACE, meta.getType());
+        }
+        if (meta.getNextNonce() != null) {
+            writer.textElement(Constants.NEXTNONCE, Constants.XMLNS, Constants.META_NAMESPACE,
+                    meta.getNextNonce());
+        }
+        writer.endElement(Constants.META);
+    }
+
+    /**
+     * Minimal indenting XML writer which follows the output rules of the JDK identity transformer used by
+     * {@link SyncmlGenerator}: the indentation and declaration pinned there, self-closing empty elements and
+     * character references for carriage returns, control characters and supplementary characters.
+     */
+    private static class SyncmlWriter {
+
+        private static final int INITIAL_CHAR_CAPACITY = 8 * 1024;
+        private static final int MAX_RETAINED_CHAR_CAPACITY = 256 * 1024;
+        private static final int BYTE_BUFFER_SIZE = 8 * 1024;
+
+        private StringBuilder content = new StringBuilder(INITIAL_CHAR_CAPACITY);
+        private final ByteBuffer byteBuffer = ByteBuffer.allocate(BYTE_BUFFER_SIZE);
+        private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+        private int depth;
+        private boolean startTagOpen;
+
+        void startDocument() {
+            content.setLength(0);
+            depth = 0;
+            startTagOpen = false;
+            content.append(Constants.XML_DECLARATION).append('\n');
+        }
+
+        void startElement(String name) {
+            closeStartTag();
+            indent();
+            content.append('<').append(name);
+            startTagOpen = true;
+            depth++;
+        }
+
+        void startElement(String name, String attributeName, String attributeValue) {
+            startElement(name);
+            appendAttribute(attributeName, attributeValue);
+        }
+
+        void endElement(String name) {
+            depth--;
+            if (startTagOpen) {
+                content.append("/>\n");
+                startTagOpen = false;
+            } else {
+                indent();
+                content.append("</").append(name).append(">\n");
+            }
+        }
+
+        void textElement(String name, String text) {
+            closeStartTag();
+            indent();
+            content.append('<').append(name);
+            appendText(name, text);
+        }
+
+        void textElement(String name, String attributeName, String attributeValue, String text) {
+            closeStartTag();
+            indent();
+            content.append('<').append(name);
+            appendAttribute(attributeName, attributeValue);
+            appendText(name, text);
+        }
+
+        void writeTo(OutputStream outputStream) throws IOException {
+            CharBuffer chars = CharBuffer.wrap(content);
+            encoder.reset();
+            CoderResult result;
+            do {
+                result = encoder.encode(chars, byteBuffer, true);
+                flushBytes(outputStream);
+            } while (result.isOverflow());
+            while (encoder.flush(byteBuffer).isOverflow()) {
+                flushBytes(outputStream);
+            }
+            flushBytes(outputStream);
+            outputStream.flush();
+        }
+
+        /**
+         * Drops the character buffer if an unusually large reply made it grow beyond the retained limit, so that
+         * one large payload does not pin memory on the request thread.
+         */
+        void release() {
+            if (content.capacity() > MAX_RETAINED_CHAR_CAPACITY) {
+                content = new StringBuilder(INITIAL_CHAR_CAPACITY);
+            } else {
+                content.setLength(0);
+            }
+        }
+
+        private void flushBytes(OutputStream outputStream) throws IOException {
+            byteBuffer.flip();
+            if (byteBuffer.hasRemaining()) {
+                outputStream.write(byteBuffer.array(), byteBuffer.arrayOffset() + byteBuffer.position(),
+                        byteBuffer.remaining());
+            }
+            byteBuffer.clear();
+        }
+
+        private void appendText(String name, String text) {
+            if (text.isEmpty()) {
+                content.append("/>\n");
+            } else {
+                content.append('>');
+                XmlEscapeUtils.escape(content, text, false);
+                content.append("</").append(name).append(">\n");
+            }
+        }
+
+        private void appendAttribute(String name, String value) {
+            content.append(' ').append(name).append("=\"");
+            XmlEscapeUtils.escape(content, value, true);
+            content.append('"');
+        }
+
+        private void closeStartTag() {
+            if (startTagOpen) {
+                content.append(">\n");
+                startTagOpen = false;
+            }
+        }
+
+        private void indent() {
+            for (int i = 0; i < depth * Constants.INDENT_AMOUNT; i++) {
+                content.append(' ');
+            }
+        }
+    }
+}
@@ -0,0 +1,496 @@
+/*
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.mdm.mobileservices.windows.operations.util;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.mdm.mobileservices.windows.common.PluginConstants;
+import org.wso2.carbon.mdm.mobileservices.windows.common.exceptions.SyncmlMessageFormatException;
+import org.wso2.carbon.mdm.mobileservices.windows.operations.*;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Parses the receiving SyncML payload in a single pass over the request stream and generates the SyncML
+ * document object from it. Unlike {@link SyncmlParser}, no DOM tree is built and all parsing state is kept
+ * on the stack, so a single instance of this class can be shared between concurrent requests.
+ */
+public class SyncmlStreamParser {
+
+    private static Log log = LogFactory.getLog(SyncmlStreamParser.class);
+    private static final XMLInputFactory inputFactory = createInputFactory();
+
+    private SyncmlStreamParser() {
+        throw new AssertionError();
+    }
+
+    /**
+     * Parses the raw SyncML payload stream and generates a SyncmlDocument object using the parsed XML contents.
+     *
+     * @param syncmlPayload - Received SyncML XML payload stream
+     * @return - SyncmlDocument object generated from the received payload
+     * @throws SyncmlMessageFormatException if the payload is not well formed or misses mandatory header values
+     */
+    public static SyncmlDocument parseSyncmlPayload(InputStream syncmlPayload) throws SyncmlMessageFormatException {
+        XMLStreamReader reader = null;
+        try {
+            reader = inputFactory.createXMLStreamReader(syncmlPayload);
+            return parseSyncmlPayload(reader);
+        } catch (XMLStreamException e) {
+            String msg = "Error occurred while reading the syncml payload.";
+            log.error(msg, e);
+            throw new SyncmlMessageFormatException(msg, e);
+        } catch (NumberFormatException e) {
+            String msg = "Syncml payload contains a malformed numeric value.";
+            log.error(msg, e);
+            throw new SyncmlMessageFormatException(msg, e);
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (XMLStreamException e) {
+                    log.warn("Error occurred while closing the syncml stream reader.", e);
+                }
+            }
+        }
+    }
+
+    private static SyncmlDocument parseSyncmlPayload(XMLStreamReader reader)
+            throws XMLStreamException, SyncmlMessageFormatException {
+        SyncmlHeader header = null;
+        SyncmlBody body = null;
+
+        while (reader.hasNext()) {
+            if (reader.next() != XMLStreamConstants.START_ELEMENT) {
+                continue;
+            }
+            String elementName = reader.getLocalName();
+            if (Constants.SYNC_HDR.equals(elementName)) {
+                header = generateSyncmlHeader(reader);
+            } else if (Constants.SYNC_BODY.equals(elementName)) {
+                body = generateSyncmlBody(reader);
+            }
+        }
+        if (header == null) {
+            throw new SyncmlMessageFormatException("Syncml payload does not contain a header.");
+        }
+        SyncmlDocument syncmlDocument = new SyncmlDocument();
+        syncmlDocument.setHeader(header);
+        syncmlDocument.setBody(body);
+        return syncmlDocument;
+    }
+
+    /**
+     * Generates SyncmlHeader object by reading the children of the current SyncHdr element.
+     *
+     * @param reader - Stream reader positioned at the start of the SyncHdr element
+     * @return - SyncmlHeader object
+     */
+    private static SyncmlHeader generateSyncmlHeader(XMLStreamReader reader)
+            throws XMLStreamException, SyncmlMessageFormatException {
+        String sessionID = null;
+        String messageID = null;
+        SyncmlHeader header = new SyncmlHeader();
+
+        while (nextChildElement(reader)) {
+            String elementName = reader.getLocalName();
+            if (Constants.MESSAGE_ID.equals(elementName)) {
+                messageID = readText(reader);
+            } else if (Constants.SESSION_ID.equals(elementName)) {
+                sessionID = readText(reader);
+            } else if (Constants.TARGET.equals(elementName)) {
+                header.setTarget(generateTarget(reader));
+            } else if (Constants.SOURCE.equals(elementName)) {
+                header.setSource(generateSource(reader));
+            } else if (Constants.CREDENTIAL.equals(elementName)) {
+                header.setCredential(generateCredential(reader));
+            } else {
+                skipElement(reader);
+            }
+        }
+        if (messageID == null || sessionID == null) {
+            throw new SyncmlMessageFormatException("Syncml header does not contain a message ID or session ID.");
+        }
+        header.setMsgID(Integer.valueOf(messageID));
+        // Syncml message contains a sessionID which is Hexadecimal value.Hexadecimal sessionID parse as a integer value.
+        header.setSessionId(Integer.valueOf(sessionID, 16));
+        return header;
+    }
+
+    /**
+     * Generates SyncmlBody object by reading the children of the current SyncBody element.
+     *
+     * @param reader - Stream reader positioned at the start of the SyncBody element
+     * @return - SyncmlBody object
+     */
+    private static SyncmlBody generateSyncmlBody(XMLStreamReader reader) throws XMLStreamException {
+        SyncmlBody body = new SyncmlBody();
+        List<Status> statuses = new ArrayList<>();
+
+        while (nextChildElement(reader)) {
+            String elementName = reader.getLocalName();
+            if (Constants.ALERT.equals(elementName)) {
+                body.setAlert(generateAlert(reader));
+            } else if (Constants.REPLACE.equals(elementName)) {
+                body.setReplace(generateReplace(reader));
+            } else if (Constants.STATUS.equals(elementName)) {
+                statuses.add(generateStatus(reader));
+            } else if (Constants.RESULTS.equals(elementName)) {
+                body.setResults(generateResults(reader));
+            } else {
+                skipElement(reader);
+            }
+        }
+        body.setStatus(statuses);
+        return body;
+    }
+
+    /**
+     * Generates Source object by reading the children of the current Source element.
+     *
+     * @param reader - Stream reader positioned at the start of the Source element
+     * @return - Source object
+     */
+    private static Source generateSource(XMLStreamReader reader) throws XMLStreamException {
+        Source source = new Source();
+        while (nextChildElement(reader)) {
+            String elementName = reader.getLocalName();
+            if (Constants.LOC_URI.equals(elementName)) {
+                source.setLocURI(readText(reader));
+            } else if (Constants.LOC_NAME.equals(elementName)) {
+                source.setLocName(readText(reader));
+            } else {
+                skipElement(reader);
+            }
+        }
+        return source;
+    }
+
+    /**
+     * Generates Target object by reading the children of the current Target element.
+     *
+     * @param reader - Stream reader positioned at the start of the Target element
+     * @return - Target object
+     */
+    private static Target generateTarget(XMLStreamReader reader) throws XMLStreamException {
+        Target target = new Target();
+        while (nextChildElement(reader)) {
+            String elementName = reader.getLocalName();
+            if (Constants.LOC_URI.equals(elementName)) {
+                target.setLocURI(readText(reader));
+            } else if (Constants.LOC_NAME.equals(elementName)) {
+                target.setLocName(readText(reader));
+            } else {
+                skipElement(reader);
+            }
+        }
+        return target;
+    }
+
+    /**
+     * Generates Results object by reading the children of the current Results element.
+     *
+     * @param reader - Stream reader positioned at the start of the Results element
+     * @return - Results object
+     */
+    private static Results generateResults(XMLStreamReader reader) throws XMLStreamException {
+        Results results = new Results();
+        List<Item> items = new ArrayList<>();
+
+        while (nextChildElement(reader)) {
+            String elementName = reader.getLocalName();
+            if (Constants.COMMAND_ID.equals(elementName)) {
+                results.setCommandId(Integer.valueOf(readText(reader)));
+            } else if (Constants.MESSAGE_REFERENCE.equals(elementName)) {
+                results.setMessageReference(Integer.valueOf(readText(reader)));
+            } else if (Constants.COMMAND_REFERENCE.equals(elementName)) {
+                results.setCommandReference(Integer.valueOf(readText(reader)));
+            } else if (Constants.ITEM.equals(elementName)) {
+                items.add(generateItem(reader));
+            } else {
+                skipElement(reader);
+            }
+        }
+        results.setItem(items);
+        return results;
+    }
+
+    /**
+     * Generates Status object by reading the children of the current Status element.
+     *
+     * @param reader - Stream reader positioned at the start of the Status element
+     * @return - Status object
+     */
+    private static Status generateStatus(XMLStreamReader reader) throws XMLStreamException {
+        Status status = new Status();
+
+        while (nextChildElement(reader)) {
+            String elementName = reader.getLocalName();
+            switch (elementName) {
+                case PluginConstants.SyncML.SYNCML_CMD_ID:
+                    status.setCommandId(Integer.valueOf(readText(reader)));
+                    break;
+                case PluginConstants.SyncML.SYNCML_MESSAGE_REF:
+                    status.setMessageReference(Integer.valueOf(readText(reader)));
+                    break;
+                case PluginConstants.SyncML.SYNCML_CMD_REF:
+                    status.setCommandReference(Integer.valueOf(readText(reader)));
+                    break;
+                case PluginConstants.SyncML.SYNCML_CMD:
+                    status.setCommand(readText(reader));
+                    break;
+                case PluginConstants.SyncML.SYNCML_CHAL:
+                    ChallengeTag challengeTag = new ChallengeTag();
+                    while (nextChildElement(reader)) {
+                        if (Constants.META.equals(reader.getLocalName())) {
+                            challengeTag.setMeta(generateMeta(reader));
+                        } else {
+                            skipElement(reader);
+                        }
+                    }
+                    status.setChallenge(challengeTag);
+                    break;
+                case PluginConstants.SyncML.SYNCML_DATA:
+                    status.setData(readText(reader));
+                    break;
+                case PluginConstants.SyncML.SYNCML_TARGET_REF:
+                    status.setTargetReference(readText(reader));
+                    break;
+                default:
+                    skipElement(reader);
+            }
+        }
+        return status;
+    }
+
+    /**
+     * Generates Replace object by reading the children of the current Replace element.
+     *
+     * @param reader - Stream reader positioned at the start of the Replace element
+     * @return - Replace object
+     */
+    private static Replace generateReplace(XMLStreamReader reader) throws XMLStreamException {
+        Replace replace = new Replace();
+        List<Item> items = new ArrayList<>();
+
+        while (nextChildElement(reader)) {
+            String elementName = reader.getLocalName();
+            if (Constants.COMMAND_ID.equals(elementName)) {
+                replace.setCommandId(Integer.valueOf(readText(reader)));
+            } else if (Constants.ITEM.equals(elementName)) {
+                items.add(generateItem(reader));
+            } else {
+                skipElement(reader);
+            }
+        }
+        replace.setItems(items);
+        return replace;
+    }
+
+    /**
+     * Generates Alert object by reading the children of the current Alert element.
+     *
+     * @param reader - Stream reader positioned at the start of the Alert element
+     * @return - Alert object
+     */
+    private static Alert generateAlert(XMLStreamReader reader) throws XMLStreamException {
+        Alert alert = new Alert();
+        while (nextChildElement(reader)) {
+            String elementName = reader.getLocalName();
+            if (Constants.COMMAND_ID.equals(elementName)) {
+                alert.setCommandId(Integer.valueOf(readText(reader)));
+            } else if (Constants.DATA.equals(elementName)) {
+                alert.setData(readText(reader));
+            } else {
+                skipElement(reader);
+            }
+        }
+        return alert;
+    }
+
+    /**
+     * Generates Item object by reading the children of the current Item element.
+     *
+     * @param reader - Stream reader positioned at the start of the Item element
+     * @return - Item object
+     */
+    private static Item generateItem(XMLStreamReader reader) throws XMLStreamException {
+        Item item = new Item();
+        while (nextChildElement(reader)) {
+            String elementName = reader.getLocalName();
+            if (Constants.SOURCE.equals(elementName)) {
+                Source source = new Source();
+                while (nextChildElement(reader)) {
+                    if (Constants.LOC_URI.equals(reader.getLocalName())) {
+                        source.setLocURI(readText(reader));
+                    } else {
+                        skipElement(reader);
+                    }
+                }
+                item.setSource(source);
+            } else if (Constants.DATA.equals(elementName)) {
+                item.setData(readText(reader));
+            } else {
+                skipElement(reader);
+            }
+        }
+        return item;
+    }
+
+    /**
+     * Generates Credential object by reading the children of the current Cred element.
+     *
+     * @param reader - Stream reader positioned at the start of the Cred element
+     * @return - Credential object
+     */
+    private static Credential generateCredential(XMLStreamReader reader) throws XMLStreamException {
+        Credential credential = new Credential();
+        while (nextChildElement(reader)) {
+            String elementName = reader.getLocalName();
+            if (Constants.META.equals(elementName)) {
+                credential.setMeta(generateMeta(reader));
+            } else if (Constants.DATA.equals(elementName)) {
+                credential.setData(readText(reader));
+            } else {
+                skipElement(reader);
+            }
+        }
+        return credential;
+    }
+
+    /**
+     * Generates MetaTag object by reading the children of the current Meta element.
+     *
+     * @param reader - Stream reader positioned at the start of the Meta element
+     * @return - MetaTag object
+     */
+    private static MetaTag generateMeta(XMLStreamReader reader) throws XMLStreamException {
+        MetaTag meta = new MetaTag();
+        while (nextChildElement(reader)) {
+            String elementName = reader.getLocalName();
+            if (Constants.FORMAT.equals(elementName)) {
+                meta.setFormat(readText(reader));
+            } else if (Constants.TYPE.equals(elementName)) {
+                meta.setType(readText(reader));
+            } else if (Constants.NEXTNONCE.equals(elementName)) {
+                meta.setNextNonce(readText(reader));
+            } else {
+                skipElement(reader);
+            }
+        }
+        return meta;
+    }
+
+    /**
+     * Advances the reader to the next child element of the element currently being read.
+     *
+     * @param reader - Stream reader positioned inside a parent element
+     * @return - true if the reader is positioned at the start of a child element, false if the end of the
+     * parent element has been reached
+     */
+    private static boolean nextChildElement(XMLStreamReader reader) throws XMLStreamException {
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                return true;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Reads the trimmed text content of the current element, including the text of any nested elements, and
+     * leaves the reader positioned at the end of the current element.
+     *
+     * @param reader - Stream reader positioned at the start of an element
+     * @return - Trimmed text content of the element
+     */
+    private static String readText(XMLStreamReader reader) throws XMLStreamException {
+        StringBuilder content = null;
+        String text = null;
+        int depth = 1;
+        while (depth > 0 && reader.hasNext()) {
+            switch (reader.next()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    depth++;
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    depth--;
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                case XMLStreamConstants.SPACE:
+                case XMLStreamConstants.ENTITY_REFERENCE:
+                    if (text == null) {
+                        text = reader.getText();
+                    } else {
+                        if (content == null) {
+                            content = new StringBuilder(text);
+                        }
+                        content.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                    }
+                    break;
+            }
+        }
+        if (content != null) {
+            return content.toString().trim();
+        }
+        return text == null ? "" : text.trim();
+    }
+
+    /**
+     * Skips the current element together with all of its children.
+     *
+     * @param reader - Stream reader positioned at the start of an element
+     */
+    private static void skipElement(XMLStreamReader reader) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0 && reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+
+    /**
+     * Creates the shared stream reader factory. The factory is configured once and is only used to create
+     * readers afterwards, which is safe to do concurrently.
+     *
+     * @return - Configured XMLInputFactory
+     */
+    private static XMLInputFactory createInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
+    }
+}
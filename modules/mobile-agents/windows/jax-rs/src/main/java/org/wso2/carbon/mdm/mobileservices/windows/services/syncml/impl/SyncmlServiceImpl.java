@@ -21,7 +21,6 @@ package org.wso2.carbon.mdm.mobileservices.windows.services.syncml.impl;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.json.JSONException;
-import org.w3c.dom.Document;
 import org.wso2.carbon.context.PrivilegedCarbonContext;
 import org.wso2.carbon.device.mgt.common.*;
 import org.wso2.carbon.device.mgt.common.notification.mgt.NotificationManagementException;
@@ -33,6 +32,7 @@ import org.wso2.carbon.mdm.mobileservices.windows.common.exceptions.SyncmlMessag
 import org.wso2.carbon.mdm.mobileservices.windows.common.exceptions.SyncmlOperationException;
 import org.wso2.carbon.mdm.mobileservices.windows.common.exceptions.WindowsConfigurationException;
 import org.wso2.carbon.mdm.mobileservices.windows.common.exceptions.WindowsDeviceEnrolmentException;
+import org.wso2.carbon.mdm.mobileservices.windows.common.util.AppliedPolicyCache;
 import org.wso2.carbon.mdm.mobileservices.windows.common.util.DeviceUtil;
 import org.wso2.carbon.mdm.mobileservices.windows.common.util.WindowsAPIUtils;
 import org.wso2.carbon.mdm.mobileservices.windows.operations.*;
@@ -43,6 +43,10 @@ import org.wso2.carbon.policy.mgt.common.monitor.PolicyComplianceException;
 import org.wso2.carbon.policy.mgt.core.PolicyManagerService;
 
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -54,6 +58,7 @@ import static org.wso2.carbon.mdm.mobileservices.windows.common.util.WindowsAPIU
 public class SyncmlServiceImpl implements SyncmlService {
 
     private static Log log = LogFactory.getLog(SyncmlServiceImpl.class);
+    private static final SyncmlStreamGenerator syncmlGenerator = new SyncmlStreamGenerator();
 
     /**
      * This method is used to generate and return Device object from the received information at
@@ -116,20 +121,20 @@ public class SyncmlServiceImpl implements SyncmlService {
      * Method for calling SyncML engine for producing the Syncml response. For the first SyncML message comes from
      * the device, this method produces a response to retrieve device information for enrolling the device.
      *
-     * @param request - SyncML request
+     * @param request - SyncML request stream
      * @return - SyncML response
      * @throws WindowsOperationException
      * @throws WindowsDeviceEnrolmentException
      */
     @Override
-    public Response getResponse(Document request)
+    public Response getResponse(InputStream request)
             throws WindowsDeviceEnrolmentException, WindowsOperationException, NotificationManagementException,
             WindowsConfigurationException {
         int msgId;
         int sessionId;
         String user;
         String token;
-        String response;
+        StreamingOutput response;
         SyncmlDocument syncmlDocument;
         List<Operation> deviceInfoOperations;
         List<? extends Operation> pendingOperations;
@@ -137,125 +142,70 @@ public class SyncmlServiceImpl implements SyncmlService {
         DeviceInfo deviceInfo = new DeviceInfo();
 
         try {
-            if (SyncmlParser.parseSyncmlPayload(request) != null) {
-                try {
-                    syncmlDocument = SyncmlParser.parseSyncmlPayload(request);
-                } catch (SyncmlMessageFormatException e) {
-                    String msg = "Error occurred due to bad syncml format.";
-                    log.error(msg, e);
-                    throw new SyncmlMessageFormatException(msg, e);
-                }
-                SyncmlHeader syncmlHeader = syncmlDocument.getHeader();
-                sessionId = syncmlHeader.getSessionId();
-                user = syncmlHeader.getSource().getLocName();
-                DeviceIdentifier deviceIdentifier = convertToDeviceIdentifierObject(syncmlHeader.getSource()
-                        .getLocURI());
-                msgId = syncmlHeader.getMsgID();
-                if ((PluginConstants.SyncML.SYNCML_FIRST_MESSAGE_ID == msgId) &&
-                        (PluginConstants.SyncML.SYNCML_FIRST_SESSION_ID == sessionId)) {
-                    token = syncmlHeader.getCredential().getData();
-                    CacheEntry cacheToken = (CacheEntry) DeviceUtil.getCacheEntry(token);
-
-                    if ((cacheToken.getUsername() != null) && (cacheToken.getUsername().equals(user))) {
-
-                        if (enrollDevice(request)) {
-                            deviceInfoOperations = deviceInfo.getDeviceInfo();
-                            try {
-                                response = generateReply(syncmlDocument, deviceInfoOperations);
-                                PolicyManagerService policyManagerService = WindowsAPIUtils.getPolicyManagerService();
-                                policyManagerService.getEffectivePolicy(deviceIdentifier);
-                                return Response.status(Response.Status.OK).entity(response).build();
-                            } catch (PolicyManagementException e) {
-                                String msg = "Error occurred in while getting effective policy.";
-                                log.error(msg, e);
-                                throw new WindowsConfigurationException(msg, e);
-                            } catch (SyncmlOperationException e) {
-                                String msg = "Error occurred in while generating hash value.";
-                                log.error(msg, e);
-                                throw new WindowsOperationException(msg, e);
-                            }
-
-                        } else {
-                            String msg = "Error occurred in device enrollment.";
-                            log.error(msg);
-                            return Response.status(Response.Status.INTERNAL_SERVER_ERROR).entity(msg).build();
-                        }
-                    } else {
-                        String msg = "Authentication failure due to incorrect credentials.";
-                        log.error(msg);
-                        return Response.status(Response.Status.UNAUTHORIZED).entity(msg).build();
-                    }
-                } else if (PluginConstants.SyncML.SYNCML_SECOND_MESSAGE_ID == msgId &&
-                        PluginConstants.SyncML.SYNCML_FIRST_SESSION_ID == sessionId) {
-
-                    if (enrollDevice(request)) {
+            syncmlDocument = SyncmlStreamParser.parseSyncmlPayload(request);
+            SyncmlHeader syncmlHeader = syncmlDocument.getHeader();
+            sessionId = syncmlHeader.getSessionId();
+            user = syncmlHeader.getSource().getLocName();
+            DeviceIdentifier deviceIdentifier = convertToDeviceIdentifierObject(syncmlHeader.getSource()
+                    .getLocURI());
+            msgId = syncmlHeader.getMsgID();
+            if ((PluginConstants.SyncML.SYNCML_FIRST_MESSAGE_ID == msgId) &&
+                    (PluginConstants.SyncML.SYNCML_FIRST_SESSION_ID == sessionId)) {
+                token = syncmlHeader.getCredential().getData();
+                CacheEntry cacheToken = (CacheEntry) DeviceUtil.getCacheEntry(token);
+
+                if ((cacheToken.getUsername() != null) && (cacheToken.getUsername().equals(user))) {
+
+                    if (enrollDevice(syncmlDocument)) {
+                        deviceInfoOperations = deviceInfo.getDeviceInfo();
                         try {
-                            return Response.ok().entity(generateReply(syncmlDocument, null)).build();
+                            response = generateReply(syncmlDocument, deviceInfoOperations);
+                            PolicyManagerService policyManagerService = WindowsAPIUtils.getPolicyManagerService();
+                            policyManagerService.getEffectivePolicy(deviceIdentifier);
+                            AppliedPolicyCache.invalidate(deviceIdentifier);
+                            return Response.status(Response.Status.OK).entity(response).build();
+                        } catch (PolicyManagementException e) {
+                            String msg = "Error occurred in while getting effective policy.";
+                            log.error(msg, e);
+                            throw new WindowsConfigurationException(msg, e);
                         } catch (SyncmlOperationException e) {
-                            String msg = "Error occurred in while getting effective feature";
+                            String msg = "Error occurred in while generating hash value.";
                             log.error(msg, e);
                             throw new WindowsOperationException(msg, e);
                         }
+
                     } else {
-                        String msg = "Error occurred in modify enrollment.";
+                        String msg = "Error occurred in device enrollment.";
                         log.error(msg);
-                        return Response.status(Response.Status.NOT_MODIFIED).entity(msg).build();
+                        return Response.status(Response.Status.INTERNAL_SERVER_ERROR).entity(msg).build();
                     }
-                } else if (sessionId >= PluginConstants.SyncML.SYNCML_SECOND_SESSION_ID) {
-                    if ((syncmlDocument.getBody().getAlert() != null)) {
-                        if (!syncmlDocument.getBody().getAlert().getData().equals(Constants.DISENROLL_ALERT_DATA)) {
-                            try {
-                                pendingOperations = operationUtils.getPendingOperations(syncmlDocument);
-                                return Response.ok().entity(generateReply(syncmlDocument, pendingOperations)).build();
-                            } catch (OperationManagementException e) {
-                                String msg = "Cannot access operation management service.";
-                                log.error(msg, e);
-                                throw new WindowsOperationException(msg, e);
-                            } catch (DeviceManagementException e) {
-                                String msg = "Cannot access Device management service.";
-                                log.error(msg, e);
-                                throw new WindowsOperationException(msg, e);
-                            } catch (FeatureManagementException e) {
-                                String msg = "Error occurred in getting effective features. ";
-                                log.error(msg, e);
-                                throw new WindowsOperationException(msg, e);
-                            } catch (PolicyComplianceException e) {
-                                String msg = "Error occurred in setting policy compliance.";
-                                log.error(msg, e);
-                                throw new WindowsConfigurationException(msg, e);
-                            } catch (NotificationManagementException e) {
-                                String msg = "Error occurred in while getting notification service";
-                                throw new WindowsOperationException(msg, e);
-                            } catch (SyncmlOperationException e) {
-                                String msg = "Error occurred in while encoding hash value.";
-                                log.error(msg, e);
-                                throw new WindowsOperationException(msg, e);
-                            }
-                        } else {
-                            try {
-                                if (WindowsAPIUtils.getDeviceManagementService().getDevice(deviceIdentifier) != null) {
-                                    WindowsAPIUtils.getDeviceManagementService().disenrollDevice(deviceIdentifier);
-                                    return Response.ok().entity(generateReply(syncmlDocument, null)).build();
-                                } else {
-                                    String msg = "Enrolled device can not be found in the server.";
-                                    log.error(msg);
-                                    return Response.status(Response.Status.NOT_FOUND).entity(msg).build();
-                                }
-                            } catch (DeviceManagementException e) {
-                                String msg = "Failure occurred in dis-enrollment flow.";
-                                log.error(msg, e);
-                                throw new WindowsOperationException(msg, e);
-                            } catch (SyncmlOperationException e) {
-                                String msg = "Error occurred in while generating hash value.";
-                                log.error(msg, e);
-                                throw new WindowsOperationException(msg, e);
-                            }
-                        }
-                    } else {
+                } else {
+                    String msg = "Authentication failure due to incorrect credentials.";
+                    log.error(msg);
+                    return Response.status(Response.Status.UNAUTHORIZED).entity(msg).build();
+                }
+            } else if (PluginConstants.SyncML.SYNCML_SECOND_MESSAGE_ID == msgId &&
+                    PluginConstants.SyncML.SYNCML_FIRST_SESSION_ID == sessionId) {
+
+                if (enrollDevice(syncmlDocument)) {
+                    try {
+                        return Response.ok().entity(generateReply(syncmlDocument, null)).build();
+                    } catch (SyncmlOperationException e) {
+                        String msg = "Error occurred in while getting effective feature";
+                        log.error(msg, e);
+                        throw new WindowsOperationException(msg, e);
+                    }
+                } else {
+                    String msg = "Error occurred in modify enrollment.";
+                    log.error(msg);
+                    return Response.status(Response.Status.NOT_MODIFIED).entity(msg).build();
+                }
+            } else if (sessionId >= PluginConstants.SyncML.SYNCML_SECOND_SESSION_ID) {
+                if ((syncmlDocument.getBody().getAlert() != null)) {
+                    if (!syncmlDocument.getBody().getAlert().getData().equals(Constants.DISENROLL_ALERT_DATA)) {
                         try {
                             pendingOperations = operationUtils.getPendingOperations(syncmlDocument);
-                            return Response.ok().entity(generateReply(syncmlDocument, pendingOperations))
-                                    .build();
+                            return Response.ok().entity(generateReply(syncmlDocument, pendingOperations)).build();
                         } catch (OperationManagementException e) {
                             String msg = "Cannot access operation management service.";
                             log.error(msg, e);
@@ -267,44 +217,92 @@ public class SyncmlServiceImpl implements SyncmlService {
                         } catch (FeatureManagementException e) {
                             String msg = "Error occurred in getting effective features. ";
                             log.error(msg, e);
-                            throw new WindowsConfigurationException(msg, e);
+                            throw new WindowsOperationException(msg, e);
                         } catch (PolicyComplianceException e) {
                             String msg = "Error occurred in setting policy compliance.";
                             log.error(msg, e);
                             throw new WindowsConfigurationException(msg, e);
                         } catch (NotificationManagementException e) {
-                            String msg = "Error occurred in while getting notification service.";
+                            String msg = "Error occurred in while getting notification service";
+                            throw new WindowsOperationException(msg, e);
+                        } catch (SyncmlOperationException e) {
+                            String msg = "Error occurred in while encoding hash value.";
+                            log.error(msg, e);
+                            throw new WindowsOperationException(msg, e);
+                        }
+                    } else {
+                        try {
+                            if (WindowsAPIUtils.getDeviceManagementService().getDevice(deviceIdentifier) != null) {
+                                WindowsAPIUtils.getDeviceManagementService().disenrollDevice(deviceIdentifier);
+                                AppliedPolicyCache.invalidate(deviceIdentifier);
+                                return Response.ok().entity(generateReply(syncmlDocument, null)).build();
+                            } else {
+                                String msg = "Enrolled device can not be found in the server.";
+                                log.error(msg);
+                                return Response.status(Response.Status.NOT_FOUND).entity(msg).build();
+                            }
+                        } catch (DeviceManagementException e) {
+                            String msg = "Failure occurred in dis-enrollment flow.";
                             log.error(msg, e);
                             throw new WindowsOperationException(msg, e);
                         } catch (SyncmlOperationException e) {
-                            String msg = "Error occurred in while getting effective feature.";
+                            String msg = "Error occurred in while generating hash value.";
                             log.error(msg, e);
-                            throw new WindowsConfigurationException(msg, e);
+                            throw new WindowsOperationException(msg, e);
                         }
                     }
                 } else {
-                    String msg = "Failure occurred in Device request message.";
-                    log.error(msg);
-                    return Response.status(Response.Status.BAD_REQUEST).entity(msg).build();
+                    try {
+                        pendingOperations = operationUtils.getPendingOperations(syncmlDocument);
+                        return Response.ok().entity(generateReply(syncmlDocument, pendingOperations))
+                                .build();
+                    } catch (OperationManagementException e) {
+                        String msg = "Cannot access operation management service.";
+                        log.error(msg, e);
+                        throw new WindowsOperationException(msg, e);
+                    } catch (DeviceManagementException e) {
+                        String msg = "Cannot access Device management service.";
+                        log.error(msg, e);
+                        throw new WindowsOperationException(msg, e);
+                    } catch (FeatureManagementException e) {
+                        String msg = "Error occurred in getting effective features. ";
+                        log.error(msg, e);
+                        throw new WindowsConfigurationException(msg, e);
+                    } catch (PolicyComplianceException e) {
+                        String msg = "Error occurred in setting policy compliance.";
+                        log.error(msg, e);
+                        throw new WindowsConfigurationException(msg, e);
+                    } catch (NotificationManagementException e) {
+                        String msg = "Error occurred in while getting notification service.";
+                        log.error(msg, e);
+                        throw new WindowsOperationException(msg, e);
+                    } catch (SyncmlOperationException e) {
+                        String msg = "Error occurred in while getting effective feature.";
+                        log.error(msg, e);
+                        throw new WindowsConfigurationException(msg, e);
+                    }
                 }
+            } else {
+                String msg = "Failure occurred in Device request message.";
+                log.error(msg);
+                return Response.status(Response.Status.BAD_REQUEST).entity(msg).build();
             }
         } catch (SyncmlMessageFormatException e) {
             String msg = "Error occurred in parsing syncml request.";
             log.error(msg, e);
             throw new WindowsOperationException(msg, e);
         }
-        return null;
     }
 
     /**
      * Enroll phone device
      *
-     * @param request Device syncml request for the server side.
+     * @param syncmlDocument parsed syncml payload of the device request.
      * @return enroll state
      * @throws WindowsDeviceEnrolmentException
      * @throws WindowsOperationException
      */
-    private boolean enrollDevice(Document request) throws WindowsDeviceEnrolmentException,
+    private boolean enrollDevice(SyncmlDocument syncmlDocument) throws WindowsDeviceEnrolmentException,
             WindowsOperationException {
 
         String osVersion;
@@ -322,10 +320,8 @@ public class SyncmlServiceImpl implements SyncmlService {
         String user;
         String deviceName;
         int msgID;
-        SyncmlDocument syncmlDocument;
 
         try {
-            syncmlDocument = SyncmlParser.parseSyncmlPayload(request);
             msgID = syncmlDocument.getHeader().getMsgID();
             if (msgID == PluginConstants.SyncML.SYNCML_FIRST_MESSAGE_ID) {
                 Replace replace = syncmlDocument.getBody().getReplace();
@@ -411,6 +407,7 @@ public class SyncmlServiceImpl implements SyncmlService {
                     // call effective policy for the enrolling device.
                     PolicyManagerService policyManagerService = WindowsAPIUtils.getPolicyManagerService();
                     policyManagerService.getEffectivePolicy(deviceIdentifier);
+                    AppliedPolicyCache.invalidate(deviceIdentifier);
                     return status;
                 }
             }
@@ -418,10 +415,6 @@ public class SyncmlServiceImpl implements SyncmlService {
             String msg = "Failure occurred in enrolling device.";
             log.error(msg, e);
             throw new WindowsDeviceEnrolmentException(msg, e);
-        } catch (SyncmlMessageFormatException e) {
-            String msg = "Error occurred in bad format of the syncml payload.";
-            log.error(msg, e);
-            throw new WindowsOperationException(msg, e);
         } catch (PolicyManagementException e) {
             String msg = "Error occurred in getting effective policy.";
             log.error(msg, e);
@@ -437,25 +430,32 @@ public class SyncmlServiceImpl implements SyncmlService {
      *
      * @param syncmlDocument parsed syncml payload from the syncml engine.
      * @param operations     operations for generate payload.
-     * @return String type syncml payload.
+     * @return syncml payload which is written directly to the response stream.
      * @throws WindowsOperationException
      * @throws JSONException
      * @throws PolicyManagementException
      * @throws org.wso2.carbon.policy.mgt.common.FeatureManagementException
      */
-    public String generateReply(SyncmlDocument syncmlDocument, List<? extends Operation> operations)
+    public StreamingOutput generateReply(SyncmlDocument syncmlDocument, List<? extends Operation> operations)
             throws SyncmlMessageFormatException, SyncmlOperationException {
 
         OperationReply operationReply;
-        SyncmlGenerator generator;
-        SyncmlDocument syncmlResponse;
+        final SyncmlDocument syncmlResponse;
         if (operations == null) {
             operationReply = new OperationReply(syncmlDocument);
         } else {
             operationReply = new OperationReply(syncmlDocument, operations);
         }
         syncmlResponse = operationReply.generateReply();
-        generator = new SyncmlGenerator();
-        return generator.generatePayload(syncmlResponse);
+        return new StreamingOutput() {
+            @Override
+            public void write(OutputStream outputStream) throws IOException {
+                try {
+                    syncmlGenerator.generatePayload(syncmlResponse, outputStream);
+                } catch (SyncmlOperationException e) {
+                    throw new IOException("Error occurred while writing the syncml reply.", e);
+                }
+            }
+        };
     }
 }
@@ -38,5 +38,9 @@ public class RequestedSecurityToken {
     public void setBinarySecurityToken(BinarySecurityToken binarysecuritytoken) {
         this.binarySecurityToken = binarysecuritytoken;
     }
+
+    public BinarySecurityToken getBinarySecurityToken() {
+        return binarySecurityToken;
+    }
 }
 
@@ -27,8 +27,6 @@ import org.apache.cxf.helpers.CastUtils;
 import org.apache.cxf.jaxws.context.WrappedMessageContext;
 import org.apache.cxf.message.Message;
 import org.w3c.dom.*;
-import org.wso2.carbon.certificate.mgt.core.exception.KeystoreException;
-import org.wso2.carbon.certificate.mgt.core.service.CertificateManagementServiceImpl;
 import org.wso2.carbon.context.PrivilegedCarbonContext;
 import org.wso2.carbon.device.mgt.common.DeviceManagementException;
 import org.wso2.carbon.device.mgt.common.configuration.mgt.ConfigurationEntry;
@@ -46,19 +44,13 @@ import org.wso2.carbon.mdm.mobileservices.windows.services.wstep.beans.Additiona
 import org.wso2.carbon.mdm.mobileservices.windows.services.wstep.beans.BinarySecurityToken;
 import org.wso2.carbon.mdm.mobileservices.windows.services.wstep.beans.RequestSecurityTokenResponse;
 import org.wso2.carbon.mdm.mobileservices.windows.services.wstep.beans.RequestedSecurityToken;
-import org.xml.sax.SAXException;
+import org.wso2.carbon.mdm.mobileservices.windows.services.wstep.util.CAMaterialHolder;
+import org.wso2.carbon.mdm.mobileservices.windows.services.wstep.util.CertificateSigningExecutor;
+import org.wso2.carbon.mdm.mobileservices.windows.services.wstep.util.WapProvisioningTemplate;
 
 import javax.annotation.Resource;
 import javax.jws.WebService;
 import javax.servlet.ServletContext;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
 import javax.xml.ws.BindingType;
 import javax.xml.ws.Holder;
 import javax.xml.ws.WebServiceContext;
@@ -66,12 +58,12 @@ import javax.xml.ws.handler.MessageContext;
 import javax.xml.ws.soap.Addressing;
 import javax.xml.ws.soap.SOAPBinding;
 import java.io.File;
-import java.io.IOException;
-import java.io.StringWriter;
 import java.io.UnsupportedEncodingException;
 import java.security.cert.CertificateEncodingException;
 import java.security.cert.X509Certificate;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Implementation class of CertificateEnrollmentService interface. This class implements MS-WSTEP
@@ -83,7 +75,6 @@ import java.util.List;
 @BindingType(value = SOAPBinding.SOAP12HTTP_BINDING)
 public class CertificateEnrollmentServiceImpl implements CertificateEnrollmentService {
     private static Log log = LogFactory.getLog(CertificateEnrollmentServiceImpl.class);
-    private X509Certificate rootCACertificate;
     private String pollingFrequency;
     private String provisioningURL;
     private String domain;
@@ -189,24 +180,6 @@ public class CertificateEnrollmentServiceImpl implements CertificateEnrollmentSe
         }
     }
 
-    /**
-     * Method used to Convert the Document object into a String.
-     *
-     * @param document - Wap provisioning XML document
-     * @return - String representation of wap provisioning XML document
-     * @throws TransformerException
-     */
-    private String convertDocumentToString(Document document) throws TransformerException {
-        DOMSource DOMSource = new DOMSource(document);
-        StringWriter stringWriter = new StringWriter();
-        StreamResult streamResult = new StreamResult(stringWriter);
-        TransformerFactory transformerFactory = TransformerFactory.newInstance();
-        Transformer transformer = transformerFactory.newTransformer();
-        transformer.transform(DOMSource, streamResult);
-
-        return stringWriter.toString();
-    }
-
     /**
      * This method prepares the wap-provisioning file by including relevant certificates etc
      *
@@ -223,146 +196,81 @@ public class CertificateEnrollmentServiceImpl implements CertificateEnrollmentSe
 
         String rootCertEncodedString;
         String signedCertEncodedString;
+        String signedCertThumbprint;
         X509Certificate signedCertificate;
 
-        CertificateManagementServiceImpl impl = CertificateManagementServiceImpl.getInstance();
+        CAMaterialHolder caMaterial = CAMaterialHolder.getInstance();
         Base64 base64Encoder = new Base64();
+        signedCertificate = CertificateSigningExecutor.signCSR(binarySecurityToken);
+        long encodeStartTime = System.nanoTime();
         try {
-            rootCACertificate = (X509Certificate) impl.getCACertificate();
-            rootCertEncodedString = base64Encoder.encodeAsString(rootCACertificate.getEncoded());
-        } catch (KeystoreException e) {
-            String msg = "CA certificate cannot be generated";
-            log.error(msg, e);
-            throw new CertificateGenerationException(msg, e);
-        } catch (CertificateEncodingException e) {
-            String msg = "CA certificate cannot be encoded.";
-            log.error(msg, e);
-            throw new CertificateGenerationException(msg, e);
-        }
-
-        try {
-            signedCertificate = impl.getSignedCertificateFromCSR(binarySecurityToken);
-            signedCertEncodedString = base64Encoder.encodeAsString(signedCertificate.getEncoded());
+            byte[] signedCertEncoded = signedCertificate.getEncoded();
+            signedCertEncodedString = base64Encoder.encodeAsString(signedCertEncoded);
+            signedCertThumbprint = DigestUtils.sha1Hex(signedCertEncoded).toUpperCase();
         } catch (CertificateEncodingException e) {
             String msg = "Singed certificate cannot be encoded.";
             log.error(msg, e);
             throw new CertificateGenerationException(msg, e);
-        } catch (KeystoreException e) {
-            String msg = "CA certificate cannot be generated";
-            log.error(msg, e);
-            throw new CertificateGenerationException(msg, e);
+        } finally {
+            CertificateSigningExecutor.recordStageTime(CertificateSigningExecutor.Stage.ENCODE,
+                    System.nanoTime() - encodeStartTime);
         }
-        DocumentBuilderFactory domFactory = DocumentBuilderFactory.newInstance();
-        DocumentBuilder builder;
         String wapProvisioningString;
         try {
-            builder = domFactory.newDocumentBuilder();
-            Document document = builder.parse(wapProvisioningFilePath);
-            NodeList wapParm = document.getElementsByTagName(PluginConstants.CertificateEnrolment.PARM);
-            Node caCertificatePosition = wapParm.item(PluginConstants.CertificateEnrolment.CA_CERTIFICATE_POSITION);
+            Map<WapProvisioningTemplate.Slot, String> slotValues = new EnumMap<>(WapProvisioningTemplate.Slot.class);
 
             //Adding SHA1 CA certificate finger print to wap-provisioning xml.
-            caCertificatePosition.getParentNode().getAttributes().getNamedItem(PluginConstants.
-                    CertificateEnrolment.TYPE).setTextContent(String.valueOf(
-                    DigestUtils.sha1Hex(rootCACertificate.getEncoded())).toUpperCase());
-            //Adding encoded CA certificate to wap-provisioning file after removing new line
-            // characters.
-            NamedNodeMap rootCertAttributes = caCertificatePosition.getAttributes();
-            Node rootCertNode =
-                    rootCertAttributes.getNamedItem(PluginConstants.CertificateEnrolment.VALUE);
-            rootCertEncodedString = rootCertEncodedString.replaceAll("\n", "");
-            rootCertNode.setTextContent(rootCertEncodedString);
+            slotValues.put(WapProvisioningTemplate.Slot.CA_CERTIFICATE_THUMBPRINT, caMaterial.getFingerprint());
+            //Adding encoded CA certificate to wap-provisioning file, new line characters are already removed.
+            rootCertEncodedString = caMaterial.getEncodedCertificate();
+            slotValues.put(WapProvisioningTemplate.Slot.CA_CERTIFICATE, rootCertEncodedString);
 
             if (log.isDebugEnabled()) {
                 log.debug("Root certificate: " + rootCertEncodedString);
             }
 
-            Node signedCertificatePosition = wapParm.item(PluginConstants.CertificateEnrolment.
-                    SIGNED_CERTIFICATE_POSITION);
-
             //Adding SHA1 signed certificate finger print to wap-provisioning xml.
-            signedCertificatePosition.getParentNode().getAttributes().getNamedItem(PluginConstants.
-                    CertificateEnrolment.TYPE).setTextContent(String.valueOf(
-                    DigestUtils.sha1Hex(signedCertificate.getEncoded())).toUpperCase());
+            slotValues.put(WapProvisioningTemplate.Slot.SIGNED_CERTIFICATE_THUMBPRINT, signedCertThumbprint);
 
             //Adding encoded signed certificate to wap-provisioning file after removing new line
             // characters.
-            NamedNodeMap clientCertAttributes = signedCertificatePosition.getAttributes();
-            Node clientEncodedNode =
-                    clientCertAttributes.getNamedItem(PluginConstants.CertificateEnrolment.VALUE);
             signedCertEncodedString = signedCertEncodedString.replaceAll("\n", "");
-
-            clientEncodedNode.setTextContent(signedCertEncodedString);
+            slotValues.put(WapProvisioningTemplate.Slot.SIGNED_CERTIFICATE, signedCertEncodedString);
             if (log.isDebugEnabled()) {
                 log.debug("Signed certificate: " + signedCertEncodedString);
             }
 
             //Adding domainName to wap-provisioning xml.
-            Node domainPosition = wapParm.item(PluginConstants.CertificateEnrolment.DOMAIN_POSITION);
-            NamedNodeMap domainAttribute = domainPosition.getAttributes();
-            Node domainNode = domainAttribute.getNamedItem(PluginConstants.CertificateEnrolment.VALUE);
-            domainNode.setTextContent(domain);
+            slotValues.put(WapProvisioningTemplate.Slot.DOMAIN, domain);
 
             //Adding Next provisioning service URL to wap-provisioning xml.
-            Node syncmlServicePosition = wapParm.item(PluginConstants.CertificateEnrolment.
-                    SYNCML_PROVISIONING_ADDR_POSITION);
-            NamedNodeMap syncmlServiceAttribute = syncmlServicePosition.getAttributes();
-            Node syncmlServiceNode = syncmlServiceAttribute.getNamedItem(PluginConstants.CertificateEnrolment.VALUE);
-            syncmlServiceNode.setTextContent(provisioningURL);
+            slotValues.put(WapProvisioningTemplate.Slot.SYNCML_PROVISIONING_ADDR, provisioningURL);
 
             // Adding user name auth token to wap-provisioning xml.
-            Node userNameAuthPosition = wapParm.item(PluginConstants.CertificateEnrolment.APPAUTH_USERNAME_POSITION);
-            NamedNodeMap appServerAttribute = userNameAuthPosition.getAttributes();
-            Node authNameNode = appServerAttribute.getNamedItem(PluginConstants.CertificateEnrolment.VALUE);
             CacheEntry cacheEntry = (CacheEntry) DeviceUtil.getCacheEntry(headerBst);
             String userName = cacheEntry.getUsername();
-            authNameNode.setTextContent(cacheEntry.getUsername());
+            slotValues.put(WapProvisioningTemplate.Slot.APPAUTH_USERNAME, cacheEntry.getUsername());
             DeviceUtil.removeToken(headerBst);
             String password = DeviceUtil.generateRandomToken();
-            Node passwordAuthPosition = wapParm.item(PluginConstants.CertificateEnrolment.APPAUTH_PASSWORD_POSITION);
-            NamedNodeMap appSrvPasswordAttribute = passwordAuthPosition.getAttributes();
-            Node authPasswordNode = appSrvPasswordAttribute.getNamedItem(PluginConstants.CertificateEnrolment.VALUE);
-            authPasswordNode.setTextContent(password);
+            slotValues.put(WapProvisioningTemplate.Slot.APPAUTH_PASSWORD, password);
             String requestSecurityTokenResponse = new SyncmlCredentials().generateRST(userName, password);
             DeviceUtil.persistChallengeToken(requestSecurityTokenResponse, null, userName);
 
             // Get device polling frequency from the tenant Configurations.
-            Node numberOfFirstRetries = wapParm.item(PluginConstants.CertificateEnrolment.POLLING_FREQUENCY_POSITION);
-            NamedNodeMap pollingAttributes = numberOfFirstRetries.getAttributes();
-            Node pollValue = pollingAttributes.getNamedItem(PluginConstants.CertificateEnrolment.VALUE);
-            pollValue.setTextContent(pollingFrequency);
+            slotValues.put(WapProvisioningTemplate.Slot.POLLING_FREQUENCY, pollingFrequency);
             if (log.isDebugEnabled()) {
                 log.debug("Username: " + userName + "Password: " + requestSecurityTokenResponse);
             }
-            wapProvisioningString = convertDocumentToString(document);
-        } catch (ParserConfigurationException e) {
-            String msg = "Problem occurred in parsing wap-provisioning.xml file.";
-            log.error(msg, e);
-            throw new WAPProvisioningException(msg, e);
+            wapProvisioningString = WapProvisioningTemplate.getTemplate(new File(wapProvisioningFilePath))
+                    .fill(slotValues);
         } catch (DeviceManagementException e) {
             String msg = "Error occurred in while getting CA and Root certificates.";
             log.error(msg, e);
             throw new WindowsDeviceEnrolmentException(msg, e);
-        } catch (CertificateEncodingException e) {
-            String msg = "Error occurred in while encoding certificates.";
-            log.error(msg, e);
-            throw new WindowsDeviceEnrolmentException(msg, e);
         } catch (UnsupportedEncodingException e) {
             String msg = "Error occurred in while encoding wap-provisioning file.";
             log.error(msg, e);
             throw new WindowsDeviceEnrolmentException(msg, e);
-        } catch (SAXException e) {
-            String msg = "Error occurred in while parsing wap-provisioning.xml file.";
-            log.error(msg, e);
-            throw new WAPProvisioningException(msg, e);
-        } catch (TransformerException e) {
-            String msg = "Error occurred in while transforming wap-provisioning.xml file.";
-            log.error(msg, e);
-            throw new WAPProvisioningException(msg, e);
-        } catch (IOException e) {
-            String msg = "Error occurred in while getting wap-provisioning.xml file.";
-            log.error(msg, e);
-            throw new WAPProvisioningException(msg, e);
         } catch (SyncmlMessageFormatException e) {
             String msg = "Error occurred in while getting CA and Root certificates.";
             log.error(msg, e);
@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied. See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.wso2.carbon.mdm.mobileservices.windows.services.wstep.util;
+
+import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.certificate.mgt.core.exception.KeystoreException;
+import org.wso2.carbon.mdm.mobileservices.windows.common.exceptions.CertificateGenerationException;
+import org.wso2.carbon.mdm.mobileservices.windows.common.util.WindowsAPIUtils;
+
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+
+/**
+ * Holds the CA certificate of the MDM server in the forms needed by the wap-provisioning document. The CA
+ * certificate is read from the key store once and kept for the lifetime of the web app.
+ */
+public class CAMaterialHolder {
+
+    private static Log log = LogFactory.getLog(CAMaterialHolder.class);
+    private static volatile CAMaterialHolder instance;
+
+    private final String encodedCertificate;
+    private final String fingerprint;
+
+    private CAMaterialHolder(String encodedCertificate, String fingerprint) {
+        this.encodedCertificate = encodedCertificate;
+        this.fingerprint = fingerprint;
+    }
+
+    public static CAMaterialHolder getInstance() throws CertificateGenerationException {
+        CAMaterialHolder current = instance;
+        if (current == null) {
+            synchronized (CAMaterialHolder.class) {
+                current = instance;
+                if (current == null) {
+                    current = load();
+                    instance = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * @return Base64 encoded CA certificate without new line characters
+     */
+    public String getEncodedCertificate() {
+        return encodedCertificate;
+    }
+
+    /**
+     * @return upper case SHA1 fingerprint of the CA certificate
+     */
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    private static CAMaterialHolder load() throws CertificateGenerationException {
+        try {
+            X509Certificate caCertificate = (X509Certificate) WindowsAPIUtils.getCertificateManagementService().
+                    getCACertificate();
+            byte[] encoded = caCertificate.getEncoded();
+            String encodedCertificate = new Base64().encodeAsString(encoded).replaceAll("\n", "");
+            String fingerprint = DigestUtils.sha1Hex(encoded).toUpperCase();
+            if (log.isDebugEnabled()) {
+                log.debug("Loaded CA certificate with fingerprint " + fingerprint);
+            }
+            return new CAMaterialHolder(encodedCertificate, fingerprint);
+        } catch (KeystoreException e) {
+            String msg = "CA certificate cannot be generated";
+            log.error(msg, e);
+            throw new CertificateGenerationException(msg, e);
+        } catch (CertificateEncodingException e) {
+            String msg = "CA certificate cannot be encoded.";
+            log.error(msg, e);
+            throw new CertificateGenerationException(msg, e);
+        }
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied. See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.wso2.carbon.mdm.mobileservices.windows.services.wstep.util;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.context.PrivilegedCarbonContext;
+import org.wso2.carbon.certificate.mgt.core.exception.KeystoreException;
+import org.wso2.carbon.mdm.mobileservices.windows.common.exceptions.CertificateGenerationException;
+import org.wso2.carbon.mdm.mobileservices.windows.common.util.WindowsAPIUtils;
+
+import java.security.cert.X509Certificate;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Signs the CSRs of enrolling devices on a bounded pool of threads, so that a burst of enrollments queues up
+ * for the CA private key instead of occupying every request thread, and records the time spent in each stage
+ * of issuing a certificate.
+ */
+public class CertificateSigningExecutor {
+
+    private static Log log = LogFactory.getLog(CertificateSigningExecutor.class);
+    private static final int POOL_SIZE = Runtime.getRuntime().availableProcessors();
+    private static final int QUEUE_CAPACITY = 500;
+    private static final long SIGNING_TIMEOUT = 30;
+    private static volatile ThreadPoolExecutor executor;
+
+    private static final AtomicLongArray stageCounts = new AtomicLongArray(Stage.values().length);
+    private static final AtomicLongArray stageTimes = new AtomicLongArray(Stage.values().length);
+
+    /**
+     * Stages of issuing a certificate for an enrolling device.
+     */
+    public enum Stage {
+        QUEUE,
+        SIGN,
+        ENCODE
+    }
+
+    private CertificateSigningExecutor() {
+        throw new AssertionError();
+    }
+
+    /**
+     * Signs the CSR received from the device with the CA private key.
+     *
+     * @param binarySecurityToken base64 encoded CSR from the device
+     * @return signed certificate
+     * @throws CertificateGenerationException
+     */
+    public static X509Certificate signCSR(final String binarySecurityToken) throws CertificateGenerationException {
+        final long submitTime = System.nanoTime();
+        PrivilegedCarbonContext carbonContext = PrivilegedCarbonContext.getThreadLocalCarbonContext();
+        final String tenantDomain = carbonContext.getTenantDomain();
+        final int tenantId = carbonContext.getTenantId();
+        Future<X509Certificate> signedCertificate;
+        try {
+            signedCertificate = getExecutor().submit(new Callable<X509Certificate>() {
+                @Override
+                public X509Certificate call() throws KeystoreException {
+                    long startTime = System.nanoTime();
+                    recordStageTime(Stage.QUEUE, startTime - submitTime);
+                    // The key store of the CA is resolved through the carbon context of the requesting tenant.
+                    PrivilegedCarbonContext.startTenantFlow();
+                    try {
+                        PrivilegedCarbonContext ctx = PrivilegedCarbonContext.getThreadLocalCarbonContext();
+                        ctx.setTenantDomain(tenantDomain);
+                        ctx.setTenantId(tenantId);
+                        return WindowsAPIUtils.getCertificateManagementService().
+                                getSignedCertificateFromCSR(binarySecurityToken);
+                    } finally {
+                        PrivilegedCarbonContext.endTenantFlow();
+                        recordStageTime(Stage.SIGN, System.nanoTime() - startTime);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            String msg = "Certificate signing queue is full.";
+            log.error(msg, e);
+            throw new CertificateGenerationException(msg, e);
+        }
+        try {
+            return signedCertificate.get(SIGNING_TIMEOUT, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            String msg = "CA certificate cannot be generated";
+            log.error(msg, e.getCause());
+            throw new CertificateGenerationException(msg, e.getCause());
+        } catch (TimeoutException e) {
+            signedCertificate.cancel(true);
+            String msg = "Signing the CSR did not complete within " + SIGNING_TIMEOUT + " seconds.";
+            log.error(msg, e);
+            throw new CertificateGenerationException(msg, e);
+        } catch (InterruptedException e) {
+            signedCertificate.cancel(true);
+            Thread.currentThread().interrupt();
+            String msg = "Interrupted while waiting for the CSR to be signed.";
+            log.error(msg, e);
+            throw new CertificateGenerationException(msg, e);
+        }
+    }
+
+    public static void recordStageTime(Stage stage, long nanos) {
+        long count = stageCounts.incrementAndGet(stage.ordinal());
+        long total = stageTimes.addAndGet(stage.ordinal(), nanos);
+        if (log.isDebugEnabled()) {
+            log.debug("Certificate " + stage + " stage took " + TimeUnit.NANOSECONDS.toMicros(nanos) +
+                    " us, average " + TimeUnit.NANOSECONDS.toMicros(total / count) + " us over " + count +
+                    " certificates.");
+        }
+    }
+
+    public static long getStageCount(Stage stage) {
+        return stageCounts.get(stage.ordinal());
+    }
+
+    /**
+     * @return total time in nanoseconds spent in the stage
+     */
+    public static long getStageTime(Stage stage) {
+        return stageTimes.get(stage.ordinal());
+    }
+
+    public static synchronized void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    private static ThreadPoolExecutor getExecutor() {
+        ThreadPoolExecutor current = executor;
+        if (current == null) {
+            synchronized (CertificateSigningExecutor.class) {
+                current = executor;
+                if (current == null) {
+                    current = new ThreadPoolExecutor(POOL_SIZE, POOL_SIZE, 0L, TimeUnit.MILLISECONDS,
+                            new ArrayBlockingQueue<Runnable>(QUEUE_CAPACITY), new ThreadFactory() {
+                        private final AtomicInteger threadCount = new AtomicInteger();
+
+                        @Override
+                        public Thread newThread(Runnable runnable) {
+                            Thread thread = new Thread(runnable, "windows-certificate-signer-" +
+                                    threadCount.incrementAndGet());
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+                    executor = current;
+                }
+            }
+        }
+        return current;
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied. See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.wso2.carbon.mdm.mobileservices.windows.services.wstep.util;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.wso2.carbon.mdm.mobileservices.windows.common.PluginConstants;
+import org.wso2.carbon.mdm.mobileservices.windows.common.exceptions.WAPProvisioningException;
+import org.wso2.carbon.mdm.mobileservices.windows.common.util.XmlEscapeUtils;
+import org.xml.sax.SAXException;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Precompiled wap-provisioning document. The wap-provisioning file is parsed and serialized once, and split
+ * around the values which differ for each enrolling device. Preparing the document for a device only fills in
+ * those slots, and the template is compiled again only when the file changes.
+ */
+public class WapProvisioningTemplate {
+
+    private static Log log = LogFactory.getLog(WapProvisioningTemplate.class);
+    private static final String SLOT_PREFIX = "#WAP-SLOT-";
+    private static final String SLOT_SUFFIX = "#";
+    private static volatile WapProvisioningTemplate template;
+
+    /**
+     * Values filled in for each enrolling device.
+     */
+    public enum Slot {
+        CA_CERTIFICATE_THUMBPRINT,
+        CA_CERTIFICATE,
+        SIGNED_CERTIFICATE_THUMBPRINT,
+        SIGNED_CERTIFICATE,
+        DOMAIN,
+        SYNCML_PROVISIONING_ADDR,
+        APPAUTH_USERNAME,
+        APPAUTH_PASSWORD,
+        POLLING_FREQUENCY
+    }
+
+    private final String filePath;
+    private final long lastModified;
+    private final String[] segments;
+    private final Slot[] slots;
+
+    private WapProvisioningTemplate(String filePath, long lastModified, String[] segments, Slot[] slots) {
+        this.filePath = filePath;
+        this.lastModified = lastModified;
+        this.segments = segments;
+        this.slots = slots;
+    }
+
+    /**
+     * Returns the compiled template of the wap-provisioning file, compiling it if it was not compiled yet or the
+     * file changed since it was compiled.
+     *
+     * @param wapProvisioningFile wap-provisioning file
+     * @return compiled template
+     * @throws WAPProvisioningException
+     */
+    public static WapProvisioningTemplate getTemplate(File wapProvisioningFile) throws WAPProvisioningException {
+        WapProvisioningTemplate current = template;
+        if (current == null || !current.filePath.equals(wapProvisioningFile.getPath()) ||
+                current.lastModified != wapProvisioningFile.lastModified()) {
+            synchronized (WapProvisioningTemplate.class) {
+                current = template;
+                if (current == null || !current.filePath.equals(wapProvisioningFile.getPath()) ||
+                        current.lastModified != wapProvisioningFile.lastModified()) {
+                    current = compile(wapProvisioningFile);
+                    template = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Fills the slots of the template.
+     *
+     * @param values values of the slots, slots without a value are left empty
+     * @return wap-provisioning document of the device
+     */
+    public String fill(Map<Slot, String> values) {
+        int length = 0;
+        for (String segment : segments) {
+            length += segment.length();
+        }
+        StringBuilder wapProvisioning = new StringBuilder(length + 4096);
+        for (int i = 0; i < slots.length; i++) {
+            wapProvisioning.append(segments[i]);
+            String value = values.get(slots[i]);
+            if (value != null) {
+                XmlEscapeUtils.escape(wapProvisioning, value, true);
+            }
+        }
+        wapProvisioning.append(segments[slots.length]);
+        return wapProvisioning.toString();
+    }
+
+    private static WapProvisioningTemplate compile(File wapProvisioningFile) throws WAPProvisioningException {
+        long lastModified = wapProvisioningFile.lastModified();
+        String serializedTemplate;
+        try {
+            Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(wapProvisioningFile);
+            NodeList wapParm = document.getElementsByTagName(PluginConstants.CertificateEnrolment.PARM);
+
+            Node caCertificatePosition = wapParm.item(PluginConstants.CertificateEnrolment.CA_CERTIFICATE_POSITION);
+            setSlot(caCertificatePosition.getParentNode(), PluginConstants.CertificateEnrolment.TYPE,
+                    Slot.CA_CERTIFICATE_THUMBPRINT);
+            setSlot(caCertificatePosition, PluginConstants.CertificateEnrolment.VALUE, Slot.CA_CERTIFICATE);
+
+            Node signedCertificatePosition = wapParm.item(PluginConstants.CertificateEnrolment.
+                    SIGNED_CERTIFICATE_POSITION);
+            setSlot(signedCertificatePosition.getParentNode(), PluginConstants.CertificateEnrolment.TYPE,
+                    Slot.SIGNED_CERTIFICATE_THUMBPRINT);
+            setSlot(signedCertificatePosition, PluginConstants.CertificateEnrolment.VALUE, Slot.SIGNED_CERTIFICATE);
+
+            setSlot(wapParm.item(PluginConstants.CertificateEnrolment.DOMAIN_POSITION),
+                    PluginConstants.CertificateEnrolment.VALUE, Slot.DOMAIN);
+            setSlot(wapParm.item(PluginConstants.CertificateEnrolment.SYNCML_PROVISIONING_ADDR_POSITION),
+                    PluginConstants.CertificateEnrolment.VALUE, Slot.SYNCML_PROVISIONING_ADDR);
+            setSlot(wapParm.item(PluginConstants.CertificateEnrolment.APPAUTH_USERNAME_POSITION),
+                    PluginConstants.CertificateEnrolment.VALUE, Slot.APPAUTH_USERNAME);
+            setSlot(wapParm.item(PluginConstants.CertificateEnrolment.APPAUTH_PASSWORD_POSITION),
+                    PluginConstants.CertificateEnrolment.VALUE, Slot.APPAUTH_PASSWORD);
+            setSlot(wapParm.item(PluginConstants.CertificateEnrolment.POLLING_FREQUENCY_POSITION),
+                    PluginConstants.CertificateEnrolment.VALUE, Slot.POLLING_FREQUENCY);
+
+            StringWriter stringWriter = new StringWriter();
+            Transformer transformer = TransformerFactory.newInstance().newTransformer();
+            transformer.transform(new DOMSource(document), new StreamResult(stringWriter));
+            serializedTemplate = stringWriter.toString();
+        } catch (ParserConfigurationException e) {
+            String msg = "Problem occurred in parsing wap-provisioning.xml file.";
+            log.error(msg, e);
+            throw new WAPProvisioningException(msg, e);
+        } catch (SAXException e) {
+            String msg = "Error occurred in while parsing wap-provisioning.xml file.";
+            log.error(msg, e);
+            throw new WAPProvisioningException(msg, e);
+        } catch (TransformerException e) {
+            String msg = "Error occurred in while transforming wap-provisioning.xml file.";
+            log.error(msg, e);
+            throw new WAPProvisioningException(msg, e);
+        } catch (IOException e) {
+            String msg = "Error occurred in while getting wap-provisioning.xml file.";
+            log.error(msg, e);
+            throw new WAPProvisioningException(msg, e);
+        }
+
+        List<String> segments = new ArrayList<>();
+        List<Slot> slots = new ArrayList<>();
+        int segmentStart = 0;
+        int slotStart;
+        while ((slotStart = serializedTemplate.indexOf(SLOT_PREFIX, segmentStart)) != -1) {
+            int slotEnd = serializedTemplate.indexOf(SLOT_SUFFIX, slotStart + SLOT_PREFIX.length());
+            segments.add(serializedTemplate.substring(segmentStart, slotStart));
+            slots.add(Slot.valueOf(serializedTemplate.substring(slotStart + SLOT_PREFIX.length(), slotEnd)));
+            segmentStart = slotEnd + SLOT_SUFFIX.length();
+        }
+        segments.add(serializedTemplate.substring(segmentStart));
+        if (log.isDebugEnabled()) {
+            log.debug("Compiled wap-provisioning template from " + wapProvisioningFile.getPath() + " with " +
+                    slots.size() + " slots.");
+        }
+        return new WapProvisioningTemplate(wapProvisioningFile.getPath(), lastModified,
+                segments.toArray(new String[segments.size()]), slots.toArray(new Slot[slots.size()]));
+    }
+
+    private static void setSlot(Node node, String attributeName, Slot slot) {
+        node.getAttributes().getNamedItem(attributeName).setTextContent(SLOT_PREFIX + slot.name() + SLOT_SUFFIX);
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied. See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.wso2.carbon.mdm.mobileservices.windows;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import org.wso2.carbon.mdm.mobileservices.windows.common.authenticator.OAuth2TokenValidator;
+import org.wso2.carbon.mdm.mobileservices.windows.common.authenticator.impl.CachingOAuthValidator;
+import org.wso2.carbon.mdm.mobileservices.windows.common.util.OAuthValidationResponse;
+
+public class CachingOAuthValidatorTest {
+
+    @Test
+    public void validateTokenOncePerResource() throws Exception {
+        CountingValidator remoteValidator = new CountingValidator(3600);
+        CachingOAuthValidator validator = new CachingOAuthValidator(remoteValidator, 60000, 10);
+
+        for (int i = 0; i < 100; i++) {
+            Assert.assertTrue(validator.validateToken("token", "/syncml:POST").isValid());
+        }
+        validator.validateToken("token", "/wstep:POST");
+        Assert.assertEquals(remoteValidator.validations, 2);
+        Assert.assertEquals(validator.getHitCount(), 99);
+        Assert.assertEquals(validator.getMissCount(), 2);
+    }
+
+    @Test
+    public void doNotCacheInvalidTokens() throws Exception {
+        CountingValidator remoteValidator = new CountingValidator(3600);
+        CachingOAuthValidator validator = new CachingOAuthValidator(remoteValidator, 60000, 10);
+
+        Assert.assertFalse(validator.validateToken("invalid", "/syncml:POST").isValid());
+        Assert.assertFalse(validator.validateToken("invalid", "/syncml:POST").isValid());
+        Assert.assertEquals(remoteValidator.validations, 2);
+        Assert.assertEquals(validator.size(), 0);
+    }
+
+    @Test
+    public void expireWithToken() throws Exception {
+        CountingValidator remoteValidator = new CountingValidator(0);
+        CachingOAuthValidator validator = new CachingOAuthValidator(remoteValidator, 20, 10);
+
+        validator.validateToken("token", "/syncml:POST");
+        Thread.sleep(40);
+        validator.validateToken("token", "/syncml:POST");
+        Assert.assertEquals(remoteValidator.validations, 2);
+    }
+
+    @Test
+    public void boundNumberOfResults() throws Exception {
+        CountingValidator remoteValidator = new CountingValidator(3600);
+        CachingOAuthValidator validator = new CachingOAuthValidator(remoteValidator, 60000, 10);
+
+        for (int i = 0; i < 50; i++) {
+            validator.validateToken("token" + i, "/syncml:POST");
+        }
+        Assert.assertEquals(validator.size(), 10);
+    }
+
+    @Test
+    public void evictLeastRecentlyUsedResult() throws Exception {
+        CountingValidator remoteValidator = new CountingValidator(3600);
+        CachingOAuthValidator validator = new CachingOAuthValidator(remoteValidator, 60000, 2);
+
+        validator.validateToken("first", "/syncml:POST");
+        validator.validateToken("second", "/syncml:POST");
+        validator.validateToken("first", "/syncml:POST");
+        validator.validateToken("third", "/syncml:POST");
+        Assert.assertEquals(validator.size(), 2);
+        Assert.assertEquals(remoteValidator.validations, 3);
+
+        validator.validateToken("first", "/syncml:POST");
+        Assert.assertEquals(remoteValidator.validations, 3);
+        validator.validateToken("second", "/syncml:POST");
+        Assert.assertEquals(remoteValidator.validations, 4);
+    }
+
+    private static class CountingValidator implements OAuth2TokenValidator {
+        private final long expiryTime;
+        private int validations;
+
+        private CountingValidator(long expiryTime) {
+            this.expiryTime = expiryTime;
+        }
+
+        @Override
+        public OAuthValidationResponse validateToken(String accessToken, String resource) {
+            validations++;
+            if (accessToken.startsWith("invalid")) {
+                OAuthValidationResponse response = new OAuthValidationResponse();
+                response.setErrorMsg("Invalid token");
+                return response;
+            }
+            OAuthValidationResponse response = new OAuthValidationResponse("admin", "carbon.super", true);
+            response.setExpiryTime(expiryTime);
+            return response;
+        }
+    }
+}
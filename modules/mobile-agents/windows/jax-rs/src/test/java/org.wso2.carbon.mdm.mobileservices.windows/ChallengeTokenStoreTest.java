@@ -0,0 +1,176 @@
+/*
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied. See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.wso2.carbon.mdm.mobileservices.windows;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import org.wso2.carbon.mdm.mobileservices.windows.common.beans.CacheEntry;
+import org.wso2.carbon.mdm.mobileservices.windows.common.util.ChallengeTokenStore;
+import org.wso2.carbon.mdm.mobileservices.windows.common.util.TenantCacheProvider;
+
+import javax.cache.Cache;
+import javax.cache.CacheBuilder;
+import javax.cache.CacheManager;
+import javax.cache.event.CacheEntryExpiredListener;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class ChallengeTokenStoreTest {
+
+    @Test
+    public void buildTokenCacheOncePerTenant() {
+        TestCacheProvider cacheProvider = new TestCacheProvider();
+        ChallengeTokenStore tokenStore = new ChallengeTokenStore(cacheProvider, 15);
+        CacheEntry entry = createEntry("admin");
+
+        cacheProvider.tenantId = 1;
+        tokenStore.put("token", entry);
+        cacheProvider.tenantId = 2;
+        Assert.assertNull(tokenStore.get("token"));
+        tokenStore.put("other", createEntry("user"));
+        cacheProvider.tenantId = 1;
+        Assert.assertSame(tokenStore.get("token"), entry);
+        Assert.assertNull(tokenStore.get("other"));
+
+        Assert.assertEquals(cacheProvider.cacheManagerLookups, 2);
+        Assert.assertEquals(cacheProvider.cacheBuilds, 2);
+        Assert.assertEquals(cacheProvider.listeners.size(), 2);
+    }
+
+    @Test
+    public void storeAndRemoveTokens() {
+        ChallengeTokenStore tokenStore = new ChallengeTokenStore(new TestCacheProvider(), 15);
+        tokenStore.put("token", createEntry("admin"));
+        tokenStore.put("token", createEntry("updated"));
+        Assert.assertEquals(tokenStore.get("token").getUsername(), "updated");
+
+        tokenStore.remove("token");
+        Assert.assertNull(tokenStore.get("token"));
+    }
+
+    @Test
+    public void countHitsAndMisses() {
+        ChallengeTokenStore tokenStore = new ChallengeTokenStore(new TestCacheProvider(), 15);
+        CacheEntry entry = createEntry("admin");
+        tokenStore.put("token", entry);
+
+        Assert.assertSame(tokenStore.get("token"), entry);
+        Assert.assertNull(tokenStore.get("unknown"));
+        tokenStore.remove("token");
+        Assert.assertNull(tokenStore.get("token"));
+        Assert.assertEquals(tokenStore.getHitCount(), 1);
+        Assert.assertEquals(tokenStore.getMissCount(), 2);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void countExpiredTokens() {
+        TestCacheProvider cacheProvider = new TestCacheProvider();
+        ChallengeTokenStore tokenStore = new ChallengeTokenStore(cacheProvider, 15);
+        tokenStore.put("first", createEntry("admin"));
+        tokenStore.put("second", createEntry("admin"));
+        Assert.assertEquals(tokenStore.getExpirationCount(), 0);
+
+        CacheEntryExpiredListener<String, CacheEntry> listener =
+                (CacheEntryExpiredListener<String, CacheEntry>) cacheProvider.listeners.get(0);
+        listener.entryExpired(null);
+        listener.entryExpired(null);
+        Assert.assertEquals(tokenStore.getExpirationCount(), 2);
+    }
+
+    private CacheEntry createEntry(String username) {
+        CacheEntry entry = new CacheEntry();
+        entry.setUsername(username);
+        return entry;
+    }
+
+    /**
+     * Provider which resolves the tenant from a field and serves in-memory caches in place of the Carbon ones.
+     */
+    private static class TestCacheProvider extends TenantCacheProvider {
+        private int tenantId = 1;
+        private int cacheManagerLookups;
+        private int cacheBuilds;
+        private final List<Object> listeners = new ArrayList<>();
+
+        @Override
+        protected int getTenantId() {
+            return tenantId;
+        }
+
+        @Override
+        protected CacheManager getCacheManager(String cacheManagerName) {
+            cacheManagerLookups++;
+            final Map<String, Cache> caches = new HashMap<>();
+            return proxy(CacheManager.class, new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) {
+                    final String cacheName = (String) args[0];
+                    if ("getCache".equals(method.getName())) {
+                        return caches.get(cacheName);
+                    }
+                    return proxy(CacheBuilder.class, new InvocationHandler() {
+                        @Override
+                        public Object invoke(Object builder, Method method, Object[] args) {
+                            if ("build".equals(method.getName())) {
+                                cacheBuilds++;
+                                Cache cache = createCache();
+                                caches.put(cacheName, cache);
+                                return cache;
+                            }
+                            return builder;
+                        }
+                    });
+                }
+            });
+        }
+
+        private Cache createCache() {
+            final Map<Object, Object> entries = new HashMap<>();
+            return proxy(Cache.class, new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) {
+                    switch (method.getName()) {
+                        case "get":
+                            return entries.get(args[0]);
+                        case "put":
+                            entries.put(args[0], args[1]);
+                            return null;
+                        case "remove":
+                            return entries.remove(args[0]) != null;
+                        case "registerCacheEntryListener":
+                            listeners.add(args[0]);
+                            return true;
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                }
+            });
+        }
+
+        private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+            return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class[]{type}, handler));
+        }
+    }
+}
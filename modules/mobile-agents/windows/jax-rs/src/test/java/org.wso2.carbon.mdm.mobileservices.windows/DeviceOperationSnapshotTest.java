@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied. See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.wso2.carbon.mdm.mobileservices.windows;
+
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import org.wso2.carbon.device.mgt.common.DeviceIdentifier;
+import org.wso2.carbon.device.mgt.common.operation.mgt.Operation;
+import org.wso2.carbon.mdm.mobileservices.windows.common.PluginConstants;
+import org.wso2.carbon.mdm.mobileservices.windows.operations.Status;
+import org.wso2.carbon.mdm.mobileservices.windows.operations.util.Constants;
+import org.wso2.carbon.mdm.mobileservices.windows.operations.util.DeviceOperationSnapshot;
+import org.wso2.carbon.mdm.mobileservices.windows.operations.util.OperationCode;
+import org.wso2.carbon.mdm.mobileservices.windows.operations.util.OperationUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Acknowledgement processing against a device with a large operation queue.
+ */
+public class DeviceOperationSnapshotTest {
+
+    private static final int PENDING_OPERATIONS = 500;
+    private static final String[] CODES = {PluginConstants.OperationCodes.DEVICE_LOCK,
+            PluginConstants.OperationCodes.DEVICE_RING, PluginConstants.OperationCodes.WIPE_DATA,
+            PluginConstants.OperationCodes.POLICY_BUNDLE};
+
+    private List<Operation> operations;
+    private DeviceOperationSnapshot snapshot;
+
+    @BeforeMethod
+    public void setUp() {
+        operations = new ArrayList<>();
+        for (int i = 1; i <= PENDING_OPERATIONS; i++) {
+            Operation operation = new Operation();
+            operation.setId(i);
+            operation.setCode(CODES[i % CODES.length]);
+            operation.setStatus(Operation.Status.PENDING);
+            operations.add(operation);
+        }
+        snapshot = new DeviceOperationSnapshot(new DeviceIdentifier("windows-device", "windows"), operations);
+    }
+
+    @Test
+    public void acknowledgeEveryPendingOperation() throws Exception {
+        OperationUtils operationUtils = new OperationUtils();
+        for (Operation operation : operations) {
+            Status status = new Status(operation.getId(), 1, operation.getId(), Constants.EXECUTE, null,
+                    Constants.SyncMLResponseCodes.ACCEPTED);
+            if (PluginConstants.OperationCodes.DEVICE_LOCK.equals(operation.getCode())) {
+                status.setTargetReference(OperationCode.Command.DEVICE_LOCK.getCode());
+                operationUtils.lockOperationUpdate(status, snapshot);
+            } else if (PluginConstants.OperationCodes.DEVICE_RING.equals(operation.getCode())) {
+                status.setTargetReference(OperationCode.Command.DEVICE_RING.getCode());
+                operationUtils.ring(status, snapshot);
+            } else if (PluginConstants.OperationCodes.WIPE_DATA.equals(operation.getCode())) {
+                status.setTargetReference(OperationCode.Command.WIPE_DATA.getCode());
+                operationUtils.dataWipe(status, snapshot);
+            } else {
+                operationUtils.updateDeviceOperations(status, snapshot);
+            }
+        }
+        for (Operation operation : operations) {
+            Assert.assertEquals(operation.getStatus(), Operation.Status.COMPLETED, operation.toString());
+            Assert.assertNull(snapshot.getPendingOperation(operation.getId()));
+        }
+    }
+
+    @Test
+    public void ignoreStatusForOtherOperationCode() throws Exception {
+        Operation ringOperation = operations.get(0);
+        Assert.assertEquals(ringOperation.getCode(), PluginConstants.OperationCodes.DEVICE_RING);
+        Status status = new Status(1, 1, ringOperation.getId(), Constants.EXECUTE,
+                OperationCode.Command.WIPE_DATA.getCode(), Constants.SyncMLResponseCodes.ACCEPTED);
+
+        new OperationUtils().dataWipe(status, snapshot);
+        Assert.assertEquals(ringOperation.getStatus(), Operation.Status.PENDING);
+        Assert.assertSame(snapshot.getPendingOperation(ringOperation.getId()), ringOperation);
+    }
+
+    @Test
+    public void ignoreUnknownCommandReference() throws Exception {
+        Status status = new Status(1, 1, PENDING_OPERATIONS + 1, Constants.EXECUTE, null,
+                Constants.SyncMLResponseCodes.ACCEPTED);
+        new OperationUtils().updateDeviceOperations(status, snapshot);
+        for (Operation operation : operations) {
+            Assert.assertEquals(operation.getStatus(), Operation.Status.PENDING);
+        }
+    }
+}
@@ -26,6 +26,7 @@ import org.testng.annotations.Test;
 import org.w3c.dom.Document;
 import org.wso2.carbon.mdm.mobileservices.windows.common.exceptions.SyncmlMessageFormatException;
 import org.wso2.carbon.mdm.mobileservices.windows.common.exceptions.SyncmlOperationException;
+import org.wso2.carbon.mdm.mobileservices.windows.operations.util.Constants;
 import org.wso2.carbon.mdm.mobileservices.windows.operations.util.SyncmlGenerator;
 import org.wso2.carbon.mdm.mobileservices.windows.operations.util.SyncmlParser;
 import org.xml.sax.InputSource;
@@ -96,11 +97,14 @@ public class SyncmlParserTest {
 
         DOMSource domSource = new DOMSource(doc);
         StringWriter stringWriter = new StringWriter();
+        stringWriter.append(Constants.XML_DECLARATION).append('\n');
         StreamResult streamResult = new StreamResult(stringWriter);
         TransformerFactory transformerFactory = TransformerFactory.newInstance();
         Transformer transformer = transformerFactory.newTransformer();
         transformer.setOutputProperty(OutputKeys.ENCODING, "UTF-8");
         transformer.setOutputProperty(OutputKeys.INDENT, "yes");
+        transformer.setOutputProperty(Constants.INDENT_AMOUNT_PROPERTY, String.valueOf(Constants.INDENT_AMOUNT));
+        transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
         transformer.transform(domSource, streamResult);
         stringWriter.flush();
         return stringWriter.toString();
@@ -0,0 +1,192 @@
+/*
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied. See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.wso2.carbon.mdm.mobileservices.windows;
+
+import org.apache.commons.io.FileUtils;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import org.wso2.carbon.mdm.mobileservices.windows.operations.*;
+import org.wso2.carbon.mdm.mobileservices.windows.operations.util.Constants;
+import org.wso2.carbon.mdm.mobileservices.windows.operations.util.SyncmlGenerator;
+import org.wso2.carbon.mdm.mobileservices.windows.operations.util.SyncmlStreamGenerator;
+import org.wso2.carbon.mdm.mobileservices.windows.operations.util.SyncmlStreamParser;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Golden file tests for the streaming syncml generator. The golden files were produced by the DOM based
+ * SyncmlGenerator, and each payload is also compared with the output of SyncmlGenerator on the running JDK, so these
+ * tests guard that both generators keep producing byte-identical payloads.
+ */
+public class SyncmlStreamGeneratorTest {
+
+    @Test
+    public void generateEnrollmentMessage() throws Exception {
+        assertGolden(parse("syncml-test-message.xml"), "golden/syncml-test-message.xml");
+    }
+
+    @Test
+    public void generatePollMessage() throws Exception {
+        assertGolden(parse("syncml-poll-message.xml"), "golden/syncml-poll-message.xml");
+    }
+
+    @Test
+    public void generateOperationReply() throws Exception {
+        assertGolden(buildOperationReply(), "golden/syncml-operation-reply.xml");
+    }
+
+    @Test
+    public void generateRepeatedlyOnSameThread() throws Exception {
+        SyncmlDocument reply = buildOperationReply();
+        SyncmlStreamGenerator generator = new SyncmlStreamGenerator();
+        ByteArrayOutputStream first = new ByteArrayOutputStream();
+        ByteArrayOutputStream second = new ByteArrayOutputStream();
+        generator.generatePayload(reply, first);
+        generator.generatePayload(parse("syncml-poll-message.xml"), new ByteArrayOutputStream());
+        generator.generatePayload(reply, second);
+        Assert.assertEquals(second.toByteArray(), first.toByteArray());
+    }
+
+    /**
+     * Builds a reply which covers every command type written by the generator, including values that need
+     * escaping.
+     *
+     * @return syncml reply document
+     */
+    public static SyncmlDocument buildOperationReply() {
+        SyncmlHeader header = new SyncmlHeader();
+        header.setHexadecimalSessionId("2");
+        header.setMsgID(1);
+        Target headerTarget = new Target();
+        headerTarget.setLocURI("urn:uuid:FAEFB2D5-1771-5446-A635-797AFC474895");
+        header.setTarget(headerTarget);
+        Source headerSource = new Source();
+        headerSource.setLocURI("https://EnterpriseEnrollment.wso2.com/Syncml/initialquery");
+        headerSource.setLocName(Constants.PROVIDER_ID);
+        header.setSource(headerSource);
+
+        MetaTag challengeMeta = new MetaTag();
+        challengeMeta.setFormat(Constants.CRED_FORMAT);
+        challengeMeta.setType(Constants.CRED_TYPE);
+        challengeMeta.setNextNonce(Constants.INITIAL_NONCE);
+        ChallengeTag challenge = new ChallengeTag();
+        challenge.setMeta(challengeMeta);
+        Status headerStatus = new Status(1, 1, 0, Constants.SYNC_HDR, "./devicemanagement", "212");
+        headerStatus.setChallenge(challenge);
+        Status alertStatus = new Status(2, 1, 2, Constants.ALERT, null, "200");
+
+        Alert alert = new Alert();
+        alert.setCommandId(3);
+        alert.setData(Constants.INITIAL_ALERT_DATA);
+
+        Get get = new Get();
+        get.setCommandId(4);
+        get.setItems(Arrays.asList(targetItem("./DevDetail/SwV", null, null),
+                targetItem("./Vendor/MSFT/DeviceLock/DevicePolicyManager/IsActivePasscodeRequired", null, null)));
+
+        Replace replace = new Replace();
+        replace.setCommandId(5);
+        replace.setItems(Arrays.asList(targetItem("./Vendor/MSFT/PolicyManager/My/Camera/AllowCamera", "0",
+                Constants.META_FORMAT_INT)));
+
+        ExecuteTag lock = new ExecuteTag();
+        lock.setCommandId(6);
+        lock.setItems(Arrays.asList(targetItem("./Vendor/MSFT/RemoteLock/Lock", null, null)));
+        ExecuteTag ring = new ExecuteTag();
+        ring.setCommandId(7);
+        ring.setItems(Arrays.asList(targetItem("./Vendor/MSFT/RemoteRing/Ring", "", null)));
+        List<ExecuteTag> execs = new ArrayList<>();
+        execs.add(lock);
+        execs.add(ring);
+
+        AddTag add = new AddTag();
+        add.setCommandId(10);
+        add.setItems(Arrays.asList(targetItem("./Vendor/MSFT/WiFi/Profile/corp/WlanXml",
+                "<WLANProfile><name>corp & \"guest\"</name>\r\n\t<SSID>é€😀\u0085</SSID></WLANProfile>",
+                Constants.META_FORMAT_CHARACTER)));
+        Replace atomicReplace = new Replace();
+        atomicReplace.setCommandId(11);
+        atomicReplace.setItems(Arrays.asList(targetItem("./Vendor/MSFT/PolicyManager/My/Security/" +
+                "RequireDeviceEncryption", "1", Constants.META_FORMAT_INT)));
+        AtomicTag atomic = new AtomicTag();
+        atomic.setCommandId(9);
+        atomic.setAdds(Arrays.asList(add));
+        atomic.setReplaces(Arrays.asList(atomicReplace));
+
+        DeleteTag delete = new DeleteTag();
+        delete.setCommandId(12);
+        delete.setItems(Arrays.asList(targetItem("./Vendor/MSFT/WiFi/Profile/old", null, null)));
+        SequenceTag sequence = new SequenceTag();
+        sequence.setCommandId(8);
+        sequence.setAtomicTag(atomic);
+        sequence.setDeleteTag(delete);
+
+        SyncmlBody body = new SyncmlBody();
+        body.setStatus(Arrays.asList(headerStatus, alertStatus));
+        body.setAlert(alert);
+        body.setGet(get);
+        body.setReplace(replace);
+        body.setExec(execs);
+        body.setSequence(sequence);
+
+        SyncmlDocument reply = new SyncmlDocument();
+        reply.setHeader(header);
+        reply.setBody(body);
+        return reply;
+    }
+
+    private static Item targetItem(String locUri, String data, String format) {
+        Item item = new Item();
+        Target target = new Target();
+        target.setLocURI(locUri);
+        item.setTarget(target);
+        item.setData(data);
+        if (format != null) {
+            MetaTag meta = new MetaTag();
+            meta.setFormat(format);
+            item.setMeta(meta);
+        }
+        return item;
+    }
+
+    private void assertGolden(SyncmlDocument syncmlDocument, String goldenFile) throws Exception {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        new SyncmlStreamGenerator().generatePayload(syncmlDocument, outputStream);
+        byte[] expected = FileUtils.readFileToByteArray(getResource(goldenFile));
+        Assert.assertEquals(outputStream.toByteArray(), expected);
+        byte[] generated = new SyncmlGenerator().generatePayload(syncmlDocument).getBytes(Constants.UTF_8);
+        Assert.assertEquals(outputStream.toByteArray(), generated);
+    }
+
+    private SyncmlDocument parse(String payload) throws Exception {
+        try (InputStream inputStream = new FileInputStream(getResource(payload))) {
+            return SyncmlStreamParser.parseSyncmlPayload(inputStream);
+        }
+    }
+
+    private File getResource(String name) {
+        return new File(getClass().getClassLoader().getResource(name).getFile());
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied. See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.wso2.carbon.mdm.mobileservices.windows;
+
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+import org.w3c.dom.Document;
+import org.wso2.carbon.mdm.mobileservices.windows.common.exceptions.SyncmlMessageFormatException;
+import org.wso2.carbon.mdm.mobileservices.windows.operations.Status;
+import org.wso2.carbon.mdm.mobileservices.windows.operations.SyncmlDocument;
+import org.wso2.carbon.mdm.mobileservices.windows.operations.util.SyncmlGenerator;
+import org.wso2.carbon.mdm.mobileservices.windows.operations.util.SyncmlParser;
+import org.wso2.carbon.mdm.mobileservices.windows.operations.util.SyncmlStreamParser;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+public class SyncmlStreamParserTest {
+
+    private static final String ENROLLMENT_MESSAGE = "syncml-test-message.xml";
+    private static final String POLL_MESSAGE = "syncml-poll-message.xml";
+
+    @DataProvider(name = "recordedPayloads")
+    public Object[][] recordedPayloads() {
+        return new Object[][]{{ENROLLMENT_MESSAGE}, {POLL_MESSAGE}};
+    }
+
+    @Test(dataProvider = "recordedPayloads")
+    public void parseSameAsDomParser(String payload) throws Exception {
+        File syncmlMessage = getResource(payload);
+        Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(syncmlMessage);
+        SyncmlGenerator generator = new SyncmlGenerator();
+
+        String expected = generator.generatePayload(SyncmlParser.parseSyncmlPayload(document));
+        String actual;
+        try (InputStream inputStream = new FileInputStream(syncmlMessage)) {
+            actual = generator.generatePayload(SyncmlStreamParser.parseSyncmlPayload(inputStream));
+        }
+        Assert.assertEquals(actual, expected);
+    }
+
+    @Test
+    public void parsePollStatuses() throws IOException, SyncmlMessageFormatException {
+        SyncmlDocument syncmlDocument;
+        try (InputStream inputStream = new FileInputStream(getResource(POLL_MESSAGE))) {
+            syncmlDocument = SyncmlStreamParser.parseSyncmlPayload(inputStream);
+        }
+        Assert.assertEquals(syncmlDocument.getHeader().getSessionId(), 2);
+        Assert.assertEquals(syncmlDocument.getBody().getStatus().size(), 4);
+
+        Status lockStatus = syncmlDocument.getBody().getStatus().get(2);
+        Assert.assertEquals(lockStatus.getCommandReference(), 13);
+        Assert.assertEquals(lockStatus.getTargetReference(), "./Vendor/MSFT/RemoteLock/Lock");
+        Assert.assertEquals(syncmlDocument.getBody().getResults().getItem().size(), 2);
+    }
+
+    @Test(expectedExceptions = SyncmlMessageFormatException.class)
+    public void rejectMissingHeader() throws SyncmlMessageFormatException {
+        String payload = "<SyncML xmlns=\"SYNCML:SYNCML1.2\"><SyncBody><Final/></SyncBody></SyncML>";
+        SyncmlStreamParser.parseSyncmlPayload(new ByteArrayInputStream(payload.getBytes()));
+    }
+
+    private File getResource(String name) {
+        return new File(getClass().getClassLoader().getResource(name).getFile());
+    }
+}
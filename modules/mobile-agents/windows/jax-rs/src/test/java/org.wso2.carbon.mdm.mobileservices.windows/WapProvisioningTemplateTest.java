@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied. See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.wso2.carbon.mdm.mobileservices.windows;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.wso2.carbon.mdm.mobileservices.windows.common.PluginConstants;
+import org.wso2.carbon.mdm.mobileservices.windows.services.wstep.util.WapProvisioningTemplate;
+import org.wso2.carbon.mdm.mobileservices.windows.services.wstep.util.WapProvisioningTemplate.Slot;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import java.io.File;
+import java.io.StringWriter;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Checks that the precompiled wap-provisioning template produces the same document as patching the parsed
+ * wap-provisioning file and serializing it.
+ */
+public class WapProvisioningTemplateTest {
+
+    @Test
+    public void fillSameAsPatchedDocument() throws Exception {
+        File wapProvisioningFile = new File(getClass().getClassLoader().getResource(
+                PluginConstants.CertificateEnrolment.WAP_PROVISIONING_XML).getFile());
+        Map<Slot, String> values = new EnumMap<>(Slot.class);
+        values.put(Slot.CA_CERTIFICATE_THUMBPRINT, "3A7B2C51D0E6F4A98812C3D4E5F60718293A4B5C");
+        values.put(Slot.CA_CERTIFICATE, "MIIDdzCCAl+gAwIBAgIEb/3Q==");
+        values.put(Slot.SIGNED_CERTIFICATE_THUMBPRINT, "C0FFEE51D0E6F4A98812C3D4E5F60718293A4B5C");
+        values.put(Slot.SIGNED_CERTIFICATE, "MIICsjCCAZqgAwIBAgIGAU/+Aw==");
+        values.put(Slot.DOMAIN, "wso2.com");
+        values.put(Slot.SYNCML_PROVISIONING_ADDR, "https://EnterpriseEnrollment.wso2.com/Syncml?a=1&b=2");
+        values.put(Slot.APPAUTH_USERNAME, "admin\"<&>\t\né");
+        values.put(Slot.APPAUTH_PASSWORD, "4d7f2e90-6a1b-4c8d-9e0f-1a2b3c4d5e6f");
+        values.put(Slot.POLLING_FREQUENCY, "8");
+
+        Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(wapProvisioningFile);
+        NodeList wapParm = document.getElementsByTagName(PluginConstants.CertificateEnrolment.PARM);
+        Node caCertificate = wapParm.item(PluginConstants.CertificateEnrolment.CA_CERTIFICATE_POSITION);
+        Node signedCertificate = wapParm.item(PluginConstants.CertificateEnrolment.SIGNED_CERTIFICATE_POSITION);
+        setAttribute(caCertificate.getParentNode(), PluginConstants.CertificateEnrolment.TYPE,
+                values.get(Slot.CA_CERTIFICATE_THUMBPRINT));
+        setValue(caCertificate, values.get(Slot.CA_CERTIFICATE));
+        setAttribute(signedCertificate.getParentNode(), PluginConstants.CertificateEnrolment.TYPE,
+                values.get(Slot.SIGNED_CERTIFICATE_THUMBPRINT));
+        setValue(signedCertificate, values.get(Slot.SIGNED_CERTIFICATE));
+        setValue(wapParm.item(PluginConstants.CertificateEnrolment.DOMAIN_POSITION), values.get(Slot.DOMAIN));
+        setValue(wapParm.item(PluginConstants.CertificateEnrolment.SYNCML_PROVISIONING_ADDR_POSITION),
+                values.get(Slot.SYNCML_PROVISIONING_ADDR));
+        setValue(wapParm.item(PluginConstants.CertificateEnrolment.APPAUTH_USERNAME_POSITION),
+                values.get(Slot.APPAUTH_USERNAME));
+        setValue(wapParm.item(PluginConstants.CertificateEnrolment.APPAUTH_PASSWORD_POSITION),
+                values.get(Slot.APPAUTH_PASSWORD));
+        setValue(wapParm.item(PluginConstants.CertificateEnrolment.POLLING_FREQUENCY_POSITION),
+                values.get(Slot.POLLING_FREQUENCY));
+        StringWriter expected = new StringWriter();
+        TransformerFactory.newInstance().newTransformer().transform(new DOMSource(document),
+                new StreamResult(expected));
+
+        WapProvisioningTemplate template = WapProvisioningTemplate.getTemplate(wapProvisioningFile);
+        Assert.assertEquals(template.fill(values), expected.toString());
+        Assert.assertSame(WapProvisioningTemplate.getTemplate(wapProvisioningFile), template);
+    }
+
+    private void setValue(Node parm, String value) {
+        setAttribute(parm, PluginConstants.CertificateEnrolment.VALUE, value);
+    }
+
+    private void setAttribute(Node node, String name, String value) {
+        node.getAttributes().getNamedItem(name).setTextContent(value);
+    }
+}